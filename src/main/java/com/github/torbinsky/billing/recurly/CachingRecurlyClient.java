@@ -0,0 +1,403 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.BillingInfo;
+import com.github.torbinsky.billing.recurly.model.Notification;
+import com.github.torbinsky.billing.recurly.model.Plan;
+import com.github.torbinsky.billing.recurly.model.Subscription;
+import com.github.torbinsky.billing.recurly.model.list.Subscriptions;
+import com.github.torbinsky.billing.recurly.serialize.XmlPayloadMap;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+
+/**
+ * A {@link RecurlyClient} answering repeated reads of accounts, billing info,
+ * subscriptions and plans from memory.
+ * <p/>
+ * Each kind of object is kept in a cache of
+ * {@link RecurlyClientConfig#getEntityCacheSize()} objects, keyed by
+ * resource and API key, that evicts the least recently used. Objects are
+ * served for {@link RecurlyClientConfig#getEntityCacheTtl()} milliseconds,
+ * then for {@link RecurlyClientConfig#getEntityCacheStaleWhileRevalidate()}
+ * more while they are reloaded in the background.
+ * <p/>
+ * Every change this client makes to an account or subscription drops what it
+ * may have made stale, and the changes that return the new object (e.g.
+ * {@link #updateAccount(String, XmlPayloadMap)}) put it in the cache right
+ * away. Changes made by anyone else are only seen once the TTL has passed,
+ * unless the client is registered with a
+ * {@link RecurlyNotificationDispatcher} to learn of them from Recurly's push
+ * notifications.
+ * Views created with {@link #withDeadline(java.time.Duration)} do not read
+ * from the cache, but their changes do invalidate it.
+ * <p/>
+ * When {@link RecurlyClientConfig#getEntityCacheDirectory()} is set, the
+ * caches are saved there every minute and when the client is closed, and the
+ * next client restores them when it is created. Restored objects are served
+ * stale until they have been reloaded, so a restarted service reads from
+ * disk rather than waiting on Recurly. The saved keys hold a fingerprint of
+ * the API key, not the key itself.
+ * <p/>
+ * The objects handed out are shared between all readers and must not be
+ * modified.
+ *
+ * @author twerner
+ *
+ */
+public class CachingRecurlyClient extends RecurlyClient implements RecurlyNotificationListener {
+
+	private static final Logger log = LoggerFactory.getLogger(CachingRecurlyClient.class);
+
+	private static final String MISSING_BILLING_INFO = "Couldn't find BillingInfo with account_code";
+	private static final long SAVE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	private final RecurlyEntityCache<String, Account> accounts;
+	private final RecurlyEntityCache<String, BillingInfo> billingInfos;
+	private final RecurlyEntityCache<String, Subscription> subscriptions;
+	private final RecurlyEntityCache<String, Subscriptions> accountSubscriptions;
+	private final RecurlyEntityCache<String, Plan> plans;
+	// Saves each cache to its file, when the caches are persisted
+	private final List<Runnable> savers;
+	private final ScheduledFuture<?> scheduledSave;
+
+	public CachingRecurlyClient(final String apiKey) {
+		this(apiKey, RecurlyClientConfig.defaultConfig());
+	}
+
+	public CachingRecurlyClient(final String apiKey, final RecurlyClientConfig config) {
+		this(apiKey, "api.recurly.com", 443, "v2", config);
+	}
+
+	public CachingRecurlyClient(final String apiKey, final String host, final int port, final String version) {
+		this(apiKey, host, port, version, RecurlyClientConfig.defaultConfig());
+	}
+
+	public CachingRecurlyClient(final String apiKey, final String host, final int port, final String version, final RecurlyClientConfig config) {
+		super(apiKey, host, port, version, config);
+		accounts = newCache();
+		billingInfos = newCache();
+		subscriptions = newCache();
+		accountSubscriptions = newCache();
+		plans = newCache();
+		savers = new ArrayList<>();
+		addWriteListener(this::onWrite);
+		final Path directory = getConfig().getEntityCacheDirectory();
+		if (directory == null) {
+			scheduledSave = null;
+		} else {
+			persist(accounts, directory.resolve("accounts.cache"), Account.class);
+			persist(billingInfos, directory.resolve("billing_infos.cache"), BillingInfo.class);
+			persist(subscriptions, directory.resolve("subscriptions.cache"), Subscription.class);
+			persist(accountSubscriptions, directory.resolve("account_subscriptions.cache"), Subscriptions.class);
+			persist(plans, directory.resolve("plans.cache"), Plan.class);
+			// Encoding thousands of objects is kept off the scheduler's thread
+			scheduledSave = RecurlyScheduler.repeat(() -> getDeserializationExecutor().execute(this::saveCaches), SAVE_INTERVAL_NANOS);
+		}
+	}
+
+	private CachingRecurlyClient(final CachingRecurlyClient client, final RecurlyCredentials credentials) {
+		super(client, credentials);
+		accounts = client.accounts;
+		billingInfos = client.billingInfos;
+		subscriptions = client.subscriptions;
+		accountSubscriptions = client.accountSubscriptions;
+		plans = client.plans;
+		savers = client.savers;
+		scheduledSave = null;
+	}
+
+	/**
+	 * A view of this client making its calls with the given API key, and
+	 * sharing its caches. Objects are cached per key, so the views never
+	 * see each other's objects.
+	 */
+	@Override
+	public CachingRecurlyClient withApiKey(final String apiKey) {
+		return keyView(apiKey, credentials -> new CachingRecurlyClient(this, credentials));
+	}
+
+	/**
+	 * The hit, miss and eviction counts of all the caches together
+	 */
+	public RecurlyCacheStats getCacheStats() {
+		return accounts.stats().plus(billingInfos.stats()).plus(subscriptions.stats()).plus(accountSubscriptions.stats()).plus(plans.stats());
+	}
+
+	/**
+	 * Drops every cached object, e.g. after changes made outside this client
+	 */
+	public void invalidateAll() {
+		accounts.invalidateKeys(k -> true);
+		billingInfos.invalidateKeys(k -> true);
+		subscriptions.invalidateKeys(k -> true);
+		accountSubscriptions.invalidateKeys(k -> true);
+		plans.invalidateKeys(k -> true);
+	}
+
+	/**
+	 * Drops the cached objects of the account and subscription the
+	 * notification is about, whichever API key they were read with. They are
+	 * not replaced by the ones in the notification, which only hold some of
+	 * their fields.
+	 */
+	@Override
+	public void notificationReceived(final Notification notification) {
+		final Account account = notification.getAccount();
+		if (account != null && account.getAccountCode() != null) {
+			log.debug("Dropping the cached objects of account {} after a {} notification", account.getAccountCode(), notification.getType());
+			invalidateAccount(accountResource(account.getAccountCode()));
+		}
+		final Subscription subscription = notification.getSubscription();
+		if (subscription != null && subscription.getUuid() != null) {
+			invalidateSubscription(subscriptionResource(subscription.getUuid()), subscription.getUuid());
+		}
+	}
+
+	/**
+	 * Saves the caches right away, when they are persisted. This also
+	 * happens every minute and when the client is closed.
+	 */
+	public synchronized void saveCaches() {
+		for (Runnable saver : savers) {
+			saver.run();
+		}
+	}
+
+	/**
+	 * Saves the caches, when they are persisted, and closes the transport
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (scheduledSave != null) {
+			scheduledSave.cancel(false);
+			saveCaches();
+		}
+		super.close();
+	}
+
+	@Override
+	public Account getAccount(final String accountCode) {
+		final String resource = accountResource(accountCode);
+		return awaitResult(accounts.get(cacheKey(resource), () -> doGETAsync(resource, Account.class)));
+	}
+
+	@Override
+	public Account updateAccount(final String accountCode, final XmlPayloadMap<?, ?> account) {
+		final Account updated = super.updateAccount(accountCode, account);
+		if (updated != null) {
+			accounts.put(cacheKey(accountResource(accountCode)), updated);
+		}
+		return updated;
+	}
+
+	@Override
+	public Subscription getSubscription(final String uuid) {
+		final String resource = subscriptionResource(uuid);
+		return awaitResult(subscriptions.get(cacheKey(resource), () -> doGETAsync(resource, Subscription.class)));
+	}
+
+	@Override
+	public Subscription cancelSubscription(final Subscription subscription) {
+		return cacheSubscription(subscription.getUuid(), super.cancelSubscription(subscription));
+	}
+
+	@Override
+	public Subscription reactivateSubscription(final Subscription subscription) {
+		return cacheSubscription(subscription.getUuid(), super.reactivateSubscription(subscription));
+	}
+
+	@Override
+	public Subscription updateSubscription(final String uuid, final XmlPayloadMap<?, ?> subscriptionUpdate) {
+		return cacheSubscription(uuid, super.updateSubscription(uuid, subscriptionUpdate));
+	}
+
+	@Override
+	public Subscriptions getAccountSubscriptions(final String accountCode) {
+		return cachedAccountSubscriptions(accountResource(accountCode) + Subscriptions.SUBSCRIPTIONS_RESOURCE);
+	}
+
+	@Override
+	public Subscriptions getAccountSubscriptions(final String accountCode, final String status) {
+		return cachedAccountSubscriptions(accountResource(accountCode) + Subscriptions.SUBSCRIPTIONS_RESOURCE + "?state=" + urlEncode(status));
+	}
+
+	@Override
+	public BillingInfo getBillingInfo(final String accountCode) {
+		final String resource = billingInfoResource(accountCode);
+		return awaitResult(billingInfos.get(cacheKey(resource), () -> nullIfMissing(doGETAsync(resource, BillingInfo.class), MISSING_BILLING_INFO)));
+	}
+
+	@Override
+	public BillingInfo createOrUpdateBillingInfo(final XmlPayloadMap<?, ?> billingInfo, final String accountCode) {
+		final BillingInfo updated = super.createOrUpdateBillingInfo(billingInfo, accountCode);
+		if (updated != null) {
+			billingInfos.put(cacheKey(billingInfoResource(accountCode)), updated);
+		}
+		return updated;
+	}
+
+	@Override
+	public void clearBillingInfo(final String accountCode) {
+		super.clearBillingInfo(accountCode);
+		// Known to be missing now, as getBillingInfo would find
+		billingInfos.put(cacheKey(billingInfoResource(accountCode)), null);
+	}
+
+	@Override
+	public Plan getPlan(final String planCode) {
+		final String resource = Plan.PLANS_RESOURCE + "/" + urlEncode(planCode);
+		return awaitResult(plans.get(cacheKey(resource), () -> doGETAsync(resource, Plan.class)));
+	}
+
+	private Subscriptions cachedAccountSubscriptions(final String resource) {
+		return awaitResult(accountSubscriptions.get(cacheKey(resource), () -> doGETsAsync(resource, Subscriptions.class)
+				.thenApply(RecurlyClientBase::depaginateResults)));
+	}
+
+	private Subscription cacheSubscription(final String uuid, final Subscription updated) {
+		if (updated != null) {
+			subscriptions.put(cacheKey(subscriptionResource(uuid)), updated);
+		}
+		return updated;
+	}
+
+	/**
+	 * Drops whatever a change made through this client, or a view of it, may
+	 * have made stale. Runs before the changed object, if any, is put back
+	 * in the cache by the method that made the change.
+	 */
+	private void onWrite(final RecurlyRequest request) {
+		final List<String> segments = Arrays.asList(URI.create(request.getUrl()).getRawPath().split("/"));
+		final int accountsAt = segments.indexOf(Account.ACCOUNT_RESOURCE.substring(1));
+		final int subscriptionsAt = segments.indexOf(Subscription.SUBSCRIPTION_RESOURCE.substring(1));
+		final int plansAt = segments.indexOf(Plan.PLANS_RESOURCE.substring(1));
+		if (accountsAt >= 0 && accountsAt + 1 < segments.size()) {
+			final String prefix = Account.ACCOUNT_RESOURCE + "/" + segments.get(accountsAt + 1);
+			log.debug("Dropping the cached objects of {} after {} {}", prefix, request.getMethod(), request.getUrl());
+			invalidateAccount(prefix);
+			if ("DELETE".equals(request.getMethod()) && accountsAt + 2 == segments.size()) {
+				// Closing the account cancels all its subscriptions
+				subscriptions.invalidateKeys(k -> true);
+			}
+		} else if (subscriptionsAt >= 0 && subscriptionsAt + 1 < segments.size()) {
+			final String uuid = segments.get(subscriptionsAt + 1);
+			final String prefix = Subscription.SUBSCRIPTION_RESOURCE + "/" + uuid;
+			log.debug("Dropping the cached objects of {} after {} {}", prefix, request.getMethod(), request.getUrl());
+			invalidateSubscription(prefix, uuid);
+		} else if (subscriptionsAt >= 0) {
+			// A new subscription, for an account we cannot tell
+			accountSubscriptions.invalidateKeys(k -> true);
+		} else if (plansAt >= 0 && plansAt + 1 < segments.size()) {
+			// Changing an add-on changes the plan it belongs to as well
+			final String prefix = Plan.PLANS_RESOURCE + "/" + segments.get(plansAt + 1);
+			log.debug("Dropping the cached objects of {} after {} {}", prefix, request.getMethod(), request.getUrl());
+			plans.invalidateKeys(k -> isUnder(k, prefix));
+		}
+	}
+
+	private void invalidateAccount(final String prefix) {
+		accounts.invalidateKeys(k -> isUnder(k, prefix));
+		billingInfos.invalidateKeys(k -> isUnder(k, prefix));
+		accountSubscriptions.invalidateKeys(k -> isUnder(k, prefix));
+	}
+
+	private void invalidateSubscription(final String prefix, final String uuid) {
+		subscriptions.invalidateKeys(k -> isUnder(k, prefix));
+		accountSubscriptions.invalidateIf((k, v) -> contains(v, uuid));
+	}
+
+	private <V> void persist(final RecurlyEntityCache<String, V> cache, final Path file, final Class<V> type) {
+		final RecurlyDiskCache disk = new RecurlyDiskCache(file);
+		cache.restore(disk.load(), bytes -> {
+			try {
+				return xmlMapper.readValue(new String(bytes, StandardCharsets.UTF_8), type);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		savers.add(() -> {
+			try {
+				disk.save(cache.save(value -> {
+					try {
+						return xmlMapper.writeValueAsBytes(value);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}));
+			} catch (IOException | RuntimeException e) {
+				log.warn("Unable to save the cache to {}", disk.getFile(), e);
+			}
+		});
+	}
+
+	/**
+	 * Keys objects by resource and a fingerprint of the API key they were
+	 * read with, so that a saved cache does not give the key away
+	 */
+	private String cacheKey(final String resource) {
+		return resource + " " + getCredentials().getFingerprint();
+	}
+
+	private static boolean isUnder(final String cacheKey, final String resource) {
+		return cacheKey.startsWith(resource + " ") || cacheKey.startsWith(resource + "/") || cacheKey.startsWith(resource + "?");
+	}
+
+	private static boolean contains(final Subscriptions subscriptions, final String uuid) {
+		if (subscriptions == null || subscriptions.getObjects() == null) {
+			return false;
+		}
+		for (Subscription subscription : subscriptions.getObjects()) {
+			if (uuid.equals(urlEncode(String.valueOf(subscription.getUuid())))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String accountResource(final String accountCode) {
+		return Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode);
+	}
+
+	private static String billingInfoResource(final String accountCode) {
+		return accountResource(accountCode) + BillingInfo.BILLING_INFO_RESOURCE;
+	}
+
+	private static String subscriptionResource(final String uuid) {
+		return Subscriptions.SUBSCRIPTIONS_RESOURCE + "/" + urlEncode(uuid);
+	}
+
+	private <V> RecurlyEntityCache<String, V> newCache() {
+		final RecurlyClientConfig config = getConfig();
+		return new RecurlyEntityCache<String, V>(config.getEntityCacheSize(),
+												 TimeUnit.MILLISECONDS.toNanos(config.getEntityCacheTtl()),
+												 TimeUnit.MILLISECONDS.toNanos(config.getEntityCacheStaleWhileRevalidate()));
+	}
+}
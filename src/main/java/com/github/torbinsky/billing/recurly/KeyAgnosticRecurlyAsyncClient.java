@@ -0,0 +1,298 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Nullable;
+
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.AddOn;
+import com.github.torbinsky.billing.recurly.model.Adjustment;
+import com.github.torbinsky.billing.recurly.model.BillingInfo;
+import com.github.torbinsky.billing.recurly.model.Coupon;
+import com.github.torbinsky.billing.recurly.model.CouponRedeem;
+import com.github.torbinsky.billing.recurly.model.Invoice;
+import com.github.torbinsky.billing.recurly.model.Plan;
+import com.github.torbinsky.billing.recurly.model.Redemption;
+import com.github.torbinsky.billing.recurly.model.Subscription;
+import com.github.torbinsky.billing.recurly.model.Transaction;
+import com.github.torbinsky.billing.recurly.model.list.Accounts;
+import com.github.torbinsky.billing.recurly.model.list.Adjustments;
+import com.github.torbinsky.billing.recurly.model.list.Invoices;
+import com.github.torbinsky.billing.recurly.model.list.Plans;
+import com.github.torbinsky.billing.recurly.model.list.Redemptions;
+import com.github.torbinsky.billing.recurly.model.list.Subscriptions;
+import com.github.torbinsky.billing.recurly.model.list.Transactions;
+import com.github.torbinsky.billing.recurly.serialize.XmlPayloadMap;
+
+/**
+ * A non-blocking Recurly client which allows the API key to be specified for
+ * each API call. The key is bound when the call is issued, so the returned
+ * futures may complete on any thread.
+ * 
+ * @author twerner
+ *
+ */
+public interface KeyAgnosticRecurlyAsyncClient {
+
+	/**
+	 * Open the underlying http client
+	 */
+	public void open();
+
+	/**
+	 * Close the underlying http client
+	 * @throws IOException 
+	 */
+	public void close() throws IOException;
+
+	/**
+	 * @see RecurlyAsyncClient#create(String, XmlPayloadMap, Class)
+	 */
+	public <T> CompletableFuture<T> create(String path, XmlPayloadMap<?, ?> payload, Class<T> clazz, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#update(String, XmlPayloadMap, Class)
+	 */
+	public <T> CompletableFuture<T> update(String path, XmlPayloadMap<?, ?> payload, Class<T> clazz, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#createAccount(XmlPayloadMap)
+	 */
+	public CompletableFuture<Account> createAccount(final XmlPayloadMap<?, ?> account, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAccounts()
+	 */
+	public CompletableFuture<Accounts> getAccounts(String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAccount(String)
+	 */
+	public CompletableFuture<Account> getAccount(final String accountCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#updateAccount(String, XmlPayloadMap)
+	 */
+	public CompletableFuture<Account> updateAccount(final String accountCode, final XmlPayloadMap<?, ?> account, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#closeAccount(String)
+	 */
+	public CompletableFuture<Void> closeAccount(final String accountCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#createSubscription(XmlPayloadMap)
+	 */
+	public CompletableFuture<Subscription> createSubscription(final XmlPayloadMap<?, ?> subscription, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getSubscription(String)
+	 */
+	public CompletableFuture<Subscription> getSubscription(final String uuid, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#cancelSubscription(Subscription)
+	 */
+	public CompletableFuture<Subscription> cancelSubscription(final Subscription subscription, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#reactivateSubscription(Subscription)
+	 */
+	public CompletableFuture<Subscription> reactivateSubscription(final Subscription subscription, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#updateSubscription(String, XmlPayloadMap)
+	 */
+	public CompletableFuture<Subscription> updateSubscription(final String uuid, final XmlPayloadMap<?, ?> subscriptionUpdate, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAccountSubscriptions(String)
+	 */
+	public CompletableFuture<Subscriptions> getAccountSubscriptions(final String accountCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAccountSubscriptions(String, String)
+	 */
+	public CompletableFuture<Subscriptions> getAccountSubscriptions(final String accountCode, final String status, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#createOrUpdateBillingInfo(XmlPayloadMap, String)
+	 */
+	public CompletableFuture<BillingInfo> createOrUpdateBillingInfo(final XmlPayloadMap<?, ?> billingInfo, String accountCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getBillingInfo(String)
+	 */
+	public CompletableFuture<BillingInfo> getBillingInfo(final String accountCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#clearBillingInfo(String)
+	 */
+	public CompletableFuture<Void> clearBillingInfo(final String accountCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAccountTransactions(String)
+	 */
+	public CompletableFuture<Transactions> getAccountTransactions(final String accountCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getTransaction(String)
+	 */
+	public CompletableFuture<Transaction> getTransaction(final String uuid, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#partialRefundTransaction(String, int)
+	 */
+	public CompletableFuture<Void> partialRefundTransaction(final String transactionId, int refundInCents, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#createTransaction(XmlPayloadMap)
+	 */
+	public CompletableFuture<Transaction> createTransaction(final XmlPayloadMap<?, ?> trans, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAccountRedemption(String)
+	 */
+	public CompletableFuture<Redemption> getAccountRedemption(final String accountCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#redeemCoupon(String, XmlPayloadMap)
+	 */
+	public CompletableFuture<CouponRedeem> redeemCoupon(final String couponCode, final XmlPayloadMap<?, ?> couponRedeem, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#deactivateCoupon(String)
+	 */
+	public CompletableFuture<Void> deactivateCoupon(final String couponCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getInvoiceRedemptions(String)
+	 */
+	public CompletableFuture<Redemptions> getInvoiceRedemptions(final String invoiceNumber, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAccountInvoices(String, String)
+	 */
+	public CompletableFuture<Invoices> getAccountInvoices(final String accountCode, @Nullable String stateQuery, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getInvoice(String)
+	 */
+	public CompletableFuture<Invoice> getInvoice(final String invoiceNumber, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAccountCollectedInvoices(String)
+	 */
+	public CompletableFuture<Invoices> getAccountCollectedInvoices(final String accountCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAccountInvoices(String)
+	 */
+	public CompletableFuture<Invoices> getAccountInvoices(final String accountCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAdjustment(String)
+	 */
+	public CompletableFuture<Adjustment> getAdjustment(final String uuid, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAccountAdjustments(String)
+	 */
+	public CompletableFuture<Adjustments> getAccountAdjustments(final String accountCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAccountAdjustments(String, String)
+	 */
+	public CompletableFuture<Adjustments> getAccountAdjustments(final String accountCode, final String state, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#createAdjustment(String, XmlPayloadMap)
+	 */
+	public CompletableFuture<Adjustment> createAdjustment(final String accountCode, final XmlPayloadMap<?, ?> adjustmentData, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#deleteAdjustment(String)
+	 */
+	public CompletableFuture<Void> deleteAdjustment(final String adjustmentUUID, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#createPlan(XmlPayloadMap)
+	 */
+	public CompletableFuture<Plan> createPlan(final XmlPayloadMap<?, ?> plan, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getPlan(String)
+	 */
+	public CompletableFuture<Plan> getPlan(final String planCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getPlans()
+	 */
+	public CompletableFuture<Plans> getPlans(String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#deletePlan(String)
+	 */
+	public CompletableFuture<Void> deletePlan(final String planCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#createPlanAddOn(String, XmlPayloadMap)
+	 */
+	public CompletableFuture<AddOn> createPlanAddOn(final String planCode, final XmlPayloadMap<?, ?> addOn, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAddOn(String, String)
+	 */
+	public CompletableFuture<AddOn> getAddOn(final String planCode, final String addOnCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getAddOns(String)
+	 */
+	public CompletableFuture<AddOn> getAddOns(final String planCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#deleteAddOn(String, String)
+	 */
+	public CompletableFuture<Void> deleteAddOn(final String planCode, final String addOnCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#createCoupon(XmlPayloadMap)
+	 */
+	public CompletableFuture<Coupon> createCoupon(final XmlPayloadMap<?, ?> coupon, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#getCoupon(String)
+	 */
+	public CompletableFuture<Coupon> getCoupon(final String couponCode, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#fetchSubscription(String)
+	 */
+	public CompletableFuture<Subscription> fetchSubscription(final String recurlyToken, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#fetchBillingInfo(String)
+	 */
+	public CompletableFuture<BillingInfo> fetchBillingInfo(final String recurlyToken, String apiKey);
+
+	/**
+	 * @see RecurlyAsyncClient#fetchInvoice(String)
+	 */
+	public CompletableFuture<Invoice> fetchInvoice(final String recurlyToken, String apiKey);
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Nullable;
+
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.AddOn;
+import com.github.torbinsky.billing.recurly.model.Adjustment;
+import com.github.torbinsky.billing.recurly.model.BillingInfo;
+import com.github.torbinsky.billing.recurly.model.Coupon;
+import com.github.torbinsky.billing.recurly.model.CouponRedeem;
+import com.github.torbinsky.billing.recurly.model.Invoice;
+import com.github.torbinsky.billing.recurly.model.Plan;
+import com.github.torbinsky.billing.recurly.model.Redemption;
+import com.github.torbinsky.billing.recurly.model.Subscription;
+import com.github.torbinsky.billing.recurly.model.Transaction;
+import com.github.torbinsky.billing.recurly.model.list.Accounts;
+import com.github.torbinsky.billing.recurly.model.list.Adjustments;
+import com.github.torbinsky.billing.recurly.model.list.Invoices;
+import com.github.torbinsky.billing.recurly.model.list.Plans;
+import com.github.torbinsky.billing.recurly.model.list.Redemptions;
+import com.github.torbinsky.billing.recurly.model.list.Subscriptions;
+import com.github.torbinsky.billing.recurly.model.list.Transactions;
+import com.github.torbinsky.billing.recurly.serialize.XmlPayloadMap;
+
+/**
+ * A concrete implementation of the {@link KeyAgnosticRecurlyAsyncClient} interface
+ * 
+ * @author twerner
+ *
+ */
+public class KeyAgnosticRecurlyAsyncClientImpl implements KeyAgnosticRecurlyAsyncClient {
+
+	/**
+	 * We wrap this so we can use different keys during runtime.
+	 */
+	private final RecurlyAsyncClient keyClient;
+
+	public KeyAgnosticRecurlyAsyncClientImpl() {
+		keyClient = new RecurlyAsyncClient(null);
+	}
+
+	public KeyAgnosticRecurlyAsyncClientImpl(final RecurlyClientConfig config) {
+		keyClient = new RecurlyAsyncClient(null, config);
+	}
+
+	public KeyAgnosticRecurlyAsyncClientImpl(RecurlyAsyncClient client) {
+		keyClient = client;
+	}
+
+	@Override
+	public synchronized void open() {
+		keyClient.open();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		keyClient.close();
+	}
+
+	@Override
+	public <T> CompletableFuture<T> create(final String path, final XmlPayloadMap<?, ?> payload, final Class<T> clazz, final String apiKey) {
+		return keyClient.withApiKey(apiKey).create(path, payload, clazz);
+	}
+
+	@Override
+	public <T> CompletableFuture<T> update(final String path, final XmlPayloadMap<?, ?> payload, final Class<T> clazz, final String apiKey) {
+		return keyClient.withApiKey(apiKey).update(path, payload, clazz);
+	}
+
+	@Override
+	public CompletableFuture<Account> createAccount(final XmlPayloadMap<?, ?> account, final String apiKey) {
+		return keyClient.withApiKey(apiKey).createAccount(account);
+	}
+
+	@Override
+	public CompletableFuture<Accounts> getAccounts(final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAccounts();
+	}
+
+	@Override
+	public CompletableFuture<Account> getAccount(final String accountCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAccount(accountCode);
+	}
+
+	@Override
+	public CompletableFuture<Account> updateAccount(final String accountCode, final XmlPayloadMap<?, ?> account, final String apiKey) {
+		return keyClient.withApiKey(apiKey).updateAccount(accountCode, account);
+	}
+
+	@Override
+	public CompletableFuture<Void> closeAccount(final String accountCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).closeAccount(accountCode);
+	}
+
+	@Override
+	public CompletableFuture<Subscription> createSubscription(final XmlPayloadMap<?, ?> subscription, final String apiKey) {
+		return keyClient.withApiKey(apiKey).createSubscription(subscription);
+	}
+
+	@Override
+	public CompletableFuture<Subscription> getSubscription(final String uuid, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getSubscription(uuid);
+	}
+
+	@Override
+	public CompletableFuture<Subscription> cancelSubscription(final Subscription subscription, final String apiKey) {
+		return keyClient.withApiKey(apiKey).cancelSubscription(subscription);
+	}
+
+	@Override
+	public CompletableFuture<Subscription> reactivateSubscription(final Subscription subscription, final String apiKey) {
+		return keyClient.withApiKey(apiKey).reactivateSubscription(subscription);
+	}
+
+	@Override
+	public CompletableFuture<Subscription> updateSubscription(final String uuid, final XmlPayloadMap<?, ?> subscriptionUpdate, final String apiKey) {
+		return keyClient.withApiKey(apiKey).updateSubscription(uuid, subscriptionUpdate);
+	}
+
+	@Override
+	public CompletableFuture<Subscriptions> getAccountSubscriptions(final String accountCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAccountSubscriptions(accountCode);
+	}
+
+	@Override
+	public CompletableFuture<Subscriptions> getAccountSubscriptions(final String accountCode, final String status, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAccountSubscriptions(accountCode, status);
+	}
+
+	@Override
+	public CompletableFuture<BillingInfo> createOrUpdateBillingInfo(final XmlPayloadMap<?, ?> billingInfo, final String accountCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).createOrUpdateBillingInfo(billingInfo, accountCode);
+	}
+
+	@Override
+	public CompletableFuture<BillingInfo> getBillingInfo(final String accountCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getBillingInfo(accountCode);
+	}
+
+	@Override
+	public CompletableFuture<Void> clearBillingInfo(final String accountCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).clearBillingInfo(accountCode);
+	}
+
+	@Override
+	public CompletableFuture<Transactions> getAccountTransactions(final String accountCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAccountTransactions(accountCode);
+	}
+
+	@Override
+	public CompletableFuture<Transaction> getTransaction(final String uuid, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getTransaction(uuid);
+	}
+
+	@Override
+	public CompletableFuture<Void> partialRefundTransaction(final String transactionId, final int refundInCents, final String apiKey) {
+		return keyClient.withApiKey(apiKey).partialRefundTransaction(transactionId, refundInCents);
+	}
+
+	@Override
+	public CompletableFuture<Transaction> createTransaction(final XmlPayloadMap<?, ?> trans, final String apiKey) {
+		return keyClient.withApiKey(apiKey).createTransaction(trans);
+	}
+
+	@Override
+	public CompletableFuture<Redemption> getAccountRedemption(final String accountCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAccountRedemption(accountCode);
+	}
+
+	@Override
+	public CompletableFuture<CouponRedeem> redeemCoupon(final String couponCode, final XmlPayloadMap<?, ?> couponRedeem, final String apiKey) {
+		return keyClient.withApiKey(apiKey).redeemCoupon(couponCode, couponRedeem);
+	}
+
+	@Override
+	public CompletableFuture<Void> deactivateCoupon(final String couponCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).deactivateCoupon(couponCode);
+	}
+
+	@Override
+	public CompletableFuture<Redemptions> getInvoiceRedemptions(final String invoiceNumber, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getInvoiceRedemptions(invoiceNumber);
+	}
+
+	@Override
+	public CompletableFuture<Invoices> getAccountInvoices(final String accountCode, @Nullable final String stateQuery, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAccountInvoices(accountCode, stateQuery);
+	}
+
+	@Override
+	public CompletableFuture<Invoice> getInvoice(final String invoiceNumber, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getInvoice(invoiceNumber);
+	}
+
+	@Override
+	public CompletableFuture<Invoices> getAccountCollectedInvoices(final String accountCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAccountCollectedInvoices(accountCode);
+	}
+
+	@Override
+	public CompletableFuture<Invoices> getAccountInvoices(final String accountCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAccountInvoices(accountCode);
+	}
+
+	@Override
+	public CompletableFuture<Adjustment> getAdjustment(final String uuid, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAdjustment(uuid);
+	}
+
+	@Override
+	public CompletableFuture<Adjustments> getAccountAdjustments(final String accountCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAccountAdjustments(accountCode);
+	}
+
+	@Override
+	public CompletableFuture<Adjustments> getAccountAdjustments(final String accountCode, final String state, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAccountAdjustments(accountCode, state);
+	}
+
+	@Override
+	public CompletableFuture<Adjustment> createAdjustment(final String accountCode, final XmlPayloadMap<?, ?> adjustmentData, final String apiKey) {
+		return keyClient.withApiKey(apiKey).createAdjustment(accountCode, adjustmentData);
+	}
+
+	@Override
+	public CompletableFuture<Void> deleteAdjustment(final String adjustmentUUID, final String apiKey) {
+		return keyClient.withApiKey(apiKey).deleteAdjustment(adjustmentUUID);
+	}
+
+	@Override
+	public CompletableFuture<Plan> createPlan(final XmlPayloadMap<?, ?> plan, final String apiKey) {
+		return keyClient.withApiKey(apiKey).createPlan(plan);
+	}
+
+	@Override
+	public CompletableFuture<Plan> getPlan(final String planCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getPlan(planCode);
+	}
+
+	@Override
+	public CompletableFuture<Plans> getPlans(final String apiKey) {
+		return keyClient.withApiKey(apiKey).getPlans();
+	}
+
+	@Override
+	public CompletableFuture<Void> deletePlan(final String planCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).deletePlan(planCode);
+	}
+
+	@Override
+	public CompletableFuture<AddOn> createPlanAddOn(final String planCode, final XmlPayloadMap<?, ?> addOn, final String apiKey) {
+		return keyClient.withApiKey(apiKey).createPlanAddOn(planCode, addOn);
+	}
+
+	@Override
+	public CompletableFuture<AddOn> getAddOn(final String planCode, final String addOnCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAddOn(planCode, addOnCode);
+	}
+
+	@Override
+	public CompletableFuture<AddOn> getAddOns(final String planCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getAddOns(planCode);
+	}
+
+	@Override
+	public CompletableFuture<Void> deleteAddOn(final String planCode, final String addOnCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).deleteAddOn(planCode, addOnCode);
+	}
+
+	@Override
+	public CompletableFuture<Coupon> createCoupon(final XmlPayloadMap<?, ?> coupon, final String apiKey) {
+		return keyClient.withApiKey(apiKey).createCoupon(coupon);
+	}
+
+	@Override
+	public CompletableFuture<Coupon> getCoupon(final String couponCode, final String apiKey) {
+		return keyClient.withApiKey(apiKey).getCoupon(couponCode);
+	}
+
+	@Override
+	public CompletableFuture<Subscription> fetchSubscription(final String recurlyToken, final String apiKey) {
+		return keyClient.withApiKey(apiKey).fetchSubscription(recurlyToken);
+	}
+
+	@Override
+	public CompletableFuture<BillingInfo> fetchBillingInfo(final String recurlyToken, final String apiKey) {
+		return keyClient.withApiKey(apiKey).fetchBillingInfo(recurlyToken);
+	}
+
+	@Override
+	public CompletableFuture<Invoice> fetchInvoice(final String recurlyToken, final String apiKey) {
+		return keyClient.withApiKey(apiKey).fetchInvoice(recurlyToken);
+	}
+}
@@ -16,7 +16,6 @@
 package com.github.torbinsky.billing.recurly;
 
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 
 import com.github.torbinsky.billing.recurly.model.Account;
 import com.github.torbinsky.billing.recurly.model.AddOn;
@@ -54,6 +53,10 @@ public class KeyAgnosticRecurlyClientImpl implements KeyAgnosticRecurlyClient {
 	public KeyAgnosticRecurlyClientImpl() {
 		keyClient = new RecurlyClient(null);
 	}
+
+	public KeyAgnosticRecurlyClientImpl(final RecurlyClientConfig config) {
+		keyClient = new RecurlyClient(null, config);
+	}
 	
 	public KeyAgnosticRecurlyClientImpl(RecurlyClient client) {
 		keyClient = client;
@@ -61,460 +64,229 @@ public class KeyAgnosticRecurlyClientImpl implements KeyAgnosticRecurlyClient {
 	
 	@Override
 	public Redemptions getInvoiceRedemptions(final String invoiceNumber, String apiKey) {
-		return new ThreadScopedAPIClientCall<Redemptions>(apiKey){
-			@Override
-			Redemptions doCall() {
-				return keyClient.getInvoiceRedemptions(invoiceNumber);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getInvoiceRedemptions(invoiceNumber);
 	}
 
 	@Override
 	public Account createAccount(final XmlPayloadMap<?, ?> account, String apiKey) {
-		return new ThreadScopedAPIClientCall<Account>(apiKey){
-			@Override
-			Account doCall() {
-				return keyClient.createAccount(account);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).createAccount(account);
 	}
 
 	@Override
 	public Accounts getAccounts(String apiKey) {
-		return new ThreadScopedAPIClientCall<Accounts>(apiKey){
-			@Override
-			Accounts doCall() {
-				return keyClient.getAccounts();
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAccounts();
 	}
 
 	@Override
 	public Account getAccount(final String accountCode, String apiKey) {
-		return new ThreadScopedAPIClientCall<Account>(apiKey){
-			@Override
-			Account doCall() {
-				return keyClient.getAccount(accountCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAccount(accountCode);
 	}
 
 	@Override
 	public Account updateAccount(final String accountCode, final XmlPayloadMap<?, ?> account, String apiKey) {
-		return new ThreadScopedAPIClientCall<Account>(apiKey){
-			@Override
-			Account doCall() {
-				return keyClient.updateAccount(accountCode, account);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).updateAccount(accountCode, account);
 	}
 
 	@Override
 	public void closeAccount(final String accountCode, String apiKey) {
-		new ThreadScopedAPIClientCall<Void>(apiKey){
-			@Override
-			Void doCall() {
-				keyClient.closeAccount(accountCode);
-				return null;
-			}			
-		}.call();
+		keyClient.withApiKey(apiKey).closeAccount(accountCode);
 	}
 
 	@Override
 	public Subscription createSubscription(final XmlPayloadMap<?, ?> subscription, String apiKey) {
-		return new ThreadScopedAPIClientCall<Subscription>(apiKey){
-			@Override
-			Subscription doCall() {
-				return keyClient.createSubscription(subscription);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).createSubscription(subscription);
 	}
 
 	@Override
 	public Subscription getSubscription(final String uuid, String apiKey) {
-		return new ThreadScopedAPIClientCall<Subscription>(apiKey){
-			@Override
-			Subscription doCall() {
-				return keyClient.getSubscription(uuid);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getSubscription(uuid);
 	}
 
 	@Override
 	public Subscription cancelSubscription(final Subscription subscription, String apiKey) {
-		return new ThreadScopedAPIClientCall<Subscription>(apiKey){
-			@Override
-			Subscription doCall() {
-				return keyClient.cancelSubscription(subscription);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).cancelSubscription(subscription);
 	}
 
 	@Override
 	public Subscription reactivateSubscription(final Subscription subscription, String apiKey) {
-		return new ThreadScopedAPIClientCall<Subscription>(apiKey){
-			@Override
-			Subscription doCall() {
-				return keyClient.reactivateSubscription(subscription);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).reactivateSubscription(subscription);
 	}
 
 	@Override
 	public Subscription updateSubscription(final String uuid, final XmlPayloadMap<?, ?> subscriptionUpdate, String apiKey) {
-		return new ThreadScopedAPIClientCall<Subscription>(apiKey){
-			@Override
-			Subscription doCall() {
-				return keyClient.updateSubscription(uuid, subscriptionUpdate);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).updateSubscription(uuid, subscriptionUpdate);
 	}
 
 	@Override
 	public Subscriptions getAccountSubscriptions(final String accountCode, String apiKey) {
-		return new ThreadScopedAPIClientCall<Subscriptions>(apiKey){
-			@Override
-			Subscriptions doCall() {
-				return keyClient.getAccountSubscriptions(accountCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAccountSubscriptions(accountCode);
 	}
 
 	@Override
 	public Subscriptions getAccountSubscriptions(final String accountCode, final String status, String apiKey) {
-		return new ThreadScopedAPIClientCall<Subscriptions>(apiKey){
-			@Override
-			Subscriptions doCall() {
-				return keyClient.getAccountSubscriptions(accountCode, status);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAccountSubscriptions(accountCode, status);
 	}
 
 	@Override
 	public BillingInfo createOrUpdateBillingInfo(final XmlPayloadMap<?, ?> billingInfo, final String accountCode, final String apiKey) {
-		return new ThreadScopedAPIClientCall<BillingInfo>(apiKey){
-			@Override
-			BillingInfo doCall() {
-				return keyClient.createOrUpdateBillingInfo(billingInfo, accountCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).createOrUpdateBillingInfo(billingInfo, accountCode);
 	}
 
 	@Override
 	public BillingInfo getBillingInfo(final String accountCode, String apiKey) {
-		return new ThreadScopedAPIClientCall<BillingInfo>(apiKey){
-			@Override
-			BillingInfo doCall() {
-				return keyClient.getBillingInfo(accountCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getBillingInfo(accountCode);
 	}
 
 	@Override
 	public void clearBillingInfo(final String accountCode, String apiKey) {
-		new ThreadScopedAPIClientCall<Void>(apiKey){
-			@Override
-			Void doCall() {
-				keyClient.clearBillingInfo(accountCode);
-				return null;
-			}			
-		}.call();
+		keyClient.withApiKey(apiKey).clearBillingInfo(accountCode);
 		
 	}
 
 	@Override
 	public Transactions getAccountTransactions(final String accountCode, String apiKey) {
-		return new ThreadScopedAPIClientCall<Transactions>(apiKey){
-			@Override
-			Transactions doCall() {
-				return keyClient.getAccountTransactions(accountCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAccountTransactions(accountCode);
 	}
 
 	@Override
 	public Transaction createTransaction(final XmlPayloadMap<?, ?> trans, String apiKey) {
-		return new ThreadScopedAPIClientCall<Transaction>(apiKey){
-			@Override
-			Transaction doCall() {
-				return keyClient.createTransaction(trans);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).createTransaction(trans);
 	}
 	
 	@Override
 	public void partialRefundTransaction(final String transactionId, final int refundInCents, String apiKey) {
-		new ThreadScopedAPIClientCall<Void>(apiKey){
-			@Override
-			Void doCall() {
-				keyClient.partialRefundTransaction(transactionId, refundInCents);
-				return null; 
-			}
-		}.call(); 
+		keyClient.withApiKey(apiKey).partialRefundTransaction(transactionId, refundInCents);
 	}
 
 	@Override
 	public Invoices getAccountInvoices(final String accountCode, String apiKey) {
-		return new ThreadScopedAPIClientCall<Invoices>(apiKey){
-			@Override
-			Invoices doCall() {
-				return keyClient.getAccountInvoices(accountCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAccountInvoices(accountCode);
 	}
 	
 	@Override
 	public Invoice getInvoice(final String invoiceNumber, String apiKey) {
-		return new ThreadScopedAPIClientCall<Invoice>(apiKey){
-			@Override
-			Invoice doCall() {
-				return keyClient.getInvoice(invoiceNumber);
-			}			
-		}.call();	}
+		return keyClient.withApiKey(apiKey).getInvoice(invoiceNumber);
+	}
 
 	@Override
 	public Plan createPlan(final XmlPayloadMap<?, ?> plan, String apiKey) {
-		return new ThreadScopedAPIClientCall<Plan>(apiKey){
-			@Override
-			Plan doCall() {
-				return keyClient.createPlan(plan);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).createPlan(plan);
 	}
 
 	@Override
 	public Plan getPlan(final String planCode, String apiKey) {
-		return new ThreadScopedAPIClientCall<Plan>(apiKey){
-			@Override
-			Plan doCall() {
-				return keyClient.getPlan(planCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getPlan(planCode);
 	}
 
 	@Override
 	public Plans getPlans(String apiKey) {
-		return new ThreadScopedAPIClientCall<Plans>(apiKey){
-			@Override
-			Plans doCall() {
-				return keyClient.getPlans();
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getPlans();
 	}
 
 	@Override
 	public void deletePlan(final String planCode, String apiKey) {
-		new ThreadScopedAPIClientCall<Void>(apiKey){
-			@Override
-			Void doCall() {
-				keyClient.deletePlan(planCode);
-				return null;
-			}			
-		}.call();
+		keyClient.withApiKey(apiKey).deletePlan(planCode);
 	}
 
 	@Override
 	public AddOn createPlanAddOn(final String planCode, final XmlPayloadMap<?, ?> addOn, String apiKey) {
-		return new ThreadScopedAPIClientCall<AddOn>(apiKey){
-			@Override
-			AddOn doCall() {
-				return keyClient.createPlanAddOn(planCode, addOn);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).createPlanAddOn(planCode, addOn);
 	}
 
 	@Override
 	public AddOn getAddOn(final String planCode, final String addOnCode, String apiKey) {
-		return new ThreadScopedAPIClientCall<AddOn>(apiKey){
-			@Override
-			AddOn doCall() {
-				return keyClient.getAddOn(planCode, addOnCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAddOn(planCode, addOnCode);
 	}
 
 	@Override
 	public AddOn getAddOns(final String planCode, String apiKey) {
-		return new ThreadScopedAPIClientCall<AddOn>(apiKey){
-			@Override
-			AddOn doCall() {
-				return keyClient.getAddOns(planCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAddOns(planCode);
 	}
 
 	@Override
 	public void deleteAddOn(final String planCode, final String addOnCode, String apiKey) {
-		new ThreadScopedAPIClientCall<Void>(apiKey){
-			@Override
-			Void doCall() {
-				keyClient.deleteAddOn(planCode, addOnCode);
-				return null;
-			}			
-		}.call();
+		keyClient.withApiKey(apiKey).deleteAddOn(planCode, addOnCode);
 	}
 
 	@Override
 	public Coupon createCoupon(final XmlPayloadMap<?, ?> coupon, String apiKey) {
-		return new ThreadScopedAPIClientCall<Coupon>(apiKey){
-			@Override
-			Coupon doCall() {
-				return keyClient.createCoupon(coupon);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).createCoupon(coupon);
 	}
 	
 
 	@Override
 	public void deactivateCoupon(final String couponCode, final String apiKey) {
-		new ThreadScopedAPIClientCall<Void>(apiKey){
-			@Override
-			Void doCall() {
-				keyClient.deactivateCoupon(couponCode);
-				return null;
-			}			
-		}.call();
+		keyClient.withApiKey(apiKey).deactivateCoupon(couponCode);
 	}
 
 	@Override
 	public Coupon getCoupon(final String couponCode, String apiKey) {
-		return new ThreadScopedAPIClientCall<Coupon>(apiKey){
-			@Override
-			Coupon doCall() {
-				return keyClient.getCoupon(couponCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getCoupon(couponCode);
 	}
 
 	@Override
 	public Subscription fetchSubscription(final String recurlyToken, String apiKey) {
-		return new ThreadScopedAPIClientCall<Subscription>(apiKey){
-			@Override
-			Subscription doCall() {
-				return keyClient.fetchSubscription(recurlyToken);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).fetchSubscription(recurlyToken);
 	}
 
 	@Override
 	public BillingInfo fetchBillingInfo(final String recurlyToken, String apiKey) {
-		return new ThreadScopedAPIClientCall<BillingInfo>(apiKey){
-			@Override
-			BillingInfo doCall() {
-				return keyClient.fetchBillingInfo(recurlyToken);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).fetchBillingInfo(recurlyToken);
 	}
 
 	@Override
 	public Invoice fetchInvoice(final String recurlyToken, String apiKey) {
-		return new ThreadScopedAPIClientCall<Invoice>(apiKey){
-			@Override
-			Invoice doCall() {
-				return keyClient.fetchInvoice(recurlyToken);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).fetchInvoice(recurlyToken);
 	}
 
 	@Override
 	public Redemption getAccountRedemption(final String accountCode, String apiKey) {
-		return new ThreadScopedAPIClientCall<Redemption>(apiKey){
-			@Override
-			Redemption doCall() {
-				return keyClient.getAccountRedemption(accountCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAccountRedemption(accountCode);
 	}
 
 	@Override
 	public Invoices getAccountInvoices(final String accountCode, final String stateQuery, String apiKey) {
-		return new ThreadScopedAPIClientCall<Invoices>(apiKey){
-			@Override
-			Invoices doCall() {
-				return keyClient.getAccountInvoices(accountCode, stateQuery);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAccountInvoices(accountCode, stateQuery);
 	}
 
 	@Override
 	public Invoices getAccountCollectedInvoices(final String accountCode, String apiKey) {
-		return new ThreadScopedAPIClientCall<Invoices>(apiKey){
-			@Override
-			Invoices doCall() {
-				return keyClient.getAccountCollectedInvoices(accountCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAccountCollectedInvoices(accountCode);
 	}	
 	
 	@Override
 	public CouponRedeem redeemCoupon(final String couponCode, final XmlPayloadMap<?, ?> couponRedeem, String apiKey) {
-		return new ThreadScopedAPIClientCall<CouponRedeem>(apiKey){
-			@Override
-			CouponRedeem doCall() {
-				return keyClient.redeemCoupon(couponCode, couponRedeem);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).redeemCoupon(couponCode, couponRedeem);
 	}
 	
 	@Override
 	public Adjustments getAccountAdjustments(final String accountCode, final String apiKey) {
-		return new ThreadScopedAPIClientCall<Adjustments>(apiKey){
-			@Override
-			Adjustments doCall() {
-				return keyClient.getAccountAdjustments(accountCode);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAccountAdjustments(accountCode);
 	}
 	
 	@Override
 	public Adjustments getAccountAdjustments(final String accountCode, final String state, final String apiKey) {
-		return new ThreadScopedAPIClientCall<Adjustments>(apiKey){
-			@Override
-			Adjustments doCall() {
-				return keyClient.getAccountAdjustments(accountCode, state);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).getAccountAdjustments(accountCode, state);
 	}
 	
 	@Override
 	public Adjustment createAdjustment(final String accountCode, final XmlPayloadMap<?, ?> adjustmentData, final String apiKey) {
-		return new ThreadScopedAPIClientCall<Adjustment>(apiKey){
-			@Override
-			Adjustment doCall() {
-				return keyClient.createAdjustment(accountCode, adjustmentData);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).createAdjustment(accountCode, adjustmentData);
 	}
 	
 	@Override
 	public void deleteAdjustment(final String adjustmentUUID, final String apiKey) {
-		new ThreadScopedAPIClientCall<Void>(apiKey){
-			@Override
-			Void doCall() {
-				keyClient.deleteAdjustment(adjustmentUUID);
-				return null;
-			}			
-		}.call();
+		keyClient.withApiKey(apiKey).deleteAdjustment(adjustmentUUID);
 	}
 
 	@Override
 	public <T> T create(final String path, final XmlPayloadMap<?, ?> payload, final Class<T> clazz, String apiKey) {
-		return new ThreadScopedAPIClientCall<T>(apiKey){
-			@Override
-			T doCall() {
-				return keyClient.create(path, payload, clazz);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).create(path, payload, clazz);
 	}
 
 	@Override
 	public <T> T update(final String path, final XmlPayloadMap<?, ?> payload, final Class<T> clazz, String apiKey) {
-		return new ThreadScopedAPIClientCall<T>(apiKey){
-			@Override
-			T doCall() {
-				return keyClient.update(path, payload, clazz);
-			}			
-		}.call();
+		return keyClient.withApiKey(apiKey).update(path, payload, clazz);
 	}
 	
 	@Override
@@ -527,54 +299,14 @@ public class KeyAgnosticRecurlyClientImpl implements KeyAgnosticRecurlyClient {
 		keyClient.close();
 	}
 
-	/**
-	 * Wraps API calls which should be thread scoped in order to avoid API key
-	 * race conditions between threads.
-	 * 
-	 * @author Torben
-	 *
-	 * @param <T> the type of result returned by this API call
-	 */
-	protected abstract class ThreadScopedAPIClientCall<T> {
-		private String apiKey;
-		ThreadScopedAPIClientCall(String apiKey){
-			this.apiKey = apiKey;			
-		}
-		
-		/**
-		 * This is the method you should call which will wrap the call in api key set/unset operations
-		 */
-		public T call(){
-			keyClient.setThreadLocalApiKey(apiKey);
-			T result = doCall();
-			keyClient.unsetThreadLocalApiKey();
-			
-			return result;
-		}
-		
-		/**
-		 * This is where you implement the specific api call(s) that should run within the scope of the key
-		 */
-		abstract T doCall();
-	}
-
 	@Override
 	public Adjustment getAdjustment(final String uuid, String apiKey) {
-		return new ThreadScopedAPIClientCall<Adjustment>(apiKey){
-			@Override
-			Adjustment doCall() {
-				return keyClient.getAdjustment(uuid);
-			}			
-		}.call();	}
+		return keyClient.withApiKey(apiKey).getAdjustment(uuid);
+	}
 
 	@Override
 	public Transaction getTransaction(final String uuid, String apiKey) {
-		return new ThreadScopedAPIClientCall<Transaction>(apiKey){
-			@Override
-			Transaction doCall() {
-				return keyClient.getTransaction(uuid);
-			}			
-		}.call();		
+		return keyClient.withApiKey(apiKey).getTransaction(uuid);
 	}
 
 
@@ -0,0 +1,652 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.reactivestreams.Publisher;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyAPIException;
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.AddOn;
+import com.github.torbinsky.billing.recurly.model.Adjustment;
+import com.github.torbinsky.billing.recurly.model.BillingInfo;
+import com.github.torbinsky.billing.recurly.model.Coupon;
+import com.github.torbinsky.billing.recurly.model.CouponRedeem;
+import com.github.torbinsky.billing.recurly.model.Invoice;
+import com.github.torbinsky.billing.recurly.model.Plan;
+import com.github.torbinsky.billing.recurly.model.Redemption;
+import com.github.torbinsky.billing.recurly.model.Subscription;
+import com.github.torbinsky.billing.recurly.model.Transaction;
+import com.github.torbinsky.billing.recurly.model.list.Accounts;
+import com.github.torbinsky.billing.recurly.model.list.Adjustments;
+import com.github.torbinsky.billing.recurly.model.list.Invoices;
+import com.github.torbinsky.billing.recurly.model.list.Plans;
+import com.github.torbinsky.billing.recurly.model.list.Redemptions;
+import com.github.torbinsky.billing.recurly.model.list.Subscriptions;
+import com.github.torbinsky.billing.recurly.model.list.Transactions;
+import com.github.torbinsky.billing.recurly.serialize.XmlPayloadMap;
+
+/**
+ * Non-blocking counterpart of {@link RecurlyClient}. Every operation returns a
+ * {@link CompletableFuture} which is completed from the http client's I/O
+ * threads, so no caller thread is parked while waiting on Recurly.
+ * <p/>
+ * Failed calls complete the future exceptionally with the same
+ * {@link RecurlyAPIException}s the blocking client throws (wrapped in a
+ * {@link java.util.concurrent.CompletionException} by dependent stages).
+ *
+ * @author twerner
+ *
+ */
+public class RecurlyAsyncClient extends RecurlyClientBase {
+
+    public RecurlyAsyncClient(final String apiKey) {
+        super(apiKey);
+    }
+
+    public RecurlyAsyncClient(final String apiKey, final RecurlyClientConfig config) {
+        super(apiKey, config);
+    }
+
+    public RecurlyAsyncClient(final String apiKey, final String host, final int port, final String version) {
+        super(apiKey, host, port, version);
+    }
+
+    public RecurlyAsyncClient(final String apiKey, final String host, final int port, final String version, final RecurlyClientConfig config) {
+        super(apiKey, host, port, version, config);
+    }
+
+    private RecurlyAsyncClient(final RecurlyAsyncClient client, final RecurlyDeadline deadline) {
+        super(client, deadline);
+    }
+
+    RecurlyAsyncClient(final RecurlyAsyncClient client, final RecurlyCredentials credentials) {
+        super(client, credentials);
+    }
+
+    /**
+     * A view of this client making its calls with the given API key, e.g. to
+     * work with several Recurly sites through one client. Unlike a key bound
+     * to the calling thread, the key goes along with the calls on whichever
+     * thread they continue, pages and retries included.
+     * <p/>
+     * The view shares the transport and state of this client, and does not
+     * need to be opened or closed. Views are kept per key, so asking for one
+     * on every call is cheap.
+     */
+    public RecurlyAsyncClient withApiKey(final String apiKey) {
+        return keyView(apiKey, credentials -> new RecurlyAsyncClient(this, credentials));
+    }
+
+    /**
+     * A view of this client whose calls fail with a
+     * {@link com.github.torbinsky.billing.recurly.exception.RecurlyDeadlineExceededException}
+     * unless they complete within the given time, pagination and retries
+     * included. Requests still in flight at that point are cancelled.
+     * <p/>
+     * The deadline runs from the moment the view is created, so create one per
+     * operation, e.g. <code>client.withDeadline(Duration.ofSeconds(2)).getAccounts()</code>.
+     * The view shares the key, transport and state of this client, and does
+     * not need to be opened or closed.
+     */
+    public RecurlyAsyncClient withDeadline(final Duration timeout) {
+        return withDeadline(timeout, false);
+    }
+
+    /**
+     * As {@link #withDeadline(Duration)}, optionally returning the pages
+     * fetched so far from paginated calls when the deadline expires, rather
+     * than failing. A call that has not received any page still fails.
+     */
+    public RecurlyAsyncClient withDeadline(final Duration timeout, final boolean allowPartialResults) {
+        return new RecurlyAsyncClient(this, RecurlyDeadline.after(timeout, allowPartialResults));
+    }
+
+    /* **************************************
+     * Generic CREATE/UPDATE
+     * **************************************/
+
+    public <T> CompletableFuture<T> create(String path, XmlPayloadMap<?, ?> payload, Class<T> clazz){
+    	return doPOSTAsync(path, payload, clazz);
+    }
+
+    public <T> CompletableFuture<T> update(String path, XmlPayloadMap<?, ?> payload, Class<T> clazz){
+    	return doPUTAsync(path, payload, clazz);
+    }
+
+    /* **************************************
+     *
+     * **************************************/
+
+    /**
+     * Create Account
+     *
+     * @see RecurlyClient#createAccount(XmlPayloadMap)
+     */
+    public CompletableFuture<Account> createAccount(final XmlPayloadMap<?, ?> account) {
+        return doPOSTAsync(Account.ACCOUNT_RESOURCE, account, Account.class);
+    }
+
+    /**
+     * Get Accounts
+     * <p/>
+     * Pages are requested one after the other as each Link header arrives.
+     *
+     * @see RecurlyClient#getAccounts()
+     */
+    public CompletableFuture<Accounts> getAccounts() {
+        return doGETsAsync(Accounts.ACCOUNTS_RESOURCE, Accounts.class).thenApply(RecurlyClientBase::depaginateResults);
+    }
+
+    /**
+     * Get Account
+     *
+     * @see RecurlyClient#getAccount(String)
+     */
+    public CompletableFuture<Account> getAccount(final String accountCode) {
+        return doGETAsync(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode), Account.class);
+    }
+
+    /**
+     * Get Accounts by code
+     *
+     * @see RecurlyClient#getAccounts(Collection)
+     */
+    public CompletableFuture<RecurlyBulkResult<Account>> getAccounts(final Collection<String> accountCodes) {
+        return bulkLookup(accountCodes, this::getAccount);
+    }
+
+    /**
+     * Update Account
+     *
+     * @see RecurlyClient#updateAccount(String, XmlPayloadMap)
+     */
+    public CompletableFuture<Account> updateAccount(final String accountCode, final XmlPayloadMap<?, ?> account) {
+        return doPUTAsync(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode), account, Account.class);
+    }
+
+    /**
+     * Close Account
+     *
+     * @see RecurlyClient#closeAccount(String)
+     */
+    public CompletableFuture<Void> closeAccount(final String accountCode) {
+        return doDELETEAsync(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Create a subscription
+     *
+     * @see RecurlyClient#createSubscription(XmlPayloadMap)
+     */
+    public CompletableFuture<Subscription> createSubscription(final XmlPayloadMap<?, ?> subscription) {
+        return doPOSTAsync(Subscription.SUBSCRIPTION_RESOURCE, subscription, Subscription.class);
+    }
+
+    /**
+     * Get a particular {@link Subscription} by it's UUID
+     *
+     * @see RecurlyClient#getSubscription(String)
+     */
+    public CompletableFuture<Subscription> getSubscription(final String uuid) {
+        return doGETAsync(Subscriptions.SUBSCRIPTIONS_RESOURCE + "/" + urlEncode(uuid), Subscription.class);
+    }
+
+    /**
+     * Get {@link Subscription}s by UUID
+     *
+     * @see RecurlyClient#getSubscriptions(Collection)
+     */
+    public CompletableFuture<RecurlyBulkResult<Subscription>> getSubscriptions(final Collection<String> uuids) {
+        return bulkLookup(uuids, this::getSubscription);
+    }
+
+    /**
+     * Cancel a subscription
+     *
+     * @see RecurlyClient#cancelSubscription(Subscription)
+     */
+    public CompletableFuture<Subscription> cancelSubscription(final Subscription subscription) {
+        return doPUTAsync(Subscription.SUBSCRIPTION_RESOURCE + "/" + urlEncode(subscription.getUuid()) + "/cancel",
+                          subscription, Subscription.class);
+    }
+
+    /**
+     * Reactivating a canceled subscription
+     *
+     * @see RecurlyClient#reactivateSubscription(Subscription)
+     */
+    public CompletableFuture<Subscription> reactivateSubscription(final Subscription subscription) {
+        return doPUTAsync(Subscription.SUBSCRIPTION_RESOURCE + "/" + urlEncode(subscription.getUuid()) + "/reactivate",
+                          subscription, Subscription.class);
+    }
+
+    /**
+     * Update a particular {@link Subscription} by it's UUID
+     *
+     * @see RecurlyClient#updateSubscription(String, XmlPayloadMap)
+     */
+    public CompletableFuture<Subscription> updateSubscription(final String uuid, final XmlPayloadMap<?, ?> subscriptionUpdate) {
+        return doPUTAsync(Subscriptions.SUBSCRIPTIONS_RESOURCE + "/" + urlEncode(uuid), subscriptionUpdate, Subscription.class);
+    }
+
+    /**
+     * Get the subscriptions for an {@link Account}.
+     *
+     * @see RecurlyClient#getAccountSubscriptions(String)
+     */
+    public CompletableFuture<Subscriptions> getAccountSubscriptions(final String accountCode) {
+        return doGETsAsync(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode) + Subscriptions.SUBSCRIPTIONS_RESOURCE,
+                           Subscriptions.class).thenApply(RecurlyClientBase::depaginateResults);
+    }
+
+    /**
+     * Get the subscriptions for an account in the given state.
+     *
+     * @see RecurlyClient#getAccountSubscriptions(String, String)
+     */
+    public CompletableFuture<Subscriptions> getAccountSubscriptions(final String accountCode, final String status) {
+        return doGETsAsync(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode) + Subscriptions.SUBSCRIPTIONS_RESOURCE
+                           + "?state=" + urlEncode(status),
+                           Subscriptions.class).thenApply(RecurlyClientBase::depaginateResults);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Update an account's billing info
+     *
+     * @see RecurlyClient#createOrUpdateBillingInfo(XmlPayloadMap, String)
+     */
+    public CompletableFuture<BillingInfo> createOrUpdateBillingInfo(final XmlPayloadMap<?, ?> billingInfo, String accountCode) {
+        return doPUTAsync(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode) + BillingInfo.BILLING_INFO_RESOURCE,
+                          billingInfo, BillingInfo.class);
+    }
+
+    /**
+     * Lookup an account's billing info
+     * <p/>
+     * Completes with null if the account has no billing info.
+     *
+     * @see RecurlyClient#getBillingInfo(String)
+     */
+    public CompletableFuture<BillingInfo> getBillingInfo(final String accountCode) {
+        return nullIfMissing(doGETAsync(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode) + BillingInfo.BILLING_INFO_RESOURCE,
+                                        BillingInfo.class),
+                             "Couldn't find BillingInfo with account_code");
+    }
+
+    /**
+     * Clear an account's billing info
+     *
+     * @see RecurlyClient#clearBillingInfo(String)
+     */
+    public CompletableFuture<Void> clearBillingInfo(final String accountCode) {
+        return doDELETEAsync(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode) + BillingInfo.BILLING_INFO_RESOURCE);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // User transactions
+
+    /**
+     * Lookup an account's transactions history
+     *
+     * @see RecurlyClient#getAccountTransactions(String)
+     */
+    public CompletableFuture<Transactions> getAccountTransactions(final String accountCode) {
+        return doGETsAsync(Accounts.ACCOUNTS_RESOURCE + "/" + urlEncode(accountCode) + Transactions.TRANSACTIONS_RESOURCE,
+                           Transactions.class).thenApply(RecurlyClientBase::depaginateResults);
+    }
+
+    public CompletableFuture<Transaction> getTransaction(final String uuid){
+        return doGETAsync(Transactions.TRANSACTIONS_RESOURCE + "/" + urlEncode(uuid), Transaction.class);
+    }
+
+    public CompletableFuture<Void> partialRefundTransaction(final String transactionId, int refundInCents){
+        Map<String, String> param = new HashMap<>();
+        param.put("amount_in_cents", String.valueOf(refundInCents));
+        return doDELETEAsync(Transactions.TRANSACTIONS_RESOURCE + "/" + urlEncode(transactionId), param);
+    }
+
+    /**
+     * Creates a {@link Transaction} throgh the Recurly API.
+     *
+     * @see RecurlyClient#createTransaction(XmlPayloadMap)
+     */
+    public CompletableFuture<Transaction> createTransaction(final XmlPayloadMap<?, ?> trans) {
+        return doPOSTAsync(Transactions.TRANSACTIONS_RESOURCE, trans, Transaction.class);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Redemptions
+
+    /**
+     * Completes with null if the account has no redemption.
+     *
+     * @see RecurlyClient#getAccountRedemption(String)
+     */
+    public CompletableFuture<Redemption> getAccountRedemption(final String accountCode){
+        return nullIfMissing(doGETAsync(Accounts.ACCOUNTS_RESOURCE + "/" + urlEncode(accountCode) + Redemption.REDEMPTIONS_RESOURCE,
+                                        Redemption.class),
+                             "Couldn't find Redemption for Account");
+    }
+
+    /**
+     * Redeem a coupon
+     *
+     * @see RecurlyClient#redeemCoupon(String, XmlPayloadMap)
+     */
+    public CompletableFuture<CouponRedeem> redeemCoupon(final String couponCode, final XmlPayloadMap<?, ?> couponRedeem) {
+        return doPOSTAsync(Coupon.COUPON_RESOURCE + "/" + urlEncode(couponCode) + CouponRedeem.COUPON_REDEEM_RESOURCE, couponRedeem, CouponRedeem.class);
+    }
+
+    /**
+     * Deactivate a coupon
+     *
+     * @see RecurlyClient#deactivateCoupon(String)
+     */
+    public CompletableFuture<Void> deactivateCoupon(final String couponCode) {
+        return doDELETEAsync(Coupon.COUPON_RESOURCE + "/" + urlEncode(couponCode));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // User invoices
+
+    public CompletableFuture<Redemptions> getInvoiceRedemptions(final String invoiceNumber){
+        return doGETsAsync(Invoice.INVOICE_RESOURCE + "/" + urlEncode(invoiceNumber) + Redemptions.REDEMPTIONS_RESOURCE,
+                           Redemptions.class).thenApply(RecurlyClientBase::depaginateResults);
+    }
+
+    /**
+     * Lookup an account's invoices
+     *
+     * @see RecurlyClient#getAccountInvoices(String, String)
+     */
+    public CompletableFuture<Invoices> getAccountInvoices(final String accountCode, @Nullable String stateQuery) {
+        final String paramString = stateQuery != null ? "&state=" + stateQuery : null;
+        return doGETsAsync(Accounts.ACCOUNTS_RESOURCE + "/" + urlEncode(accountCode) + Invoices.INVOICES_RESOURCE,
+                           paramString,
+                           Invoices.class).thenApply(RecurlyClientBase::depaginateResults);
+    }
+
+    public CompletableFuture<Invoice> getInvoice(final String invoiceNumber){
+        return doGETAsync(Invoices.INVOICES_RESOURCE + "/" + urlEncode(invoiceNumber), Invoice.class);
+    }
+
+    /**
+     * Get {@link Invoice}s by number
+     *
+     * @see RecurlyClient#getInvoices(Collection)
+     */
+    public CompletableFuture<RecurlyBulkResult<Invoice>> getInvoices(final Collection<String> invoiceNumbers) {
+        return bulkLookup(invoiceNumbers, this::getInvoice);
+    }
+
+    /**
+     * Lookup an account's collected invoices
+     *
+     * @see RecurlyClient#getAccountCollectedInvoices(String)
+     */
+    public CompletableFuture<Invoices> getAccountCollectedInvoices(final String accountCode) {
+        return getAccountInvoices(accountCode, "collected");
+    }
+
+    /**
+     * Lookup an account's invoices
+     *
+     * @see RecurlyClient#getAccountInvoices(String)
+     */
+    public CompletableFuture<Invoices> getAccountInvoices(final String accountCode) {
+        return getAccountInvoices(accountCode, null);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Account Adjustments
+
+    public CompletableFuture<Adjustment> getAdjustment(final String uuid){
+        return doGETAsync(Adjustments.ADJUSTMENTS_RESOURCE + "/" + urlEncode(uuid), Adjustment.class);
+    }
+
+    public CompletableFuture<Adjustments> getAccountAdjustments(final String accountCode){
+        return doGETsAsync(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode) + Adjustments.ADJUSTMENTS_RESOURCE,
+                           Adjustments.class).thenApply(RecurlyClientBase::depaginateResults);
+    }
+
+    public CompletableFuture<Adjustments> getAccountAdjustments(final String accountCode, final String state){
+        return doGETsAsync(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode) + Adjustments.ADJUSTMENTS_RESOURCE,
+                           "&state=" + state,
+                           Adjustments.class).thenApply(RecurlyClientBase::depaginateResults);
+    }
+
+    public CompletableFuture<Adjustment> createAdjustment(final String accountCode, final XmlPayloadMap<?, ?> adjustmentData){
+        return doPOSTAsync(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode) + Adjustments.ADJUSTMENTS_RESOURCE,
+                           adjustmentData, Adjustment.class);
+    }
+
+    public CompletableFuture<Void> deleteAdjustment(final String adjustmentUUID){
+        return doDELETEAsync(Adjustments.ADJUSTMENTS_RESOURCE + "/" + urlEncode(adjustmentUUID));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Create a Plan's info
+     *
+     * @see RecurlyClient#createPlan(XmlPayloadMap)
+     */
+    public CompletableFuture<Plan> createPlan(final XmlPayloadMap<?, ?> plan) {
+        return doPOSTAsync(Plan.PLANS_RESOURCE, plan, Plan.class);
+    }
+
+    /**
+     * Get a Plan's details
+     *
+     * @see RecurlyClient#getPlan(String)
+     */
+    public CompletableFuture<Plan> getPlan(final String planCode) {
+        return doGETAsync(Plan.PLANS_RESOURCE + "/" + urlEncode(planCode), Plan.class);
+    }
+
+    /**
+     * Return all the plans
+     *
+     * @see RecurlyClient#getPlans()
+     */
+    public CompletableFuture<Plans> getPlans() {
+        return doGETsAsync(Plans.PLANS_RESOURCE, Plans.class).thenApply(RecurlyClientBase::depaginateResults);
+    }
+
+    /**
+     * Deletes a {@link Plan}
+     *
+     * @see RecurlyClient#deletePlan(String)
+     */
+    public CompletableFuture<Void> deletePlan(final String planCode) {
+        return doDELETEAsync(Plan.PLANS_RESOURCE + "/" + urlEncode(planCode));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Create an AddOn to a Plan
+     *
+     * @see RecurlyClient#createPlanAddOn(String, XmlPayloadMap)
+     */
+    public CompletableFuture<AddOn> createPlanAddOn(final String planCode, final XmlPayloadMap<?, ?> addOn) {
+        return doPOSTAsync(Plan.PLANS_RESOURCE + "/" + urlEncode(planCode) + AddOn.ADDONS_RESOURCE, addOn, AddOn.class);
+    }
+
+    /**
+     * Get an AddOn's details
+     *
+     * @see RecurlyClient#getAddOn(String, String)
+     */
+    public CompletableFuture<AddOn> getAddOn(final String planCode, final String addOnCode) {
+        return doGETAsync(Plan.PLANS_RESOURCE + "/" + urlEncode(planCode) + AddOn.ADDONS_RESOURCE + "/" + urlEncode(addOnCode), AddOn.class);
+    }
+
+    /**
+     * Return all the {@link AddOn} for a {@link Plan}
+     *
+     * @see RecurlyClient#getAddOns(String)
+     */
+    public CompletableFuture<AddOn> getAddOns(final String planCode) {
+        return doGETAsync(Plan.PLANS_RESOURCE + "/" + urlEncode(planCode) + AddOn.ADDONS_RESOURCE, AddOn.class);
+    }
+
+    /**
+     * Deletes a {@link AddOn} for a Plan
+     *
+     * @see RecurlyClient#deleteAddOn(String, String)
+     */
+    public CompletableFuture<Void> deleteAddOn(final String planCode, final String addOnCode) {
+        return doDELETEAsync(Plan.PLANS_RESOURCE + "/" + urlEncode(planCode) + AddOn.ADDONS_RESOURCE + "/" + urlEncode(addOnCode));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Create a {@link Coupon}
+     *
+     * @see RecurlyClient#createCoupon(XmlPayloadMap)
+     */
+    public CompletableFuture<Coupon> createCoupon(final XmlPayloadMap<?, ?> coupon) {
+        return doPOSTAsync(Coupon.COUPON_RESOURCE, coupon, Coupon.class);
+    }
+
+    /**
+     * Get a Coupon
+     *
+     * @see RecurlyClient#getCoupon(String)
+     */
+    public CompletableFuture<Coupon> getCoupon(final String couponCode) {
+        return doGETAsync(Coupon.COUPON_RESOURCE + "/" + urlEncode(couponCode), Coupon.class);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    //
+    // Recurly.js API
+    //
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Fetch Subscription
+     *
+     * @see RecurlyClient#fetchSubscription(String)
+     */
+    public CompletableFuture<Subscription> fetchSubscription(final String recurlyToken) {
+        return fetchAsync(recurlyToken, Subscription.class);
+    }
+
+    /**
+     * Fetch BillingInfo
+     *
+     * @see RecurlyClient#fetchBillingInfo(String)
+     */
+    public CompletableFuture<BillingInfo> fetchBillingInfo(final String recurlyToken) {
+        return fetchAsync(recurlyToken, BillingInfo.class);
+    }
+
+    /**
+     * Fetch Invoice
+     *
+     * @see RecurlyClient#fetchInvoice(String)
+     */
+    public CompletableFuture<Invoice> fetchInvoice(final String recurlyToken) {
+        return fetchAsync(recurlyToken, Invoice.class);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    //
+    // Parallel scan API
+    //
+    // See RecurlyClient#scanAccounts. The consumer is called on the threads
+    // pages are parsed on.
+    //
+    ///////////////////////////////////////////////////////////////////////////
+
+    public CompletableFuture<Long> scanAccounts(final DateTime begin, final DateTime end, final boolean ordered, final Consumer<? super Account> consumer) {
+        return doGETsInParallel(Accounts.ACCOUNTS_RESOURCE, Accounts.class, Account::getCreatedAt, begin, end, ordered, consumer);
+    }
+
+    public CompletableFuture<Long> scanInvoices(final DateTime begin, final DateTime end, final boolean ordered, final Consumer<? super Invoice> consumer) {
+        return doGETsInParallel(Invoices.INVOICES_RESOURCE, Invoices.class, Invoice::getCreatedAt, begin, end, ordered, consumer);
+    }
+
+    public CompletableFuture<Long> scanTransactions(final DateTime begin, final DateTime end, final boolean ordered, final Consumer<? super Transaction> consumer) {
+        return doGETsInParallel(Transactions.TRANSACTIONS_RESOURCE, Transactions.class, Transaction::getCreatedAt, begin, end, ordered, consumer);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    //
+    // Reactive Streams API
+    //
+    // Pages are requested only when subscriber demand exceeds what has
+    // already been received. Cancelling aborts the request in flight.
+    //
+    ///////////////////////////////////////////////////////////////////////////
+
+    public Publisher<Account> publishAccounts() {
+        return doGETsPublisher(Accounts.ACCOUNTS_RESOURCE, null, Accounts.class);
+    }
+
+    public Publisher<Subscription> publishSubscriptions() {
+        return doGETsPublisher(Subscriptions.SUBSCRIPTIONS_RESOURCE, null, Subscriptions.class);
+    }
+
+    public Publisher<Subscription> publishAccountSubscriptions(final String accountCode) {
+        return doGETsPublisher(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode) + Subscriptions.SUBSCRIPTIONS_RESOURCE,
+                               null, Subscriptions.class);
+    }
+
+    public Publisher<Invoice> publishInvoices() {
+        return doGETsPublisher(Invoices.INVOICES_RESOURCE, null, Invoices.class);
+    }
+
+    public Publisher<Invoice> publishAccountInvoices(final String accountCode) {
+        return doGETsPublisher(Accounts.ACCOUNTS_RESOURCE + "/" + urlEncode(accountCode) + Invoices.INVOICES_RESOURCE,
+                               null, Invoices.class);
+    }
+
+    public Publisher<Transaction> publishTransactions() {
+        return doGETsPublisher(Transactions.TRANSACTIONS_RESOURCE, null, Transactions.class);
+    }
+
+    public Publisher<Transaction> publishAccountTransactions(final String accountCode) {
+        return doGETsPublisher(Accounts.ACCOUNTS_RESOURCE + "/" + urlEncode(accountCode) + Transactions.TRANSACTIONS_RESOURCE,
+                               null, Transactions.class);
+    }
+
+    public Publisher<Adjustment> publishAccountAdjustments(final String accountCode) {
+        return doGETsPublisher(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode) + Adjustments.ADJUSTMENTS_RESOURCE,
+                               null, Adjustments.class);
+    }
+
+    public Publisher<Plan> publishPlans() {
+        return doGETsPublisher(Plans.PLANS_RESOURCE, null, Plans.class);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyException;
+
+/**
+ * Looks up a set of keys with at most a given number of lookups in flight,
+ * starting the next as soon as one completes. A failed lookup is recorded
+ * against its key rather than failing the others.
+ * <p/>
+ * Lookups are started from whichever thread completes the previous one, in
+ * a loop rather than recursively, so that lookups completing at once do not
+ * grow the stack. Cancelling the result cancels the lookups in flight and
+ * starts no more.
+ *
+ * @author twerner
+ *
+ * @param <T> the type of object looked up
+ */
+final class RecurlyBulkLookup<T> {
+
+	private final Iterator<String> pending;
+	private final int concurrency;
+	private final Function<String, CompletableFuture<T>> lookup;
+	private final Map<String, T> results = new HashMap<>();
+	private final Map<String, RecurlyException> errors = new HashMap<>();
+	private final Map<String, CompletableFuture<T>> inFlight = new HashMap<>();
+	private final CompletableFuture<RecurlyBulkResult<T>> result = new CompletableFuture<>();
+	// Serializes the starting of lookups, whichever thread triggers it
+	private final AtomicInteger wip = new AtomicInteger();
+
+	private RecurlyBulkLookup(final Collection<String> keys, final int concurrency, final Function<String, CompletableFuture<T>> lookup) {
+		this.pending = new LinkedHashSet<>(keys).iterator();
+		this.concurrency = concurrency;
+		this.lookup = lookup;
+	}
+
+	/**
+	 * @param keys        looked up once each, whatever the number of times
+	 *                    they are given
+	 * @param concurrency the most lookups in flight at once
+	 * @param lookup      starts the lookup of a key
+	 */
+	static <T> CompletableFuture<RecurlyBulkResult<T>> run(final Collection<String> keys, final int concurrency,
+														   final Function<String, CompletableFuture<T>> lookup) {
+		final RecurlyBulkLookup<T> bulk = new RecurlyBulkLookup<>(keys, concurrency, lookup);
+		bulk.result.whenComplete((r, t) -> {
+			if (bulk.result.isCancelled()) {
+				bulk.cancel();
+			}
+		});
+		bulk.drain();
+		return bulk.result;
+	}
+
+	private void drain() {
+		if (wip.getAndIncrement() != 0) {
+			return;
+		}
+		int missed = 1;
+		do {
+			String key;
+			while ((key = next()) != null) {
+				start(key);
+			}
+			missed = wip.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	@Nullable
+	private synchronized String next() {
+		if (result.isDone()) {
+			return null;
+		}
+		if (!pending.hasNext()) {
+			if (inFlight.isEmpty()) {
+				result.complete(new RecurlyBulkResult<T>(new HashMap<>(results), new HashMap<>(errors)));
+			}
+			return null;
+		}
+		if (inFlight.size() >= concurrency) {
+			return null;
+		}
+		final String key = pending.next();
+		// Reserves the slot until the lookup has been started
+		inFlight.put(key, new CompletableFuture<T>());
+		return key;
+	}
+
+	private void start(final String key) {
+		CompletableFuture<T> call;
+		try {
+			call = lookup.apply(key);
+		} catch (RuntimeException e) {
+			call = RecurlyClientBase.failedFuture(e);
+		}
+		synchronized (this) {
+			if (inFlight.containsKey(key)) {
+				inFlight.put(key, call);
+			}
+		}
+		call.whenComplete((value, t) -> completed(key, value, t));
+	}
+
+	private void completed(final String key, @Nullable final T value, @Nullable final Throwable t) {
+		synchronized (this) {
+			if (inFlight.remove(key) == null) {
+				return;
+			}
+			if (t == null) {
+				results.put(key, value);
+			} else {
+				final Throwable cause = RecurlyClientBase.unwrapCompletionException(t);
+				errors.put(key, cause instanceof RecurlyException ? (RecurlyException) cause : new RecurlyException("Execution error", cause));
+			}
+		}
+		drain();
+	}
+
+	private void cancel() {
+		final Collection<CompletableFuture<T>> calls;
+		synchronized (this) {
+			calls = new LinkedHashSet<>(inFlight.values());
+			inFlight.clear();
+		}
+		for (CompletableFuture<T> call : calls) {
+			call.cancel(false);
+		}
+	}
+}
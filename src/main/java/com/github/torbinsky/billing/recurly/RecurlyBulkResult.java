@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyException;
+
+/**
+ * The outcome of a bulk lookup: the object found for each key, and the error
+ * for each key that could not be looked up. Every distinct key requested is
+ * in exactly one of the two.
+ *
+ * @author twerner
+ *
+ * @param <T> the type of object looked up
+ */
+public final class RecurlyBulkResult<T> {
+
+	private final Map<String, T> results;
+	private final Map<String, RecurlyException> errors;
+
+	RecurlyBulkResult(final Map<String, T> results, final Map<String, RecurlyException> errors) {
+		this.results = Collections.unmodifiableMap(results);
+		this.errors = Collections.unmodifiableMap(errors);
+	}
+
+	/**
+	 * The objects found, by key
+	 */
+	public Map<String, T> getResults() {
+		return results;
+	}
+
+	/**
+	 * Why each of the other keys could not be looked up, e.g. a
+	 * {@link com.github.torbinsky.billing.recurly.exception.RecurlyAPIException}
+	 * for an object that does not exist
+	 */
+	public Map<String, RecurlyException> getErrors() {
+		return errors;
+	}
+
+	@Nullable
+	public T get(final String key) {
+		return results.get(key);
+	}
+
+	public boolean hasErrors() {
+		return !errors.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("RecurlyBulkResult");
+		sb.append("{results=").append(results.size());
+		sb.append(", errors=").append(errors.keySet());
+		sb.append('}');
+		return sb.toString();
+	}
+}
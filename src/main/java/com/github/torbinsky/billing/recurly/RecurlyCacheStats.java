@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+/**
+ * Counts of how the reads of a {@link CachingRecurlyClient} were answered,
+ * since the client was created.
+ *
+ * @author twerner
+ *
+ */
+public final class RecurlyCacheStats {
+
+	private final long hits;
+	private final long staleHits;
+	private final long misses;
+	private final long evictions;
+	private final long loadFailures;
+
+	RecurlyCacheStats(final long hits, final long staleHits, final long misses, final long evictions, final long loadFailures) {
+		this.hits = hits;
+		this.staleHits = staleHits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.loadFailures = loadFailures;
+	}
+
+	/**
+	 * Reads answered with an object younger than the TTL
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Reads answered with an object past its TTL, while it was reloaded in
+	 * the background
+	 */
+	public long getStaleHits() {
+		return staleHits;
+	}
+
+	/**
+	 * Reads that had to wait for the object to be loaded
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Objects dropped to make room for others
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Loads, including background reloads, that failed
+	 */
+	public long getLoadFailures() {
+		return loadFailures;
+	}
+
+	/**
+	 * Share of the reads answered from the cache, stale or not, 0 before the
+	 * first read
+	 */
+	public double getHitRate() {
+		final long reads = hits + staleHits + misses;
+		return reads == 0 ? 0 : (double) (hits + staleHits) / reads;
+	}
+
+	RecurlyCacheStats plus(final RecurlyCacheStats other) {
+		return new RecurlyCacheStats(hits + other.hits, staleHits + other.staleHits, misses + other.misses,
+									 evictions + other.evictions, loadFailures + other.loadFailures);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("RecurlyCacheStats");
+		sb.append("{hits=").append(hits);
+		sb.append(", staleHits=").append(staleHits);
+		sb.append(", misses=").append(misses);
+		sb.append(", evictions=").append(evictions);
+		sb.append(", loadFailures=").append(loadFailures);
+		sb.append('}');
+		return sb.toString();
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+/**
+ * When the circuit breakers of a client open and close. Every resource family
+ * (accounts, subscriptions, invoices, transactions, plans...) has a breaker
+ * of its own, so that a degraded endpoint does not take the others down.
+ * <p/>
+ * A breaker keeps the outcome of the last requests of its family. Once enough
+ * of them failed (connection errors, timeouts and 5xx responses) or were
+ * slow, it opens and requests fail fast with a
+ * {@link com.github.torbinsky.billing.recurly.exception.RecurlyCircuitOpenException}.
+ * After a while it lets a few trial requests through: if they all succeed the
+ * breaker closes again, otherwise it stays open for another period.
+ *
+ * @author twerner
+ *
+ */
+public final class RecurlyCircuitBreakerPolicy {
+
+	private final boolean enabled;
+	private final double failureRateThreshold;
+	private final double slowCallRateThreshold;
+	private final long slowCallMillis;
+	private final int windowSize;
+	private final int minimumCalls;
+	private final long openMillis;
+	private final int halfOpenTrials;
+
+	private RecurlyCircuitBreakerPolicy(final Builder builder) {
+		this.enabled = builder.enabled;
+		this.failureRateThreshold = builder.failureRateThreshold;
+		this.slowCallRateThreshold = builder.slowCallRateThreshold;
+		this.slowCallMillis = builder.slowCallMillis;
+		this.windowSize = builder.windowSize;
+		this.minimumCalls = builder.minimumCalls;
+		this.openMillis = builder.openMillis;
+		this.halfOpenTrials = builder.halfOpenTrials;
+	}
+
+	/**
+	 * Never opens
+	 */
+	public static RecurlyCircuitBreakerPolicy disabled() {
+		return new Builder().setEnabled(false).build();
+	}
+
+	public static RecurlyCircuitBreakerPolicy defaultPolicy() {
+		return new Builder().build();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public double getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	public double getSlowCallRateThreshold() {
+		return slowCallRateThreshold;
+	}
+
+	public long getSlowCallMillis() {
+		return slowCallMillis;
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	public int getMinimumCalls() {
+		return minimumCalls;
+	}
+
+	public long getOpenMillis() {
+		return openMillis;
+	}
+
+	public int getHalfOpenTrials() {
+		return halfOpenTrials;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("RecurlyCircuitBreakerPolicy");
+		sb.append("{enabled=").append(enabled);
+		sb.append(", failureRateThreshold=").append(failureRateThreshold);
+		sb.append(", slowCallRateThreshold=").append(slowCallRateThreshold);
+		sb.append(", slowCallMillis=").append(slowCallMillis);
+		sb.append(", windowSize=").append(windowSize);
+		sb.append(", minimumCalls=").append(minimumCalls);
+		sb.append(", openMillis=").append(openMillis);
+		sb.append(", halfOpenTrials=").append(halfOpenTrials);
+		sb.append('}');
+		return sb.toString();
+	}
+
+	public static class Builder {
+		private boolean enabled = true;
+		private double failureRateThreshold = 0.5;
+		private double slowCallRateThreshold = 0.8;
+		private long slowCallMillis = 10000;
+		private int windowSize = 50;
+		private int minimumCalls = 20;
+		private long openMillis = 30000;
+		private int halfOpenTrials = 3;
+
+		public Builder setEnabled(final boolean enabled) {
+			this.enabled = enabled;
+			return this;
+		}
+
+		/**
+		 * Share of failed requests in the window (0 to 1) at which the breaker opens
+		 */
+		public Builder setFailureRateThreshold(final double failureRateThreshold) {
+			this.failureRateThreshold = checkRate("Failure rate threshold", failureRateThreshold);
+			return this;
+		}
+
+		/**
+		 * Share of slow requests in the window (0 to 1) at which the breaker opens
+		 */
+		public Builder setSlowCallRateThreshold(final double slowCallRateThreshold) {
+			this.slowCallRateThreshold = checkRate("Slow call rate threshold", slowCallRateThreshold);
+			return this;
+		}
+
+		/**
+		 * How long a request may take before it counts as slow
+		 */
+		public Builder setSlowCallMillis(final long slowCallMillis) {
+			this.slowCallMillis = slowCallMillis;
+			return this;
+		}
+
+		/**
+		 * Number of most recent requests the rates are computed over
+		 */
+		public Builder setWindowSize(final int windowSize) {
+			if (windowSize < 1) {
+				throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+			}
+			this.windowSize = windowSize;
+			return this;
+		}
+
+		/**
+		 * Requests needed in the window before the breaker may open
+		 */
+		public Builder setMinimumCalls(final int minimumCalls) {
+			this.minimumCalls = Math.max(1, minimumCalls);
+			return this;
+		}
+
+		/**
+		 * How long an open breaker fails requests before letting trials through
+		 */
+		public Builder setOpenMillis(final long openMillis) {
+			this.openMillis = openMillis;
+			return this;
+		}
+
+		/**
+		 * Trial requests that must succeed for a half-open breaker to close
+		 */
+		public Builder setHalfOpenTrials(final int halfOpenTrials) {
+			if (halfOpenTrials < 1) {
+				throw new IllegalArgumentException("At least one trial request is needed: " + halfOpenTrials);
+			}
+			this.halfOpenTrials = halfOpenTrials;
+			return this;
+		}
+
+		public RecurlyCircuitBreakerPolicy build() {
+			return new RecurlyCircuitBreakerPolicy(this);
+		}
+
+		private static double checkRate(final String name, final double rate) {
+			if (rate <= 0 || rate > 1) {
+				throw new IllegalArgumentException(name + " must be more than 0 and at most 1: " + rate);
+			}
+			return rate;
+		}
+	}
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyCircuitOpenException;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+/**
+ * The circuit breakers of one client, one per resource family, following a
+ * {@link RecurlyCircuitBreakerPolicy}.
+ * <p/>
+ * The family of a request is the last collection in its path, so
+ * <code>/accounts/{id}/invoices</code> belongs to <code>invoices</code>, and
+ * <code>/accounts/{id}</code> as well as <code>/subscriptions/{id}/cancel</code>
+ * to their first collection. All Recurly.js results share
+ * <code>recurly_js</code>.
+ *
+ * @author twerner
+ *
+ */
+public class RecurlyCircuitBreakers {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyCircuitBreakers.class);
+
+	public enum State {
+		/** Requests go through */
+		CLOSED,
+		/** Requests fail fast */
+		OPEN,
+		/** A limited number of trial requests go through */
+		HALF_OPEN
+	}
+
+	private final RecurlyCircuitBreakerPolicy policy;
+	private final LongSupplier nanoClock;
+	private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+	RecurlyCircuitBreakers(final RecurlyCircuitBreakerPolicy policy) {
+		this(policy, System::nanoTime);
+	}
+
+	RecurlyCircuitBreakers(final RecurlyCircuitBreakerPolicy policy, final LongSupplier nanoClock) {
+		this.policy = policy;
+		this.nanoClock = nanoClock;
+	}
+
+	/**
+	 * Sends the request through the breaker of its family, or fails it with a
+	 * {@link RecurlyCircuitOpenException} if that breaker is open. The outcome
+	 * of the returned future is recorded, except for cancellation.
+	 */
+	CompletableFuture<RecurlyResponse> execute(final RecurlyRequest request, final Supplier<CompletableFuture<RecurlyResponse>> call) {
+		if (!policy.isEnabled()) {
+			return call.get();
+		}
+		final Breaker breaker = breakerFor(familyOf(request.getUrl()));
+		final long start = nanoClock.getAsLong();
+		final long openFor = breaker.tryAcquire(start);
+		if (openFor >= 0) {
+			return RecurlyClientBase.failedFuture(new RecurlyCircuitOpenException(breaker.family, TimeUnit.NANOSECONDS.toMillis(openFor)));
+		}
+		final CompletableFuture<RecurlyResponse> response;
+		try {
+			response = call.get();
+		} catch (RuntimeException e) {
+			breaker.release();
+			throw e;
+		}
+		response.whenComplete((r, t) -> {
+			final Throwable failure = t == null ? null : RecurlyClientBase.unwrapCompletionException(t);
+			if (failure instanceof CancellationException) {
+				// Given up on by the caller, says nothing about Recurly
+				breaker.release();
+				return;
+			}
+			final long now = nanoClock.getAsLong();
+			final boolean failed = failure != null || r.getStatusCode() >= 500;
+			final boolean slow = now - start >= TimeUnit.MILLISECONDS.toNanos(policy.getSlowCallMillis());
+			breaker.record(failed, slow, now);
+		});
+		return response;
+	}
+
+	/**
+	 * A point in time copy of the breakers, by resource family. Families
+	 * are only listed once they have been called.
+	 */
+	public Map<String, BreakerStatus> snapshot() {
+		final long now = nanoClock.getAsLong();
+		final Map<String, BreakerStatus> snapshot = new TreeMap<>();
+		for (Map.Entry<String, Breaker> breaker : breakers.entrySet()) {
+			snapshot.put(breaker.getKey(), breaker.getValue().status(now));
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+
+	/**
+	 * The resource family of a request url
+	 */
+	static String familyOf(final String url) {
+		final String[] segments = RecurlyTrafficMetrics.endpointOf("GET", url).substring(4).split("/");
+		for (int i = segments.length - 1; i >= 0; i--) {
+			if (!segments[i].isEmpty() && !"{id}".equals(segments[i]) && !RecurlyTrafficMetrics.ACTIONS.contains(segments[i])) {
+				return segments[i];
+			}
+		}
+		return "/";
+	}
+
+	private Breaker breakerFor(final String family) {
+		Breaker breaker = breakers.get(family);
+		if (breaker == null) {
+			final Breaker created = new Breaker(family);
+			breaker = breakers.putIfAbsent(family, created);
+			if (breaker == null) {
+				breaker = created;
+			}
+		}
+		return breaker;
+	}
+
+	private class Breaker {
+		private final String family;
+		// Ring buffer over the outcomes of the last requests
+		private final boolean[] failed = new boolean[policy.getWindowSize()];
+		private final boolean[] slow = new boolean[policy.getWindowSize()];
+		private int next = 0;
+		private int calls = 0;
+		private int failures = 0;
+		private int slowCalls = 0;
+
+		private State state = State.CLOSED;
+		private long openedAt;
+		private int trialsIssued;
+		private int trialsSucceeded;
+		private long rejected = 0;
+
+		Breaker(final String family) {
+			this.family = family;
+		}
+
+		/**
+		 * @return -1 if the request may go out, otherwise the nanos until the
+		 *         breaker lets trials through again
+		 */
+		synchronized long tryAcquire(final long now) {
+			if (state == State.OPEN) {
+				final long remaining = openedAt + TimeUnit.MILLISECONDS.toNanos(policy.getOpenMillis()) - now;
+				if (remaining > 0) {
+					rejected++;
+					return remaining;
+				}
+				log.info("Circuit breaker for [{}] is half-open, sending trial requests", family);
+				state = State.HALF_OPEN;
+				trialsIssued = 0;
+				trialsSucceeded = 0;
+			}
+			if (state == State.HALF_OPEN) {
+				if (trialsIssued >= policy.getHalfOpenTrials()) {
+					rejected++;
+					// Trials are under way, their outcome decides
+					return 0;
+				}
+				trialsIssued++;
+			}
+			return -1;
+		}
+
+		synchronized void release() {
+			if (state == State.HALF_OPEN && trialsIssued > trialsSucceeded) {
+				trialsIssued--;
+			}
+		}
+
+		synchronized void record(final boolean failedCall, final boolean slowCall, final long now) {
+			switch (state) {
+			case HALF_OPEN:
+				if (failedCall || slowCall) {
+					open(now);
+				} else if (++trialsSucceeded >= policy.getHalfOpenTrials()) {
+					log.info("Circuit breaker for [{}] closed", family);
+					state = State.CLOSED;
+					clearWindow();
+				}
+				break;
+			case CLOSED:
+				if (calls == failed.length) {
+					failures -= failed[next] ? 1 : 0;
+					slowCalls -= slow[next] ? 1 : 0;
+				} else {
+					calls++;
+				}
+				failed[next] = failedCall;
+				slow[next] = slowCall;
+				failures += failedCall ? 1 : 0;
+				slowCalls += slowCall ? 1 : 0;
+				next = (next + 1) % failed.length;
+				if (calls >= policy.getMinimumCalls() && (failureRate() >= policy.getFailureRateThreshold() || slowCallRate() >= policy.getSlowCallRateThreshold())) {
+					open(now);
+				}
+				break;
+			default:
+				// Sent before the breaker opened
+				break;
+			}
+		}
+
+		synchronized BreakerStatus status(final long now) {
+			final long openFor = state == State.OPEN ? Math.max(0, openedAt + TimeUnit.MILLISECONDS.toNanos(policy.getOpenMillis()) - now) : 0;
+			return new BreakerStatus(state, failureRate(), slowCallRate(), calls, rejected, TimeUnit.NANOSECONDS.toMillis(openFor));
+		}
+
+		private void open(final long now) {
+			log.warn("Circuit breaker for [{}] opened: failure rate {}, slow call rate {}", family, failureRate(), slowCallRate());
+			state = State.OPEN;
+			openedAt = now;
+			clearWindow();
+		}
+
+		private void clearWindow() {
+			next = 0;
+			calls = 0;
+			failures = 0;
+			slowCalls = 0;
+		}
+
+		private double failureRate() {
+			return calls == 0 ? 0 : (double) failures / calls;
+		}
+
+		private double slowCallRate() {
+			return calls == 0 ? 0 : (double) slowCalls / calls;
+		}
+	}
+
+	public static class BreakerStatus {
+		private final State state;
+		private final double failureRate;
+		private final double slowCallRate;
+		private final int calls;
+		private final long rejected;
+		private final long retryAfterMillis;
+
+		BreakerStatus(final State state, final double failureRate, final double slowCallRate, final int calls, final long rejected, final long retryAfterMillis) {
+			this.state = state;
+			this.failureRate = failureRate;
+			this.slowCallRate = slowCallRate;
+			this.calls = calls;
+			this.rejected = rejected;
+			this.retryAfterMillis = retryAfterMillis;
+		}
+
+		public State getState() {
+			return state;
+		}
+
+		/**
+		 * Share of failed requests in the current window
+		 */
+		public double getFailureRate() {
+			return failureRate;
+		}
+
+		/**
+		 * Share of slow requests in the current window
+		 */
+		public double getSlowCallRate() {
+			return slowCallRate;
+		}
+
+		/**
+		 * Requests in the current window
+		 */
+		public int getCalls() {
+			return calls;
+		}
+
+		/**
+		 * Requests failed fast so far
+		 */
+		public long getRejected() {
+			return rejected;
+		}
+
+		/**
+		 * How long an open breaker keeps failing requests fast
+		 */
+		public long getRetryAfterMillis() {
+			return retryAfterMillis;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder();
+			sb.append("BreakerStatus");
+			sb.append("{state=").append(state);
+			sb.append(", failureRate=").append(failureRate);
+			sb.append(", slowCallRate=").append(slowCallRate);
+			sb.append(", calls=").append(calls);
+			sb.append(", rejected=").append(rejected);
+			sb.append(", retryAfterMillis=").append(retryAfterMillis);
+			sb.append('}');
+			return sb.toString();
+		}
+	}
+}
@@ -19,13 +19,17 @@ package com.github.torbinsky.billing.recurly;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
 
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,7 +42,6 @@ import com.github.torbinsky.billing.recurly.model.Coupon;
 import com.github.torbinsky.billing.recurly.model.CouponRedeem;
 import com.github.torbinsky.billing.recurly.model.Invoice;
 import com.github.torbinsky.billing.recurly.model.Plan;
-import com.github.torbinsky.billing.recurly.model.RecurlyObject;
 import com.github.torbinsky.billing.recurly.model.Redemption;
 import com.github.torbinsky.billing.recurly.model.Subscription;
 import com.github.torbinsky.billing.recurly.model.Transaction;
@@ -46,7 +49,6 @@ import com.github.torbinsky.billing.recurly.model.list.Accounts;
 import com.github.torbinsky.billing.recurly.model.list.Adjustments;
 import com.github.torbinsky.billing.recurly.model.list.Invoices;
 import com.github.torbinsky.billing.recurly.model.list.Plans;
-import com.github.torbinsky.billing.recurly.model.list.RecurlyObjects;
 import com.github.torbinsky.billing.recurly.model.list.Redemptions;
 import com.github.torbinsky.billing.recurly.model.list.Subscriptions;
 import com.github.torbinsky.billing.recurly.model.list.Transactions;
@@ -61,9 +63,63 @@ public class RecurlyClient extends RecurlyClientBase {
         super(apiKey);
     }
 
+    public RecurlyClient(final String apiKey, final RecurlyClientConfig config) {
+        super(apiKey, config);
+    }
+
     public RecurlyClient(final String apiKey, final String host, final int port, final String version) {
         super(apiKey, host, port, version);
     }
+
+    public RecurlyClient(final String apiKey, final String host, final int port, final String version, final RecurlyClientConfig config) {
+        super(apiKey, host, port, version, config);
+    }
+
+    private RecurlyClient(final RecurlyClient client, final RecurlyDeadline deadline) {
+        super(client, deadline);
+    }
+
+    RecurlyClient(final RecurlyClient client, final RecurlyCredentials credentials) {
+        super(client, credentials);
+    }
+
+    /**
+     * A view of this client making its calls with the given API key, e.g. to
+     * work with several Recurly sites through one client. Unlike a key bound
+     * to the calling thread, the key goes along with the calls on whichever
+     * thread they continue, pages and retries included.
+     * <p/>
+     * The view shares the transport and state of this client, and does not
+     * need to be opened or closed. Views are kept per key, so asking for one
+     * on every call is cheap.
+     */
+    public RecurlyClient withApiKey(final String apiKey) {
+        return keyView(apiKey, credentials -> new RecurlyClient(this, credentials));
+    }
+
+    /**
+     * A view of this client whose calls fail with a
+     * {@link com.github.torbinsky.billing.recurly.exception.RecurlyDeadlineExceededException}
+     * unless they complete within the given time, pagination and retries
+     * included. Requests still in flight at that point are cancelled.
+     * <p/>
+     * The deadline runs from the moment the view is created, so create one per
+     * operation, e.g. <code>client.withDeadline(Duration.ofSeconds(2)).getAccounts()</code>.
+     * The view shares the key, transport and state of this client, and does
+     * not need to be opened or closed.
+     */
+    public RecurlyClient withDeadline(final Duration timeout) {
+        return withDeadline(timeout, false);
+    }
+
+    /**
+     * As {@link #withDeadline(Duration)}, optionally returning the pages
+     * fetched so far from paginated calls when the deadline expires, rather
+     * than failing. A call that has not received any page still fails.
+     */
+    public RecurlyClient withDeadline(final Duration timeout, final boolean allowPartialResults) {
+        return new RecurlyClient(this, RecurlyDeadline.after(timeout, allowPartialResults));
+    }
     
     /* **************************************
      * Generic CREATE/UPDATE 
@@ -122,6 +178,21 @@ public class RecurlyClient extends RecurlyClientBase {
     }
     
 
+    /**
+     * Get Accounts by code
+     * <p/>
+     * Looks up each of the accounts, a few at a time (see
+     * {@link RecurlyClientConfig#getBulkConcurrency()}). Accounts that could
+     * not be looked up, e.g. because they do not exist, are reported in the
+     * errors of the result rather than failing the others.
+     *
+     * @param accountCodes recurly account ids, looked up once each
+     * @return the accounts by code, and the errors by code
+     */
+    public RecurlyBulkResult<Account> getAccounts(final Collection<String> accountCodes) {
+        return awaitResult(bulkLookup(accountCodes, accountCode -> doGETAsync(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode), Account.class)));
+    }
+
     /**
      * Update Account
      * <p/>
@@ -189,6 +260,19 @@ public class RecurlyClient extends RecurlyClientBase {
     }
     
 
+    /**
+     * Get {@link Subscription}s by UUID
+     * <p/>
+     * Looks up each of the subscriptions, a few at a time, as
+     * {@link #getAccounts(Collection)} does for accounts.
+     *
+     * @param uuids UUIDs of the subscriptions to lookup, looked up once each
+     * @return the subscriptions by UUID, and the errors by UUID
+     */
+    public RecurlyBulkResult<Subscription> getSubscriptions(final Collection<String> uuids) {
+        return awaitResult(bulkLookup(uuids, uuid -> doGETAsync(Subscriptions.SUBSCRIPTIONS_RESOURCE + "/" + urlEncode(uuid), Subscription.class)));
+    }
+
     /**
      * Cancel a subscription
      * <p/>
@@ -491,6 +575,19 @@ public class RecurlyClient extends RecurlyClientBase {
 			throw new RecurlyAPIException("Invalid Request", e);
 		}
     }
+
+    /**
+     * Get {@link Invoice}s by number
+     * <p/>
+     * Looks up each of the invoices, a few at a time, as
+     * {@link #getAccounts(Collection)} does for accounts.
+     *
+     * @param invoiceNumbers numbers of the invoices to lookup, looked up once each
+     * @return the invoices by number, and the errors by number
+     */
+    public RecurlyBulkResult<Invoice> getInvoices(final Collection<String> invoiceNumbers) {
+        return awaitResult(bulkLookup(invoiceNumbers, invoiceNumber -> doGETAsync(Invoices.INVOICES_RESOURCE + "/" + urlEncode(invoiceNumber), Invoice.class)));
+    }
     
     
     /**
@@ -731,6 +828,137 @@ public class RecurlyClient extends RecurlyClientBase {
     }
     
     
+    ///////////////////////////////////////////////////////////////////////////
+    //
+    // Streaming list API
+    //
+    // Unlike the get* list methods these do not load the whole collection
+    // up front: pages are fetched as the stream is consumed and released once
+    // consumed. Close the stream (e.g. try-with-resources) to abort early.
+    //
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Lazily streams all accounts.
+     *
+     * @return a stream of every account on the site
+     */
+    public Stream<Account> streamAccounts() {
+        return doGETsLazily(Accounts.ACCOUNTS_RESOURCE, null, Accounts.class).stream();
+    }
+
+    /**
+     * Lazily streams all subscriptions.
+     *
+     * @return a stream of every subscription on the site
+     */
+    public Stream<Subscription> streamSubscriptions() {
+        return doGETsLazily(Subscriptions.SUBSCRIPTIONS_RESOURCE, null, Subscriptions.class).stream();
+    }
+
+    /**
+     * Lazily streams the subscriptions of an {@link Account}.
+     *
+     * @param accountCode recurly account id
+     * @return a stream of the account's subscriptions
+     */
+    public Stream<Subscription> streamAccountSubscriptions(final String accountCode) {
+        return doGETsLazily(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode) + Subscriptions.SUBSCRIPTIONS_RESOURCE,
+                            null, Subscriptions.class).stream();
+    }
+
+    /**
+     * Lazily streams all invoices.
+     *
+     * @return a stream of every invoice on the site
+     */
+    public Stream<Invoice> streamInvoices() {
+        return doGETsLazily(Invoices.INVOICES_RESOURCE, null, Invoices.class).stream();
+    }
+
+    /**
+     * Lazily streams the invoices of an {@link Account}.
+     *
+     * @param accountCode recurly account id
+     * @return a stream of the account's invoices
+     */
+    public Stream<Invoice> streamAccountInvoices(final String accountCode) {
+        return doGETsLazily(Accounts.ACCOUNTS_RESOURCE + "/" + urlEncode(accountCode) + Invoices.INVOICES_RESOURCE,
+                            null, Invoices.class).stream();
+    }
+
+    /**
+     * Lazily streams all transactions.
+     *
+     * @return a stream of every transaction on the site
+     */
+    public Stream<Transaction> streamTransactions() {
+        return doGETsLazily(Transactions.TRANSACTIONS_RESOURCE, null, Transactions.class).stream();
+    }
+
+    /**
+     * Lazily streams the transaction history of an {@link Account}.
+     *
+     * @param accountCode recurly account id
+     * @return a stream of the account's transactions
+     */
+    public Stream<Transaction> streamAccountTransactions(final String accountCode) {
+        return doGETsLazily(Accounts.ACCOUNTS_RESOURCE + "/" + urlEncode(accountCode) + Transactions.TRANSACTIONS_RESOURCE,
+                            null, Transactions.class).stream();
+    }
+
+    /**
+     * Lazily streams the adjustments of an {@link Account}.
+     *
+     * @param accountCode recurly account id
+     * @return a stream of the account's adjustments
+     */
+    public Stream<Adjustment> streamAccountAdjustments(final String accountCode) {
+        return doGETsLazily(Account.ACCOUNT_RESOURCE + "/" + urlEncode(accountCode) + Adjustments.ADJUSTMENTS_RESOURCE,
+                            null, Adjustments.class).stream();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    //
+    // Parallel scan API
+    //
+    // Splits the creation time range into windows that are paginated
+    // concurrently, up to RecurlyClientConfig#getBulkConcurrency() at once,
+    // splitting further any window that turns out to hold many records.
+    // Records are handed to the consumer one at a time, in creation order
+    // only when asked for since that holds back windows ahead of their turn.
+    //
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Scans the accounts created between the given times, both inclusive.
+     *
+     * @param ordered  whether the consumer gets the accounts oldest first
+     * @param consumer gets each account, never concurrently
+     * @return the number of accounts scanned
+     */
+    public long scanAccounts(final DateTime begin, final DateTime end, final boolean ordered, final Consumer<? super Account> consumer) {
+        return awaitResult(doGETsInParallel(Accounts.ACCOUNTS_RESOURCE, Accounts.class, Account::getCreatedAt, begin, end, ordered, consumer));
+    }
+
+    /**
+     * Scans the invoices created between the given times, both inclusive.
+     *
+     * @see #scanAccounts(DateTime, DateTime, boolean, Consumer)
+     */
+    public long scanInvoices(final DateTime begin, final DateTime end, final boolean ordered, final Consumer<? super Invoice> consumer) {
+        return awaitResult(doGETsInParallel(Invoices.INVOICES_RESOURCE, Invoices.class, Invoice::getCreatedAt, begin, end, ordered, consumer));
+    }
+
+    /**
+     * Scans the transactions created between the given times, both inclusive.
+     *
+     * @see #scanAccounts(DateTime, DateTime, boolean, Consumer)
+     */
+    public long scanTransactions(final DateTime begin, final DateTime end, final boolean ordered, final Consumer<? super Transaction> consumer) {
+        return awaitResult(doGETsInParallel(Transactions.TRANSACTIONS_RESOURCE, Transactions.class, Transaction::getCreatedAt, begin, end, ordered, consumer));
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     //
     // Recurly.js API
@@ -772,22 +1000,4 @@ public class RecurlyClient extends RecurlyClientBase {
     public Invoice fetchInvoice(final String recurlyToken) {
    		return fetch(recurlyToken, Invoice.class);
     }
-    
-    private <R extends RecurlyObject, T extends RecurlyObjects<R>> T depaginateResults(List<T> results){
-    	Iterator<T> ai = results.iterator();
-        T depaginatedType = null;
-        while(ai.hasNext()){
-        	// First element
-        	if(depaginatedType == null){
-        		depaginatedType = ai.next();
-        		continue;
-        	}else{
-        		// Add subsequent elements to the first element
-        		List<R> objects = ai.next().getObjects();
-				depaginatedType.getObjects().addAll(objects);
-        	}
-        }
-        
-		return depaginatedType;
-    }
 }
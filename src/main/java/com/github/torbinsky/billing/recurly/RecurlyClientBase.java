@@ -15,30 +15,49 @@
  */
 package com.github.torbinsky.billing.recurly;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.FilterInputStream;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.annotation.Nullable;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLException;
-import javax.xml.bind.DatatypeConverter;
 
-import org.asynchttpclient.AsyncCompletionHandler;
 import org.asynchttpclient.AsyncHttpClient;
 import org.asynchttpclient.AsyncHttpClientConfig;
-import org.asynchttpclient.BoundRequestBuilder;
 import org.asynchttpclient.DefaultAsyncHttpClient;
 import org.asynchttpclient.DefaultAsyncHttpClientConfig;
-import org.asynchttpclient.RequestBuilder;
-import org.asynchttpclient.Response;
+import org.asynchttpclient.netty.channel.ChannelManager;
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,13 +73,23 @@ import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
 import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
 import com.github.torbinsky.billing.recurly.exception.RecurlyAPIException;
+import com.github.torbinsky.billing.recurly.exception.RecurlyDeadlineExceededException;
 import com.github.torbinsky.billing.recurly.exception.RecurlyException;
 import com.github.torbinsky.billing.recurly.exception.RecurlySerializationException;
 import com.github.torbinsky.billing.recurly.model.RecurlyObject;
+import com.github.torbinsky.billing.recurly.model.list.RecurlyObjects;
 import com.github.torbinsky.billing.recurly.serialize.XmlPayloadMap;
-
+import com.github.torbinsky.billing.recurly.transport.AsyncHttpClientTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponseHeaders;
+import com.github.torbinsky.billing.recurly.transport.RecurlyTransport;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 /**
  * Basic/common client features such as managing the AsyncHttpClient etc...
@@ -76,15 +105,19 @@ public abstract class RecurlyClientBase {
 
 	public static final String RECURLY_DEBUG_KEY = "recurly.debug";
 	public static final String RECURLY_PAGE_SIZE_KEY = "recurly.page.size";
+	public static final String RECURLY_PAGE_PREFETCH_KEY = "recurly.page.prefetch";
 
 	protected static final Integer DEFAULT_PAGE_SIZE = new Integer(200);
+	protected static final int DEFAULT_PAGE_PREFETCH = 1;
 	protected static final String PER_PAGE = "per_page=";
+	private static final DateTimeFormatter TIME_PARAM_FORMAT = ISODateTimeFormat.dateTimeNoMillis().withZoneUTC();
 
 	public static final String FETCH_RESOURCE = "/recurly_js/result";
 
 	/**
-	 * Checks a system property to see if debugging output is required. Used
-	 * internally by the client to decide whether to generate debug output
+	 * Checks a system property to see if debugging output is required. Clients
+	 * take this as the default of {@link RecurlyClientConfig#isDebug()} when
+	 * they are created
 	 */
 	protected static boolean debug() {
 		return Boolean.getBoolean(RECURLY_DEBUG_KEY);
@@ -92,7 +125,8 @@ public abstract class RecurlyClientBase {
 
 	/**
 	 * Returns the page Size to use when querying. The page size is set as
-	 * System.property: recurly.page.size
+	 * System.property: recurly.page.size and is the default of
+	 * {@link RecurlyClientConfig#getPageSize()}
 	 */
 	public static Integer getPageSize() {
 		Integer pageSize;
@@ -104,25 +138,70 @@ public abstract class RecurlyClientBase {
 		return pageSize;
 	}
 
+	/**
+	 * Returns how many pages may be downloaded ahead of the page being
+	 * processed. The depth is set as System.property: recurly.page.prefetch
+	 * and is the default of {@link RecurlyClientConfig#getPagePrefetchDepth()}
+	 */
+	public static int getPagePrefetchDepth() {
+		return Integer.getInteger(RECURLY_PAGE_PREFETCH_KEY, DEFAULT_PAGE_PREFETCH);
+	}
+
 	public static String getPageSizeGetParam() {
 		return PER_PAGE + getPageSize().toString();
 	}
 
-	protected final XmlMapper xmlMapper = new XmlMapper();
+	protected final XmlMapper xmlMapper;
 
-	private String apiKey;
-	private ThreadLocal<String> threadApiKey = new ThreadLocal<>();
+	private final RecurlyClientBase root;
+	private final RecurlyDeadline deadline;
+	private final RecurlyCredentials credentials;
+	// The views made by withApiKey, by key; shared with every view of the client
+	private final ConcurrentMap<String, RecurlyClientBase> keyViews;
 	private final String baseUrl;
-	private AsyncHttpClient client;
+	private final RecurlyClientConfig config;
+	private final RecurlyTrafficMetrics trafficMetrics;
+	private final RecurlyRateLimiter rateLimiter;
+	private final RecurlyRetrier retrier;
+	private final RecurlyCircuitBreakers circuitBreakers;
+	private final RecurlyHedger hedger;
+	// GETs in flight by method, url, key and result type, when coalescing
+	private final ConcurrentMap<String, CompletableFuture<? extends List<?>>> inFlightGets;
+	private final LongAdder coalescedCalls;
+	private final RecurlyResponseCache responseCache;
+	// Told about every successful request other than a GET, e.g. to invalidate caches
+	private final List<Consumer<RecurlyRequest>> writeListeners;
+	private RecurlyTransport transport;
+	private EventLoopGroup eventLoopGroup;
 
 	public RecurlyClientBase(final String apiKey) {
-		this(apiKey, "api.recurly.com", 443, "v2");
+		this(apiKey, RecurlyClientConfig.defaultConfig());
+	}
+
+	public RecurlyClientBase(final String apiKey, final RecurlyClientConfig config) {
+		this(apiKey, "api.recurly.com", 443, "v2", config);
 	}
 
 	public RecurlyClientBase(final String apiKey, final String host, final int port, final String version) {
-		if (apiKey != null) {
-			this.apiKey = DatatypeConverter.printBase64Binary(apiKey.getBytes());
-		}
+		this(apiKey, host, port, version, RecurlyClientConfig.defaultConfig());
+	}
+
+	public RecurlyClientBase(final String apiKey, final String host, final int port, final String version, final RecurlyClientConfig config) {
+		this.root = this;
+		this.deadline = null;
+		this.xmlMapper = new XmlMapper();
+		this.credentials = RecurlyCredentials.forApiKey(apiKey);
+		this.keyViews = new ConcurrentHashMap<>();
+		this.config = config;
+		this.trafficMetrics = new RecurlyTrafficMetrics();
+		this.inFlightGets = new ConcurrentHashMap<>();
+		this.coalescedCalls = new LongAdder();
+		this.responseCache = config.getResponseCacheSize() > 0 ? new RecurlyResponseCache(config.getResponseCacheSize()) : null;
+		this.writeListeners = new CopyOnWriteArrayList<>();
+		this.rateLimiter = config.isRateLimitingEnabled() ? new RecurlyRateLimiter(config.getRateLimitHeadroom()) : null;
+		this.retrier = new RecurlyRetrier(config.getRetryPolicy());
+		this.circuitBreakers = new RecurlyCircuitBreakers(config.getCircuitBreakerPolicy());
+		this.hedger = config.isHedgingEnabled() ? new RecurlyHedger(config.getHedgePercentile(), config.getHedgeMaxFraction()) : null;
 		this.baseUrl = String.format("https://%s:%d/%s", host, port, version);
 
 		final AnnotationIntrospector primary = new JacksonAnnotationIntrospector();
@@ -133,38 +212,104 @@ public abstract class RecurlyClientBase {
 		xmlMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
 	}
 
-	protected void setThreadLocalApiKey(String apiKey) {
-		this.threadApiKey.set(DatatypeConverter.printBase64Binary(apiKey.getBytes()));
+	/**
+	 * A view of the given client whose calls are bound by the deadline. It
+	 * shares the key, transport, limits and metrics of the client.
+	 */
+	RecurlyClientBase(final RecurlyClientBase client, final RecurlyDeadline deadline) {
+		this(client, deadline, client.credentials);
+	}
+
+	/**
+	 * A view of the given client making its calls with the given
+	 * credentials. It shares the transport, limits and metrics of the
+	 * client, and its deadline if any.
+	 */
+	RecurlyClientBase(final RecurlyClientBase client, final RecurlyCredentials credentials) {
+		this(client, client.deadline, credentials);
 	}
 
-	protected void unsetThreadLocalApiKey() {
-		this.threadApiKey.remove();
+	private RecurlyClientBase(final RecurlyClientBase client, final RecurlyDeadline deadline, final RecurlyCredentials credentials) {
+		this.root = client.root;
+		this.deadline = deadline;
+		this.xmlMapper = client.xmlMapper;
+		this.credentials = credentials;
+		this.keyViews = client.keyViews;
+		this.baseUrl = client.baseUrl;
+		this.config = client.config;
+		this.trafficMetrics = client.trafficMetrics;
+		this.inFlightGets = client.inFlightGets;
+		this.coalescedCalls = client.coalescedCalls;
+		this.responseCache = client.responseCache;
+		this.writeListeners = client.writeListeners;
+		this.rateLimiter = client.rateLimiter;
+		this.retrier = client.retrier;
+		this.circuitBreakers = client.circuitBreakers;
+		this.hedger = client.hedger;
 	}
 
-	private String getApiKey() {
-		String threadKey = threadApiKey.get();
-		if (threadKey != null) {
-			return threadKey;
+	/**
+	 * The credentials every call of this client is made with
+	 */
+	public RecurlyCredentials getCredentials() {
+		return credentials;
+	}
+
+	/**
+	 * The view of this client with the given API key, created by the given
+	 * constructor on first use. Views of a client without a deadline are
+	 * kept per key, so switching keys per call costs a map lookup; views of
+	 * a deadline view are made anew, as the deadline view itself is.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <C extends RecurlyClientBase> C keyView(final String apiKey, final Function<RecurlyCredentials, C> view) {
+		if (apiKey == null) {
+			throw new IllegalArgumentException("The API key must not be null");
 		}
+		if (deadline != null) {
+			return view.apply(RecurlyCredentials.forApiKey(apiKey));
+		}
+		return (C) keyViews.computeIfAbsent(apiKey, key -> view.apply(RecurlyCredentials.forApiKey(key)));
+	}
 
-		// Fall back to the non-thread local api key
-		return apiKey;
+	public RecurlyClientConfig getConfig() {
+		return config;
 	}
 
 	/**
-	 * Open the underlying http client
+	 * Open the underlying transport, by default an http client. Client views
+	 * with a deadline use the transport of the client they were created from,
+	 * so this has no effect on them.
 	 */
 	public synchronized void open() {
-		client = createHttpClient();
+		if (root != this) {
+			return;
+		}
+		if (config.getTransport() != null) {
+			transport = config.getTransport();
+			return;
+		}
+		if (config.getIoThreads() > 0) {
+			// The http client does not shut down a group it was handed, see close()
+			eventLoopGroup = new NioEventLoopGroup(config.getIoThreads(), new DefaultThreadFactory("recurly-io"));
+		}
+		transport = new AsyncHttpClientTransport(createHttpClient(config, eventLoopGroup));
 	}
 
 	/**
-	 * Close the underlying http client
+	 * Close the underlying transport, no-op for client views with a deadline
 	 * @throws IOException 
 	 */
 	public synchronized void close() throws IOException {
-		if (client != null) {
-			client.close();
+		if (root != this) {
+			return;
+		}
+		if (transport != null) {
+			transport.close();
+		}
+		if (eventLoopGroup != null) {
+			eventLoopGroup.shutdownGracefully();
+			eventLoopGroup = null;
 		}
 	}
 
@@ -179,20 +324,16 @@ public abstract class RecurlyClientBase {
 	}
 	
 	protected <T> List<T> doGETsByUrl(final String url, final Class<T> clazz){
-		if(debug()){
-			log.info("Msg to Recurly API [GET] :: URL : {}", url); 
-		}
-		return callRecurlySafe(client.prepareGet(url.toString()), clazz, true); 
+		return awaitResult(doGETsByUrlAsync(url, clazz));
 	}
 
 	protected <T> List<T> doGETs(final String resource, String paramString, final Class<T> clazz) {
-		String url = buildRecurlyUrl(resource, paramString);
-		return doGETsByUrl(url, clazz); 
+		return awaitResult(doGETsAsync(resource, paramString, clazz));
 	}
 
 	protected List<String> doGET(final String resource, String paramString) {
 		String url = buildRecurlyUrl(resource, paramString);
-		return callRecurlySafe(client.prepareGet(url));
+		return callRecurlySafe(new RecurlyRequest("GET", url));
 	}
 
 	protected String buildRecurlyUrl(String resource, String paramString) {
@@ -203,7 +344,7 @@ public abstract class RecurlyClientBase {
 		} else {
 			url.append("&");
 		}
-		url.append(getPageSizeGetParam());
+		url.append(PER_PAGE).append(config.getPageSize());
 
 		if (paramString != null) {
 			url.append(paramString);
@@ -213,67 +354,19 @@ public abstract class RecurlyClientBase {
 	}
 
 	protected <T> List<T> doPOSTs(final String resource, final RecurlyObject payload, final Class<T> clazz) {
-		final String xmlPayload;
-		try {
-			xmlPayload = xmlMapper.writeValueAsString(payload);
-			if (debug()) {
-				log.info("Msg to Recurly API [POST]:: URL : {}", baseUrl + resource);
-				log.info("Payload for [POST]:: {}", xmlPayload);
-			}
-		} catch (IOException e) {
-			log.warn("Unable to serialize {} object as XML: {}", clazz.getName(), payload.toString());
-			throw new RecurlySerializationException("Unable to serialize {} object as XML: {}", e);
-		}
-
-		return callRecurlySafe(client.preparePost(baseUrl + resource).setBody(xmlPayload), clazz, true);
+		return awaitResult(doPOSTsAsync(resource, payload, clazz));
 	}
 
 	protected <T> List<T> doPUTs(final String resource, final RecurlyObject payload, final Class<T> clazz) {
-		final String xmlPayload;
-		try {
-			xmlPayload = xmlMapper.writeValueAsString(payload);
-			if (debug()) {
-				log.info("Msg to Recurly API [PUT]:: URL : {}", baseUrl + resource);
-				log.info("Payload for [PUT]:: {}", xmlPayload);
-			}
-		} catch (IOException e) {
-			log.warn("Unable to serialize {} object as XML: {}", clazz.getName(), payload.toString());
-			throw new RecurlySerializationException("Unable to serialize {} object as XML: {}", e);
-		}
-
-		return callRecurlySafe(client.preparePut(baseUrl + resource).setBody(xmlPayload), clazz, true);
+		return awaitResult(doPUTsAsync(resource, payload, clazz));
 	}
 
 	protected <T> List<T> doPOSTs(final String resource, final XmlPayloadMap<?, ?> payload, final Class<T> clazz) {
-		final String xmlPayload;
-		try {
-			xmlPayload = convertPayloadMapToXmlString(payload);
-			if (debug()) {
-				log.info("Msg to Recurly API [POST]:: URL : {}", baseUrl + resource);
-				log.info("Payload for [POST]:: {}", xmlPayload);
-			}
-		} catch (IOException e) {
-			log.warn("Unable to serialize {} object as XML: {}", clazz.getName(), payload.toString());
-			throw new RecurlySerializationException("Unable to serialize {} object as XML: {}", e);
-		}
-
-		return callRecurlySafe(client.preparePost(baseUrl + resource).setBody(xmlPayload), clazz, true);
+		return awaitResult(doPOSTsAsync(resource, payload, clazz));
 	}
 
 	protected <T> List<T> doPUTs(final String resource, final XmlPayloadMap<?, ?> payload, final Class<T> clazz) {
-		final String xmlPayload;
-		try {
-			xmlPayload = convertPayloadMapToXmlString(payload);
-			if (debug()) {
-				log.info("Msg to Recurly API [PUT]:: URL : {}", baseUrl + resource);
-				log.info("Payload for [PUT]:: {}", xmlPayload);
-			}
-		} catch (IOException e) {
-			log.warn("Unable to serialize {} object as XML: {}", clazz.getName(), payload.toString());
-			throw new RecurlySerializationException("Unable to serialize {} object as XML: {}", e);
-		}
-
-		return callRecurlySafe(client.preparePut(baseUrl + resource).setBody(xmlPayload), clazz, true);
+		return awaitResult(doPUTsAsync(resource, payload, clazz));
 	}
 
 	protected <T> T fetch(final String recurlyToken, final Class<T> clazz) {
@@ -314,15 +407,11 @@ public abstract class RecurlyClientBase {
 	}
 
 	protected void doDELETE(final String resource) {
-		callRecurlySafe(client.prepareDelete(baseUrl + resource), null, false);
+		awaitResult(doDELETEAsync(resource));
 	}
 	
 	protected void doDELETE(final String resource, Map<String,String> queryParameters){
-		BoundRequestBuilder prepareDelete = client.prepareDelete(baseUrl + resource); 
-		for(String key : queryParameters.keySet()){
-			prepareDelete = prepareDelete.addQueryParam(key, queryParameters.get(key)); 
-		}
-		callRecurlySafe(prepareDelete, null, false); 
+		awaitResult(doDELETEAsync(resource, queryParameters));
 	}
 
 	protected <T> T returnSingleResult(List<T> results) {
@@ -336,97 +425,544 @@ public abstract class RecurlyClientBase {
 
 		return null;
 	}
-	
-	protected <T> List<T> callRecurlySafe(final BoundRequestBuilder builder, @Nullable final Class<T> clazz, final boolean parseResult) {
-		List<String> results = callRecurlySafe(builder);
-		if(parseResult){
-			try {
-				return deserialize(results, clazz);
-			} catch (IOException e) {
-				log.warn("Error while calling Recurly", e);
-				throw new RecurlySerializationException("Error while calling Recurly", e);
+
+	// /////////////////////////////////////////////////////////////////////////
+	// Non-blocking variants. Failures complete the returned future exceptionally
+	// with the same exceptions the blocking methods throw.
+
+	protected <T> CompletableFuture<T> fetchAsync(final String recurlyToken, final Class<T> clazz) {
+		return doGETAsync(FETCH_RESOURCE + "/" + recurlyToken, clazz);
+	}
+
+	protected <T> CompletableFuture<List<T>> doGETsAsync(final String resource, final Class<T> clazz) {
+		return doGETsAsync(resource, null, clazz);
+	}
+
+	protected <T> CompletableFuture<List<T>> doGETsAsync(final String resource, String paramString, final Class<T> clazz) {
+		return doGETsByUrlAsync(buildRecurlyUrl(resource, paramString), clazz);
+	}
+
+	protected <T> CompletableFuture<List<T>> doGETsByUrlAsync(final String url, final Class<T> clazz) {
+		if(config.isDebug()){
+			log.info("Msg to Recurly API [GET] :: URL : {}", url); 
+		}
+		return callRecurlySafeAsync(new RecurlyRequest("GET", url), clazz, true);
+	}
+
+	/**
+	 * Lazily walks a paginated collection. The first page is requested right
+	 * away, later pages as the iteration approaches them.
+	 */
+	protected <R extends RecurlyObject, T extends RecurlyObjects<R>> RecurlyObjectIterator<R> doGETsLazily(final String resource, String paramString, final Class<T> clazz) {
+		final String url = buildRecurlyUrl(resource, paramString);
+		if(config.isDebug()){
+			log.info("Msg to Recurly API [GET] :: URL : {}", url); 
+		}
+		return new RecurlyObjectIterator<R>(prefetchPages(new RecurlyRequest("GET", url), payload -> deserialize(payload, clazz)));
+	}
+
+	/**
+	 * Lazily walks the objects of a collection updated since the given time,
+	 * most recently updated first. Closing the iterator stops the walk and
+	 * aborts the page read ahead.
+	 *
+	 * @param since the earliest update time, inclusive; null for all objects
+	 */
+	protected <R extends RecurlyObject, T extends RecurlyObjects<R>> RecurlyObjectIterator<R> doGETsUpdatedSince(final String resource, @Nullable final DateTime since, final Class<T> clazz) {
+		String paramString = "&sort=updated_at&order=desc";
+		if (since != null) {
+			paramString += "&begin_time=" + urlEncode(TIME_PARAM_FORMAT.print(since));
+		}
+		return doGETsLazily(resource, paramString, clazz);
+	}
+
+	/**
+	 * Publishes a paginated collection, fetching pages only as subscribers
+	 * signal demand for them.
+	 */
+	protected <R extends RecurlyObject, T extends RecurlyObjects<R>> RecurlyObjectPublisher<R> doGETsPublisher(final String resource, String paramString, final Class<T> clazz) {
+		final String url = buildRecurlyUrl(resource, paramString);
+		return new RecurlyObjectPublisher<R>(() -> {
+			if(config.isDebug()){
+				log.info("Msg to Recurly API [GET] :: URL : {}", url); 
 			}
+			// No read-ahead: the next page is only requested on demand
+			return prefetchPages(new RecurlyRequest("GET", url), credentials, payload -> deserialize(payload, clazz), 0);
+		});
+	}
+
+	protected <T> CompletableFuture<T> doGETAsync(final String resource, final Class<T> clazz) {
+		return doGETAsync(resource, null, clazz);
+	}
+
+	protected <T> CompletableFuture<T> doGETAsync(final String resource, String paramString, final Class<T> clazz) {
+		return doGETsAsync(resource, paramString, clazz).thenApply(this::returnSingleResult);
+	}
+
+	protected <T> CompletableFuture<List<T>> doPOSTsAsync(final String resource, final RecurlyObject payload, final Class<T> clazz) {
+		final String xmlPayload;
+		try {
+			xmlPayload = xmlMapper.writeValueAsString(payload);
+		} catch (IOException e) {
+			return failedFuture(payloadSerializationError(payload, clazz, e));
 		}
-		
-		return null;
+		return sendPayloadAsync("POST", resource, xmlPayload, clazz);
 	}
 
-	protected List<String> callRecurlySafe(final BoundRequestBuilder builder) {
-		final String requestKey = getApiKey();
-		final RecurlyAPICallResults<String> results = doSinglePageRecurlySafeCall(builder, new RecurlyAPICallResults<String>(), requestKey);
-		while(results.hasNextPage()){
-			doSinglePageRecurlySafeCall(client.prepareGet(results.getNextPageUrl()), results, requestKey);
+	protected <T> CompletableFuture<List<T>> doPUTsAsync(final String resource, final RecurlyObject payload, final Class<T> clazz) {
+		final String xmlPayload;
+		try {
+			xmlPayload = xmlMapper.writeValueAsString(payload);
+		} catch (IOException e) {
+			return failedFuture(payloadSerializationError(payload, clazz, e));
 		}
-		
-		return results.getResults();
+		return sendPayloadAsync("PUT", resource, xmlPayload, clazz);
+	}
+
+	protected <T> CompletableFuture<List<T>> doPOSTsAsync(final String resource, final XmlPayloadMap<?, ?> payload, final Class<T> clazz) {
+		final String xmlPayload;
+		try {
+			xmlPayload = convertPayloadMapToXmlString(payload);
+		} catch (IOException e) {
+			return failedFuture(payloadSerializationError(payload, clazz, e));
+		}
+		return sendPayloadAsync("POST", resource, xmlPayload, clazz);
+	}
+
+	protected <T> CompletableFuture<List<T>> doPUTsAsync(final String resource, final XmlPayloadMap<?, ?> payload, final Class<T> clazz) {
+		final String xmlPayload;
+		try {
+			xmlPayload = convertPayloadMapToXmlString(payload);
+		} catch (IOException e) {
+			return failedFuture(payloadSerializationError(payload, clazz, e));
+		}
+		return sendPayloadAsync("PUT", resource, xmlPayload, clazz);
+	}
+
+	protected <T> CompletableFuture<T> doPOSTAsync(final String resource, final RecurlyObject payload, final Class<T> clazz) {
+		return doPOSTsAsync(resource, payload, clazz).thenApply(this::returnSingleResult);
+	}
+
+	protected <T> CompletableFuture<T> doPUTAsync(final String resource, final RecurlyObject payload, final Class<T> clazz) {
+		return doPUTsAsync(resource, payload, clazz).thenApply(this::returnSingleResult);
 	}
+
+	protected <T> CompletableFuture<T> doPOSTAsync(final String resource, final XmlPayloadMap<?, ?> payload, final Class<T> clazz) {
+		return doPOSTsAsync(resource, payload, clazz).thenApply(this::returnSingleResult);
+	}
+
+	protected <T> CompletableFuture<T> doPUTAsync(final String resource, final XmlPayloadMap<?, ?> payload, final Class<T> clazz) {
+		return doPUTsAsync(resource, payload, clazz).thenApply(this::returnSingleResult);
+	}
+
+	/**
+	 * Deletes the resource. Deleting it again leaves it deleted, so the
+	 * request is retried as a GET is.
+	 */
+	protected CompletableFuture<Void> doDELETEAsync(final String resource) {
+		return callRecurlySafeAsync(new RecurlyRequest("DELETE", baseUrl + resource).withReplayable(true), Void.class, false).thenApply(results -> null);
+	}
+
+	/**
+	 * Deletes with the given parameters, e.g. refunds part of a transaction.
+	 * The parameters make it an operation rather than a deletion, so the
+	 * request is only retried when it cannot have reached Recurly.
+	 */
+	protected CompletableFuture<Void> doDELETEAsync(final String resource, Map<String,String> queryParameters) {
+		final StringBuilder url = new StringBuilder(baseUrl).append(resource);
+		char separator = resource.contains("?") ? '&' : '?';
+		for(String key : queryParameters.keySet()){
+			url.append(separator).append(urlEncode(key)).append('=').append(urlEncode(queryParameters.get(key)));
+			separator = '&';
+		}
+		return callRecurlySafeAsync(new RecurlyRequest("DELETE", url.toString()), Void.class, false).thenApply(results -> null);
+	}
+
+	private <T> CompletableFuture<List<T>> sendPayloadAsync(final String method, final String resource, final String xmlPayload, final Class<T> clazz) {
+		if (config.isDebug()) {
+			log.info("Msg to Recurly API [{}]:: URL : {}", method, baseUrl + resource);
+			log.info("Payload for [{}]:: {}", method, xmlPayload);
+		}
+		// A PUT sets the resource to the payload, sending it again changes nothing
+		final RecurlyRequest request = new RecurlyRequest(method, baseUrl + resource, xmlPayload.getBytes(StandardCharsets.UTF_8))
+				.withReplayable("PUT".equals(method));
+		return callRecurlySafeAsync(request, clazz, true);
+	}
+
+	private RecurlySerializationException payloadSerializationError(final Object payload, final Class<?> clazz, final IOException e) {
+		log.warn("Unable to serialize {} object as XML: {}", clazz.getName(), payload.toString());
+		return new RecurlySerializationException("Unable to serialize {} object as XML: {}", e);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
 	
-	protected RecurlyAPICallResults<String> doSinglePageRecurlySafeCall(final BoundRequestBuilder builder, final RecurlyAPICallResults<String> pageResults, final String requestKey){
+	protected <T> List<T> callRecurlySafe(final RecurlyRequest request, @Nullable final Class<T> clazz, final boolean parseResult) {
+		return awaitResult(callRecurlySafeAsync(request, clazz, parseResult));
+	}
+
+	protected List<String> callRecurlySafe(final RecurlyRequest request) {
+		return awaitResult(callRecurlySafeAsync(request));
+	}
+
+	protected <T> CompletableFuture<List<T>> callRecurlySafeAsync(final RecurlyRequest request, @Nullable final Class<T> clazz, final boolean parseResult) {
+		if(!parseResult){
+			return callRecurlySafeAsync(request).thenApply(results -> null);
+		}
+		// Deadline views keep their own requests, so that they can cancel them
+		if (config.isRequestCoalescingEnabled() && deadline == null && "GET".equals(request.getMethod())) {
+			return coalesce(request, clazz);
+		}
+		return collect(deserializePages(request, credentials, clazz));
+	}
+
+	/**
+	 * Joins the identical GET already in flight, if any, or makes it. Every
+	 * caller gets its own list of the shared, deserialized pages. Cancelling
+	 * the returned future does not abort the shared request.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<List<T>> coalesce(final RecurlyRequest request, @Nullable final Class<T> clazz) {
+		final String key = request.getMethod() + " " + request.getUrl() + " " + credentials.getEncodedKey() + " " + (clazz == null ? null : clazz.getName());
+		final CompletableFuture<List<T>> flight = new CompletableFuture<>();
+		final CompletableFuture<List<T>> existing = (CompletableFuture<List<T>>) inFlightGets.putIfAbsent(key, flight);
+		if (existing != null) {
+			coalescedCalls.increment();
+			return existing.thenApply(ArrayList::new);
+		}
+		final CompletableFuture<List<T>> pages;
 		try {
-			final AtomicReference<Throwable> tRef = new AtomicReference<>();
-			RecurlyAPICallResults<String> result = builder.addHeader("Authorization", "Basic " + requestKey).addHeader("Accept", "application/xml")
-					.addHeader("Content-Type", "application/xml; charset=utf-8").execute(new AsyncCompletionHandler<RecurlyAPICallResults<String>>() {
-						
-						@Override
-						public void onThrowable(Throwable t) {
-							tRef.set(t); // We do this because it seems that Ning sporadically smothers the exceptions from onCompleted
-						}
+			pages = deserializePages(request, credentials, clazz).collect();
+		} catch (RuntimeException e) {
+			inFlightGets.remove(key, flight);
+			throw e;
+		}
+		pages.whenComplete((results, t) -> {
+			// Later callers make a new request, the result may be stale by then
+			inFlightGets.remove(key, flight);
+			if (t != null) {
+				flight.completeExceptionally(unwrapCompletionException(t));
+			} else {
+				flight.complete(results);
+			}
+		});
+		return flight.thenApply(ArrayList::new);
+	}
 
-						@Override
-						public RecurlyAPICallResults<String> onCompleted(final Response response) throws Exception {						
-							if (response.getStatusCode() >= 300) {
-								log.debug("Recurly error whilst calling: status[{}] body{}", response.getStatusCode(), response.getUri());
-								log.debug("Recurly error: {}", response.getResponseBody());
-								throw new RecurlyAPIException("Recurly error status:[" + response.getStatusCode() + "] error body: " + response.getResponseBody(), response.getStatusCode());
-							}
-
-							final InputStream in = response.getResponseBodyAsStream();
-							try {
-								String payload = convertStreamToString(in);
-								if (debug()) {
-									log.info("Msg from Recurly API :: {}", payload);
-								}
-								pageResults.getResults().add(payload);
-								pageResults.setNextPageUrl(getPageUrlFromResponseHeader(response));
-								
-								return pageResults;
-							} finally {
-								closeStream(in);
-							}
-						}
-					}).get();
-			// TODO: Investigate why sometimes when we encounter exceptions we don't bubble it up but rather Ning somehow smothers it and returns null
-			// ---> Begin hacky workaround <---
-			if(result == null){
-				Throwable encounteredException = tRef.get();
-				log.debug("Received a null result which may have been caused by an exception[" + encounteredException + "] that was smothered.");
-				// See if we encountered a Recurly API Exception
-				RecurlyAPIException apiE = unwrapRecurlyAPIException(encounteredException);
-				if(apiE != null){
-					throw apiE;
+	protected CompletableFuture<List<String>> callRecurlySafeAsync(final RecurlyRequest request) {
+		return collect(prefetchPages(request, RecurlyClientBase::readString));
+	}
+
+	private <T> CompletableFuture<List<T>> collect(final RecurlyPagePrefetcher<T> pages) {
+		if (deadline == null || !deadline.allowsPartialResults()) {
+			return pages.collect();
+		}
+		return pages.collect(t -> t instanceof RecurlyDeadlineExceededException);
+	}
+
+	/**
+	 * Issues the given request and pipelines the requests for any further
+	 * pages, parsing each page with the given parser as soon as it arrives.
+	 */
+	<T> RecurlyPagePrefetcher<T> prefetchPages(final RecurlyRequest request, final Function<InputStream, T> parser) {
+		return prefetchPages(request, credentials, parser, config.getPagePrefetchDepth());
+	}
+
+	<T> RecurlyPagePrefetcher<T> prefetchPages(final RecurlyRequest request, final RecurlyCredentials credentials, final Function<InputStream, T> parser, final int prefetchDepth) {
+		return prefetchPages(request, credentials, parser, prefetchDepth, null);
+	}
+
+	/**
+	 * Deserializes the pages to the given type, reusing the objects of
+	 * responses revalidated from the response cache
+	 */
+	private <T> RecurlyPagePrefetcher<T> deserializePages(final RecurlyRequest request, final RecurlyCredentials credentials, @Nullable final Class<T> clazz) {
+		return prefetchPages(request, credentials, payload -> deserialize(payload, clazz), config.getPagePrefetchDepth(), clazz);
+	}
+
+	private <T> RecurlyPagePrefetcher<T> prefetchPages(final RecurlyRequest request, final RecurlyCredentials credentials, final Function<InputStream, T> parser,
+			final int prefetchDepth, @Nullable final Class<T> resultType) {
+		// Later pages belong to the same endpoint, whatever their cursor
+		final String endpoint = RecurlyTrafficMetrics.endpointOf(request.getMethod(), request.getUrl());
+		final Function<RecurlyResponse, T> pageParser = response -> readPayload(response, endpoint, parser);
+		return new RecurlyPagePrefetcher<>(requestPage(request, credentials),
+				url -> requestPage(new RecurlyRequest("GET", url), credentials),
+				responseCache == null || resultType == null ? pageParser : response -> responseCache.parse(response, resultType, () -> pageParser.apply(response)),
+				getDeserializationExecutor(), prefetchDepth);
+	}
+
+	/**
+	 * Executor on which response payloads are deserialized, keeping parsing
+	 * off the http client's I/O threads.
+	 */
+	protected Executor getDeserializationExecutor() {
+		return ForkJoinPool.commonPool();
+	}
+
+	/**
+	 * Scans the records of a collection created between the given times, both
+	 * inclusive, by paginating time windows of it concurrently. See
+	 * {@link RecurlyParallelScan}.
+	 *
+	 * @param createdAt the creation time of a record, used to split windows
+	 * @param ordered   whether the consumer gets the records in creation order
+	 * @param consumer  gets the records one at a time, on the threads the
+	 *                  pages are parsed on
+	 * @return the number of records scanned
+	 */
+	protected <R extends RecurlyObject, T extends RecurlyObjects<R>> CompletableFuture<Long> doGETsInParallel(final String resource, final Class<T> clazz,
+			final Function<R, DateTime> createdAt, final DateTime begin, final DateTime end, final boolean ordered, final Consumer<? super R> consumer) {
+		return RecurlyParallelScan.run(begin, end, (first, last) -> {
+			final String url = buildRecurlyUrl(resource, "&sort=created_at&order=asc&begin_time=" + urlEncode(TIME_PARAM_FORMAT.print(first))
+					+ "&end_time=" + urlEncode(TIME_PARAM_FORMAT.print(last)));
+			if(config.isDebug()){
+				log.info("Msg to Recurly API [GET] :: URL : {}", url);
+			}
+			// One page at a time, so a window can be split after its first page
+			return prefetchPages(new RecurlyRequest("GET", url), credentials, payload -> deserialize(payload, clazz), 0);
+		}, createdAt, config.getBulkConcurrency(), ordered, consumer);
+	}
+
+	/**
+	 * Looks up each distinct key, with at most
+	 * {@link RecurlyClientConfig#getBulkConcurrency()} lookups in flight.
+	 *
+	 * @param lookup starts the lookup of a key, e.g. a call to doGETAsync
+	 */
+	protected <T> CompletableFuture<RecurlyBulkResult<T>> bulkLookup(final Collection<String> keys, final Function<String, CompletableFuture<T>> lookup) {
+		return RecurlyBulkLookup.run(keys, config.getBulkConcurrency(), lookup);
+	}
+	
+	protected RecurlyAPICallResults<String> doSinglePageRecurlySafeCall(final RecurlyRequest request, final RecurlyAPICallResults<String> pageResults, final RecurlyCredentials credentials){
+		return awaitResult(doSinglePageRecurlySafeCallAsync(request, pageResults, credentials));
+	}
+
+	protected CompletableFuture<RecurlyAPICallResults<String>> doSinglePageRecurlySafeCallAsync(final RecurlyRequest request, final RecurlyAPICallResults<String> pageResults, final RecurlyCredentials credentials){
+		final RecurlyPendingPage page = requestPage(request, credentials);
+		final String endpoint = RecurlyTrafficMetrics.endpointOf(request.getMethod(), request.getUrl());
+		final CompletableFuture<RecurlyAPICallResults<String>> result = page.getBody().thenCombineAsync(page.getNextPageUrl(), (response, nextPageUrl) -> {
+			pageResults.getResults().add(readPayload(response, endpoint, RecurlyClientBase::readString));
+			pageResults.setNextPageUrl(nextPageUrl);
+			return pageResults;
+		}, getDeserializationExecutor());
+		// Abort the underlying request if the caller gives up on this page
+		result.whenComplete((r, t) -> {
+			if (result.isCancelled()) {
+				page.cancel();
+			}
+		});
+		return result;
+	}
+
+	RecurlyPendingPage requestPage(final RecurlyRequest request, final RecurlyCredentials credentials) {
+		// Identifies the key in the rate limits and cached responses
+		final String requestKey = credentials.getEncodedKey();
+		final RecurlyPendingPage page = new RecurlyPendingPage();
+		if (deadline != null && deadline.isExpired()) {
+			page.failed(deadline.exceeded());
+			return page;
+		}
+		RecurlyRequest authorized = request.withHeader("Accept", "application/xml").withHeader("Content-Type", "application/xml; charset=utf-8");
+		if (credentials.getAuthorization() != null) {
+			authorized = authorized.withHeader("Authorization", credentials.getAuthorization());
+		}
+		if (config.isCompressionEnabled()) {
+			authorized = authorized.withHeader("Accept-Encoding", "gzip, deflate");
+		}
+		final boolean cacheable = responseCache != null && "GET".equals(request.getMethod());
+		final RecurlyResponseCache.Entry cached = cacheable ? responseCache.get(request.getUrl(), requestKey) : null;
+		if (cached != null) {
+			authorized = authorized.withHeader(RecurlyResponseCache.IF_NONE_MATCH_HEADER, cached.getEtag());
+		}
+		final RecurlyRequest toSend = authorized;
+		final Consumer<RecurlyResponseHeaders> headersListener = headers -> {
+			if (rateLimiter != null) {
+				rateLimiter.update(requestKey, headers);
+			}
+			// The next page can go out while this body is still downloading
+			if (headers.getStatusCode() < 300) {
+				page.headersReceived(getPageUrlFromLinkHeader(headers.getHeader(RECURLY_PAGINATION_HEADER)));
+			} else if (headers.getStatusCode() == 304 && cached != null) {
+				page.headersReceived(getPageUrlFromResponseHeader(cached.getResponse()));
+			}
+		};
+		// Each attempt goes through the breaker, so retries stop as soon as it opens
+		final RecurlyTransport transport = root.transport;
+		final Supplier<CompletableFuture<RecurlyResponse>> call = () -> transport.execute(toSend, headersListener);
+		final Supplier<CompletableFuture<RecurlyResponse>> send = () -> circuitBreakers.execute(toSend, hedger == null ? call : () -> hedger.execute(toSend, call));
+		CompletableFuture<RecurlyResponse> response = retrier.execute(toSend, () -> {
+			if (rateLimiter == null) {
+				return send.get();
+			}
+			// Every attempt takes its own slot
+			return RecurlyScheduler.schedule(rateLimiter.acquire(requestKey), send);
+		}, deadline);
+		if (deadline != null) {
+			// Cancels whichever attempt or backoff is under way when the time is up
+			response = RecurlyScheduler.withTimeout(response, deadline.remainingNanos(), deadline::exceeded);
+		}
+		response.whenComplete((r, t) -> {
+			if (t != null) {
+				final Throwable cause = unwrapCompletionException(t);
+				if (deadline != null && deadline.isExpired() && !(cause instanceof RecurlyAPIException)) {
+					// The last attempt may have timed out a moment before the deadline did
+					page.failed(deadline.exceeded());
+				} else {
+					page.failed(cause instanceof RecurlyException ? cause : new RecurlyException("Execution error", cause));
+				}
+				return;
+			}
+			// Complete the page ourselves rather than relying on the transport to surface exceptions thrown from here
+			try {
+				if (r.getStatusCode() == 304 && cached != null) {
+					// Unchanged, hand out the cached body and the objects already parsed from it
+					responseCache.notModified();
+					page.completed(cached.getResponse(), getPageUrlFromResponseHeader(cached.getResponse()));
+					return;
+				}
+				if (r.getStatusCode() >= 300) {
+					final String errorBody = readString(openPayload(r));
+					log.debug("Recurly error whilst calling: status[{}] body{}", r.getStatusCode(), request.getUrl());
+					log.debug("Recurly error: {}", errorBody);
+					throw new RecurlyAPIException("Recurly error status:[" + r.getStatusCode() + "] error body: " + errorBody, r.getStatusCode());
+				}
+
+				// Hand the raw (possibly compressed) bytes over, decompression and parsing happen off the I/O thread
+				if (config.isDebug()) {
+					log.info("Msg from Recurly API :: {}", readString(openPayload(r)));
+				}
+				if (cacheable) {
+					responseCache.put(request.getUrl(), requestKey, r);
 				}
-				if(encounteredException != null){
-					throw new RecurlyException("Execution error", encounteredException);
-				}else{
-					throw new RecurlyException("Unable to retrieve a result but no exception was encountered.");
+				if (!"GET".equals(request.getMethod())) {
+					notifyWriteListeners(request);
 				}
+				page.completed(r, getPageUrlFromResponseHeader(r));
+			} catch (RuntimeException e) {
+				page.failed(e);
 			}
-			// ---> End hacky workaround <---
-			
-			return result;
+		});
+		page.setResponse(response);
+		return page;
+	}
+
+	/**
+	 * Registers a listener told about every successful POST, PUT and DELETE
+	 * made by this client or its views, with the request that was made
+	 */
+	void addWriteListener(final Consumer<RecurlyRequest> listener) {
+		writeListeners.add(listener);
+	}
+
+	void removeWriteListener(final Consumer<RecurlyRequest> listener) {
+		writeListeners.remove(listener);
+	}
+
+	private void notifyWriteListeners(final RecurlyRequest request) {
+		for (Consumer<RecurlyRequest> listener : writeListeners) {
+			try {
+				listener.accept(request);
+			} catch (RuntimeException e) {
+				log.warn("Write listener failed for " + request.getMethod() + " " + request.getUrl(), e);
+			}
+		}
+	}
+
+	/**
+	 * Blocks until the given call completes, unwrapping failures into the
+	 * exceptions thrown by the synchronous API
+	 */
+	protected static <T> T awaitResult(final Future<T> future) {
+		try {
+			return future.get();
 		} catch (ExecutionException e) {
-			Throwable t = e;
 			// Unwrap any of the API exceptions
-			RecurlyAPIException apiE = unwrapRecurlyAPIException(t);
+			RecurlyAPIException apiE = unwrapRecurlyAPIException(e);
 			if(apiE != null){
 				throw apiE;
 			}
-			throw new RecurlyException("Execution error", e);
+			if(e.getCause() instanceof RecurlyException){
+				throw (RecurlyException) e.getCause();
+			}
+			throw new RecurlyException("Execution error", e.getCause());
 		} catch (InterruptedException e) {
 			log.error("Interrupted while calling Recurly", e);
 			throw new RecurlyException("Interrupted while calling Recurly", e);
 		}
 	}
+
+	/**
+	 * Strips the wrappers futures put around the failure of a call
+	 */
+	protected static Throwable unwrapCompletionException(Throwable t) {
+		while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+			t = t.getCause();
+		}
+		return t;
+	}
+
+	protected static <T> CompletableFuture<T> failedFuture(final Throwable t) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(t);
+		return future;
+	}
+
+	/**
+	 * Rethrows the failure of a completion stage so that it can be re-raised
+	 * from within a dependent stage (e.g. exceptionally)
+	 */
+	protected static CompletionException asCompletionException(final Throwable t) {
+		if (t instanceof CompletionException) {
+			return (CompletionException) t;
+		}
+		return new CompletionException(t);
+	}
+
+	/**
+	 * Maps the Recurly "not found" error carrying the given message to a null
+	 * result, like the blocking client does for optional sub-resources.
+	 */
+	protected static <T> CompletableFuture<T> nullIfMissing(final CompletableFuture<T> call, final String missingMessage) {
+		return call.exceptionally(t -> {
+			RecurlyAPIException e = unwrapRecurlyAPIException(t);
+			if (e != null && e.getMessage() != null && e.getMessage().contains(missingMessage)) {
+				return null;
+			}
+			// Some other problem occurred, re-throw the exception
+			throw asCompletionException(t);
+		});
+	}
+
+	protected static String urlEncode(final String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RecurlyAPIException("Invalid Request", e);
+		}
+	}
+
+	protected static <R extends RecurlyObject, T extends RecurlyObjects<R>> T depaginateResults(List<T> results){
+		if (results.size() <= 1) {
+			return results.isEmpty() ? null : results.get(0);
+		}
+		// Gather the pages into a new container, they may be shared between coalesced calls
+		final T depaginatedType = newContainer(results.get(0));
+		Iterator<T> ai = results.iterator();
+		while(ai.hasNext()){
+			List<R> objects = ai.next().getObjects();
+			depaginatedType.getObjects().addAll(objects);
+		}
+
+		return depaginatedType;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends RecurlyObjects<?>> T newContainer(final T page) {
+		try {
+			return (T) page.getClass().getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new RecurlySerializationException("Unable to create a " + page.getClass().getSimpleName(), e);
+		}
+	}
 	
 	public static RecurlyAPIException unwrapRecurlyAPIException(Throwable t){
 		do {
@@ -439,11 +975,14 @@ public abstract class RecurlyClientBase {
 		return null;
 	}
 
-	private String getPageUrlFromResponseHeader(Response response) {
+	private String getPageUrlFromResponseHeader(RecurlyResponse response) {
+		return getPageUrlFromLinkHeader(response.getHeader(RECURLY_PAGINATION_HEADER));
+	}
+
+	private String getPageUrlFromLinkHeader(@Nullable String header) {
 		// TODO: There is probably a less hacky way to parse the pagination
 		// header...
 
-		String header = response.getHeader(RECURLY_PAGINATION_HEADER);
 		if (header != null) {
 			/*
 			 * EXAMPLE:
@@ -476,16 +1015,144 @@ public abstract class RecurlyClientBase {
 	protected <T> List<T> deserialize(List<String> data, @Nullable final Class<T> clazz) throws JsonParseException, JsonMappingException, IOException {
 		List<T> results = new ArrayList<>();
 		for (String dataItem : data) {
-			// EM - the jackson xml parser messes up and reads quantity/unit_amount as null with "type" is included in these fields so parse it out (it's ugly/hacky but nothing else seems to work)
-			dataItem = dataItem.replaceAll("<(subscription_add_on)>([\\s\\S]+?)<quantity(.*?)>([\\s\\S]+?)</(\\1)>", "<$1>$2<quantity>$4</$1>");
-			dataItem = dataItem.replaceAll("<(subscription_add_on)>([\\s\\S]+?)<unit_amount_in_cents(.*?)>([\\s\\S]+?)</(\\1)>", "<$1>$2<unit_amount_in_cents>$4</$1>");
-			T obj = xmlMapper.readValue(dataItem, clazz);
-			results.add(obj);
+			results.add(deserializePage(dataItem, clazz));
 		}
 
 		return results;
 	}
 
+	private <T> T deserializePage(final String payload, @Nullable final Class<T> clazz) throws JsonParseException, JsonMappingException, IOException {
+		return xmlMapper.readValue(payload, clazz);
+	}
+
+	/**
+	 * Deserializes a single page, for use from completion stages
+	 */
+	protected <T> T deserialize(final String payload, @Nullable final Class<T> clazz) {
+		try {
+			return deserializePage(payload, clazz);
+		} catch (IOException e) {
+			log.warn("Error while calling Recurly", e);
+			throw new RecurlySerializationException("Error while calling Recurly", e);
+		}
+	}
+
+	/**
+	 * Deserializes a single page straight from the (decompressed) response
+	 * body, for use from completion stages
+	 */
+	protected <T> T deserialize(final InputStream payload, @Nullable final Class<T> clazz) {
+		try {
+			return xmlMapper.readValue(payload, clazz);
+		} catch (IOException e) {
+			log.warn("Error while calling Recurly", e);
+			throw new RecurlySerializationException("Error while calling Recurly", e);
+		}
+	}
+
+	public RecurlyTrafficMetrics getTrafficMetrics() {
+		return trafficMetrics;
+	}
+
+	/**
+	 * The circuit breakers of this client, for monitoring
+	 */
+	public RecurlyCircuitBreakers getCircuitBreakers() {
+		return circuitBreakers;
+	}
+
+	/**
+	 * The number of GETs answered from the response cache after Recurly
+	 * replied 304 Not Modified, 0 unless
+	 * {@link RecurlyClientConfig#getResponseCacheSize()} is set
+	 */
+	public long getNotModifiedCount() {
+		return responseCache == null ? 0 : responseCache.getNotModifiedCount();
+	}
+
+	/**
+	 * The number of calls that joined an identical GET already in flight,
+	 * 0 unless {@link RecurlyClientConfig#isRequestCoalescingEnabled()}
+	 */
+	public long getCoalescedCallCount() {
+		return coalescedCalls.sum();
+	}
+
+	/**
+	 * The number of GET requests hedged so far, 0 unless
+	 * {@link RecurlyClientConfig#isHedgingEnabled()}
+	 */
+	public long getHedgeCount() {
+		return hedger == null ? 0 : hedger.getHedgeCount();
+	}
+
+	/**
+	 * The number of hedged requests answered before the original
+	 */
+	public long getHedgeWinCount() {
+		return hedger == null ? 0 : hedger.getHedgeWinCount();
+	}
+
+	/**
+	 * The number of requests retried so far, see {@link RecurlyRetryPolicy}
+	 */
+	public long getRetryCount() {
+		return retrier.getRetryCount();
+	}
+
+	/**
+	 * Runs the parser over the decompressed body of the response, recording
+	 * the bytes received for the endpoint
+	 */
+	private <T> T readPayload(final RecurlyResponse response, final String endpoint, final Function<InputStream, T> parser) {
+		final CountingInputStream payload = new CountingInputStream(openPayload(response));
+		try {
+			return parser.apply(payload);
+		} finally {
+			closeStream(payload);
+			trafficMetrics.record(endpoint, response.getBody().length, payload.getCount());
+		}
+	}
+
+	/**
+	 * Opens the response body, decompressing it on the fly according to its
+	 * Content-Encoding
+	 */
+	private static InputStream openPayload(final RecurlyResponse response) {
+		final InputStream body = response.getBodyAsStream();
+		final String encoding = response.getHeader("Content-Encoding");
+		if (encoding == null || response.getBody().length == 0) {
+			return body;
+		}
+		try {
+			switch (encoding.trim().toLowerCase()) {
+			case "gzip":
+			case "x-gzip":
+				return new GZIPInputStream(body);
+			case "deflate":
+				return new InflaterInputStream(body);
+			default:
+				return body;
+			}
+		} catch (IOException e) {
+			throw new RecurlySerializationException("Unable to decompress " + encoding + " response", e);
+		}
+	}
+
+	protected static String readString(final InputStream in) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		try {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			throw new RecurlySerializationException("Unable to read response", e);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
 	protected String convertStreamToString(java.io.InputStream is) {
 		try {
 			return new java.util.Scanner(is).useDelimiter("\\A").next();
@@ -509,14 +1176,75 @@ public abstract class RecurlyClientBase {
 	}
 
 	protected static AsyncHttpClient createHttpClient() {
-		// Don't limit the number of connections per host
-		// See https://github.com/ning/async-http-client/issues/issue/28
+		return createHttpClient(RecurlyClientConfig.defaultConfig(), null);
+	}
+
+	/**
+	 * @param eventLoopGroup the I/O threads to use, or null to let the http
+	 *                       client create its own
+	 */
+	protected static AsyncHttpClient createHttpClient(final RecurlyClientConfig config, @Nullable final EventLoopGroup eventLoopGroup) {
 		final DefaultAsyncHttpClientConfig.Builder builder = new DefaultAsyncHttpClientConfig.Builder();
-		builder.setMaxConnectionsPerHost(-1);
-		builder.setUserAgent("");
+		builder.setConnectTimeout(config.getConnectTimeout());
+		builder.setReadTimeout(config.getReadTimeout());
+		builder.setRequestTimeout(config.getRequestTimeout());
+		builder.setKeepAlive(config.isKeepAlive());
+		builder.setPooledConnectionIdleTimeout(config.getPooledConnectionIdleTimeout());
+		builder.setConnectionTtl(config.getConnectionTtl());
+		builder.setMaxConnections(config.getMaxConnections());
+		builder.setMaxConnectionsPerHost(config.getMaxConnectionsPerHost());
+		builder.setUserAgent(config.getUserAgent());
+		if (config.isCompressionEnabled()) {
+			// Leave compressed bodies alone so that they get inflated while being parsed, off the I/O threads
+			builder.setHttpAdditionalChannelInitializer(channel -> {
+				if (channel.pipeline().get(ChannelManager.INFLATER_HANDLER) != null) {
+					channel.pipeline().remove(ChannelManager.INFLATER_HANDLER);
+				}
+			});
+		}
+		if (eventLoopGroup != null) {
+			builder.setEventLoopGroup(eventLoopGroup);
+		}
 		return new DefaultAsyncHttpClient(builder.build());
 	}
 
+	private static class CountingInputStream extends FilterInputStream {
+		private long count = 0;
+
+		CountingInputStream(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b != -1) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			final int read = super.read(b, off, len);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			final long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+
 	protected class RecurlyAPICallResults<T> {
 		private String nextPageUrl = null;
 		private List<T> results = new ArrayList<>();
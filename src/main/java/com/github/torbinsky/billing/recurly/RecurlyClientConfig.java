@@ -0,0 +1,635 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.nio.file.Path;
+
+import javax.annotation.Nullable;
+
+import com.github.torbinsky.billing.recurly.transport.RecurlyTransport;
+
+/**
+ * Immutable settings for a Recurly client: the http connection pool,
+ * timeouts and I/O threads, as well as the paging and debug options.
+ * <p/>
+ * A new {@link Builder} starts out from the recurly.* System properties as
+ * they are at that moment, so a client never looks them up again once it
+ * has been created.
+ *
+ * @author twerner
+ *
+ */
+public final class RecurlyClientConfig {
+
+	private final boolean debug;
+	private final int pageSize;
+	private final int pagePrefetchDepth;
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final int requestTimeout;
+	private final boolean keepAlive;
+	private final int pooledConnectionIdleTimeout;
+	private final int connectionTtl;
+	private final int maxConnections;
+	private final int maxConnectionsPerHost;
+	private final int ioThreads;
+	private final String userAgent;
+	private final boolean compressionEnabled;
+	private final boolean rateLimitingEnabled;
+	private final double rateLimitHeadroom;
+	private final RecurlyRetryPolicy retryPolicy;
+	private final RecurlyCircuitBreakerPolicy circuitBreakerPolicy;
+	private final boolean hedgingEnabled;
+	private final double hedgePercentile;
+	private final double hedgeMaxFraction;
+	private final boolean requestCoalescingEnabled;
+	private final int responseCacheSize;
+	private final int bulkConcurrency;
+	private final int entityCacheSize;
+	private final int entityCacheTtl;
+	private final int entityCacheStaleWhileRevalidate;
+	private final Path entityCacheDirectory;
+	private final RecurlyTransport transport;
+
+	private RecurlyClientConfig(final Builder builder) {
+		this.debug = builder.debug;
+		this.pageSize = builder.pageSize;
+		this.pagePrefetchDepth = builder.pagePrefetchDepth;
+		this.connectTimeout = builder.connectTimeout;
+		this.readTimeout = builder.readTimeout;
+		this.requestTimeout = builder.requestTimeout;
+		this.keepAlive = builder.keepAlive;
+		this.pooledConnectionIdleTimeout = builder.pooledConnectionIdleTimeout;
+		this.connectionTtl = builder.connectionTtl;
+		this.maxConnections = builder.maxConnections;
+		this.maxConnectionsPerHost = builder.maxConnectionsPerHost;
+		this.ioThreads = builder.ioThreads;
+		this.userAgent = builder.userAgent;
+		this.compressionEnabled = builder.compressionEnabled;
+		this.rateLimitingEnabled = builder.rateLimitingEnabled;
+		this.rateLimitHeadroom = builder.rateLimitHeadroom;
+		this.retryPolicy = builder.retryPolicy;
+		this.circuitBreakerPolicy = builder.circuitBreakerPolicy;
+		this.hedgingEnabled = builder.hedgingEnabled;
+		this.hedgePercentile = builder.hedgePercentile;
+		this.hedgeMaxFraction = builder.hedgeMaxFraction;
+		this.requestCoalescingEnabled = builder.requestCoalescingEnabled;
+		this.responseCacheSize = builder.responseCacheSize;
+		this.bulkConcurrency = builder.bulkConcurrency;
+		this.entityCacheSize = builder.entityCacheSize;
+		this.entityCacheTtl = builder.entityCacheTtl;
+		this.entityCacheStaleWhileRevalidate = builder.entityCacheStaleWhileRevalidate;
+		this.entityCacheDirectory = builder.entityCacheDirectory;
+		this.transport = builder.transport;
+	}
+
+	/**
+	 * The defaults, taken from the current System properties
+	 */
+	public static RecurlyClientConfig defaultConfig() {
+		return new Builder().build();
+	}
+
+	public boolean isDebug() {
+		return debug;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public int getPagePrefetchDepth() {
+		return pagePrefetchDepth;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public int getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	public int getPooledConnectionIdleTimeout() {
+		return pooledConnectionIdleTimeout;
+	}
+
+	public int getConnectionTtl() {
+		return connectionTtl;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	public int getIoThreads() {
+		return ioThreads;
+	}
+
+	public String getUserAgent() {
+		return userAgent;
+	}
+
+	/**
+	 * Whether gzip/deflate compressed responses are requested
+	 */
+	public boolean isCompressionEnabled() {
+		return compressionEnabled;
+	}
+
+	/**
+	 * Whether requests are paced per API key from Recurly's rate limit headers
+	 */
+	public boolean isRateLimitingEnabled() {
+		return rateLimitingEnabled;
+	}
+
+	/**
+	 * Share of the rate limit left unused when pacing requests
+	 */
+	public double getRateLimitHeadroom() {
+		return rateLimitHeadroom;
+	}
+
+	public RecurlyRetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	public RecurlyCircuitBreakerPolicy getCircuitBreakerPolicy() {
+		return circuitBreakerPolicy;
+	}
+
+	/**
+	 * Whether slow GET requests are sent a second time
+	 */
+	public boolean isHedgingEnabled() {
+		return hedgingEnabled;
+	}
+
+	/**
+	 * Percentile of an endpoint's recent latencies after which a GET is hedged
+	 */
+	public double getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	/**
+	 * Largest share of GET requests that may be hedged
+	 */
+	public double getHedgeMaxFraction() {
+		return hedgeMaxFraction;
+	}
+
+	/**
+	 * Whether concurrent identical GETs share a single request
+	 */
+	public boolean isRequestCoalescingEnabled() {
+		return requestCoalescingEnabled;
+	}
+
+	/**
+	 * Number of GET responses kept for revalidation with their ETag, 0 if
+	 * responses are not cached
+	 */
+	public int getResponseCacheSize() {
+		return responseCacheSize;
+	}
+
+	/**
+	 * The most requests a bulk lookup, e.g.
+	 * {@link RecurlyClient#getAccounts(java.util.Collection)}, or a parallel
+	 * scan has in flight
+	 */
+	public int getBulkConcurrency() {
+		return bulkConcurrency;
+	}
+
+	/**
+	 * Number of objects kept by each cache of a {@link CachingRecurlyClient}
+	 */
+	public int getEntityCacheSize() {
+		return entityCacheSize;
+	}
+
+	/**
+	 * Milliseconds an object cached by a {@link CachingRecurlyClient} is
+	 * served without being reloaded
+	 */
+	public int getEntityCacheTtl() {
+		return entityCacheTtl;
+	}
+
+	/**
+	 * Milliseconds past its TTL a cached object is still served while it is
+	 * reloaded in the background
+	 */
+	public int getEntityCacheStaleWhileRevalidate() {
+		return entityCacheStaleWhileRevalidate;
+	}
+
+	/**
+	 * Directory the caches of a {@link CachingRecurlyClient} are saved to
+	 * and restored from, or null if they are kept in memory only
+	 */
+	@Nullable
+	public Path getEntityCacheDirectory() {
+		return entityCacheDirectory;
+	}
+
+	/**
+	 * The transport to send requests with, or null for an AsyncHttpClient
+	 * built from this config
+	 */
+	@Nullable
+	public RecurlyTransport getTransport() {
+		return transport;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("RecurlyClientConfig");
+		sb.append("{debug=").append(debug);
+		sb.append(", pageSize=").append(pageSize);
+		sb.append(", pagePrefetchDepth=").append(pagePrefetchDepth);
+		sb.append(", connectTimeout=").append(connectTimeout);
+		sb.append(", readTimeout=").append(readTimeout);
+		sb.append(", requestTimeout=").append(requestTimeout);
+		sb.append(", keepAlive=").append(keepAlive);
+		sb.append(", pooledConnectionIdleTimeout=").append(pooledConnectionIdleTimeout);
+		sb.append(", connectionTtl=").append(connectionTtl);
+		sb.append(", maxConnections=").append(maxConnections);
+		sb.append(", maxConnectionsPerHost=").append(maxConnectionsPerHost);
+		sb.append(", ioThreads=").append(ioThreads);
+		sb.append(", userAgent='").append(userAgent).append('\'');
+		sb.append(", compressionEnabled=").append(compressionEnabled);
+		sb.append(", rateLimitingEnabled=").append(rateLimitingEnabled);
+		sb.append(", rateLimitHeadroom=").append(rateLimitHeadroom);
+		sb.append(", retryPolicy=").append(retryPolicy);
+		sb.append(", circuitBreakerPolicy=").append(circuitBreakerPolicy);
+		sb.append(", hedgingEnabled=").append(hedgingEnabled);
+		sb.append(", hedgePercentile=").append(hedgePercentile);
+		sb.append(", hedgeMaxFraction=").append(hedgeMaxFraction);
+		sb.append(", requestCoalescingEnabled=").append(requestCoalescingEnabled);
+		sb.append(", responseCacheSize=").append(responseCacheSize);
+		sb.append(", bulkConcurrency=").append(bulkConcurrency);
+		sb.append(", entityCacheSize=").append(entityCacheSize);
+		sb.append(", entityCacheTtl=").append(entityCacheTtl);
+		sb.append(", entityCacheStaleWhileRevalidate=").append(entityCacheStaleWhileRevalidate);
+		sb.append(", entityCacheDirectory=").append(entityCacheDirectory);
+		sb.append(", transport=").append(transport);
+		sb.append('}');
+		return sb.toString();
+	}
+
+	/**
+	 * Builds a {@link RecurlyClientConfig}. All timeouts are in milliseconds,
+	 * and -1 means no limit for the timeouts and connection limits.
+	 */
+	public static class Builder {
+		private boolean debug = RecurlyClientBase.debug();
+		private int pageSize = RecurlyClientBase.getPageSize();
+		private int pagePrefetchDepth = RecurlyClientBase.getPagePrefetchDepth();
+		private int connectTimeout = 5000;
+		private int readTimeout = 60000;
+		private int requestTimeout = 60000;
+		private boolean keepAlive = true;
+		private int pooledConnectionIdleTimeout = 60000;
+		private int connectionTtl = -1;
+		private int maxConnections = -1;
+		// Don't limit the number of connections per host
+		// See https://github.com/ning/async-http-client/issues/issue/28
+		private int maxConnectionsPerHost = -1;
+		// 0 leaves the number of I/O threads up to the http client
+		private int ioThreads = 0;
+		private String userAgent = "";
+		private boolean compressionEnabled = false;
+		private boolean rateLimitingEnabled = false;
+		private double rateLimitHeadroom = 0.1;
+		private RecurlyRetryPolicy retryPolicy = RecurlyRetryPolicy.noRetries();
+		private RecurlyCircuitBreakerPolicy circuitBreakerPolicy = RecurlyCircuitBreakerPolicy.defaultPolicy();
+		private boolean hedgingEnabled = false;
+		private double hedgePercentile = 0.95;
+		private double hedgeMaxFraction = 0.05;
+		private boolean requestCoalescingEnabled = false;
+		private int responseCacheSize = 0;
+		private int bulkConcurrency = 8;
+		private int entityCacheSize = 10000;
+		private int entityCacheTtl = 60000;
+		private int entityCacheStaleWhileRevalidate = 60000;
+		private Path entityCacheDirectory;
+		private RecurlyTransport transport;
+
+		public Builder setDebug(final boolean debug) {
+			this.debug = debug;
+			return this;
+		}
+
+		public Builder setPageSize(final int pageSize) {
+			if (pageSize <= 0) {
+				throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+			}
+			this.pageSize = pageSize;
+			return this;
+		}
+
+		/**
+		 * How many pages may be downloaded ahead of the page being processed
+		 */
+		public Builder setPagePrefetchDepth(final int pagePrefetchDepth) {
+			this.pagePrefetchDepth = Math.max(0, pagePrefetchDepth);
+			return this;
+		}
+
+		public Builder setConnectTimeout(final int connectTimeout) {
+			this.connectTimeout = connectTimeout;
+			return this;
+		}
+
+		/**
+		 * Maximum time a connection may sit idle while waiting for response data
+		 */
+		public Builder setReadTimeout(final int readTimeout) {
+			this.readTimeout = readTimeout;
+			return this;
+		}
+
+		/**
+		 * Maximum time for a whole request, from connecting until the last byte
+		 * of the response
+		 */
+		public Builder setRequestTimeout(final int requestTimeout) {
+			this.requestTimeout = requestTimeout;
+			return this;
+		}
+
+		public Builder setKeepAlive(final boolean keepAlive) {
+			this.keepAlive = keepAlive;
+			return this;
+		}
+
+		/**
+		 * How long a pooled connection may stay idle before it is closed
+		 */
+		public Builder setPooledConnectionIdleTimeout(final int pooledConnectionIdleTimeout) {
+			this.pooledConnectionIdleTimeout = pooledConnectionIdleTimeout;
+			return this;
+		}
+
+		/**
+		 * Maximum lifetime of a pooled connection
+		 */
+		public Builder setConnectionTtl(final int connectionTtl) {
+			this.connectionTtl = connectionTtl;
+			return this;
+		}
+
+		public Builder setMaxConnections(final int maxConnections) {
+			this.maxConnections = maxConnections;
+			return this;
+		}
+
+		public Builder setMaxConnectionsPerHost(final int maxConnectionsPerHost) {
+			this.maxConnectionsPerHost = maxConnectionsPerHost;
+			return this;
+		}
+
+		/**
+		 * Number of I/O threads used by the http client, 0 for its default
+		 */
+		public Builder setIoThreads(final int ioThreads) {
+			if (ioThreads < 0) {
+				throw new IllegalArgumentException("Number of I/O threads must not be negative: " + ioThreads);
+			}
+			this.ioThreads = ioThreads;
+			return this;
+		}
+
+		public Builder setUserAgent(final String userAgent) {
+			this.userAgent = userAgent;
+			return this;
+		}
+
+		/**
+		 * Asks Recurly for gzip or deflate compressed responses. They are
+		 * decompressed while being parsed, which trades some CPU for far fewer
+		 * bytes on the wire with large pages.
+		 */
+		public Builder setCompressionEnabled(final boolean compressionEnabled) {
+			this.compressionEnabled = compressionEnabled;
+			return this;
+		}
+
+		/**
+		 * Paces the requests made with each API key so that they stay within
+		 * the quota Recurly reports in its X-RateLimit-* headers, rather than
+		 * running into 429 responses
+		 */
+		public Builder setRateLimitingEnabled(final boolean rateLimitingEnabled) {
+			this.rateLimitingEnabled = rateLimitingEnabled;
+			return this;
+		}
+
+		/**
+		 * Share of each key's rate limit (0 to 1) that paced requests leave
+		 * unused, e.g. for interactive traffic from elsewhere
+		 */
+		public Builder setRateLimitHeadroom(final double rateLimitHeadroom) {
+			if (rateLimitHeadroom < 0 || rateLimitHeadroom >= 1) {
+				throw new IllegalArgumentException("Rate limit headroom must be at least 0 and less than 1: " + rateLimitHeadroom);
+			}
+			this.rateLimitHeadroom = rateLimitHeadroom;
+			return this;
+		}
+
+		/**
+		 * How failed requests are retried; {@link RecurlyRetryPolicy#noRetries()}
+		 * by default, {@link RecurlyRetryPolicy#defaultPolicy()} to turn
+		 * retries on
+		 */
+		public Builder setRetryPolicy(final RecurlyRetryPolicy retryPolicy) {
+			if (retryPolicy == null) {
+				throw new IllegalArgumentException("Retry policy must not be null");
+			}
+			this.retryPolicy = retryPolicy;
+			return this;
+		}
+
+		/**
+		 * When requests fail fast instead of going to a degraded endpoint,
+		 * {@link RecurlyCircuitBreakerPolicy#disabled()} to always send them
+		 */
+		public Builder setCircuitBreakerPolicy(final RecurlyCircuitBreakerPolicy circuitBreakerPolicy) {
+			if (circuitBreakerPolicy == null) {
+				throw new IllegalArgumentException("Circuit breaker policy must not be null");
+			}
+			this.circuitBreakerPolicy = circuitBreakerPolicy;
+			return this;
+		}
+
+		/**
+		 * Sends a second copy of a GET request that has not been answered
+		 * within the usual latency of its endpoint, and uses whichever
+		 * response arrives first. This cuts the tail latency of reads at the
+		 * cost of a few extra requests.
+		 */
+		public Builder setHedgingEnabled(final boolean hedgingEnabled) {
+			this.hedgingEnabled = hedgingEnabled;
+			return this;
+		}
+
+		/**
+		 * Percentile (0 to 1) of an endpoint's recent latencies a GET must
+		 * exceed before it is hedged
+		 */
+		public Builder setHedgePercentile(final double hedgePercentile) {
+			if (hedgePercentile <= 0 || hedgePercentile > 1) {
+				throw new IllegalArgumentException("Hedge percentile must be more than 0 and at most 1: " + hedgePercentile);
+			}
+			this.hedgePercentile = hedgePercentile;
+			return this;
+		}
+
+		/**
+		 * Largest share (0 to 1) of GET requests that may be hedged
+		 */
+		public Builder setHedgeMaxFraction(final double hedgeMaxFraction) {
+			if (hedgeMaxFraction < 0 || hedgeMaxFraction > 1) {
+				throw new IllegalArgumentException("Hedge fraction must be between 0 and 1: " + hedgeMaxFraction);
+			}
+			this.hedgeMaxFraction = hedgeMaxFraction;
+			return this;
+		}
+
+		/**
+		 * Lets a GET made with the same url and API key as one still in flight
+		 * share its response, rather than making a request of its own. The
+		 * callers then also share the deserialized objects, which must
+		 * therefore not be modified.
+		 */
+		public Builder setRequestCoalescingEnabled(final boolean requestCoalescingEnabled) {
+			this.requestCoalescingEnabled = requestCoalescingEnabled;
+			return this;
+		}
+
+		/**
+		 * Keeps up to the given number of GET responses along with their ETag.
+		 * Repeated GETs of the same url and API key are then sent with
+		 * If-None-Match, and if Recurly answers 304 Not Modified the objects
+		 * deserialized from the cached response are handed out again, which
+		 * must therefore not be modified. 0 turns the cache off.
+		 */
+		public Builder setResponseCacheSize(final int responseCacheSize) {
+			if (responseCacheSize < 0) {
+				throw new IllegalArgumentException("Response cache size must not be negative: " + responseCacheSize);
+			}
+			this.responseCacheSize = responseCacheSize;
+			return this;
+		}
+
+		/**
+		 * The most requests a bulk lookup, e.g.
+		 * {@link RecurlyClient#getAccounts(java.util.Collection)}, or a
+		 * parallel scan, e.g. {@link RecurlyClient#scanAccounts}, keeps in
+		 * flight. They also count against the connection limits and, when
+		 * enabled, the rate limit.
+		 */
+		public Builder setBulkConcurrency(final int bulkConcurrency) {
+			if (bulkConcurrency <= 0) {
+				throw new IllegalArgumentException("Bulk concurrency must be positive: " + bulkConcurrency);
+			}
+			this.bulkConcurrency = bulkConcurrency;
+			return this;
+		}
+
+		/**
+		 * Number of objects each cache of a {@link CachingRecurlyClient} keeps,
+		 * the least recently used are evicted past it
+		 */
+		public Builder setEntityCacheSize(final int entityCacheSize) {
+			if (entityCacheSize <= 0) {
+				throw new IllegalArgumentException("Entity cache size must be positive: " + entityCacheSize);
+			}
+			this.entityCacheSize = entityCacheSize;
+			return this;
+		}
+
+		/**
+		 * Milliseconds an object cached by a {@link CachingRecurlyClient} is
+		 * served before it is reloaded
+		 */
+		public Builder setEntityCacheTtl(final int entityCacheTtl) {
+			if (entityCacheTtl < 0) {
+				throw new IllegalArgumentException("Entity cache TTL must not be negative: " + entityCacheTtl);
+			}
+			this.entityCacheTtl = entityCacheTtl;
+			return this;
+		}
+
+		/**
+		 * Milliseconds past its TTL a cached object is still served, while it
+		 * is reloaded in the background. 0 makes reads past the TTL wait for
+		 * the reload.
+		 */
+		public Builder setEntityCacheStaleWhileRevalidate(final int entityCacheStaleWhileRevalidate) {
+			if (entityCacheStaleWhileRevalidate < 0) {
+				throw new IllegalArgumentException("Entity cache stale period must not be negative: " + entityCacheStaleWhileRevalidate);
+			}
+			this.entityCacheStaleWhileRevalidate = entityCacheStaleWhileRevalidate;
+			return this;
+		}
+
+		/**
+		 * Saves the caches of a {@link CachingRecurlyClient} to files in the
+		 * given directory, periodically and when the client is closed, and
+		 * restores them when the next client is created. Restored objects are
+		 * served until they have been reloaded, whatever their age, so a
+		 * freshly started client does not have to wait on Recurly. The
+		 * directory should only be readable by the service, the files hold
+		 * billing details.
+		 */
+		public Builder setEntityCacheDirectory(@Nullable final Path entityCacheDirectory) {
+			this.entityCacheDirectory = entityCacheDirectory;
+			return this;
+		}
+
+		/**
+		 * Sends requests through the given transport instead of an
+		 * AsyncHttpClient. The http settings of this config are then ignored,
+		 * and the client closes the transport when it is closed.
+		 */
+		public Builder setTransport(@Nullable final RecurlyTransport transport) {
+			this.transport = transport;
+			return this;
+		}
+
+		public RecurlyClientConfig build() {
+			return new RecurlyClientConfig(this);
+		}
+	}
+}
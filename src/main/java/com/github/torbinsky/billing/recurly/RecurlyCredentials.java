@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import javax.annotation.Nullable;
+
+/**
+ * The API key a client makes its requests with, along with what is derived
+ * from it once rather than per request: the Authorization header, and a
+ * fingerprint identifying the key in state kept on disk without giving it
+ * away.
+ * <p/>
+ * Immutable, so it is carried by a client or view of one and safe to use
+ * from any thread.
+ *
+ * @author twerner
+ *
+ */
+public final class RecurlyCredentials {
+
+	private static final RecurlyCredentials ANONYMOUS = new RecurlyCredentials("", null, "anonymous");
+
+	private final String encodedKey;
+	private final String authorization;
+	private final String fingerprint;
+
+	private RecurlyCredentials(final String encodedKey, @Nullable final String authorization, final String fingerprint) {
+		this.encodedKey = encodedKey;
+		this.authorization = authorization;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * @param apiKey null for a client only used through views with a key
+	 */
+	public static RecurlyCredentials forApiKey(@Nullable final String apiKey) {
+		if (apiKey == null) {
+			return ANONYMOUS;
+		}
+		final String encodedKey = Base64.getEncoder().encodeToString(apiKey.getBytes(StandardCharsets.UTF_8));
+		return new RecurlyCredentials(encodedKey, "Basic " + encodedKey, fingerprint(encodedKey));
+	}
+
+	/**
+	 * The key, Base64 encoded; identifies the key in the state a client keeps
+	 * per key, e.g. rate limits
+	 */
+	public String getEncodedKey() {
+		return encodedKey;
+	}
+
+	/**
+	 * The value of the Authorization header, null without a key
+	 */
+	@Nullable
+	public String getAuthorization() {
+		return authorization;
+	}
+
+	/**
+	 * The start of the SHA-256 digest of the encoded key, in hex
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("RecurlyCredentials");
+		sb.append("{fingerprint='").append(fingerprint).append('\'');
+		sb.append('}');
+		return sb.toString();
+	}
+
+	private static String fingerprint(final String encodedKey) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-256").digest(encodedKey.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 8; i++) {
+				sb.append(String.format("%02x", digest[i]));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyDeadlineExceededException;
+
+/**
+ * The point in time by which the calls of a client view have to complete.
+ *
+ * @author twerner
+ *
+ */
+final class RecurlyDeadline {
+
+	private final long timeoutMillis;
+	private final long expiresAt;
+	private final boolean partialResults;
+
+	private RecurlyDeadline(final long timeoutNanos, final boolean partialResults) {
+		this.timeoutMillis = TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+		this.expiresAt = System.nanoTime() + timeoutNanos;
+		this.partialResults = partialResults;
+	}
+
+	/**
+	 * A deadline the given time from now
+	 */
+	static RecurlyDeadline after(final Duration timeout, final boolean partialResults) {
+		if (timeout == null || timeout.isNegative()) {
+			throw new IllegalArgumentException("Deadline must not be negative: " + timeout);
+		}
+		return new RecurlyDeadline(timeout.toNanos(), partialResults);
+	}
+
+	long remainingNanos() {
+		return expiresAt - System.nanoTime();
+	}
+
+	boolean isExpired() {
+		return remainingNanos() <= 0;
+	}
+
+	/**
+	 * Whether paginated calls return the pages fetched so far rather than
+	 * failing when the deadline expires
+	 */
+	boolean allowsPartialResults() {
+		return partialResults;
+	}
+
+	RecurlyDeadlineExceededException exceeded() {
+		return new RecurlyDeadlineExceededException("Recurly call did not complete within " + timeoutMillis + " ms");
+	}
+
+	/**
+	 * @param cause the failure of the last attempt, which there is no time left to retry
+	 */
+	RecurlyDeadlineExceededException exceeded(final Throwable cause) {
+		return new RecurlyDeadlineExceededException("Recurly call did not complete within " + timeoutMillis + " ms", cause);
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import com.github.torbinsky.billing.recurly.model.RecurlyObject;
+
+/**
+ * A change to an object found by a {@link RecurlyIncrementalSync}.
+ *
+ * @author twerner
+ *
+ * @param <T> the type of object changed
+ */
+public final class RecurlyDelta<T extends RecurlyObject> {
+
+	public enum Type {
+		/**
+		 * The object was created since the last sync, or there was no last sync
+		 */
+		INSERT,
+		/**
+		 * The object was changed since the last sync
+		 */
+		UPDATE,
+		/**
+		 * The object was closed since the last sync: an account was closed or
+		 * a subscription expired
+		 */
+		CLOSE
+	}
+
+	private final Type type;
+	private final T object;
+
+	RecurlyDelta(final Type type, final T object) {
+		this.type = type;
+		this.object = object;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * The object as it is now
+	 */
+	public T getObject() {
+		return object;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("RecurlyDelta");
+		sb.append("{type=").append(type);
+		sb.append(", object=").append(object);
+		sb.append('}');
+		return sb.toString();
+	}
+}
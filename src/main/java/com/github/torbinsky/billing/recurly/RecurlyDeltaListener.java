@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.Invoice;
+import com.github.torbinsky.billing.recurly.model.Subscription;
+
+/**
+ * Gets the changes found by a {@link RecurlyIncrementalSync}, on the thread
+ * running the sync.
+ * <p/>
+ * An object updated in the same second as the last sync finished is only
+ * reported again by the next one if it changed since, or if the watermark
+ * store does not keep the objects seen at the watermark. It is then reported
+ * as an update even if it was an insert, so applying a change should be
+ * idempotent.
+ *
+ * @author twerner
+ *
+ */
+public interface RecurlyDeltaListener {
+
+	default void accountChanged(final RecurlyDelta<Account> delta) {
+	}
+
+	default void subscriptionChanged(final RecurlyDelta<Subscription> delta) {
+	}
+
+	default void invoiceChanged(final RecurlyDelta<Invoice> delta) {
+	}
+}
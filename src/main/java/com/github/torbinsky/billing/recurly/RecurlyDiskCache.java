@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A file holding encoded objects by key, to carry a cache over to the next
+ * process.
+ * <p/>
+ * The file is memory-mapped to be read in one pass, and replaced at once when
+ * saved, so a process stopped while saving leaves the previous file in place.
+ * A file that cannot be read is ignored, the cache then starts empty.
+ *
+ * @author twerner
+ *
+ */
+final class RecurlyDiskCache {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyDiskCache.class);
+
+	private static final int MAGIC = 0x52434331; // RCC1
+	private static final int NULL_LENGTH = -1;
+
+	private final Path file;
+
+	RecurlyDiskCache(final Path file) {
+		this.file = file;
+	}
+
+	Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the encoded objects in the order they were saved, null for
+	 *         null objects, empty if there is no readable file
+	 */
+	Map<String, byte[]> load() {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 4 || buffer.getInt() != MAGIC) {
+				log.warn("Ignoring {}, it is not a saved cache", file);
+				return Collections.emptyMap();
+			}
+			final Map<String, byte[]> saved = new LinkedHashMap<>();
+			while (buffer.hasRemaining()) {
+				final String key = new String(read(buffer), StandardCharsets.UTF_8);
+				saved.put(key, read(buffer));
+			}
+			return saved;
+		} catch (NoSuchFileException e) {
+			return Collections.emptyMap();
+		} catch (IOException | RuntimeException e) {
+			log.warn("Ignoring {}, it could not be read", file, e);
+			return Collections.emptyMap();
+		}
+	}
+
+	/**
+	 * Replaces the file with the given objects
+	 */
+	void save(final Map<String, byte[]> objects) throws IOException {
+		final Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		// Created readable by the owner only, the objects may hold billing details
+		final Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream os = Files.newOutputStream(temp);
+				 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+				out.writeInt(MAGIC);
+				for (Map.Entry<String, byte[]> object : objects.entrySet()) {
+					write(out, object.getKey().getBytes(StandardCharsets.UTF_8));
+					write(out, object.getValue());
+				}
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static byte[] read(final MappedByteBuffer buffer) {
+		final int length = buffer.getInt();
+		if (length == NULL_LENGTH) {
+			return null;
+		}
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		final byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static void write(final DataOutputStream out, final byte[] bytes) throws IOException {
+		if (bytes == null) {
+			out.writeInt(NULL_LENGTH);
+		} else {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+}
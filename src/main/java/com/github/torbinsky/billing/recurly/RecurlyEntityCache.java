@@ -0,0 +1,292 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of objects loaded from Recurly, evicting the least recently
+ * used past its size.
+ * <p/>
+ * An object is served as is until it is older than the TTL. For the stale
+ * period after that it is still served, while a single reload runs in the
+ * background; past it, reads wait for the reload. Concurrent reads of a
+ * missing key share one load. A load started before the key was invalidated
+ * or replaced does not overwrite it when it completes.
+ * <p/>
+ * The cache can be saved as encoded objects and restored from them, e.g. by
+ * a new process. Restored objects are only decoded when first read, and are
+ * served stale until they have been reloaded, whatever their age.
+ *
+ * @author twerner
+ *
+ * @param <K> the key type
+ * @param <V> the type of object cached, null values are cached as well
+ */
+class RecurlyEntityCache<K, V> {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyEntityCache.class);
+
+	private final long ttlNanos;
+	private final long staleNanos;
+	private final LongSupplier nanoClock;
+	private final Map<K, Entry<V>> entries;
+	private final Map<K, CompletableFuture<V>> loads = new HashMap<>();
+	private long hits = 0;
+	private long staleHits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long loadFailures = 0;
+
+	RecurlyEntityCache(final int maxSize, final long ttlNanos, final long staleNanos) {
+		this(maxSize, ttlNanos, staleNanos, System::nanoTime);
+	}
+
+	RecurlyEntityCache(final int maxSize, final long ttlNanos, final long staleNanos, final LongSupplier nanoClock) {
+		this.ttlNanos = ttlNanos;
+		this.staleNanos = staleNanos;
+		this.nanoClock = nanoClock;
+		this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<K, RecurlyEntityCache.Entry<V>> eldest) {
+				if (size() > maxSize) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param loader makes the call loading the object, on the calling thread
+	 */
+	CompletableFuture<V> get(final K key, final Supplier<CompletableFuture<V>> loader) {
+		final CompletableFuture<V> load;
+		final Entry<V> stale;
+		synchronized (this) {
+			final Entry<V> entry = entries.get(key);
+			if (entry != null && !entry.decode()) {
+				log.warn("Unable to decode the saved {}, loading it again", key);
+				entries.remove(key);
+			} else if (entry != null) {
+				final long age = nanoClock.getAsLong() - entry.loadedAt;
+				if (age < ttlNanos && !entry.restored) {
+					hits++;
+					return CompletableFuture.completedFuture(entry.value);
+				}
+				if (age < ttlNanos + staleNanos || entry.restored) {
+					staleHits++;
+					if (loads.containsKey(key)) {
+						return CompletableFuture.completedFuture(entry.value);
+					}
+				} else {
+					entries.remove(key);
+				}
+			}
+			stale = entries.get(key);
+			if (stale == null) {
+				misses++;
+				final CompletableFuture<V> existing = loads.get(key);
+				if (existing != null) {
+					// Cancelling one reader's future must not abort the shared load
+					return existing.thenApply(Function.identity());
+				}
+			}
+			load = new CompletableFuture<>();
+			loads.put(key, load);
+		}
+		start(key, load, loader);
+		return stale != null ? CompletableFuture.completedFuture(stale.value) : load.thenApply(Function.identity());
+	}
+
+	/**
+	 * Replaces the cached object, e.g. with the one returned by a change
+	 */
+	synchronized void put(final K key, @Nullable final V value) {
+		loads.remove(key);
+		entries.put(key, new Entry<V>(value, nanoClock.getAsLong()));
+	}
+
+	synchronized void invalidate(final K key) {
+		loads.remove(key);
+		entries.remove(key);
+	}
+
+	/**
+	 * Drops the objects whose key matches the predicate, along with their
+	 * loads in flight
+	 */
+	synchronized void invalidateKeys(final Predicate<? super K> predicate) {
+		loads.keySet().removeIf(predicate);
+		entries.keySet().removeIf(predicate);
+	}
+
+	/**
+	 * Drops the objects matching the predicate, along with every load in
+	 * flight since the objects they load cannot be matched yet
+	 */
+	synchronized void invalidateIf(final BiPredicate<? super K, ? super V> predicate) {
+		loads.clear();
+		final Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<K, Entry<V>> entry = it.next();
+			if (!entry.getValue().decode() || predicate.test(entry.getKey(), entry.getValue().value)) {
+				it.remove();
+			}
+		}
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	synchronized RecurlyCacheStats stats() {
+		return new RecurlyCacheStats(hits, staleHits, misses, evictions, loadFailures);
+	}
+
+	/**
+	 * Encodes the cached objects, least recently used first, for
+	 * {@link #restore(Map, Function)}. Null objects are saved as null, and
+	 * objects the encoder fails on are left out.
+	 */
+	Map<K, byte[]> save(final Function<V, byte[]> encoder) {
+		final Map<K, Entry<V>> saved;
+		synchronized (this) {
+			saved = new LinkedHashMap<>(entries);
+		}
+		// Encoded without holding the lock, the entries are not modified once decoded
+		final Map<K, byte[]> encoded = new LinkedHashMap<>();
+		for (Map.Entry<K, Entry<V>> entry : saved.entrySet()) {
+			final Entry<V> cached = entry.getValue();
+			synchronized (this) {
+				if (cached.decoder != null) {
+					// Restored and never read, saved as it was
+					encoded.put(entry.getKey(), cached.encoded);
+					continue;
+				}
+			}
+			if (cached.value == null) {
+				encoded.put(entry.getKey(), null);
+				continue;
+			}
+			try {
+				encoded.put(entry.getKey(), encoder.apply(cached.value));
+			} catch (RuntimeException e) {
+				log.warn("Unable to save {}", entry.getKey(), e);
+			}
+		}
+		return encoded;
+	}
+
+	/**
+	 * Adds the objects saved by {@link #save(Function)} that are not cached
+	 * yet. They are decoded when first read, and served stale until reloaded.
+	 */
+	synchronized void restore(final Map<K, byte[]> saved, final Function<byte[], V> decoder) {
+		final long now = nanoClock.getAsLong();
+		for (Map.Entry<K, byte[]> entry : saved.entrySet()) {
+			if (!entries.containsKey(entry.getKey())) {
+				entries.put(entry.getKey(), new Entry<V>(entry.getValue(), decoder, now));
+			}
+		}
+	}
+
+	private void start(final K key, final CompletableFuture<V> load, final Supplier<CompletableFuture<V>> loader) {
+		final CompletableFuture<V> call;
+		try {
+			call = loader.get();
+		} catch (RuntimeException e) {
+			loaded(key, load, null, e);
+			return;
+		}
+		call.whenComplete((value, t) -> loaded(key, load, value, t));
+	}
+
+	private void loaded(final K key, final CompletableFuture<V> load, @Nullable final V value, @Nullable final Throwable t) {
+		synchronized (this) {
+			if (t != null) {
+				loadFailures++;
+				loads.remove(key, load);
+			} else if (loads.remove(key, load)) {
+				entries.put(key, new Entry<V>(value, nanoClock.getAsLong()));
+			}
+		}
+		if (t != null) {
+			// A stale object is kept until it expires, in case a later reload succeeds
+			log.debug("Unable to load {}", key, RecurlyClientBase.unwrapCompletionException(t));
+			load.completeExceptionally(t);
+		} else {
+			load.complete(value);
+		}
+	}
+
+	private static class Entry<V> {
+		private final long loadedAt;
+		private final boolean restored;
+		// Guarded by the cache, set until a restored object is decoded
+		private byte[] encoded;
+		private Function<byte[], V> decoder;
+		private volatile V value;
+
+		Entry(@Nullable final V value, final long loadedAt) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+			this.restored = false;
+		}
+
+		Entry(@Nullable final byte[] encoded, final Function<byte[], V> decoder, final long loadedAt) {
+			this.encoded = encoded;
+			this.decoder = decoder;
+			this.loadedAt = loadedAt;
+			this.restored = true;
+		}
+
+		/**
+		 * @return false if the restored object could not be decoded
+		 */
+		boolean decode() {
+			if (decoder == null) {
+				return true;
+			}
+			try {
+				value = encoded == null ? null : decoder.apply(encoded);
+			} catch (RuntimeException e) {
+				log.debug("Unable to decode a saved object", e);
+				return false;
+			}
+			encoded = null;
+			decoder = null;
+			return true;
+		}
+	}
+}
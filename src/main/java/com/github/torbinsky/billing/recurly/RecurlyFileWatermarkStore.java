@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyException;
+
+/**
+ * Keeps the watermarks in a properties file. The file is replaced at once
+ * whenever a watermark moves, so a process stopped while saving leaves the
+ * previous watermarks in place.
+ *
+ * @author twerner
+ *
+ */
+public class RecurlyFileWatermarkStore implements RecurlyWatermarkStore {
+
+	private static final DateTimeFormatter FORMAT = ISODateTimeFormat.dateTime().withZoneUTC();
+	// Kept next to the watermark of the same key, as a list of entries
+	private static final String SEEN_SUFFIX = ".seen";
+	private static final String SEEN_SEPARATOR = " ";
+
+	private final Path file;
+	private final Properties watermarks = new Properties();
+
+	/**
+	 * @param file read now if it exists, created on the first sync otherwise
+	 */
+	public RecurlyFileWatermarkStore(final Path file) {
+		this.file = file;
+		try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			watermarks.load(in);
+		} catch (NoSuchFileException e) {
+			// Nothing synced yet
+		} catch (IOException e) {
+			throw new RecurlyException("Unable to read watermarks from " + file, e);
+		}
+	}
+
+	@Override
+	@Nullable
+	public synchronized DateTime getWatermark(final String key) {
+		final String watermark = watermarks.getProperty(key);
+		return watermark == null ? null : FORMAT.parseDateTime(watermark);
+	}
+
+	@Override
+	public synchronized void setWatermark(final String key, final DateTime watermark) {
+		setWatermark(key, watermark, Collections.<String>emptySet());
+	}
+
+	@Override
+	public synchronized Set<String> getSeenAtWatermark(final String key) {
+		final String seen = watermarks.getProperty(key + SEEN_SUFFIX);
+		if (seen == null || seen.isEmpty()) {
+			return Collections.emptySet();
+		}
+		return new LinkedHashSet<>(Arrays.asList(seen.split(SEEN_SEPARATOR)));
+	}
+
+	@Override
+	public synchronized void setWatermark(final String key, final DateTime watermark, final Set<String> seenAtWatermark) {
+		watermarks.setProperty(key, FORMAT.print(watermark));
+		watermarks.setProperty(key + SEEN_SUFFIX, String.join(SEEN_SEPARATOR, seenAtWatermark));
+		try {
+			final Path parent = file.toAbsolutePath().getParent();
+			Files.createDirectories(parent);
+			final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+			try {
+				try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+					watermarks.store(out, null);
+				}
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			throw new RecurlyException("Unable to save watermarks to " + file, e);
+		}
+	}
+
+	public Path getFile() {
+		return file;
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+/**
+ * Hedges GET requests: if no response has arrived once a request has taken
+ * longer than the configured percentile of the recent latencies of its
+ * endpoint, a second copy is sent and whichever answers first with a status
+ * below 500 is used. The other one is cancelled. A server error or failure
+ * only settles the race once the other copy has failed as well, and only
+ * answered requests feed the latencies the hedge delay is taken from.
+ * <p/>
+ * Hedges are drawn from a budget that grows with the number of GET requests
+ * made, so that they stay within the configured fraction of the traffic.
+ *
+ * @author twerner
+ *
+ */
+class RecurlyHedger {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyHedger.class);
+
+	// Latencies kept per endpoint, and needed before hedging its requests
+	static final int WINDOW = 100;
+	static final int MIN_SAMPLES = 20;
+	private static final double BUDGET_MAX = 10;
+	private static final long MIN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final double percentile;
+	private final double maxFraction;
+	private final ConcurrentMap<String, Latencies> endpoints = new ConcurrentHashMap<>();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgesWon = new AtomicLong();
+	private double budget = 0;
+
+	RecurlyHedger(final double percentile, final double maxFraction) {
+		this.percentile = percentile;
+		this.maxFraction = maxFraction;
+	}
+
+	/**
+	 * The number of hedged requests sent so far
+	 */
+	long getHedgeCount() {
+		return hedges.get();
+	}
+
+	/**
+	 * The number of hedged requests that completed before the original
+	 */
+	long getHedgeWinCount() {
+		return hedgesWon.get();
+	}
+
+	/**
+	 * Makes the call, and makes it again if the first one is slow and the
+	 * request is a GET. Cancelling the returned future cancels both.
+	 */
+	CompletableFuture<RecurlyResponse> execute(final RecurlyRequest request, final Supplier<CompletableFuture<RecurlyResponse>> call) {
+		if (!"GET".equalsIgnoreCase(request.getMethod())) {
+			return call.get();
+		}
+		deposit();
+		final Latencies latencies = latenciesFor(RecurlyTrafficMetrics.endpointOf(request.getMethod(), request.getUrl()));
+		final long delay = latencies.hedgeDelayNanos();
+		final CompletableFuture<RecurlyResponse> result = new CompletableFuture<>();
+		// Calls that may still complete the result
+		final AtomicInteger pending = new AtomicInteger(1);
+		final CompletableFuture<RecurlyResponse> primary = call.get();
+		race(primary, false, latencies, pending, result);
+		result.whenComplete((r, t) -> primary.cancel(true));
+		if (delay >= 0) {
+			final CompletableFuture<RecurlyResponse> hedge = RecurlyScheduler.schedule(delay, () -> {
+				if (result.isDone() || !withdraw()) {
+					return CompletableFuture.completedFuture(null);
+				}
+				hedges.incrementAndGet();
+				log.debug("Hedging {} {} after {} ms", request.getMethod(), request.getUrl(), TimeUnit.NANOSECONDS.toMillis(delay));
+				pending.incrementAndGet();
+				final CompletableFuture<RecurlyResponse> second = call.get();
+				race(second, true, latencies, pending, result);
+				return second;
+			});
+			// Also stops the hedge from going out if the primary was quick enough
+			result.whenComplete((r, t) -> hedge.cancel(true));
+		}
+		return result;
+	}
+
+	private void race(final CompletableFuture<RecurlyResponse> call, final boolean hedge, final Latencies latencies, final AtomicInteger pending,
+			final CompletableFuture<RecurlyResponse> result) {
+		final long start = System.nanoTime();
+		call.whenComplete((response, t) -> {
+			if (t == null && response.getStatusCode() < 500) {
+				latencies.record(System.nanoTime() - start);
+				if (result.complete(response) && hedge) {
+					hedgesWon.incrementAndGet();
+				}
+			} else if (pending.decrementAndGet() == 0) {
+				// The other call may still succeed, only the last failure counts
+				if (t == null) {
+					result.complete(response);
+				} else {
+					result.completeExceptionally(RecurlyClientBase.unwrapCompletionException(t));
+				}
+			}
+		});
+	}
+
+	private Latencies latenciesFor(final String endpoint) {
+		Latencies latencies = endpoints.get(endpoint);
+		if (latencies == null) {
+			final Latencies created = new Latencies();
+			latencies = endpoints.putIfAbsent(endpoint, created);
+			if (latencies == null) {
+				latencies = created;
+			}
+		}
+		return latencies;
+	}
+
+	private synchronized void deposit() {
+		budget = Math.min(BUDGET_MAX, budget + maxFraction);
+	}
+
+	private synchronized boolean withdraw() {
+		if (budget < 1) {
+			return false;
+		}
+		budget -= 1;
+		return true;
+	}
+
+	private class Latencies {
+		private final long[] samples = new long[WINDOW];
+		private int next = 0;
+		private int count = 0;
+		private long hedgeDelay = -1;
+
+		synchronized void record(final long nanos) {
+			samples[next] = nanos;
+			next = (next + 1) % samples.length;
+			count = Math.min(count + 1, samples.length);
+			if (count >= MIN_SAMPLES) {
+				final long[] sorted = Arrays.copyOf(samples, count);
+				Arrays.sort(sorted);
+				hedgeDelay = Math.max(MIN_DELAY_NANOS, sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)]);
+			}
+		}
+
+		/**
+		 * @return -1 until enough latencies have been seen
+		 */
+		synchronized long hedgeDelayNanos() {
+			return hedgeDelay;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.Invoice;
+import com.github.torbinsky.billing.recurly.model.RecurlyObject;
+import com.github.torbinsky.billing.recurly.model.Subscription;
+import com.github.torbinsky.billing.recurly.model.list.Accounts;
+import com.github.torbinsky.billing.recurly.model.list.Invoices;
+import com.github.torbinsky.billing.recurly.model.list.RecurlyObjects;
+import com.github.torbinsky.billing.recurly.model.list.Subscriptions;
+
+/**
+ * Keeps a local view of the accounts, subscriptions and invoices current by
+ * fetching only what changed since the last sync, rather than every object
+ * again.
+ * <p/>
+ * Each collection is walked most recently updated first, from the watermark
+ * kept for it: the last update time seen by the previous sync with the same
+ * API key. The walk stops at the first object updated before the watermark,
+ * so a sync with few changes usually takes a single page. The watermark only
+ * moves once the walk completed, so a failed sync is repeated in full by the
+ * next one.
+ * <p/>
+ * Update times are to the second, so the objects updated in the second of the
+ * watermark are fetched again. Those the last sync reported are skipped
+ * unless their content changed, as far as the watermark store keeps them (see
+ * {@link RecurlyWatermarkStore#getSeenAtWatermark(String)}).
+ * <p/>
+ * The first sync of a collection reports every object, as an insert unless it
+ * is closed.
+ *
+ * @author twerner
+ *
+ */
+public class RecurlyIncrementalSync {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyIncrementalSync.class);
+
+	private static final String ACCOUNT_CLOSED = "closed";
+	private static final String SUBSCRIPTION_EXPIRED = "expired";
+
+	private final RecurlyClientBase client;
+	private final RecurlyWatermarkStore watermarks;
+
+	/**
+	 * @param client     syncs with the client's own credentials; sync another
+	 *                   tenant with the view from {@code withApiKey(...)}
+	 * @param watermarks where the sync continues from, per API key
+	 */
+	public RecurlyIncrementalSync(final RecurlyClientBase client, final RecurlyWatermarkStore watermarks) {
+		this.client = client;
+		this.watermarks = watermarks;
+	}
+
+	/**
+	 * Reports the accounts, then the subscriptions, then the invoices changed
+	 * since the last sync
+	 *
+	 * @return the number of changes reported
+	 */
+	public long sync(final RecurlyDeltaListener listener) {
+		return syncAccounts(listener) + syncSubscriptions(listener) + syncInvoices(listener);
+	}
+
+	/**
+	 * @return the number of changes reported
+	 */
+	public long syncAccounts(final RecurlyDeltaListener listener) {
+		return sync(Accounts.ACCOUNTS_RESOURCE, Accounts.class, Account::getAccountCode, Account::getUpdatedAt, Account::getCreatedAt,
+				account -> ACCOUNT_CLOSED.equals(account.getState()), listener::accountChanged);
+	}
+
+	/**
+	 * Subscriptions have no creation time, they count as inserted when
+	 * activated since the last sync.
+	 *
+	 * @return the number of changes reported
+	 */
+	public long syncSubscriptions(final RecurlyDeltaListener listener) {
+		return sync(Subscriptions.SUBSCRIPTIONS_RESOURCE, Subscriptions.class, Subscription::getUuid, Subscription::getUpdatedAt, Subscription::getActivatedAt,
+				subscription -> SUBSCRIPTION_EXPIRED.equals(subscription.getState()), listener::subscriptionChanged);
+	}
+
+	/**
+	 * Invoices are never closed, a settled invoice is reported as an update.
+	 *
+	 * @return the number of changes reported
+	 */
+	public long syncInvoices(final RecurlyDeltaListener listener) {
+		return sync(Invoices.INVOICES_RESOURCE, Invoices.class, Invoice::getUuid, Invoice::getUpdatedAt, Invoice::getCreatedAt,
+				invoice -> false, listener::invoiceChanged);
+	}
+
+	private <R extends RecurlyObject, T extends RecurlyObjects<R>> long sync(final String resource, final Class<T> clazz,
+			final Function<R, String> id, final Function<R, DateTime> updatedAt, final Function<R, DateTime> createdAt, final Predicate<R> closed,
+			final Consumer<RecurlyDelta<R>> listener) {
+		final String key = client.getCredentials().getFingerprint() + " " + resource;
+		final DateTime watermark = watermarks.getWatermark(key);
+		final Set<String> seen = watermark == null ? Collections.<String>emptySet() : watermarks.getSeenAtWatermark(key);
+		DateTime newest = watermark;
+		// The objects updated at the newest update time, reported or not
+		Set<String> atNewest = new HashSet<>();
+		long changes = 0;
+		try (RecurlyObjectIterator<R> updated = client.doGETsUpdatedSince(resource, watermark, clazz)) {
+			while (updated.hasNext()) {
+				final R object = updated.next();
+				final DateTime updatedTime = updatedAt.apply(object);
+				if (watermark != null && updatedTime != null && updatedTime.isBefore(watermark)) {
+					// Everything further was seen by the last sync; closing
+					// aborts the page read ahead
+					break;
+				}
+				final String entry = seenEntry(id.apply(object), object);
+				if (updatedTime != null) {
+					if (newest == null || updatedTime.isAfter(newest)) {
+						newest = updatedTime;
+						atNewest = new HashSet<>();
+					}
+					if (updatedTime.isEqual(newest)) {
+						atNewest.add(entry);
+					}
+				}
+				if (updatedTime != null && watermark != null && updatedTime.isEqual(watermark) && seen.contains(entry)) {
+					// Reported by the last sync and unchanged since
+					continue;
+				}
+				listener.accept(new RecurlyDelta<R>(type(object, watermark, createdAt, closed), object));
+				changes++;
+			}
+		}
+		if (newest != null && (watermark == null || !newest.isEqual(watermark) || !atNewest.equals(seen))) {
+			watermarks.setWatermark(key, newest, atNewest);
+		}
+		log.debug("Synced {} changes to {} since {}", changes, resource, watermark);
+		return changes;
+	}
+
+	/**
+	 * Identifies the object and its content; a change in the second of the
+	 * watermark changes the entry
+	 */
+	private static String seenEntry(final String id, final Object object) {
+		return RecurlyClientBase.urlEncode(String.valueOf(id)) + "@" + Integer.toHexString(object.hashCode());
+	}
+
+	private static <R> RecurlyDelta.Type type(final R object, final DateTime watermark, final Function<R, DateTime> createdAt, final Predicate<R> closed) {
+		if (closed.test(object)) {
+			return RecurlyDelta.Type.CLOSE;
+		}
+		final DateTime created = createdAt.apply(object);
+		// One created in the second of the watermark may have been seen already
+		if (watermark == null || (created != null && created.isAfter(watermark))) {
+			return RecurlyDelta.Type.INSERT;
+		}
+		return RecurlyDelta.Type.UPDATE;
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.torbinsky.billing.recurly.model.Notification;
+
+/**
+ * Passes notifications on to the registered listeners, in parallel for
+ * different accounts but one at a time and in the order dispatched for the
+ * same account.
+ * <p/>
+ * Each account is assigned one of a fixed number of stripes by its code.
+ * A stripe runs its notifications one after the other on the executor, so a
+ * slow listener holds up the accounts sharing its stripe, never the others.
+ * Notifications without an account share a stripe.
+ *
+ * @author twerner
+ *
+ */
+public class RecurlyNotificationDispatcher implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyNotificationDispatcher.class);
+
+	private final Executor executor;
+	private final ExecutorService ownedExecutor;
+	private final Stripe[] stripes;
+	private final List<RecurlyNotificationListener> listeners = new CopyOnWriteArrayList<>();
+	private volatile boolean closed = false;
+
+	/**
+	 * Dispatches on a thread per stripe, stopped by {@link #close()}
+	 */
+	public RecurlyNotificationDispatcher(final int stripes) {
+		this(newThreadPool(stripes), stripes, true);
+	}
+
+	/**
+	 * @param executor runs the stripes, at most one task per stripe at a time
+	 */
+	public RecurlyNotificationDispatcher(final Executor executor, final int stripes) {
+		this(executor, stripes, false);
+	}
+
+	private RecurlyNotificationDispatcher(final Executor executor, final int stripes, final boolean owned) {
+		if (stripes <= 0) {
+			throw new IllegalArgumentException("The number of stripes must be positive, got " + stripes);
+		}
+		this.executor = executor;
+		this.ownedExecutor = owned ? (ExecutorService) executor : null;
+		this.stripes = new Stripe[stripes];
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = new Stripe();
+		}
+	}
+
+	public void addListener(final RecurlyNotificationListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(final RecurlyNotificationListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Queues the notification behind those dispatched before for the same
+	 * account
+	 *
+	 * @return completes once every listener got the notification, failed with
+	 *         the error of the first listener that threw
+	 */
+	public CompletableFuture<Void> dispatch(final Notification notification) {
+		if (closed) {
+			return RecurlyClientBase.failedFuture(new IllegalStateException("The dispatcher is closed"));
+		}
+		final String accountCode = notification.getAccount() == null ? null : notification.getAccount().getAccountCode();
+		final Stripe stripe = stripes[accountCode == null ? 0 : Math.floorMod(accountCode.hashCode(), stripes.length)];
+		final CompletableFuture<Void> delivered = new CompletableFuture<>();
+		stripe.execute(() -> deliver(notification, delivered));
+		return delivered;
+	}
+
+	/**
+	 * Stops accepting notifications. Those already dispatched are still
+	 * delivered.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (ownedExecutor != null) {
+			ownedExecutor.shutdown();
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	private void deliver(final Notification notification, final CompletableFuture<Void> delivered) {
+		RuntimeException failure = null;
+		for (RecurlyNotificationListener listener : listeners) {
+			try {
+				listener.notificationReceived(notification);
+			} catch (RuntimeException e) {
+				log.warn("Notification listener {} failed on a {} notification", listener, notification.getType(), e);
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure == null) {
+			delivered.complete(null);
+		} else {
+			delivered.completeExceptionally(failure);
+		}
+	}
+
+	private static ExecutorService newThreadPool(final int threads) {
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+			final Thread thread = new Thread(r, "recurly-notifications-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Runs its tasks one at a time, in order, on the shared executor
+	 */
+	private final class Stripe {
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		void execute(final Runnable task) {
+			tasks.add(task);
+			schedule();
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				executor.execute(this::drain);
+			}
+		}
+
+		private void drain() {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+			}
+			scheduled.set(false);
+			// A task queued after the last poll but before the flag was
+			// cleared would otherwise wait for the next one
+			if (!tasks.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+}
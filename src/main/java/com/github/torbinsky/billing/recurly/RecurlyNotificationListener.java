@@ -0,0 +1,30 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import com.github.torbinsky.billing.recurly.model.Notification;
+
+/**
+ * Gets the notifications passed on by a {@link RecurlyNotificationDispatcher},
+ * those about the same account one at a time and in the order received.
+ *
+ * @author twerner
+ *
+ */
+public interface RecurlyNotificationListener {
+
+	void notificationReceived(Notification notification);
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlySerializationException;
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.Notification;
+
+/**
+ * Reads the push notifications Recurly sends, with the same mapping as the
+ * API responses of a client.
+ * <p/>
+ * The account of a notification is set on its subscription, invoice and
+ * transaction when they do not name one, as they would in an API response.
+ *
+ * @author twerner
+ *
+ */
+public class RecurlyNotificationParser {
+
+	private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+
+	private final RecurlyClientBase client;
+
+	/**
+	 * @param client whose XML mapping is used
+	 */
+	public RecurlyNotificationParser(final RecurlyClientBase client) {
+		this.client = client;
+	}
+
+	/**
+	 * @throws RecurlySerializationException if the payload is not a
+	 *                                       notification
+	 */
+	public Notification parse(final String payload) {
+		final String type = rootElement(payload);
+		if (!type.endsWith(Notification.NOTIFICATION_SUFFIX)) {
+			throw new RecurlySerializationException("Not a notification: " + type);
+		}
+		final Notification notification = client.deserialize(payload, Notification.class);
+		notification.setType(type.substring(0, type.length() - Notification.NOTIFICATION_SUFFIX.length()));
+
+		final Account account = notification.getAccount();
+		if (account != null) {
+			if (notification.getSubscription() != null && notification.getSubscription().getAccount() == null) {
+				notification.getSubscription().setAccount(account);
+			}
+			if (notification.getInvoice() != null && notification.getInvoice().getAccount() == null) {
+				notification.getInvoice().setAccount(account);
+			}
+			if (notification.getTransaction() != null && notification.getTransaction().getAccount() == null) {
+				notification.getTransaction().setAccount(account);
+			}
+		}
+		return notification;
+	}
+
+	private static String rootElement(final String payload) {
+		try {
+			final XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new StringReader(payload));
+			try {
+				reader.nextTag();
+				return reader.getLocalName();
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new RecurlySerializationException("Unable to read the notification", e);
+		}
+	}
+}
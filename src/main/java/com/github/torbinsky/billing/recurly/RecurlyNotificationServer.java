@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlySerializationException;
+import com.github.torbinsky.billing.recurly.model.Notification;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A minimal HTTP endpoint for Recurly push notifications, using the HTTP
+ * server of the JDK. Each notification POSTed to the path is parsed and
+ * dispatched, and acknowledged as soon as it is queued. One that cannot be
+ * parsed is rejected with a 400, which Recurly does not retry; once the
+ * dispatcher is closed they are refused with a 503, so Recurly sends them
+ * again later.
+ * <p/>
+ * Meant for development and tests: it does not terminate TLS nor check
+ * credentials, so in production it belongs behind a proxy doing both.
+ *
+ * @author twerner
+ *
+ */
+public class RecurlyNotificationServer implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyNotificationServer.class);
+
+	private final HttpServer server;
+	private final RecurlyNotificationParser parser;
+	private final RecurlyNotificationDispatcher dispatcher;
+
+	/**
+	 * Starts listening right away
+	 *
+	 * @param address where to listen, port 0 for any free port
+	 * @param path    the path notifications are POSTed to
+	 */
+	public RecurlyNotificationServer(final InetSocketAddress address, final String path, final RecurlyNotificationParser parser,
+			final RecurlyNotificationDispatcher dispatcher) throws IOException {
+		this.parser = parser;
+		this.dispatcher = dispatcher;
+		this.server = HttpServer.create(address, 0);
+		server.createContext(path, this::handle);
+		server.start();
+	}
+
+	/**
+	 * Where the server listens, with the port actually bound
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * Stops listening; the dispatcher is left to the caller
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+
+	private void handle(final HttpExchange exchange) throws IOException {
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().add("Allow", "POST");
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			final Notification notification;
+			try (InputStream body = exchange.getRequestBody()) {
+				notification = parser.parse(RecurlyClientBase.readString(body));
+			} catch (RecurlySerializationException e) {
+				log.warn("Rejecting a notification that cannot be read", e);
+				exchange.sendResponseHeaders(400, -1);
+				return;
+			}
+			if (dispatcher.isClosed()) {
+				exchange.sendResponseHeaders(503, -1);
+				return;
+			}
+			log.debug("Received a {} notification", notification.getType());
+			dispatcher.dispatch(notification);
+			exchange.sendResponseHeaders(200, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+}
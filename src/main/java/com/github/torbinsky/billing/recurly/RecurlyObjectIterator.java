@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.github.torbinsky.billing.recurly.model.RecurlyObject;
+import com.github.torbinsky.billing.recurly.model.list.RecurlyObjects;
+
+/**
+ * Lazily iterates over the objects of a paginated Recurly collection. Pages
+ * are fetched as the iteration reaches them (with the configured prefetch
+ * depth) and are released once iterated, so only a few pages are held in
+ * memory at any time.
+ * <p/>
+ * Closing the iterator aborts any page requests that are still in flight.
+ *
+ * @author twerner
+ *
+ * @param <R> the type of object in the collection
+ */
+public class RecurlyObjectIterator<R extends RecurlyObject> implements Iterator<R>, AutoCloseable {
+
+	private final RecurlyPagePrefetcher<? extends RecurlyObjects<R>> pages;
+	private Iterator<R> current = Collections.<R>emptyIterator();
+	private boolean exhausted = false;
+
+	RecurlyObjectIterator(final RecurlyPagePrefetcher<? extends RecurlyObjects<R>> pages) {
+		this.pages = pages;
+	}
+
+	/**
+	 * Blocks until the next page has arrived if the current one is used up.
+	 */
+	@Override
+	public boolean hasNext() {
+		while (!current.hasNext()) {
+			if (exhausted) {
+				return false;
+			}
+			final RecurlyObjects<R> page = RecurlyClientBase.awaitResult(pages.next());
+			if (page == null) {
+				exhausted = true;
+				return false;
+			}
+			// Drop the previous page so that it can be collected
+			current = page.getObjects() == null ? Collections.<R>emptyIterator() : page.getObjects().iterator();
+		}
+		return true;
+	}
+
+	@Override
+	public R next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return current.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		exhausted = true;
+		current = Collections.<R>emptyIterator();
+		pages.cancel();
+	}
+
+	/**
+	 * Wraps this iterator in a sequential stream. Closing the stream closes
+	 * the iterator.
+	 */
+	public Stream<R> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+}
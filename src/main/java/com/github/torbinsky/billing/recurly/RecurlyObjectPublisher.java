@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.github.torbinsky.billing.recurly.model.RecurlyObject;
+import com.github.torbinsky.billing.recurly.model.list.RecurlyObjects;
+
+/**
+ * A Reactive Streams {@link Publisher} over a paginated Recurly collection.
+ * <p/>
+ * Every subscriber gets its own walk of the collection. Nothing is requested
+ * from Recurly until the subscriber signals demand, and a further page is only
+ * requested once the objects already received cannot satisfy the outstanding
+ * demand. Cancelling the subscription aborts the page request in flight.
+ *
+ * @author twerner
+ *
+ * @param <R> the type of object in the collection
+ */
+public class RecurlyObjectPublisher<R extends RecurlyObject> implements Publisher<R> {
+
+	private final Supplier<RecurlyPagePrefetcher<? extends RecurlyObjects<R>>> pages;
+
+	/**
+	 * @param pages starts a new walk of the collection; called once per
+	 *              subscription, on the first demand
+	 */
+	RecurlyObjectPublisher(final Supplier<RecurlyPagePrefetcher<? extends RecurlyObjects<R>>> pages) {
+		this.pages = pages;
+	}
+
+	@Override
+	public void subscribe(final Subscriber<? super R> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("Subscriber must not be null");
+		}
+		subscriber.onSubscribe(new PageSubscription(subscriber));
+	}
+
+	private class PageSubscription implements Subscription {
+		private final Subscriber<? super R> subscriber;
+		private final Queue<R> buffered = new ConcurrentLinkedQueue<>();
+		private final AtomicLong demand = new AtomicLong();
+		// Serializes signals to the subscriber, whichever thread triggers them
+		private final AtomicInteger wip = new AtomicInteger();
+
+		private RecurlyPagePrefetcher<? extends RecurlyObjects<R>> prefetcher;
+		private volatile boolean pageInFlight = false;
+		private volatile boolean lastPageReceived = false;
+		private volatile boolean cancelled = false;
+		private volatile boolean terminated = false;
+		private volatile Throwable error;
+
+		PageSubscription(final Subscriber<? super R> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(final long n) {
+			if (n <= 0) {
+				error = new IllegalArgumentException("Subscriber requested " + n + " elements, expected a positive number (rule 3.9)");
+				lastPageReceived = true;
+				buffered.clear();
+				cancelPages();
+			} else {
+				long current;
+				do {
+					current = demand.get();
+					if (current == Long.MAX_VALUE) {
+						break;
+					}
+				} while (!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			cancelPages();
+		}
+
+		private synchronized void cancelPages() {
+			if (prefetcher != null) {
+				prefetcher.cancel();
+			}
+		}
+
+		private synchronized void requestPage() {
+			if (cancelled) {
+				return;
+			}
+			pageInFlight = true;
+			if (prefetcher == null) {
+				prefetcher = pages.get();
+			}
+			prefetcher.next().whenComplete((page, t) -> {
+				if (t != null) {
+					if (error == null) {
+						error = t;
+					}
+					lastPageReceived = true;
+				} else if (page == null) {
+					lastPageReceived = true;
+				} else {
+					if (page.getObjects() != null) {
+						buffered.addAll(page.getObjects());
+					}
+					// Lets the subscriber complete without having to ask for more
+					lastPageReceived = prefetcher.isExhausted();
+				}
+				pageInFlight = false;
+				drain();
+			});
+		}
+
+		private void drain() {
+			if (wip.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			do {
+				if (cancelled || terminated) {
+					buffered.clear();
+					return;
+				}
+				while (demand.get() > 0 && !buffered.isEmpty()) {
+					subscriber.onNext(buffered.poll());
+					if (demand.get() != Long.MAX_VALUE) {
+						demand.decrementAndGet();
+					}
+					if (cancelled) {
+						buffered.clear();
+						return;
+					}
+				}
+				if (buffered.isEmpty() && lastPageReceived && !pageInFlight) {
+					terminated = true;
+					if (error != null) {
+						subscriber.onError(RecurlyClientBase.unwrapCompletionException(error));
+					} else {
+						subscriber.onComplete();
+					}
+					return;
+				}
+				if (demand.get() > 0 && buffered.isEmpty() && !pageInFlight && !lastPageReceived) {
+					requestPage();
+				}
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+/**
+ * Walks a paginated Recurly collection, issuing the request for the next page
+ * as soon as the Link header of the previous one has been received. Up to
+ * <code>prefetchDepth</code> pages are downloaded ahead of the page the
+ * consumer is working on, and each page is parsed on the given executor as
+ * soon as its body is complete, so parsing overlaps with later downloads.
+ * <p/>
+ * Pages are handed out in order through {@link #next()}.
+ *
+ * @author twerner
+ *
+ * @param <T> the parsed page type
+ */
+class RecurlyPagePrefetcher<T> {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyPagePrefetcher.class);
+
+	private final Function<String, RecurlyPendingPage> pageRequester;
+	private final Function<RecurlyResponse, T> parser;
+	private final Executor parseExecutor;
+	private final int prefetchDepth;
+
+	// Parsed pages by page index, created by whichever of issue/next() happens first
+	private final Map<Integer, CompletableFuture<T>> slots = new HashMap<>();
+	private final List<RecurlyPendingPage> inFlight = new ArrayList<>();
+	private int issued = 0;
+	private int requested = 0;
+	private String parkedNextPageUrl;
+	private boolean lastPageIssued = false;
+	private boolean cancelled = false;
+
+	/**
+	 * @param firstPage     the already issued request for the first page
+	 * @param pageRequester issues the GET for a next page url
+	 * @param parser        converts a page payload, run on parseExecutor
+	 * @param parseExecutor where page payloads are parsed
+	 * @param prefetchDepth how many pages may be downloaded ahead of the consumer
+	 */
+	RecurlyPagePrefetcher(final RecurlyPendingPage firstPage, final Function<String, RecurlyPendingPage> pageRequester,
+			final Function<RecurlyResponse, T> parser, final Executor parseExecutor, final int prefetchDepth) {
+		this.pageRequester = pageRequester;
+		this.parser = parser;
+		this.parseExecutor = parseExecutor;
+		this.prefetchDepth = Math.max(0, prefetchDepth);
+		synchronized (this) {
+			track(firstPage);
+		}
+	}
+
+	/**
+	 * Returns the next parsed page, completing with null once every page has
+	 * been handed out.
+	 */
+	synchronized CompletableFuture<T> next() {
+		if (cancelled) {
+			return RecurlyClientBase.failedFuture(new CancellationException("Pagination was cancelled"));
+		}
+		final int index = requested++;
+		if (lastPageIssued && index >= issued) {
+			return CompletableFuture.completedFuture(null);
+		}
+		// The previous page has now been consumed which may open the window for a parked page
+		if (parkedNextPageUrl != null && canIssue()) {
+			final String url = parkedNextPageUrl;
+			parkedNextPageUrl = null;
+			issue(url);
+		}
+		final CompletableFuture<T> page = slot(index);
+		slots.remove(index);
+		return page;
+	}
+
+	/**
+	 * Whether every page has already been handed out through {@link #next()}.
+	 * Known as soon as the headers of the last page have been received.
+	 */
+	synchronized boolean isExhausted() {
+		return lastPageIssued && requested >= issued;
+	}
+
+	/**
+	 * Aborts every in-flight page request
+	 */
+	synchronized void cancel() {
+		if (cancelled) {
+			return;
+		}
+		cancelled = true;
+		parkedNextPageUrl = null;
+		// Cancelling completes the pages, which removes them from inFlight
+		for (RecurlyPendingPage page : new ArrayList<>(inFlight)) {
+			page.cancel();
+		}
+		inFlight.clear();
+		for (CompletableFuture<T> slot : slots.values()) {
+			slot.cancel(false);
+		}
+		slots.clear();
+	}
+
+	/**
+	 * Collects every remaining page, in order
+	 */
+	CompletableFuture<List<T>> collect() {
+		return collect(t -> false);
+	}
+
+	/**
+	 * Collects every remaining page, in order, but settles for the pages
+	 * collected so far if a later page fails with an error matching
+	 * <code>partial</code>. Pages still in flight are then cancelled.
+	 */
+	CompletableFuture<List<T>> collect(final Predicate<Throwable> partial) {
+		final CompletableFuture<List<T>> result = new CompletableFuture<>();
+		collectInto(new ArrayList<T>(), partial, result);
+		return result;
+	}
+
+	private void collectInto(final List<T> pages, final Predicate<Throwable> partial, final CompletableFuture<List<T>> result) {
+		next().whenComplete((page, t) -> {
+			if (t != null) {
+				final Throwable cause = RecurlyClientBase.unwrapCompletionException(t);
+				if (!pages.isEmpty() && partial.test(cause)) {
+					log.warn("Returning {} of the pages after: {}", pages.size(), cause.getMessage());
+					cancel();
+					result.complete(pages);
+				} else {
+					result.completeExceptionally(cause);
+				}
+			} else if (page == null) {
+				result.complete(pages);
+			} else {
+				pages.add(page);
+				collectInto(pages, partial, result);
+			}
+		});
+	}
+
+	private boolean canIssue() {
+		return issued - requested < prefetchDepth;
+	}
+
+	private void issue(final String url) {
+		final RecurlyPendingPage page;
+		try {
+			page = pageRequester.apply(url);
+		} catch (RuntimeException e) {
+			lastPageIssued = true;
+			slot(issued++).completeExceptionally(e);
+			return;
+		}
+		track(page);
+	}
+
+	private void track(final RecurlyPendingPage page) {
+		final int index = issued++;
+		final CompletableFuture<T> slot = slot(index);
+		inFlight.add(page);
+		page.getNextPageUrl().thenAccept(url -> onNextPageUrl(url));
+		page.getBody().thenApplyAsync(parser, parseExecutor).whenComplete((parsed, t) -> {
+			synchronized (RecurlyPagePrefetcher.this) {
+				inFlight.remove(page);
+			}
+			if (t != null) {
+				slot.completeExceptionally(t);
+			} else {
+				slot.complete(parsed);
+			}
+		});
+	}
+
+	private synchronized void onNextPageUrl(final String url) {
+		if (cancelled || lastPageIssued) {
+			return;
+		}
+		if (url == null) {
+			lastPageIssued = true;
+			// A consumer already waiting past the last page gets a null page
+			final CompletableFuture<T> waiting = slots.remove(issued);
+			if (waiting != null) {
+				waiting.complete(null);
+			}
+		} else if (canIssue()) {
+			issue(url);
+		} else {
+			parkedNextPageUrl = url;
+		}
+	}
+
+	private CompletableFuture<T> slot(final int index) {
+		CompletableFuture<T> slot = slots.get(index);
+		if (slot == null) {
+			slot = new CompletableFuture<>();
+			slots.put(index, slot);
+		}
+		return slot;
+	}
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.torbinsky.billing.recurly.model.RecurlyObject;
+import com.github.torbinsky.billing.recurly.model.list.RecurlyObjects;
+
+/**
+ * Scans a collection sorted by creation time by splitting it into time
+ * windows that are paginated concurrently, rather than following a single
+ * chain of cursors.
+ * <p/>
+ * The range is first split into one window per request allowed in flight.
+ * Each window requests one page at a time, so that its first page can be used
+ * to estimate how many records it holds: a window that looks like it spans
+ * many pages stops following its cursor and the time it has not covered yet
+ * is split into new windows, so a burst of signups does not leave a single
+ * window to do most of the work.
+ * <p/>
+ * Records are handed to the consumer one at a time, never concurrently. For
+ * an ordered scan they arrive in creation order; windows after the earliest
+ * unfinished one then only buffer a couple of pages until their turn.
+ * <p/>
+ * Windows are whole seconds, the resolution of Recurly's timestamps, and both
+ * of their ends are inclusive.
+ *
+ * @author twerner
+ *
+ * @param <R> the type of record
+ * @param <T> the page type
+ */
+final class RecurlyParallelScan<R extends RecurlyObject, T extends RecurlyObjects<R>> {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyParallelScan.class);
+
+	private static final long SECOND = TimeUnit.SECONDS.toMillis(1);
+	// A window is split when it looks like it spans more pages than this
+	private static final int SPLIT_PAGES = 4;
+	// Pages an ordered scan buffers for a window that is not its turn yet
+	private static final int MAX_BUFFERED_PAGES = 2;
+
+	private final BiFunction<DateTime, DateTime, RecurlyPagePrefetcher<T>> pages;
+	private final Function<R, DateTime> createdAt;
+	private final int parallelism;
+	private final boolean ordered;
+	private final Consumer<? super R> consumer;
+	private final CompletableFuture<Long> result = new CompletableFuture<>();
+	// The unfinished windows by their first second
+	private final TreeMap<Long, Window> windows = new TreeMap<>();
+	private int active = 0;
+	private long consumed = 0;
+	private int splits = 0;
+
+	private RecurlyParallelScan(final BiFunction<DateTime, DateTime, RecurlyPagePrefetcher<T>> pages, final Function<R, DateTime> createdAt,
+			final int parallelism, final boolean ordered, final Consumer<? super R> consumer) {
+		this.pages = pages;
+		this.createdAt = createdAt;
+		this.parallelism = parallelism;
+		this.ordered = ordered;
+		this.consumer = consumer;
+	}
+
+	/**
+	 * @param pages       starts the walk of the records created between the
+	 *                    two times, both inclusive, oldest first; requesting
+	 *                    a page only as the previous one is consumed
+	 * @param createdAt   the creation time of a record
+	 * @param parallelism the most windows paginated at once
+	 * @param ordered     whether the consumer gets the records in creation
+	 *                    order
+	 * @return the number of records consumed
+	 */
+	static <R extends RecurlyObject, T extends RecurlyObjects<R>> CompletableFuture<Long> run(final DateTime begin, final DateTime end,
+			final BiFunction<DateTime, DateTime, RecurlyPagePrefetcher<T>> pages, final Function<R, DateTime> createdAt,
+			final int parallelism, final boolean ordered, final Consumer<? super R> consumer) {
+		final RecurlyParallelScan<R, T> scan = new RecurlyParallelScan<R, T>(pages, createdAt, parallelism, ordered, consumer);
+		scan.result.whenComplete((count, t) -> scan.cancel());
+		final long first = seconds(begin.getMillis());
+		final long last = seconds(end.getMillis());
+		if (last < first) {
+			scan.result.complete(0L);
+			return scan.result;
+		}
+		synchronized (scan) {
+			scan.add(first, last, parallelism, Collections.<R>emptySet());
+		}
+		scan.startWindows();
+		return scan.result;
+	}
+
+	private void startWindows() {
+		final List<Window> started = new ArrayList<>();
+		synchronized (this) {
+			for (Window window : windows.values()) {
+				if (active >= parallelism || result.isDone()) {
+					break;
+				}
+				if (window.prefetcher == null) {
+					try {
+						window.prefetcher = pages.apply(new DateTime(window.first), new DateTime(window.last));
+					} catch (RuntimeException e) {
+						result.completeExceptionally(e);
+						return;
+					}
+					active++;
+					started.add(window);
+				}
+			}
+		}
+		for (Window window : started) {
+			fetch(window);
+		}
+	}
+
+	private void fetch(final Window window) {
+		window.prefetcher.next().whenComplete((page, t) -> onPage(window, page, t));
+	}
+
+	private void onPage(final Window window, @Nullable final T page, @Nullable final Throwable t) {
+		boolean fetchNext = false;
+		final List<Window> resumed;
+		synchronized (this) {
+			if (result.isDone()) {
+				return;
+			}
+			if (t != null) {
+				result.completeExceptionally(RecurlyClientBase.unwrapCompletionException(t));
+				return;
+			}
+			if (page == null) {
+				window.exhausted = true;
+			} else {
+				final List<R> records = new ArrayList<>();
+				for (R record : page.getObjects()) {
+					if (!window.skip.contains(record)) {
+						records.add(record);
+					}
+				}
+				if (window.firstPage) {
+					window.firstPage = false;
+					window.skip = Collections.emptySet();
+					splitIfSkewed(window, records);
+				}
+				window.buffered.add(records);
+			}
+			try {
+				resumed = drain();
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+				return;
+			}
+			if (window.exhausted) {
+				active--;
+			} else if (!ordered || isHead(window) || window.buffered.size() < MAX_BUFFERED_PAGES) {
+				fetchNext = true;
+			} else {
+				// Resumed by drain() once it is this window's turn
+				window.paused = true;
+			}
+			if (windows.isEmpty()) {
+				log.debug("Scanned {} records, splitting windows {} times", consumed, splits);
+				result.complete(consumed);
+				return;
+			}
+		}
+		for (Window paused : resumed) {
+			fetch(paused);
+		}
+		if (fetchNext) {
+			fetch(window);
+		} else {
+			startWindows();
+		}
+	}
+
+	/**
+	 * Stops following the cursor of a window that looks like it spans many
+	 * pages, and splits the time it has not covered yet into new windows
+	 */
+	private void splitIfSkewed(final Window window, final List<R> records) {
+		if (window.prefetcher.isExhausted() || records.isEmpty()) {
+			return;
+		}
+		final DateTime lastCreatedAt = createdAt.apply(records.get(records.size() - 1));
+		if (lastCreatedAt == null) {
+			return;
+		}
+		final long boundary = seconds(lastCreatedAt.getMillis());
+		final long covered = boundary - window.first;
+		final long remaining = window.last - boundary;
+		if (covered <= 0 || remaining < SECOND || remaining / covered < SPLIT_PAGES) {
+			return;
+		}
+		window.prefetcher.cancel();
+		window.exhausted = true;
+		// The next window starts at the last second seen, minus the records of it already seen
+		final Set<R> seen = new HashSet<>();
+		for (R record : records) {
+			final DateTime recordCreatedAt = createdAt.apply(record);
+			if (recordCreatedAt != null && seconds(recordCreatedAt.getMillis()) == boundary) {
+				seen.add(record);
+			}
+		}
+		final int pieces = (int) Math.max(2, Math.min(parallelism, remaining / covered / SPLIT_PAGES));
+		splits++;
+		log.debug("Splitting {}..{} into {} windows after the first page reached {}", new DateTime(window.first), new DateTime(window.last),
+				pieces, lastCreatedAt);
+		window.last = boundary - SECOND;
+		add(boundary, boundary + remaining, pieces, seen);
+	}
+
+	/**
+	 * Hands the buffered records to the consumer, only those of the earliest
+	 * window for an ordered scan, and drops the windows that are done
+	 *
+	 * @return the paused windows whose turn it now is
+	 */
+	private List<Window> drain() {
+		final List<Window> resumed = new ArrayList<>();
+		for (Window window : new ArrayList<>(windows.values())) {
+			if (ordered && !isHead(window)) {
+				break;
+			}
+			for (List<R> records : window.buffered) {
+				for (R record : records) {
+					consumer.accept(record);
+					consumed++;
+				}
+			}
+			window.buffered.clear();
+			if (window.paused) {
+				window.paused = false;
+				resumed.add(window);
+			}
+			if (window.exhausted) {
+				windows.remove(window.first);
+			}
+		}
+		return resumed;
+	}
+
+	private boolean isHead(final Window window) {
+		return windows.firstKey() == window.first;
+	}
+
+	/**
+	 * Adds windows splitting the given seconds, both inclusive, evenly
+	 */
+	private void add(final long first, final long last, final int pieces, final Set<R> skip) {
+		final long seconds = (last - first) / SECOND + 1;
+		final int count = (int) Math.min(pieces, seconds);
+		long windowFirst = first;
+		for (int i = 1; i <= count; i++) {
+			final long windowLast = i == count ? last : first + (seconds * i / count - 1) * SECOND;
+			windows.put(windowFirst, new Window(windowFirst, windowLast, i == 1 ? skip : Collections.<R>emptySet()));
+			windowFirst = windowLast + SECOND;
+		}
+	}
+
+	private void cancel() {
+		final List<Window> cancelled;
+		synchronized (this) {
+			cancelled = new ArrayList<>(windows.values());
+		}
+		for (Window window : cancelled) {
+			if (window.prefetcher != null) {
+				window.prefetcher.cancel();
+			}
+		}
+	}
+
+	private static long seconds(final long millis) {
+		return Math.floorDiv(millis, SECOND) * SECOND;
+	}
+
+	private class Window {
+		private final long first;
+		private long last;
+		private Set<R> skip;
+		private RecurlyPagePrefetcher<T> prefetcher;
+		private final List<List<R>> buffered = new ArrayList<>();
+		private boolean firstPage = true;
+		private boolean exhausted = false;
+		private boolean paused = false;
+
+		Window(final long first, final long last, final Set<R> skip) {
+			this.first = first;
+			this.last = last;
+			this.skip = skip;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+/**
+ * A single page request that is in flight. The next page url becomes
+ * available as soon as the response headers arrive, which is usually well
+ * before the body has finished downloading.
+ *
+ * @author twerner
+ *
+ */
+class RecurlyPendingPage {
+
+	private final CompletableFuture<String> nextPageUrl = new CompletableFuture<>();
+	private final CompletableFuture<RecurlyResponse> body = new CompletableFuture<>();
+	private volatile Future<?> response;
+
+	/**
+	 * Completes with the url of the next page, or null if this is the last
+	 * page (or the request failed).
+	 */
+	CompletableFuture<String> getNextPageUrl() {
+		return nextPageUrl;
+	}
+
+	/**
+	 * Completes with the successful response once it has been fully received.
+	 * Its body is handed to the parser as is, without decoding it first.
+	 */
+	CompletableFuture<RecurlyResponse> getBody() {
+		return body;
+	}
+
+	void setResponse(final Future<?> response) {
+		this.response = response;
+		if (body.isCancelled()) {
+			response.cancel(true);
+		}
+	}
+
+	void headersReceived(final String nextPageUrl) {
+		this.nextPageUrl.complete(nextPageUrl);
+	}
+
+	void completed(final RecurlyResponse response, final String nextPageUrl) {
+		// No-op if the url was already known from the headers
+		this.nextPageUrl.complete(nextPageUrl);
+		body.complete(response);
+	}
+
+	void failed(final Throwable t) {
+		nextPageUrl.complete(null);
+		body.completeExceptionally(t);
+	}
+
+	/**
+	 * Aborts the underlying http request
+	 */
+	void cancel() {
+		nextPageUrl.complete(null);
+		body.cancel(false);
+		final Future<?> r = response;
+		if (r != null) {
+			r.cancel(true);
+		}
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyException;
+import com.github.torbinsky.billing.recurly.model.AddOn;
+import com.github.torbinsky.billing.recurly.model.Plan;
+import com.github.torbinsky.billing.recurly.model.list.AddOns;
+import com.github.torbinsky.billing.recurly.model.list.Plans;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+
+/**
+ * The plans of a Recurly site along with their add-ons, served from memory.
+ * <p/>
+ * Reads are answered from an immutable snapshot of the whole catalog, which
+ * is replaced at once when a new one has been loaded, so readers never lock
+ * and never see a half loaded catalog. The snapshot is loaded on first use,
+ * refreshed in the background at the given interval or when
+ * {@link #refresh()} is called, and reloaded whenever the client it was
+ * created with changes a plan or add-on. Reads after such a change wait for
+ * the new snapshot, so changes made through the client are seen right away.
+ * <p/>
+ * The catalog keeps serving the snapshot it has when a reload fails, and
+ * until a reload succeeds its reads no longer wait for one. A plan whose
+ * add-ons could not be loaded keeps those of the previous snapshot, and the
+ * catalog is reloaded again on the next read.
+ * <p/>
+ * The plans and add-ons handed out are shared between all readers and must
+ * not be modified.
+ *
+ * @author twerner
+ *
+ */
+public class RecurlyPlanCatalog implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyPlanCatalog.class);
+
+	private final RecurlyClientBase client;
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+	private final Consumer<RecurlyRequest> invalidator = this::onWrite;
+	private final ScheduledFuture<?> scheduledRefresh;
+	// Bumped by every invalidation, a load started before one is discarded
+	private long generation = 0;
+	private CompletableFuture<Snapshot> loading;
+	// Whether the snapshot is known to be outdated, and whether reloading it failed since
+	private volatile boolean stale = false;
+	private boolean reloadFailed = false;
+
+	/**
+	 * @param client          loads the catalog, and whose plan and add-on
+	 *                        changes invalidate it
+	 * @param refreshInterval how often the catalog is reloaded in the
+	 *                        background, {@link Duration#ZERO} to only reload
+	 *                        it on demand
+	 */
+	public RecurlyPlanCatalog(final RecurlyClientBase client, final Duration refreshInterval) {
+		this.client = client;
+		client.addWriteListener(invalidator);
+		if (refreshInterval.isZero() || refreshInterval.isNegative()) {
+			scheduledRefresh = null;
+		} else {
+			scheduledRefresh = RecurlyScheduler.repeat(() -> {
+				refresh().whenComplete((s, t) -> {
+					if (t != null) {
+						log.warn("Unable to refresh the plan catalog, keeping the current one", RecurlyClientBase.unwrapCompletionException(t));
+					}
+				});
+			}, refreshInterval.toNanos());
+		}
+	}
+
+	/**
+	 * @return the plan, or null if there is no such plan
+	 */
+	@Nullable
+	public Plan getPlan(final String planCode) {
+		return current().plans.get(planCode);
+	}
+
+	public List<Plan> getPlans() {
+		return current().planList;
+	}
+
+	/**
+	 * @return the add-on, or null if the plan has no such add-on
+	 */
+	@Nullable
+	public AddOn getAddOn(final String planCode, final String addOnCode) {
+		final Map<String, AddOn> addOns = current().addOns.get(planCode);
+		return addOns == null ? null : addOns.get(addOnCode);
+	}
+
+	/**
+	 * @return the add-ons of the plan, empty if there is no such plan
+	 */
+	public List<AddOn> getAddOns(final String planCode) {
+		final Map<String, AddOn> addOns = current().addOns.get(planCode);
+		return addOns == null ? Collections.<AddOn>emptyList() : Collections.unmodifiableList(new ArrayList<>(addOns.values()));
+	}
+
+	/**
+	 * When the snapshot being served was loaded, in epoch milliseconds, or
+	 * -1 if none is loaded
+	 */
+	public long getLoadedAt() {
+		final Snapshot current = snapshot.get();
+		return current == null ? -1 : current.loadedAt;
+	}
+
+	/**
+	 * Whether the snapshot being served is known to be outdated, by a change
+	 * made since it was loaded or a plan it could not load, and not replaced
+	 * yet
+	 */
+	public boolean isStale() {
+		return stale;
+	}
+
+	/**
+	 * Reloads the catalog in the background, joining a reload already under
+	 * way. Reads keep being served from the current snapshot meanwhile.
+	 */
+	public synchronized CompletableFuture<Void> refresh() {
+		return load().thenApply(s -> null);
+	}
+
+	/**
+	 * Marks the current snapshot stale and reloads it, so that the next read
+	 * waits for the new one. The current snapshot is still served if the
+	 * reload fails.
+	 */
+	public synchronized void invalidate() {
+		generation++;
+		stale = true;
+		reloadFailed = false;
+		loading = null;
+		load();
+	}
+
+	/**
+	 * Stops the background refresh and invalidation
+	 */
+	@Override
+	public void close() {
+		if (scheduledRefresh != null) {
+			scheduledRefresh.cancel(false);
+		}
+		client.removeWriteListener(invalidator);
+	}
+
+	private Snapshot current() {
+		final Snapshot current = snapshot.get();
+		if (current != null && !stale) {
+			return current;
+		}
+		final CompletableFuture<Snapshot> load;
+		final boolean failed;
+		synchronized (this) {
+			load = load();
+			failed = reloadFailed;
+		}
+		if (current == null) {
+			return RecurlyClientBase.awaitResult(load);
+		}
+		if (failed) {
+			// Don't hold every read up while Recurly is failing, the reload goes on in the background
+			return current;
+		}
+		try {
+			return RecurlyClientBase.awaitResult(load);
+		} catch (RecurlyException e) {
+			log.warn("Unable to reload the plan catalog, serving the stale one", e);
+			return current;
+		}
+	}
+
+	private void onWrite(final RecurlyRequest request) {
+		final String family = RecurlyCircuitBreakers.familyOf(request.getUrl());
+		if ("plans".equals(family) || "add_ons".equals(family)) {
+			log.debug("Plan catalog invalidated by {} {}", request.getMethod(), request.getUrl());
+			invalidate();
+		}
+	}
+
+	private CompletableFuture<Snapshot> load() {
+		if (loading != null) {
+			return loading;
+		}
+		final long loadGeneration = generation;
+		final Snapshot previous = snapshot.get();
+		final CompletableFuture<Snapshot> load = client.doGETsAsync(Plans.PLANS_RESOURCE, Plans.class)
+				.thenApply(RecurlyClientBase::depaginateResults)
+				.thenCompose(plans -> {
+					final Map<String, CompletableFuture<AddOns>> addOns = new LinkedHashMap<>();
+					for (Plan plan : plans == null ? Collections.<Plan>emptyList() : plans.getObjects()) {
+						addOns.put(plan.getPlanCode(), client.doGETsAsync(Plan.PLANS_RESOURCE + "/" + RecurlyClientBase.urlEncode(plan.getPlanCode())
+								+ AddOn.ADDONS_RESOURCE, AddOns.class).thenApply(RecurlyClientBase::depaginateResults));
+					}
+					// Wait for all of them, one plan failing does not fail the others
+					final CompletableFuture<?>[] settled = new CompletableFuture<?>[addOns.size()];
+					int i = 0;
+					for (CompletableFuture<AddOns> planAddOns : addOns.values()) {
+						settled[i++] = planAddOns.handle((a, t) -> null);
+					}
+					return CompletableFuture.allOf(settled)
+							.thenApply(done -> new Snapshot(plans == null ? Collections.<Plan>emptyList() : plans.getObjects(), addOns, previous));
+				});
+		loading = load;
+		load.whenComplete((loaded, t) -> {
+			synchronized (RecurlyPlanCatalog.this) {
+				if (loading == load) {
+					loading = null;
+				}
+				if (generation != loadGeneration) {
+					return;
+				}
+				if (loaded != null) {
+					snapshot.set(loaded);
+					stale = !loaded.failedPlans.isEmpty();
+					reloadFailed = stale;
+					if (stale) {
+						log.warn("Unable to load the add-ons of plans {}, keeping their previous ones", loaded.failedPlans);
+					}
+				} else if (stale) {
+					reloadFailed = true;
+				}
+			}
+		});
+		return load;
+	}
+
+	private static class Snapshot {
+		private final Map<String, Plan> plans;
+		private final List<Plan> planList;
+		private final Map<String, Map<String, AddOn>> addOns;
+		// Plans whose add-ons failed to load
+		private final List<String> failedPlans = new ArrayList<>();
+		private final long loadedAt = System.currentTimeMillis();
+
+		Snapshot(final List<Plan> plans, final Map<String, CompletableFuture<AddOns>> addOns, @Nullable final Snapshot previous) {
+			final Map<String, Plan> byCode = new LinkedHashMap<>();
+			for (Plan plan : plans) {
+				byCode.put(plan.getPlanCode(), plan);
+			}
+			final Map<String, Map<String, AddOn>> addOnsByPlan = new LinkedHashMap<>();
+			for (Map.Entry<String, CompletableFuture<AddOns>> planAddOns : addOns.entrySet()) {
+				if (planAddOns.getValue().isCompletedExceptionally()) {
+					failedPlans.add(planAddOns.getKey());
+					final Map<String, AddOn> kept = previous == null ? null : previous.addOns.get(planAddOns.getKey());
+					addOnsByPlan.put(planAddOns.getKey(), kept == null ? Collections.<String, AddOn>emptyMap() : kept);
+					continue;
+				}
+				final Map<String, AddOn> byAddOnCode = new LinkedHashMap<>();
+				final AddOns loaded = planAddOns.getValue().join();
+				if (loaded != null) {
+					for (AddOn addOn : loaded.getObjects()) {
+						byAddOnCode.put(addOn.getAddOnCode(), addOn);
+					}
+				}
+				addOnsByPlan.put(planAddOns.getKey(), Collections.unmodifiableMap(byAddOnCode));
+			}
+			this.plans = Collections.unmodifiableMap(byCode);
+			this.planList = Collections.unmodifiableList(new ArrayList<>(byCode.values()));
+			this.addOns = Collections.unmodifiableMap(addOnsByPlan);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponseHeaders;
+
+/**
+ * Paces requests per API key according to the quota Recurly reports in the
+ * X-RateLimit-* response headers.
+ * <p/>
+ * Each key gets a token bucket whose rate is recomputed from every response:
+ * the requests remaining in the current window, less a share of the limit
+ * kept in reserve as headroom, spread evenly over the time until the window
+ * resets. Requests are thus spaced out instead of bursting into the limit.
+ * Until a key has seen its first quota headers, its requests are not paced.
+ *
+ * @author twerner
+ *
+ */
+class RecurlyRateLimiter {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyRateLimiter.class);
+
+	static final String LIMIT_HEADER = "X-RateLimit-Limit";
+	static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+	static final String RESET_HEADER = "X-RateLimit-Reset";
+	static final String RETRY_AFTER_HEADER = "Retry-After";
+
+	// Requests that may go out back to back before pacing kicks in
+	private static final double BURST = 2;
+
+	private final double headroom;
+	private final LongSupplier nanoClock;
+	private final LongSupplier wallClock;
+	private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+	/**
+	 * @param headroom share of the limit (0 to 1) to leave unused
+	 */
+	RecurlyRateLimiter(final double headroom) {
+		this(headroom, System::nanoTime, System::currentTimeMillis);
+	}
+
+	RecurlyRateLimiter(final double headroom, final LongSupplier nanoClock, final LongSupplier wallClock) {
+		this.headroom = headroom;
+		this.nanoClock = nanoClock;
+		this.wallClock = wallClock;
+	}
+
+	/**
+	 * Takes a request slot for the key
+	 *
+	 * @return how long to wait before sending the request, in nanoseconds
+	 */
+	long acquire(final String key) {
+		final Bucket bucket = buckets.get(key);
+		return bucket == null ? 0 : bucket.acquire(nanoClock.getAsLong());
+	}
+
+	/**
+	 * Updates the key's pace from the quota headers of a response
+	 */
+	void update(final String key, final RecurlyResponseHeaders headers) {
+		final Long limit = longHeader(headers, LIMIT_HEADER);
+		final Long remaining = longHeader(headers, REMAINING_HEADER);
+		final Long reset = longHeader(headers, RESET_HEADER);
+		final long now = nanoClock.getAsLong();
+
+		if (headers.getStatusCode() == 429) {
+			// Over the limit: hold everything until the window resets or Recurly says otherwise
+			final Long retryAfter = longHeader(headers, RETRY_AFTER_HEADER);
+			final long waitNanos = retryAfter != null ? TimeUnit.SECONDS.toNanos(retryAfter) : untilReset(reset);
+			bucket(key).block(now, Math.max(waitNanos, TimeUnit.SECONDS.toNanos(1)));
+			log.warn("Recurly rate limit exceeded, holding requests for {} ms", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+			return;
+		}
+		if (limit == null || remaining == null || reset == null) {
+			return;
+		}
+		final double budget = remaining - headroom * limit;
+		final long window = Math.max(untilReset(reset), 1);
+		bucket(key).pace(now, budget, window);
+	}
+
+	private long untilReset(@Nullable final Long resetEpochSeconds) {
+		if (resetEpochSeconds == null) {
+			return TimeUnit.SECONDS.toNanos(1);
+		}
+		return TimeUnit.MILLISECONDS.toNanos(Math.max(0, resetEpochSeconds * 1000 - wallClock.getAsLong()));
+	}
+
+	private Bucket bucket(final String key) {
+		Bucket bucket = buckets.get(key);
+		if (bucket == null) {
+			final Bucket created = new Bucket();
+			bucket = buckets.putIfAbsent(key, created);
+			if (bucket == null) {
+				bucket = created;
+			}
+		}
+		return bucket;
+	}
+
+	@Nullable
+	private static Long longHeader(final RecurlyResponseHeaders headers, final String name) {
+		final String value = headers.getHeader(name);
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Long.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static class Bucket {
+		// Tokens go negative as requests are scheduled ahead of time
+		private double tokens = BURST;
+		private double tokensPerNano = Double.POSITIVE_INFINITY;
+		private long refilledAt;
+		private long blockedUntil = Long.MIN_VALUE;
+
+		synchronized long acquire(final long now) {
+			refill(now);
+			final long blocked = blockedUntil == Long.MIN_VALUE ? 0 : blockedUntil - now;
+			if (tokensPerNano == Double.POSITIVE_INFINITY) {
+				return Math.max(0, blocked);
+			}
+			tokens -= 1;
+			if (tokens >= 0) {
+				return Math.max(0, blocked);
+			}
+			if (tokensPerNano <= 0) {
+				// Out of budget for this window: wait for it to reset
+				return blocked > 0 ? blocked : TimeUnit.SECONDS.toNanos(1);
+			}
+			return Math.max(blocked, (long) Math.ceil(-tokens / tokensPerNano));
+		}
+
+		synchronized void pace(final long now, final double budget, final long windowNanos) {
+			refill(now);
+			if (budget <= 0) {
+				tokensPerNano = 0;
+				tokens = Math.min(tokens, 0);
+				blockedUntil = now + windowNanos;
+				return;
+			}
+			tokensPerNano = budget / windowNanos;
+			tokens = Math.min(tokens, BURST);
+			blockedUntil = Long.MIN_VALUE;
+		}
+
+		synchronized void block(final long now, final long nanos) {
+			refill(now);
+			blockedUntil = Math.max(blockedUntil, now + nanos);
+			tokens = Math.min(tokens, 0);
+		}
+
+		private void refill(final long now) {
+			if (tokensPerNano != Double.POSITIVE_INFINITY && tokensPerNano > 0) {
+				tokens = Math.min(BURST, tokens + (now - refilledAt) * tokensPerNano);
+			}
+			if (blockedUntil != Long.MIN_VALUE && now >= blockedUntil) {
+				blockedUntil = Long.MIN_VALUE;
+				if (tokensPerNano == 0) {
+					// A new window has started, run unpaced until its quota headers come in
+					tokensPerNano = Double.POSITIVE_INFINITY;
+					tokens = BURST;
+				}
+			}
+			refilledAt = now;
+		}
+	}
+}
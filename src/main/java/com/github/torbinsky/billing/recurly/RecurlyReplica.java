@@ -0,0 +1,522 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyException;
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.Adjustment;
+import com.github.torbinsky.billing.recurly.model.Invoice;
+import com.github.torbinsky.billing.recurly.model.Notification;
+import com.github.torbinsky.billing.recurly.model.Subscription;
+
+/**
+ * A local copy of the accounts, subscriptions and invoices of a Recurly site,
+ * along with the adjustments on the invoices, indexed for the lookups that
+ * would otherwise take a request per account: subscriptions by plan, state,
+ * currency and account, invoices by state, currency and account, accounts by
+ * state.
+ * <p/>
+ * The replica starts empty. The first {@link #refresh()} loads every object,
+ * later ones only fetch what changed since, see
+ * {@link RecurlyIncrementalSync}. Objects are kept once seen, a closed account
+ * or expired subscription is found under its new state. Adjustments are only
+ * known from the invoices they are on.
+ * <p/>
+ * Registered with a {@link RecurlyNotificationDispatcher}, the replica also
+ * fetches the subscriptions Recurly's push notifications are about as they
+ * arrive, ahead of the next refresh. A subscription is never replaced by an
+ * older copy of it, e.g. one fetched for a notification Recurly retried.
+ * <p/>
+ * Lookups never call Recurly. They wait for a change being applied, not for a
+ * refresh, so a refresh under way may be partly visible. The objects handed
+ * out are shared between all readers and must not be modified.
+ *
+ * @author twerner
+ *
+ */
+public class RecurlyReplica implements RecurlyDeltaListener, RecurlyNotificationListener, Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyReplica.class);
+
+	private final RecurlyClientBase client;
+	private final RecurlyIncrementalSync sync;
+	private final ScheduledFuture<?> scheduledRefresh;
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Table<Account> accounts = new Table<>(Account::getAccountCode);
+	private final Index<Account> accountsByState = accounts.index(Account::getState);
+
+	private final Table<Subscription> subscriptions = new Table<>(Subscription::getUuid);
+	private final Index<Subscription> subscriptionsByAccount = subscriptions.index(subscription -> accountCode(subscription.getAccount()));
+	private final Index<Subscription> subscriptionsByPlan = subscriptions.index(subscription -> subscription.getPlan() == null ? null : subscription.getPlan().getPlanCode());
+	private final Index<Subscription> subscriptionsByState = subscriptions.index(Subscription::getState);
+	private final Index<Subscription> subscriptionsByCurrency = subscriptions.index(Subscription::getCurrency);
+
+	private final Table<Invoice> invoices = new Table<>(Invoice::getUuid);
+	private final Index<Invoice> invoicesByAccount = invoices.index(invoice -> accountCode(invoice.getAccount()));
+	private final Index<Invoice> invoicesByState = invoices.index(Invoice::getState);
+	private final Index<Invoice> invoicesByCurrency = invoices.index(Invoice::getCurrency);
+
+	private final Table<Adjustment> adjustments = new Table<>(Adjustment::getUuid);
+	private final Index<Adjustment> adjustmentsByAccount = adjustments.index(adjustment -> accountCode(adjustment.getAccount()));
+
+	private volatile DateTime refreshedAt;
+
+	/**
+	 * @param client          syncs the replica with the client's own
+	 *                        credentials; replicate another tenant with the
+	 *                        view from {@code withApiKey(...)}
+	 * @param refreshInterval how often changes are fetched in the background,
+	 *                        {@link Duration#ZERO} to only fetch them on
+	 *                        demand
+	 */
+	public RecurlyReplica(final RecurlyClientBase client, final Duration refreshInterval) {
+		this.client = client;
+		this.sync = new RecurlyIncrementalSync(client, new MemoryWatermarkStore());
+		if (refreshInterval.isZero() || refreshInterval.isNegative()) {
+			scheduledRefresh = null;
+		} else {
+			final Executor executor = client.getDeserializationExecutor();
+			scheduledRefresh = RecurlyScheduler.repeat(() -> executor.execute(() -> {
+				try {
+					refresh();
+				} catch (RuntimeException e) {
+					log.warn("Unable to refresh the replica, will retry", e);
+				}
+			}), refreshInterval.toNanos());
+		}
+	}
+
+	/**
+	 * Applies the changes made since the last refresh, all objects on the
+	 * first one. A refresh already under way is not repeated.
+	 *
+	 * @return the number of changes applied
+	 */
+	public long refresh() {
+		if (!refreshing.compareAndSet(false, true)) {
+			return 0;
+		}
+		try {
+			final long changes = sync.sync(this);
+			refreshedAt = new DateTime();
+			return changes;
+		} finally {
+			refreshing.set(false);
+		}
+	}
+
+	/**
+	 * When the last refresh completed, or null if none has yet, i.e. the
+	 * replica is not fully loaded
+	 */
+	@Nullable
+	public DateTime getRefreshedAt() {
+		return refreshedAt;
+	}
+
+	/**
+	 * Stops the background refresh
+	 */
+	@Override
+	public void close() {
+		if (scheduledRefresh != null) {
+			scheduledRefresh.cancel(false);
+		}
+	}
+
+	// -------------------------------------------------------------------------
+
+	@Nullable
+	public Account getAccount(final String accountCode) {
+		lock.readLock().lock();
+		try {
+			return accounts.get(accountCode);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public List<Account> getAccountsByState(final String state) {
+		return find(accounts, accountsByState, state);
+	}
+
+	/**
+	 * The accounts with at least one invoice in the given state, e.g.
+	 * past_due
+	 */
+	public List<Account> getAccountsWithInvoiceState(final String invoiceState) {
+		lock.readLock().lock();
+		try {
+			final Map<String, Account> found = new LinkedHashMap<>();
+			for (Invoice invoice : invoices.find(invoicesByState, invoiceState)) {
+				final String accountCode = accountCode(invoice.getAccount());
+				final Account account = accountCode == null ? null : accounts.get(accountCode);
+				if (account != null) {
+					found.put(accountCode, account);
+				}
+			}
+			return new ArrayList<>(found.values());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Nullable
+	public Subscription getSubscription(final String uuid) {
+		lock.readLock().lock();
+		try {
+			return subscriptions.get(uuid);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public List<Subscription> getAccountSubscriptions(final String accountCode) {
+		return find(subscriptions, subscriptionsByAccount, accountCode);
+	}
+
+	public List<Subscription> getSubscriptionsByPlan(final String planCode) {
+		return find(subscriptions, subscriptionsByPlan, planCode);
+	}
+
+	/**
+	 * The subscriptions to the plan in the given state, e.g. active
+	 */
+	public List<Subscription> getSubscriptionsByPlan(final String planCode, final String state) {
+		lock.readLock().lock();
+		try {
+			return subscriptions.find(subscriptionsByPlan, planCode, subscriptionsByState, state);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public List<Subscription> getSubscriptionsByState(final String state) {
+		return find(subscriptions, subscriptionsByState, state);
+	}
+
+	public List<Subscription> getSubscriptionsByCurrency(final String currency) {
+		return find(subscriptions, subscriptionsByCurrency, currency);
+	}
+
+	@Nullable
+	public Invoice getInvoice(final String uuid) {
+		lock.readLock().lock();
+		try {
+			return invoices.get(uuid);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public List<Invoice> getAccountInvoices(final String accountCode) {
+		return find(invoices, invoicesByAccount, accountCode);
+	}
+
+	public List<Invoice> getInvoicesByState(final String state) {
+		return find(invoices, invoicesByState, state);
+	}
+
+	public List<Invoice> getInvoicesByCurrency(final String currency) {
+		return find(invoices, invoicesByCurrency, currency);
+	}
+
+	@Nullable
+	public Adjustment getAdjustment(final String uuid) {
+		lock.readLock().lock();
+		try {
+			return adjustments.get(uuid);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public List<Adjustment> getAccountAdjustments(final String accountCode) {
+		return find(adjustments, adjustmentsByAccount, accountCode);
+	}
+
+	// -------------------------------------------------------------------------
+
+	@Override
+	public void accountChanged(final RecurlyDelta<Account> delta) {
+		lock.writeLock().lock();
+		try {
+			accounts.put(delta.getObject());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void subscriptionChanged(final RecurlyDelta<Subscription> delta) {
+		putSubscription(delta.getObject());
+	}
+
+	@Override
+	public void invoiceChanged(final RecurlyDelta<Invoice> delta) {
+		lock.writeLock().lock();
+		try {
+			final Invoice previous = invoices.put(delta.getObject());
+			for (Adjustment adjustment : lineItems(previous)) {
+				adjustments.remove(adjustment.getUuid());
+			}
+			for (Adjustment adjustment : lineItems(delta.getObject())) {
+				adjustments.put(adjustment);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Fetches and applies the subscription the notification is about, if
+	 * any, before returning. The copies in notifications only hold some of
+	 * the fields and are not applied; neither are their accounts and
+	 * invoices, which are left to the next refresh, as is the subscription
+	 * if it cannot be fetched.
+	 */
+	@Override
+	public void notificationReceived(final Notification notification) {
+		final Subscription notified = notification.getSubscription();
+		if (notified == null || notified.getUuid() == null) {
+			return;
+		}
+		final Subscription subscription;
+		try {
+			subscription = client.doGET(Subscription.SUBSCRIPTION_RESOURCE + "/" + RecurlyClientBase.urlEncode(notified.getUuid()), Subscription.class);
+		} catch (RecurlyException e) {
+			log.warn("Unable to fetch subscription {} after a {} notification, leaving it to the next refresh", notified.getUuid(),
+					notification.getType(), e);
+			return;
+		}
+		if (subscription != null) {
+			putSubscription(subscription);
+		}
+	}
+
+	/**
+	 * Stores the subscription unless the one stored was updated after it
+	 */
+	private void putSubscription(final Subscription subscription) {
+		lock.writeLock().lock();
+		try {
+			final Subscription previous = subscription.getUuid() == null ? null : subscriptions.get(subscription.getUuid());
+			if (previous != null && previous.getUpdatedAt() != null && subscription.getUpdatedAt() != null
+					&& previous.getUpdatedAt().isAfter(subscription.getUpdatedAt())) {
+				log.debug("Keeping subscription {} updated at {} over the copy updated at {}", subscription.getUuid(), previous.getUpdatedAt(),
+						subscription.getUpdatedAt());
+				return;
+			}
+			subscriptions.put(subscription);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private <V> List<V> find(final Table<V> table, final Index<V> index, final String key) {
+		lock.readLock().lock();
+		try {
+			return table.find(index, key);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static List<Adjustment> lineItems(@Nullable final Invoice invoice) {
+		if (invoice == null || invoice.getLineItems() == null || invoice.getLineItems().getObjects() == null) {
+			return Collections.emptyList();
+		}
+		return invoice.getLineItems().getObjects();
+	}
+
+	@Nullable
+	private static String accountCode(@Nullable final Account account) {
+		return account == null ? null : account.getAccountCode();
+	}
+
+	/**
+	 * Objects by id, along with the indexes over them. Guarded by the lock of
+	 * the replica.
+	 */
+	private static final class Table<V> {
+		private final Function<V, String> id;
+		private final Map<String, V> rows = new HashMap<>();
+		private final List<Index<V>> indexes = new ArrayList<>();
+
+		Table(final Function<V, String> id) {
+			this.id = id;
+		}
+
+		Index<V> index(final Function<V, String> key) {
+			final Index<V> index = new Index<>(key);
+			indexes.add(index);
+			return index;
+		}
+
+		@Nullable
+		V get(final String id) {
+			return rows.get(id);
+		}
+
+		/**
+		 * @return the object replaced, if any; objects without an id are
+		 *         ignored
+		 */
+		@Nullable
+		V put(final V row) {
+			final String rowId = id.apply(row);
+			if (rowId == null) {
+				return null;
+			}
+			final V previous = rows.put(rowId, row);
+			for (Index<V> index : indexes) {
+				index.update(rowId, previous, row);
+			}
+			return previous;
+		}
+
+		void remove(@Nullable final String rowId) {
+			final V previous = rowId == null ? null : rows.remove(rowId);
+			if (previous != null) {
+				for (Index<V> index : indexes) {
+					index.update(rowId, previous, null);
+				}
+			}
+		}
+
+		List<V> find(final Index<V> index, final String key) {
+			final Set<String> ids = index.ids(key);
+			final List<V> found = new ArrayList<>(ids.size());
+			for (String rowId : ids) {
+				found.add(rows.get(rowId));
+			}
+			return found;
+		}
+
+		/**
+		 * The objects under both keys, walking the smaller of the two sets
+		 */
+		List<V> find(final Index<V> index, final String key, final Index<V> otherIndex, final String otherKey) {
+			Set<String> ids = index.ids(key);
+			Set<String> otherIds = otherIndex.ids(otherKey);
+			if (otherIds.size() < ids.size()) {
+				final Set<String> smaller = otherIds;
+				otherIds = ids;
+				ids = smaller;
+			}
+			final List<V> found = new ArrayList<>();
+			for (String rowId : ids) {
+				if (otherIds.contains(rowId)) {
+					found.add(rows.get(rowId));
+				}
+			}
+			return found;
+		}
+	}
+
+	/**
+	 * The ids of the objects by some attribute of theirs
+	 */
+	private static final class Index<V> {
+		private final Function<V, String> key;
+		private final Map<String, Set<String>> ids = new HashMap<>();
+
+		Index(final Function<V, String> key) {
+			this.key = key;
+		}
+
+		Set<String> ids(final String key) {
+			final Set<String> found = ids.get(key);
+			return found == null ? Collections.<String>emptySet() : found;
+		}
+
+		void update(final String id, @Nullable final V previous, @Nullable final V current) {
+			final String previousKey = previous == null ? null : key.apply(previous);
+			final String currentKey = current == null ? null : key.apply(current);
+			if (Objects.equals(previousKey, currentKey)) {
+				return;
+			}
+			if (previousKey != null) {
+				final Set<String> previousIds = ids.get(previousKey);
+				previousIds.remove(id);
+				if (previousIds.isEmpty()) {
+					ids.remove(previousKey);
+				}
+			}
+			if (currentKey != null) {
+				ids.computeIfAbsent(currentKey, k -> new LinkedHashSet<>()).add(id);
+			}
+		}
+	}
+
+	/**
+	 * The replica lives in memory, so it syncs from scratch with every new
+	 * process
+	 */
+	private static final class MemoryWatermarkStore implements RecurlyWatermarkStore {
+		private final Map<String, DateTime> watermarks = new HashMap<>();
+		private final Map<String, Set<String>> seen = new HashMap<>();
+
+		@Override
+		@Nullable
+		public synchronized DateTime getWatermark(final String key) {
+			return watermarks.get(key);
+		}
+
+		@Override
+		public synchronized void setWatermark(final String key, final DateTime watermark) {
+			setWatermark(key, watermark, Collections.<String>emptySet());
+		}
+
+		@Override
+		public synchronized Set<String> getSeenAtWatermark(final String key) {
+			final Set<String> entries = seen.get(key);
+			return entries == null ? Collections.<String>emptySet() : entries;
+		}
+
+		@Override
+		public synchronized void setWatermark(final String key, final DateTime watermark, final Set<String> seenAtWatermark) {
+			watermarks.put(key, watermark);
+			seen.put(key, seenAtWatermark);
+		}
+	}
+}
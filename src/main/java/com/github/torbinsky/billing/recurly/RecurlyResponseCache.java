@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+/**
+ * Keeps the last validated response of each url and API key along with its
+ * ETag, so that repeated GETs can be sent with If-None-Match and a 304 Not
+ * Modified answered from the cache.
+ * <p/>
+ * The objects deserialized from a cached response are kept with it, so a 304
+ * hands out the very same objects again instead of parsing the body anew.
+ * The least recently used responses are dropped once the cache is full,
+ * together with their objects.
+ *
+ * @author twerner
+ *
+ */
+class RecurlyResponseCache {
+
+	static final String ETAG_HEADER = "ETag";
+	static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+	// Both guarded by this; an entry is in byResponse for as long as it is in entries
+	private final Map<String, Entry> entries;
+	// Cached responses are told apart by identity, RecurlyResponse does not override equals
+	private final Map<RecurlyResponse, Entry> byResponse = new IdentityHashMap<>();
+	private final LongAdder notModified = new LongAdder();
+
+	RecurlyResponseCache(final int maxEntries) {
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, RecurlyResponseCache.Entry> eldest) {
+				if (size() > maxEntries) {
+					byResponse.remove(eldest.getValue().response);
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	@Nullable
+	synchronized Entry get(final String url, final String requestKey) {
+		return entries.get(key(url, requestKey));
+	}
+
+	/**
+	 * Keeps a successful response for later revalidation, if it carries an ETag
+	 */
+	synchronized void put(final String url, final String requestKey, final RecurlyResponse response) {
+		final String etag = response.getHeader(ETAG_HEADER);
+		final Entry replaced;
+		if (etag == null) {
+			replaced = entries.remove(key(url, requestKey));
+		} else {
+			final Entry entry = new Entry(etag, response);
+			byResponse.put(response, entry);
+			replaced = entries.put(key(url, requestKey), entry);
+		}
+		if (replaced != null && replaced.response != response) {
+			byResponse.remove(replaced.response);
+		}
+	}
+
+	/**
+	 * Records that a cached response was revalidated by a 304
+	 */
+	void notModified() {
+		notModified.increment();
+	}
+
+	long getNotModifiedCount() {
+		return notModified.sum();
+	}
+
+	/**
+	 * Deserializes the response with the given parser, unless it is a cached
+	 * response that was already deserialized to the given type
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T parse(final RecurlyResponse response, final Class<T> type, final Supplier<T> parser) {
+		final Entry entry;
+		synchronized (this) {
+			entry = byResponse.get(response);
+		}
+		if (entry == null) {
+			return parser.get();
+		}
+		final Object parsed = entry.parsed.get(type);
+		if (parsed != null) {
+			return (T) parsed;
+		}
+		final T created = parser.get();
+		if (created != null) {
+			entry.parsed.putIfAbsent(type, created);
+		}
+		return created;
+	}
+
+	private static String key(final String url, final String requestKey) {
+		return url + " " + requestKey;
+	}
+
+	static class Entry {
+		private final String etag;
+		private final RecurlyResponse response;
+		private final ConcurrentMap<Class<?>, Object> parsed = new ConcurrentHashMap<>();
+
+		private Entry(final String etag, final RecurlyResponse response) {
+			this.etag = etag;
+			this.response = response;
+		}
+
+		String getEtag() {
+			return etag;
+		}
+
+		RecurlyResponse getResponse() {
+			return response;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+/**
+ * Applies a {@link RecurlyRetryPolicy} to the requests of one client, sharing
+ * a single retry budget between them.
+ *
+ * @author twerner
+ *
+ */
+class RecurlyRetrier {
+
+	private static final Logger log = LoggerFactory.getLogger(RecurlyRetrier.class);
+
+	private final RecurlyRetryPolicy policy;
+	private final AtomicLong retries = new AtomicLong();
+	private double budget;
+
+	RecurlyRetrier(final RecurlyRetryPolicy policy) {
+		this.policy = policy;
+		this.budget = policy.getBudgetMax();
+	}
+
+	/**
+	 * The number of retries made so far
+	 */
+	long getRetryCount() {
+		return retries.get();
+	}
+
+	/**
+	 * Makes the first attempt right away and retries it as the policy allows.
+	 * The returned future completes with the last response or failure;
+	 * cancelling it cancels the attempt in flight.
+	 */
+	CompletableFuture<RecurlyResponse> execute(final RecurlyRequest request, final Supplier<CompletableFuture<RecurlyResponse>> attempt) {
+		return execute(request, attempt, null);
+	}
+
+	/**
+	 * As {@link #execute(RecurlyRequest, Supplier)}, sharing the time left
+	 * until the deadline between the remaining attempts. No retry is made if
+	 * its backoff would outlast the deadline.
+	 */
+	CompletableFuture<RecurlyResponse> execute(final RecurlyRequest request, final Supplier<CompletableFuture<RecurlyResponse>> attempt,
+			@Nullable final RecurlyDeadline deadline) {
+		deposit();
+		final Attempts result = new Attempts();
+		attempt(request, attempt, deadline, 1, result);
+		return result;
+	}
+
+	private void attempt(final RecurlyRequest request, final Supplier<CompletableFuture<RecurlyResponse>> attempt, @Nullable final RecurlyDeadline deadline,
+			final int number, final Attempts result) {
+		if (result.isDone()) {
+			// Cancelled while backing off
+			return;
+		}
+		CompletableFuture<RecurlyResponse> current;
+		try {
+			current = attempt.get();
+		} catch (RuntimeException e) {
+			result.completeExceptionally(e);
+			return;
+		}
+		if (deadline != null && request.isReplayable()) {
+			// Leave time for the attempts that may follow, a timed out attempt is retried
+			final long share = deadline.remainingNanos() / (policy.getMaxAttempts() - number + 1);
+			current = RecurlyScheduler.withTimeout(current, share, () -> new TimeoutException("Attempt " + number + " ran out of its share of the deadline"));
+		}
+		final CompletableFuture<RecurlyResponse> sent = current;
+		result.inFlight = sent;
+		if (result.isCancelled()) {
+			sent.cancel(true);
+		}
+		sent.whenComplete((response, t) -> {
+			if (result.isDone()) {
+				return;
+			}
+			final Throwable failure = t == null ? null : RecurlyClientBase.unwrapCompletionException(t);
+			final long delay = backoffNanos(number, response);
+			final boolean retryable = number < policy.getMaxAttempts() && isRetryable(request, response, failure);
+			if (retryable && failure != null && deadline != null && delay >= deadline.remainingNanos()) {
+				// Out of time rather than out of luck
+				result.completeExceptionally(deadline.exceeded(failure));
+			} else if (retryable && (deadline == null || delay < deadline.remainingNanos()) && withdraw()) {
+				retries.incrementAndGet();
+				log.info("Retrying {} {} ({}) in {} ms", request.getMethod(), request.getUrl(),
+						failure != null ? failure.toString() : "status " + response.getStatusCode(), TimeUnit.NANOSECONDS.toMillis(delay));
+				RecurlyScheduler.schedule(delay, () -> {
+					attempt(request, attempt, deadline, number + 1, result);
+					return result;
+				});
+			} else if (failure != null) {
+				result.completeExceptionally(failure);
+			} else {
+				result.complete(response);
+			}
+		});
+	}
+
+	static boolean isRetryable(final RecurlyRequest request, @Nullable final RecurlyResponse response, @Nullable final Throwable failure) {
+		final boolean replayable = request.isReplayable();
+		if (failure != null) {
+			if (failure instanceof ConnectException) {
+				// Never reached Recurly, safe whatever the request
+				return true;
+			}
+			return replayable && (failure instanceof IOException || failure instanceof TimeoutException);
+		}
+		if (!replayable || response == null) {
+			return false;
+		}
+		switch (response.getStatusCode()) {
+		case 429:
+		case 502:
+		case 503:
+		case 504:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private long backoffNanos(final int attemptsMade, @Nullable final RecurlyResponse response) {
+		final long ceiling = Math.min(policy.getMaxBackoffMillis(), policy.getInitialBackoffMillis() << Math.min(attemptsMade - 1, 30));
+		long delay = TimeUnit.MILLISECONDS.toNanos((long) (ThreadLocalRandom.current().nextDouble() * ceiling));
+		final String retryAfter = response == null ? null : response.getHeader(RecurlyRateLimiter.RETRY_AFTER_HEADER);
+		if (retryAfter != null) {
+			try {
+				delay = Math.max(delay, TimeUnit.SECONDS.toNanos(Long.parseLong(retryAfter.trim())));
+			} catch (NumberFormatException e) {
+				// An http date, keep the computed backoff
+			}
+		}
+		return delay;
+	}
+
+	/**
+	 * The outcome of a request's attempts. Cancelling it cancels the attempt
+	 * in flight first, so the attempt has been aborted by the time anyone
+	 * waiting on the outcome hears of the cancellation.
+	 */
+	private static class Attempts extends CompletableFuture<RecurlyResponse> {
+		private volatile CompletableFuture<RecurlyResponse> inFlight;
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			final CompletableFuture<RecurlyResponse> sent = inFlight;
+			if (sent != null) {
+				sent.cancel(mayInterruptIfRunning);
+			}
+			return super.cancel(mayInterruptIfRunning) || isCancelled();
+		}
+	}
+
+	private synchronized void deposit() {
+		budget = Math.min(policy.getBudgetMax(), budget + policy.getBudgetRatio());
+	}
+
+	private synchronized boolean withdraw() {
+		if (budget < 1) {
+			log.warn("Retry budget exhausted, not retrying");
+			return false;
+		}
+		budget -= 1;
+		return true;
+	}
+}
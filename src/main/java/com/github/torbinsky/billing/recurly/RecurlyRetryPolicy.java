@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+/**
+ * How failed requests are retried. Each page of a paginated call is retried
+ * on its own, so a failure halfway through does not lose the pages already
+ * fetched.
+ * <p/>
+ * Replayable requests (see {@link com.github.torbinsky.billing.recurly.transport.RecurlyRequest#isReplayable()}:
+ * GETs, PUTs and plain DELETEs) are retried on connection failures, timeouts
+ * and 429/502/503/504 responses. Other requests, e.g. POSTs or the DELETE
+ * refunding part of a transaction, are only retried when the connection
+ * could not be established, as the request cannot have reached Recurly then. Retries back off exponentially with full jitter, honour
+ * Retry-After, and are drawn from a budget that grows with the number of
+ * requests made, so that retries cannot multiply the load during an outage.
+ *
+ * @author twerner
+ *
+ */
+public final class RecurlyRetryPolicy {
+
+	private final int maxAttempts;
+	private final long initialBackoffMillis;
+	private final long maxBackoffMillis;
+	private final double budgetRatio;
+	private final int budgetMax;
+
+	private RecurlyRetryPolicy(final Builder builder) {
+		this.maxAttempts = builder.maxAttempts;
+		this.initialBackoffMillis = builder.initialBackoffMillis;
+		this.maxBackoffMillis = builder.maxBackoffMillis;
+		this.budgetRatio = builder.budgetRatio;
+		this.budgetMax = builder.budgetMax;
+	}
+
+	/**
+	 * Never retries
+	 */
+	public static RecurlyRetryPolicy noRetries() {
+		return new Builder().setMaxAttempts(1).build();
+	}
+
+	/**
+	 * Up to 3 attempts. Clients only retry when configured to, see
+	 * {@link RecurlyClientConfig.Builder#setRetryPolicy(RecurlyRetryPolicy)}.
+	 */
+	public static RecurlyRetryPolicy defaultPolicy() {
+		return new Builder().build();
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getInitialBackoffMillis() {
+		return initialBackoffMillis;
+	}
+
+	public long getMaxBackoffMillis() {
+		return maxBackoffMillis;
+	}
+
+	public double getBudgetRatio() {
+		return budgetRatio;
+	}
+
+	public int getBudgetMax() {
+		return budgetMax;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("RecurlyRetryPolicy");
+		sb.append("{maxAttempts=").append(maxAttempts);
+		sb.append(", initialBackoffMillis=").append(initialBackoffMillis);
+		sb.append(", maxBackoffMillis=").append(maxBackoffMillis);
+		sb.append(", budgetRatio=").append(budgetRatio);
+		sb.append(", budgetMax=").append(budgetMax);
+		sb.append('}');
+		return sb.toString();
+	}
+
+	public static class Builder {
+		private int maxAttempts = 3;
+		private long initialBackoffMillis = 100;
+		private long maxBackoffMillis = 5000;
+		private double budgetRatio = 0.1;
+		private int budgetMax = 10;
+
+		/**
+		 * Attempts per request, including the first one
+		 */
+		public Builder setMaxAttempts(final int maxAttempts) {
+			if (maxAttempts < 1) {
+				throw new IllegalArgumentException("At least one attempt is needed: " + maxAttempts);
+			}
+			this.maxAttempts = maxAttempts;
+			return this;
+		}
+
+		/**
+		 * Upper bound of the first backoff; doubles with every further retry
+		 */
+		public Builder setInitialBackoffMillis(final long initialBackoffMillis) {
+			this.initialBackoffMillis = initialBackoffMillis;
+			return this;
+		}
+
+		public Builder setMaxBackoffMillis(final long maxBackoffMillis) {
+			this.maxBackoffMillis = maxBackoffMillis;
+			return this;
+		}
+
+		/**
+		 * Retries earned per request made, e.g. 0.1 allows one retry for every
+		 * ten requests once the initial budget is used up
+		 */
+		public Builder setBudgetRatio(final double budgetRatio) {
+			this.budgetRatio = budgetRatio;
+			return this;
+		}
+
+		/**
+		 * Retries that may be saved up, and the initial budget
+		 */
+		public Builder setBudgetMax(final int budgetMax) {
+			this.budgetMax = budgetMax;
+			return this;
+		}
+
+		public RecurlyRetryPolicy build() {
+			return new RecurlyRetryPolicy(this);
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Starts asynchronous calls after a delay without holding on to a thread in
+ * the meantime. The timer thread only starts the call, it never waits on it.
+ *
+ * @author twerner
+ *
+ */
+final class RecurlyScheduler {
+
+	private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread thread = new Thread(r, "recurly-scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private RecurlyScheduler() {
+	}
+
+	/**
+	 * Starts the call after the given delay. Cancelling the returned future
+	 * before then means the call is never made, afterwards it cancels the call.
+	 */
+	static <T> CompletableFuture<T> schedule(final long delayNanos, final Supplier<CompletableFuture<T>> call) {
+		if (delayNanos <= 0) {
+			return call.get();
+		}
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		final ScheduledFuture<?> scheduled = timer.schedule(() -> {
+			if (result.isDone()) {
+				return;
+			}
+			final CompletableFuture<T> started;
+			try {
+				started = call.get();
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+				return;
+			}
+			forward(started, result);
+		}, delayNanos, TimeUnit.NANOSECONDS);
+		result.whenComplete((r, t) -> {
+			if (result.isCancelled()) {
+				scheduled.cancel(false);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Runs the task every period until the returned future is cancelled.
+	 * The task must only start work, not wait for it.
+	 */
+	static ScheduledFuture<?> repeat(final Runnable task, final long periodNanos) {
+		return timer.scheduleWithFixedDelay(task, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Mirrors the source, unless it takes longer than the given timeout: the
+	 * returned future then fails with the given error and the source is
+	 * cancelled. Cancelling the returned future cancels the source as well.
+	 */
+	static <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> source, final long timeoutNanos, final Supplier<? extends Throwable> error) {
+		final CompletableFuture<T> result = new CompletableFuture<T>() {
+			@Override
+			public boolean cancel(final boolean mayInterruptIfRunning) {
+				// As on expiry, the source is cancelled before anyone waiting on the result hears of it
+				source.cancel(mayInterruptIfRunning);
+				return super.cancel(mayInterruptIfRunning) || isCancelled();
+			}
+		};
+		final AtomicBoolean timedOut = new AtomicBoolean();
+		source.whenComplete((r, t) -> {
+			if (timedOut.get()) {
+				result.completeExceptionally(error.get());
+			} else if (t != null) {
+				result.completeExceptionally(RecurlyClientBase.unwrapCompletionException(t));
+			} else {
+				result.complete(r);
+			}
+		});
+		if (!result.isDone()) {
+			final Runnable expire = () -> {
+				// The source is cancelled before anyone waiting on the result hears of it
+				timedOut.set(true);
+				source.cancel(true);
+			};
+			if (timeoutNanos <= 0) {
+				expire.run();
+			} else {
+				final ScheduledFuture<?> timeout = timer.schedule(expire, timeoutNanos, TimeUnit.NANOSECONDS);
+				result.whenComplete((r, t) -> timeout.cancel(false));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Completes the target with the outcome of the source, and cancels the
+	 * source if the target gets cancelled first
+	 */
+	static <T> void forward(final CompletableFuture<T> source, final CompletableFuture<T> target) {
+		source.whenComplete((r, t) -> {
+			if (t != null) {
+				target.completeExceptionally(RecurlyClientBase.unwrapCompletionException(t));
+			} else {
+				target.complete(r);
+			}
+		});
+		target.whenComplete((r, t) -> {
+			if (target.isCancelled()) {
+				source.cancel(true);
+			}
+		});
+	}
+}
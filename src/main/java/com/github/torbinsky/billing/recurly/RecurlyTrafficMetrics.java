@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the response bytes received per endpoint, both as transferred
+ * (possibly compressed) and as handed to the parser after decompression.
+ * <p/>
+ * Endpoints are keyed by method and resource path with the identifiers
+ * replaced, e.g. <code>GET /accounts/{id}/invoices</code>. Any path segment
+ * that is not a known collection or action counts as an identifier, so
+ * tokens and codes never make it into the keys.
+ *
+ * @author twerner
+ *
+ */
+public class RecurlyTrafficMetrics {
+
+	// Collections of the API, and their parts that are not identifiers either
+	static final Set<String> COLLECTIONS = new HashSet<>(Arrays.asList("accounts", "add_ons", "adjustments", "billing_info", "coupons",
+			"invoices", "plans", "recurly_js", "redemption", "redemptions", "subscriptions", "transactions"));
+	// Operations on a resource, rather than collections of their own
+	static final Set<String> ACTIONS = new HashSet<>(Arrays.asList("cancel", "reactivate", "terminate", "postpone", "redeem",
+			"refund", "reopen", "void", "mark_successful", "mark_failed", "preview", "result"));
+
+	private final ConcurrentMap<String, Counters> endpoints = new ConcurrentHashMap<>();
+
+	void record(final String endpoint, final long wireBytes, final long payloadBytes) {
+		Counters counters = endpoints.get(endpoint);
+		if (counters == null) {
+			final Counters created = new Counters();
+			counters = endpoints.putIfAbsent(endpoint, created);
+			if (counters == null) {
+				counters = created;
+			}
+		}
+		counters.responses.increment();
+		counters.wireBytes.add(wireBytes);
+		counters.payloadBytes.add(payloadBytes);
+	}
+
+	/**
+	 * A point in time copy of the counters, by endpoint
+	 */
+	public Map<String, EndpointTraffic> snapshot() {
+		final Map<String, EndpointTraffic> snapshot = new TreeMap<>();
+		for (Map.Entry<String, Counters> endpoint : endpoints.entrySet()) {
+			final Counters counters = endpoint.getValue();
+			snapshot.put(endpoint.getKey(), new EndpointTraffic(counters.responses.sum(), counters.wireBytes.sum(), counters.payloadBytes.sum()));
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+
+	public void reset() {
+		endpoints.clear();
+	}
+
+	/**
+	 * Reduces a request to its endpoint key. Path segments after the version
+	 * that are neither a collection nor an action are identifiers; that also
+	 * covers <code>/recurly_js/result/{token}</code>, which does not alternate
+	 * between collections and identifiers like the rest of the API.
+	 */
+	static String endpointOf(final String method, final String url) {
+		String path = url;
+		final int scheme = path.indexOf("://");
+		if (scheme >= 0) {
+			final int slash = path.indexOf('/', scheme + 3);
+			path = slash < 0 ? "/" : path.substring(slash);
+		}
+		final int query = path.indexOf('?');
+		if (query >= 0) {
+			path = path.substring(0, query);
+		}
+
+		final String[] segments = path.split("/");
+		final StringBuilder endpoint = new StringBuilder(method).append(' ');
+		// segments[0] is empty, segments[1] the api version
+		boolean empty = true;
+		for (int i = 2; i < segments.length; i++) {
+			if (segments[i].isEmpty()) {
+				continue;
+			}
+			final boolean named = COLLECTIONS.contains(segments[i]) || ACTIONS.contains(segments[i]);
+			endpoint.append('/').append(named ? segments[i] : "{id}");
+			empty = false;
+		}
+		if (empty) {
+			endpoint.append('/');
+		}
+		return endpoint.toString();
+	}
+
+	private static class Counters {
+		private final LongAdder responses = new LongAdder();
+		private final LongAdder wireBytes = new LongAdder();
+		private final LongAdder payloadBytes = new LongAdder();
+	}
+
+	public static class EndpointTraffic {
+		private final long responses;
+		private final long wireBytes;
+		private final long payloadBytes;
+
+		EndpointTraffic(final long responses, final long wireBytes, final long payloadBytes) {
+			this.responses = responses;
+			this.wireBytes = wireBytes;
+			this.payloadBytes = payloadBytes;
+		}
+
+		public long getResponses() {
+			return responses;
+		}
+
+		/**
+		 * Body bytes as received, compressed if the response was
+		 */
+		public long getWireBytes() {
+			return wireBytes;
+		}
+
+		/**
+		 * Body bytes after decompression
+		 */
+		public long getPayloadBytes() {
+			return payloadBytes;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder();
+			sb.append("EndpointTraffic");
+			sb.append("{responses=").append(responses);
+			sb.append(", wireBytes=").append(wireBytes);
+			sb.append(", payloadBytes=").append(payloadBytes);
+			sb.append('}');
+			return sb.toString();
+		}
+	}
+}
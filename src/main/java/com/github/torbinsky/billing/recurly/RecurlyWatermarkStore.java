@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Collections;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+
+/**
+ * Keeps the point up to which a {@link RecurlyIncrementalSync} has seen the
+ * changes to a collection, so the next sync can start from there.
+ *
+ * @author twerner
+ *
+ * @see RecurlyFileWatermarkStore
+ */
+public interface RecurlyWatermarkStore {
+
+	/**
+	 * @param key identifies the API key and collection synced
+	 * @return the last update time seen, null if the collection was never
+	 *         synced
+	 */
+	@Nullable
+	DateTime getWatermark(String key);
+
+	/**
+	 * Called once a sync of the collection completed
+	 */
+	void setWatermark(String key, DateTime watermark);
+
+	/**
+	 * The objects updated at the watermark that the last sync reported, as
+	 * given to {@link #setWatermark(String, DateTime, Set)}. Stores that do
+	 * not keep them have the next sync report those objects again.
+	 */
+	default Set<String> getSeenAtWatermark(final String key) {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Called once a sync of the collection completed
+	 *
+	 * @param seenAtWatermark identifies the objects updated at the watermark,
+	 *                        and their content, so that the next sync need
+	 *                        not report them again unless they changed
+	 */
+	default void setWatermark(final String key, final DateTime watermark, final Set<String> seenAtWatermark) {
+		setWatermark(key, watermark);
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly.exception;
+
+/**
+ * @author twerner
+ *
+ * A {@link RecurlyException} raised without contacting Recurly, because the
+ * circuit breaker for the resource family of the request is open.
+ */
+public class RecurlyCircuitOpenException extends RecurlyException {
+
+	private final String family;
+	private final long retryAfterMillis;
+
+	public RecurlyCircuitOpenException(String family, long retryAfterMillis) {
+		super("Circuit breaker for [" + family + "] is open, retry in " + retryAfterMillis + " ms");
+		this.family = family;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	/**
+	 * The resource family whose breaker is open, e.g. accounts or invoices
+	 */
+	public String getFamily() {
+		return family;
+	}
+
+	/**
+	 * How long until the breaker lets trial requests through again
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly.exception;
+
+/**
+ * @author twerner
+ *
+ * A {@link RecurlyException} raised when a call made through a client with a
+ * deadline did not complete in time. Requests still in flight are cancelled.
+ */
+public class RecurlyDeadlineExceededException extends RecurlyException {
+
+	public RecurlyDeadlineExceededException() {
+		super();
+	}
+
+	public RecurlyDeadlineExceededException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public RecurlyDeadlineExceededException(String message) {
+		super(message);
+	}
+
+}
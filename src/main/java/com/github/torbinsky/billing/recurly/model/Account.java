@@ -87,6 +87,9 @@ public class Account extends RecurlyObject {
     @XmlElement(name = "created_at")
     private DateTime createdAt;
 
+    @XmlElement(name = "updated_at")
+    private DateTime updatedAt;
+
     @XmlElement(name = "billing_info")
     private BillingInfo billingInfo;
 
@@ -221,6 +224,14 @@ public class Account extends RecurlyObject {
         this.createdAt = dateTimeOrNull(createdAt);
     }
 
+    public DateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(final Object updatedAt) {
+        this.updatedAt = dateTimeOrNull(updatedAt);
+    }
+
     public BillingInfo getBillingInfo() {
         return billingInfo;
     }
@@ -248,6 +259,7 @@ public class Account extends RecurlyObject {
         sb.append(", acceptLanguage='").append(acceptLanguage).append('\'');
         sb.append(", hostedLoginToken='").append(hostedLoginToken).append('\'');
         sb.append(", createdAt=").append(createdAt);
+        sb.append(", updatedAt=").append(updatedAt);
         sb.append(", billingInfo=").append(billingInfo);
         sb.append('}');
         return sb.toString();
@@ -309,6 +321,9 @@ public class Account extends RecurlyObject {
         if (transactions != null ? !transactions.equals(account.transactions) : account.transactions != null) {
             return false;
         }
+        if (updatedAt != null ? !updatedAt.equals(account.updatedAt) : account.updatedAt != null) {
+            return false;
+        }
         if (username != null ? !username.equals(account.username) : account.username != null) {
             return false;
         }
@@ -333,6 +348,7 @@ public class Account extends RecurlyObject {
         result = 31 * result + (acceptLanguage != null ? acceptLanguage.hashCode() : 0);
         result = 31 * result + (hostedLoginToken != null ? hostedLoginToken.hashCode() : 0);
         result = 31 * result + (createdAt != null ? createdAt.hashCode() : 0);
+        result = 31 * result + (updatedAt != null ? updatedAt.hashCode() : 0);
         result = 31 * result + (billingInfo != null ? billingInfo.hashCode() : 0);
         return result;
     }
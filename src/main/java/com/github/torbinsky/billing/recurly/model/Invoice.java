@@ -76,6 +76,9 @@ public class Invoice extends RecurlyObject {
     @XmlElement(name = "created_at")
     private DateTime createdAt;
 
+    @XmlElement(name = "updated_at")
+    private DateTime updatedAt;
+
     @XmlElementWrapper(name = "line_items")
     @XmlElement(name = "adjustment")
     private Adjustments lineItems;
@@ -172,6 +175,14 @@ public class Invoice extends RecurlyObject {
         this.createdAt = dateTimeOrNull(createdAt);
     }
 
+    public DateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(final Object updatedAt) {
+        this.updatedAt = dateTimeOrNull(updatedAt);
+    }
+
     public Adjustments getLineItems() {
         return lineItems;
     }
@@ -211,6 +222,7 @@ public class Invoice extends RecurlyObject {
         sb.append(", totalInCents=").append(totalInCents);
         sb.append(", currency='").append(currency).append('\'');
         sb.append(", createdAt=").append(createdAt);
+        sb.append(", updatedAt=").append(updatedAt);
         sb.append(", lineItems=").append(lineItems);
         sb.append(", transactions=").append(transactions);
         sb.append('}');
@@ -234,6 +246,9 @@ public class Invoice extends RecurlyObject {
         if (createdAt != null ? !createdAt.equals(invoice.createdAt) : invoice.createdAt != null) {
             return false;
         }
+        if (updatedAt != null ? !updatedAt.equals(invoice.updatedAt) : invoice.updatedAt != null) {
+            return false;
+        }
         if (currency != null ? !currency.equals(invoice.currency) : invoice.currency != null) {
             return false;
         }
@@ -284,6 +299,7 @@ public class Invoice extends RecurlyObject {
         result = 31 * result + (totalInCents != null ? totalInCents.hashCode() : 0);
         result = 31 * result + (currency != null ? currency.hashCode() : 0);
         result = 31 * result + (createdAt != null ? createdAt.hashCode() : 0);
+        result = 31 * result + (updatedAt != null ? updatedAt.hashCode() : 0);
         result = 31 * result + (lineItems != null ? lineItems.hashCode() : 0);
         result = 31 * result + (transactions != null ? transactions.hashCode() : 0);
         return result;
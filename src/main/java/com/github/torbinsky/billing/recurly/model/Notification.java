@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly.model;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * A push notification sent by Recurly, e.g. a new_subscription_notification.
+ * Each holds the account concerned and, depending on its type, the
+ * subscription, invoice or transaction.
+ */
+public class Notification extends RecurlyObject {
+
+    @XmlTransient
+    public static final String NOTIFICATION_SUFFIX = "_notification";
+
+    @XmlTransient
+    private String type;
+
+    @XmlElement(name = "account")
+    private Account account;
+
+    @XmlElement(name = "subscription")
+    private Subscription subscription;
+
+    @XmlElement(name = "invoice")
+    private Invoice invoice;
+
+    @XmlElement(name = "transaction")
+    private Transaction transaction;
+
+    /**
+     * The type of notification, e.g. new_subscription or successful_payment:
+     * its root element without the _notification suffix
+     */
+    public String getType() {
+        return type;
+    }
+
+    public void setType(final String type) {
+        this.type = type;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    public void setAccount(final Account account) {
+        this.account = account;
+    }
+
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    public void setSubscription(final Subscription subscription) {
+        this.subscription = subscription;
+    }
+
+    public Invoice getInvoice() {
+        return invoice;
+    }
+
+    public void setInvoice(final Invoice invoice) {
+        this.invoice = invoice;
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    public void setTransaction(final Transaction transaction) {
+        this.transaction = transaction;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Notification");
+        sb.append("{type='").append(type).append('\'');
+        sb.append(", account=").append(account);
+        sb.append(", subscription=").append(subscription);
+        sb.append(", invoice=").append(invoice);
+        sb.append(", transaction=").append(transaction);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final Notification that = (Notification) o;
+
+        if (account != null ? !account.equals(that.account) : that.account != null) {
+            return false;
+        }
+        if (invoice != null ? !invoice.equals(that.invoice) : that.invoice != null) {
+            return false;
+        }
+        if (subscription != null ? !subscription.equals(that.subscription) : that.subscription != null) {
+            return false;
+        }
+        if (transaction != null ? !transaction.equals(that.transaction) : that.transaction != null) {
+            return false;
+        }
+        if (type != null ? !type.equals(that.type) : that.type != null) {
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = type != null ? type.hashCode() : 0;
+        result = 31 * result + (account != null ? account.hashCode() : 0);
+        result = 31 * result + (subscription != null ? subscription.hashCode() : 0);
+        result = 31 * result + (invoice != null ? invoice.hashCode() : 0);
+        result = 31 * result + (transaction != null ? transaction.hashCode() : 0);
+        return result;
+    }
+}
@@ -100,11 +100,15 @@ public abstract class RecurlyObject {
         }
 
         // Hack to work around Recurly output for nil values: the response will contain
-        // an element with a nil attribute (e.g. <city nil="nil"></city>) which Jackson will
-        // interpret as an Object (Map), not a String.
+        // an element with a nil attribute (e.g. <city nil="nil"></city>, or nil="true" in
+        // push notifications) which Jackson will interpret as an Object (Map), not a String.
         if (object instanceof Map) {
         	final Map<?,?> map = (Map<?,?>) object;
-            if (map.keySet().size() == 1 && NIL_STR.equals(map.get(NIL_STR))) {
+            if (map.keySet().size() == 1 && (NIL_STR.equals(map.get(NIL_STR)) || "true".equals(map.get(NIL_STR)))) {
+                return true;
+            }
+            // Push notifications leave typed values empty instead (e.g. <canceled_at type="datetime"></canceled_at>)
+            if (map.keySet().size() == 1 && map.containsKey("type")) {
                 return true;
             }
         }
@@ -73,6 +73,9 @@ public class Subscription extends AbstractSubscription {
     @XmlElement(name = "trial_ends_at")
     private DateTime trialEndsAt;
 
+    @XmlElement(name = "updated_at")
+    private DateTime updatedAt;
+
     public Account getAccount() {
         return account;
     }
@@ -169,6 +172,14 @@ public class Subscription extends AbstractSubscription {
         this.trialEndsAt = dateTimeOrNull(trialEndsAt);
     }
 
+    public DateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(final Object updatedAt) {
+        this.updatedAt = dateTimeOrNull(updatedAt);
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
@@ -187,6 +198,7 @@ public class Subscription extends AbstractSubscription {
         sb.append(", currentPeriodEndsAt=").append(currentPeriodEndsAt);
         sb.append(", trialStartedAt=").append(trialStartedAt);
         sb.append(", trialEndsAt=").append(trialEndsAt);
+        sb.append(", updatedAt=").append(updatedAt);
         sb.append(", addOns=").append(subscriptionAddOns);
         sb.append('}');
         return sb.toString();
@@ -247,6 +259,9 @@ public class Subscription extends AbstractSubscription {
         if (unitAmountInCents != null ? !unitAmountInCents.equals(that.unitAmountInCents) : that.unitAmountInCents != null) {
             return false;
         }
+        if (updatedAt != null ? !updatedAt.equals(that.updatedAt) : that.updatedAt != null) {
+            return false;
+        }
         if (uuid != null ? !uuid.equals(that.uuid) : that.uuid != null) {
             return false;
         }
@@ -270,6 +285,7 @@ public class Subscription extends AbstractSubscription {
         result = 31 * result + (currentPeriodEndsAt != null ? currentPeriodEndsAt.hashCode() : 0);
         result = 31 * result + (trialStartedAt != null ? trialStartedAt.hashCode() : 0);
         result = 31 * result + (trialEndsAt != null ? trialEndsAt.hashCode() : 0);
+        result = 31 * result + (updatedAt != null ? updatedAt.hashCode() : 0);
         result = 31 * result + (subscriptionAddOns != null ? subscriptionAddOns.hashCode() : 0);
         return result;
     }
@@ -24,10 +24,10 @@ public class SubscriptionAddOn extends RecurlyObject {
     @XmlElement(name = "add_on_code")
     private String addOnCode;
     
-    @XmlElement(name = "unit_amount_in_cents", type = Integer.class)
+    @XmlElement(name = "unit_amount_in_cents")
 	private Integer unitAmountInCents;
 
-    @XmlElement(name = "quantity", type = Integer.class)
+    @XmlElement(name = "quantity")
 	private Integer quantity;
 
 	public String getAddOnCode() {
@@ -42,16 +42,16 @@ public class SubscriptionAddOn extends RecurlyObject {
 		return unitAmountInCents;
 	}
 
-	public void setUnitAmountInCents(Integer unitAmountInCents) {
-		this.unitAmountInCents = unitAmountInCents;
+	public void setUnitAmountInCents(final Object unitAmountInCents) {
+		this.unitAmountInCents = integerOrNull(unitAmountInCents);
 	}
 
 	public Integer getQuantity() {
 		return quantity;
 	}
 
-	public void setQuantity(Integer quantity) {
-		this.quantity = quantity;
+	public void setQuantity(final Object quantity) {
+		this.quantity = integerOrNull(quantity);
 	}
 	
 	@Override
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly.transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import org.asynchttpclient.AsyncCompletionHandler;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.HttpResponseHeaders;
+import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.ListenableFuture;
+import org.asynchttpclient.RequestBuilder;
+import org.asynchttpclient.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * The default {@link RecurlyTransport}, backed by an {@link AsyncHttpClient}.
+ * Closing the transport closes the http client.
+ *
+ * @author twerner
+ *
+ */
+public class AsyncHttpClientTransport implements RecurlyTransport {
+
+	private static final Logger log = LoggerFactory.getLogger(AsyncHttpClientTransport.class);
+
+	private final AsyncHttpClient client;
+
+	public AsyncHttpClientTransport(final AsyncHttpClient client) {
+		this.client = client;
+	}
+
+	@Override
+	public CompletableFuture<RecurlyResponse> execute(final RecurlyRequest request, @Nullable final Consumer<RecurlyResponseHeaders> headersListener) {
+		final RequestBuilder builder = new RequestBuilder(request.getMethod()).setUrl(request.getUrl());
+		for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			builder.addHeader(header.getKey(), header.getValue());
+		}
+		if (request.getBody() != null) {
+			builder.setBody(request.getBody());
+		}
+
+		final CompletableFuture<RecurlyResponse> result = new CompletableFuture<>();
+		final ListenableFuture<Void> response = client.executeRequest(builder.build(), new AsyncCompletionHandler<Void>() {
+			private int statusCode;
+
+			@Override
+			public State onStatusReceived(HttpResponseStatus status) throws Exception {
+				statusCode = status.getStatusCode();
+				return super.onStatusReceived(status);
+			}
+
+			@Override
+			public State onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+				if (headersListener != null) {
+					try {
+						headersListener.accept(new RecurlyResponseHeaders(statusCode, toMap(headers.getHeaders())));
+					} catch (RuntimeException e) {
+						log.warn("Response headers listener failed", e);
+					}
+				}
+				return super.onHeadersReceived(headers);
+			}
+
+			@Override
+			public void onThrowable(Throwable t) {
+				result.completeExceptionally(t);
+			}
+
+			@Override
+			public Void onCompleted(final Response response) {
+				result.complete(new RecurlyResponse(new RecurlyResponseHeaders(response.getStatusCode(), toMap(response.getHeaders())),
+						response.getResponseBodyAsBytes()));
+				return null;
+			}
+		});
+		// Abort the http request if the caller gives up on it
+		result.whenComplete((r, t) -> {
+			if (result.isCancelled()) {
+				response.cancel(true);
+			}
+		});
+		return result;
+	}
+
+	@Override
+	public void close() throws IOException {
+		client.close();
+	}
+
+	private static Map<String, List<String>> toMap(final HttpHeaders headers) {
+		final Map<String, List<String>> map = new LinkedHashMap<>();
+		for (String name : headers.names()) {
+			map.put(name, new ArrayList<>(headers.getAll(name)));
+		}
+		return map;
+	}
+}
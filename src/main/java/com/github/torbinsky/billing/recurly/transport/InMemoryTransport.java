@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly.transport;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link RecurlyTransport} that never touches the network. Responses come
+ * either from canned payloads registered through
+ * {@link #respond(String, String, int, String)} or from a handler function,
+ * optionally after a simulated latency. Useful to test or benchmark the whole
+ * client stack offline.
+ * <p/>
+ * Canned responses are matched on the method and the full url first, then on
+ * the method and the url path alone. Anything else gets a 404.
+ *
+ * @author twerner
+ *
+ */
+public class InMemoryTransport implements RecurlyTransport {
+
+	private final Map<String, RecurlyResponse> responses = new ConcurrentHashMap<>();
+	private final Function<RecurlyRequest, RecurlyResponse> handler;
+	private final AtomicLong requestCount = new AtomicLong();
+	private volatile long latencyNanos = 0;
+	private ScheduledExecutorService scheduler;
+
+	public InMemoryTransport() {
+		this.handler = this::cannedResponse;
+	}
+
+	/**
+	 * @param handler produces the response to each request, on the calling thread
+	 */
+	public InMemoryTransport(final Function<RecurlyRequest, RecurlyResponse> handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Serves the given payload for requests matching the method and either
+	 * the full url or its path (e.g. /v2/accounts)
+	 */
+	public InMemoryTransport respond(final String method, final String urlOrPath, final int statusCode, final String xml) {
+		return respond(method, urlOrPath, xmlResponse(statusCode, xml, Collections.<String, List<String>>emptyMap()));
+	}
+
+	public InMemoryTransport respond(final String method, final String urlOrPath, final RecurlyResponse response) {
+		responses.put(key(method, urlOrPath), response);
+		return this;
+	}
+
+	/**
+	 * Delays every response by the given time, headers and body alike
+	 */
+	public synchronized InMemoryTransport setLatency(final long latency, final TimeUnit unit) {
+		latencyNanos = unit.toNanos(latency);
+		if (latencyNanos > 0 && scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				final Thread thread = new Thread(r, "recurly-in-memory-transport");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return this;
+	}
+
+	/**
+	 * The number of requests executed so far
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	@Override
+	public CompletableFuture<RecurlyResponse> execute(final RecurlyRequest request, @Nullable final Consumer<RecurlyResponseHeaders> headersListener) {
+		requestCount.incrementAndGet();
+		final CompletableFuture<RecurlyResponse> result = new CompletableFuture<>();
+		final Runnable respond = () -> {
+			if (result.isDone()) {
+				return;
+			}
+			try {
+				final RecurlyResponse response = handler.apply(request);
+				if (headersListener != null) {
+					headersListener.accept(response.getResponseHeaders());
+				}
+				result.complete(response);
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		};
+
+		final long delay = latencyNanos;
+		if (delay <= 0) {
+			respond.run();
+		} else {
+			final ScheduledFuture<?> scheduled = scheduler.schedule(respond, delay, TimeUnit.NANOSECONDS);
+			result.whenComplete((r, t) -> {
+				if (result.isCancelled()) {
+					scheduled.cancel(false);
+				}
+			});
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * Builds a response with the given XML payload
+	 */
+	public static RecurlyResponse xmlResponse(final int statusCode, final String xml, final Map<String, List<String>> headers) {
+		return new RecurlyResponse(new RecurlyResponseHeaders(statusCode, headers), xml.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private RecurlyResponse cannedResponse(final RecurlyRequest request) {
+		RecurlyResponse response = responses.get(key(request.getMethod(), request.getUrl()));
+		if (response == null) {
+			response = responses.get(key(request.getMethod(), URI.create(request.getUrl()).getPath()));
+		}
+		if (response == null) {
+			return xmlResponse(404, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<error>\n  <symbol>not_found</symbol>\n"
+					+ "  <description>No canned response for " + request.getMethod() + " " + request.getUrl() + "</description>\n</error>",
+					Collections.<String, List<String>>emptyMap());
+		}
+		return response;
+	}
+
+	private static String key(final String method, final String urlOrPath) {
+		return method.toUpperCase() + " " + urlOrPath;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly.transport;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable http request to the Recurly API, as handed to a
+ * {@link RecurlyTransport}.
+ *
+ * @author twerner
+ *
+ */
+public final class RecurlyRequest {
+
+	private final String method;
+	private final String url;
+	private final Map<String, String> headers;
+	private final byte[] body;
+	private final boolean replayable;
+
+	public RecurlyRequest(final String method, final String url) {
+		this(method, url, Collections.<String, String>emptyMap(), null, "GET".equalsIgnoreCase(method));
+	}
+
+	public RecurlyRequest(final String method, final String url, @Nullable final byte[] body) {
+		this(method, url, Collections.<String, String>emptyMap(), body, "GET".equalsIgnoreCase(method));
+	}
+
+	private RecurlyRequest(final String method, final String url, final Map<String, String> headers, @Nullable final byte[] body, final boolean replayable) {
+		this.method = method;
+		this.url = url;
+		this.headers = headers;
+		this.body = body;
+		this.replayable = replayable;
+	}
+
+	/**
+	 * Returns a copy of this request with the given header set
+	 */
+	public RecurlyRequest withHeader(final String name, final String value) {
+		final Map<String, String> copy = new LinkedHashMap<>(headers);
+		copy.put(name, value);
+		return new RecurlyRequest(method, url, Collections.unmodifiableMap(copy), body, replayable);
+	}
+
+	/**
+	 * Returns a copy of this request marked as safe, or not, to send again
+	 * after an attempt that may have reached Recurly
+	 */
+	public RecurlyRequest withReplayable(final boolean replayable) {
+		return new RecurlyRequest(method, url, headers, body, replayable);
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+
+	@Nullable
+	public String getHeader(final String name) {
+		return headers.get(name);
+	}
+
+	/**
+	 * The request payload, or null if there is none. Must not be modified.
+	 */
+	@Nullable
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * Whether sending this request again leaves Recurly as sending it once
+	 * does, e.g. a GET or setting an account's fields. Only such requests are
+	 * retried after a timeout, I/O error or gateway status; a refund of an
+	 * amount is not. By default only GET requests are.
+	 */
+	public boolean isReplayable() {
+		return replayable;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("RecurlyRequest");
+		sb.append("{method='").append(method).append('\'');
+		sb.append(", url='").append(url).append('\'');
+		sb.append('}');
+		return sb.toString();
+	}
+}
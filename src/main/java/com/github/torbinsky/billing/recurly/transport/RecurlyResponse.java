@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * A complete response from the Recurly API.
+ *
+ * @author twerner
+ *
+ */
+public final class RecurlyResponse {
+
+	private final RecurlyResponseHeaders headers;
+	private final byte[] body;
+
+	public RecurlyResponse(final RecurlyResponseHeaders headers, final byte[] body) {
+		this.headers = headers;
+		this.body = body;
+	}
+
+	public int getStatusCode() {
+		return headers.getStatusCode();
+	}
+
+	@Nullable
+	public String getHeader(final String name) {
+		return headers.getHeader(name);
+	}
+
+	public Map<String, List<String>> getHeaders() {
+		return headers.getHeaders();
+	}
+
+	public RecurlyResponseHeaders getResponseHeaders() {
+		return headers;
+	}
+
+	/**
+	 * The raw response payload. Must not be modified.
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	public InputStream getBodyAsStream() {
+		return new ByteArrayInputStream(body);
+	}
+}
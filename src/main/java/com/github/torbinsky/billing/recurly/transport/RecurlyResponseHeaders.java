@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly.transport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * The status line and headers of a response, available before its body has
+ * been received. Header names are case insensitive.
+ *
+ * @author twerner
+ *
+ */
+public final class RecurlyResponseHeaders {
+
+	private final int statusCode;
+	private final Map<String, List<String>> headers;
+
+	public RecurlyResponseHeaders(final int statusCode, final Map<String, List<String>> headers) {
+		this.statusCode = statusCode;
+		final Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			final List<String> values = copy.get(header.getKey());
+			if (values == null) {
+				copy.put(header.getKey(), new ArrayList<>(header.getValue()));
+			} else {
+				values.addAll(header.getValue());
+			}
+		}
+		this.headers = Collections.unmodifiableMap(copy);
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Returns the first value of the given header, or null if it is absent
+	 */
+	@Nullable
+	public String getHeader(final String name) {
+		final List<String> values = headers.get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	public List<String> getHeaders(final String name) {
+		final List<String> values = headers.get(name);
+		return values == null ? Collections.<String>emptyList() : Collections.unmodifiableList(values);
+	}
+
+	public Map<String, List<String>> getHeaders() {
+		return headers;
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly.transport;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+/**
+ * Sends requests to the Recurly API on behalf of a client. The default is
+ * {@link AsyncHttpClientTransport}; {@link InMemoryTransport} serves canned
+ * responses without any network access.
+ * <p/>
+ * Implementations must be thread safe and must not block the calling thread.
+ *
+ * @author twerner
+ *
+ */
+public interface RecurlyTransport extends Closeable {
+
+	/**
+	 * Sends the given request.
+	 *
+	 * @param request         the request, including all of its headers
+	 * @param headersListener told about the status and headers as soon as they
+	 *                        have been received, before the body; may be null
+	 * @return completes with the whole response, whatever its status, or
+	 *         exceptionally if the request could not be performed. Cancelling
+	 *         it aborts the request.
+	 */
+	CompletableFuture<RecurlyResponse> execute(RecurlyRequest request, @Nullable Consumer<RecurlyResponseHeaders> headersListener);
+}
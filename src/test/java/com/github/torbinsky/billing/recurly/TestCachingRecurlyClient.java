@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.model.Subscription;
+import com.github.torbinsky.billing.recurly.serialize.XmlPayloadMap;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+
+public class TestCachingRecurlyClient {
+
+    @Test(groups = "fast")
+    public void testStaleWhileRevalidateAndEviction() throws Exception {
+        final AtomicLong clock = new AtomicLong();
+        final AtomicInteger loads = new AtomicInteger();
+        final RecurlyEntityCache<String, String> cache = new RecurlyEntityCache<String, String>(2, TimeUnit.SECONDS.toNanos(10),
+                                                                                                TimeUnit.SECONDS.toNanos(5), clock::get);
+        final CompletableFuture<String> reload = new CompletableFuture<String>();
+
+        Assert.assertEquals(cache.get("a", () -> CompletableFuture.completedFuture("a" + loads.incrementAndGet())).get(), "a1");
+        Assert.assertEquals(cache.get("a", () -> CompletableFuture.completedFuture("a" + loads.incrementAndGet())).get(), "a1");
+
+        // Past the TTL the old value is served while a single reload runs
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        Assert.assertEquals(cache.get("a", () -> reload).get(), "a1");
+        Assert.assertEquals(cache.get("a", () -> reload).get(), "a1");
+        reload.complete("a2");
+        Assert.assertEquals(cache.get("a", () -> CompletableFuture.completedFuture("unused")).get(), "a2");
+
+        // Past the stale period the read waits for the load
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        Assert.assertEquals(cache.get("a", () -> CompletableFuture.completedFuture("a3")).get(), "a3");
+
+        cache.get("b", () -> CompletableFuture.completedFuture("b")).get();
+        cache.get("c", () -> CompletableFuture.completedFuture("c")).get();
+        Assert.assertEquals(cache.size(), 2);
+
+        final RecurlyCacheStats stats = cache.stats();
+        Assert.assertEquals(stats.getHits(), 2);
+        Assert.assertEquals(stats.getStaleHits(), 2);
+        Assert.assertEquals(stats.getMisses(), 4);
+        Assert.assertEquals(stats.getEvictions(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidatingKeysKeepsOtherLoads() throws Exception {
+        final RecurlyEntityCache<String, String> cache = new RecurlyEntityCache<String, String>(10, TimeUnit.SECONDS.toNanos(10), 0);
+        final AtomicInteger loads = new AtomicInteger();
+        final CompletableFuture<String> loadA = new CompletableFuture<String>();
+        final CompletableFuture<String> loadB = new CompletableFuture<String>();
+        final CompletableFuture<String> readA = cache.get("a", () -> {
+            loads.incrementAndGet();
+            return loadA;
+        });
+        final CompletableFuture<String> readB = cache.get("b", () -> {
+            loads.incrementAndGet();
+            return loadB;
+        });
+
+        cache.invalidateKeys(k -> "a".equals(k));
+        // The load of b is still shared, the one of a is not cached
+        final CompletableFuture<String> sharedB = cache.get("b", () -> CompletableFuture.completedFuture("unused"));
+        loadA.complete("a1");
+        loadB.complete("b1");
+        Assert.assertEquals(readA.get(), "a1");
+        Assert.assertEquals(readB.get(), "b1");
+        Assert.assertEquals(sharedB.get(), "b1");
+        Assert.assertEquals(loads.get(), 2);
+        Assert.assertEquals(cache.get("b", () -> CompletableFuture.completedFuture("unused")).get(), "b1");
+        Assert.assertEquals(cache.get("a", () -> CompletableFuture.completedFuture("a2")).get(), "a2");
+
+        // Matching by value drops every load in flight, their values are not known yet
+        final CompletableFuture<String> loadC = new CompletableFuture<String>();
+        cache.get("c", () -> loadC);
+        cache.invalidateIf((k, v) -> false);
+        loadC.complete("c1");
+        Assert.assertEquals(cache.get("c", () -> CompletableFuture.completedFuture("c2")).get(), "c2");
+    }
+
+    @Test(groups = "fast")
+    public void testWritesInvalidateAndRefresh() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport()
+                .respond("GET", "/v2/accounts/abc", 200, account("abc", "Old"))
+                .respond("PUT", "/v2/accounts/abc", 200, account("abc", "New"))
+                .respond("GET", "/v2/accounts/abc/subscriptions", 200, subscriptions("s1"))
+                .respond("PUT", "/v2/subscriptions/s1/cancel", 200, "<subscription><uuid>s1</uuid><state>canceled</state></subscription>")
+                .respond("DELETE", "/v2/accounts/abc/billing_info", 204, "");
+        final CachingRecurlyClient client = new CachingRecurlyClient("key", new RecurlyClientConfig.Builder().setTransport(transport).build());
+        client.open();
+
+        Assert.assertEquals(client.getAccount("abc").getFirstName(), "Old");
+        Assert.assertEquals(client.getAccount("abc").getFirstName(), "Old");
+        Assert.assertEquals(transport.getRequestCount(), 1);
+
+        // The updated account replaces the cached one without another GET
+        client.updateAccount("abc", new XmlPayloadMap<String, String>("account"));
+        Assert.assertEquals(client.getAccount("abc").getFirstName(), "New");
+        Assert.assertEquals(transport.getRequestCount(), 2);
+
+        // Cancelling a subscription drops the lists holding it and caches the result
+        Assert.assertEquals(client.getAccountSubscriptions("abc").getObjects().size(), 1);
+        final Subscription subscription = new Subscription();
+        subscription.setUuid("s1");
+        client.cancelSubscription(subscription);
+        Assert.assertEquals(client.getSubscription("s1").getState(), "canceled");
+        client.getAccountSubscriptions("abc");
+        Assert.assertEquals(transport.getRequestCount(), 5);
+
+        // Billing info cleared through the client is known to be missing
+        client.clearBillingInfo("abc");
+        Assert.assertNull(client.getBillingInfo("abc"));
+        Assert.assertEquals(transport.getRequestCount(), 6);
+        Assert.assertEquals(client.getCacheStats().getHits(), 4);
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testSavedCacheIsServedUntilRevalidated() throws Exception {
+        final Path directory = Files.createTempDirectory("recurly-cache");
+        final InMemoryTransport transport = new InMemoryTransport()
+                .respond("GET", "/v2/accounts/abc", 200, account("abc", "Old"))
+                .respond("GET", "/v2/accounts/abc/subscriptions", 200, subscriptions("s1", "s2"))
+                .respond("GET", "/v2/accounts/abc/billing_info", 404, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<error>"
+                         + "<symbol>not_found</symbol><description>Couldn't find BillingInfo with account_code = abc</description></error>");
+        final RecurlyClientConfig config = new RecurlyClientConfig.Builder().setTransport(transport).setEntityCacheDirectory(directory).build();
+        final CachingRecurlyClient client = new CachingRecurlyClient("key", config);
+        client.open();
+        client.getAccount("abc");
+        client.getAccountSubscriptions("abc");
+        Assert.assertNull(client.getBillingInfo("abc"));
+        client.close();
+        Assert.assertEquals(transport.getRequestCount(), 3);
+
+        // A new client answers from the saved cache, and reloads in the background
+        transport.respond("GET", "/v2/accounts/abc", 200, account("abc", "New"));
+        final CachingRecurlyClient restarted = new CachingRecurlyClient("key", config);
+        restarted.open();
+        Assert.assertEquals(restarted.getAccount("abc").getFirstName(), "Old");
+        Assert.assertEquals(restarted.getAccountSubscriptions("abc").getObjects().get(1).getUuid(), "s2");
+        Assert.assertNull(restarted.getBillingInfo("abc"));
+        Assert.assertEquals(restarted.getCacheStats().getMisses(), 0);
+        Assert.assertEquals(transport.getRequestCount(), 6);
+        Assert.assertEquals(restarted.getAccount("abc").getFirstName(), "New");
+
+        // Objects are not shared with another API key
+        final CachingRecurlyClient otherKey = new CachingRecurlyClient("other", config);
+        otherKey.open();
+        otherKey.getAccount("abc");
+        Assert.assertEquals(otherKey.getCacheStats().getMisses(), 1);
+        otherKey.close();
+        restarted.close();
+    }
+
+    private static String account(final String accountCode, final String firstName) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<account><account_code>" + accountCode + "</account_code><first_name>"
+               + firstName + "</first_name></account>";
+    }
+
+    private static String subscriptions(final String... uuids) {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<subscriptions type=\"array\">\n");
+        for (final String uuid : uuids) {
+            xml.append("  <subscription><uuid>").append(uuid).append("</uuid></subscription>\n");
+        }
+        return xml.append("</subscriptions>").toString();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyAPIException;
+import com.github.torbinsky.billing.recurly.serialize.XmlPayloadMap;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+
+public class TestKeyAgnosticRecurlyAsyncClient {
+
+    @Test(groups = "fast")
+    public void testCallsUseTheGivenKey() throws Exception {
+        final KeyAgnosticRecurlyAsyncClient client = new KeyAgnosticRecurlyAsyncClientImpl(TestUtils.newAsyncClient(new InMemoryTransport(request -> {
+            // Only the key "a" may see billing info; "b" is told there is none
+            final boolean keyA = "Basic YQ==".equals(request.getHeader("Authorization"));
+            if ("POST".equals(request.getMethod())) {
+                return InMemoryTransport.xmlResponse(201, TestRecurlyAsyncClient.account("abc"), Collections.<String, List<String>>emptyMap());
+            }
+            return InMemoryTransport.xmlResponse(keyA ? 200 : 404,
+                                                 keyA ? "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<billing_info>\n  <first_name>Jane</first_name>\n</billing_info>"
+                                                      : TestRecurlyAsyncClient.error("Couldn't find BillingInfo with account_code = abc"),
+                                                 Collections.<String, List<String>>emptyMap());
+        })));
+
+        Assert.assertEquals(client.getBillingInfo("abc", "a").get().getFirstName(), "Jane");
+        Assert.assertNull(client.getBillingInfo("abc", "b").get());
+        Assert.assertEquals(client.createAccount(new XmlPayloadMap<String, String>("account"), "a").get().getAccountCode(), "abc");
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testFailuresCarryTheApiException() throws Exception {
+        final KeyAgnosticRecurlyAsyncClient client = new KeyAgnosticRecurlyAsyncClientImpl(TestUtils.newAsyncClient(new InMemoryTransport()));
+        try {
+            client.getAccount("missing", "a").join();
+            Assert.fail("Expected a CompletionException");
+        } catch (CompletionException e) {
+            final Throwable cause = RecurlyClientBase.unwrapCompletionException(e);
+            Assert.assertTrue(cause instanceof RecurlyAPIException, String.valueOf(cause));
+            Assert.assertEquals(((RecurlyAPIException) cause).getErrorCode(), 404);
+        }
+        client.close();
+    }
+}
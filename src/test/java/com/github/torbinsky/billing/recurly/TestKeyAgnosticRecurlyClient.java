@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+public class TestKeyAgnosticRecurlyClient {
+
+    @Test(groups = "fast")
+    public void testConcurrentCallsUseTheirOwnKey() throws Exception {
+        final RecurlyClient client = newClient();
+        final KeyAgnosticRecurlyClient keyAgnostic = new KeyAgnosticRecurlyClientImpl(client);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> codes = new ArrayList<Future<String>>();
+            for (int i = 0; i < 200; i++) {
+                final String apiKey = "key" + (i % 7);
+                codes.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return keyAgnostic.getAccount("account", apiKey).getAccountCode();
+                    }
+                }));
+            }
+            for (int i = 0; i < codes.size(); i++) {
+                Assert.assertEquals(codes.get(i).get(), "key" + (i % 7));
+            }
+        } finally {
+            executor.shutdownNow();
+            keyAgnostic.close();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testKeyViewsAreCached() throws Exception {
+        final RecurlyClient client = newClient();
+        final RecurlyClient view = client.withApiKey("other");
+
+        Assert.assertSame(client.withApiKey("other"), view);
+        Assert.assertEquals(view.getCredentials().getAuthorization(), "Basic b3RoZXI=");
+        Assert.assertEquals(view.getCredentials().getFingerprint(), RecurlyCredentials.forApiKey("other").getFingerprint());
+        // The client itself keeps its own key
+        Assert.assertEquals(client.getAccount("account").getAccountCode(), "anonymous");
+        Assert.assertEquals(view.getAccount("account").getAccountCode(), "other");
+        client.close();
+    }
+
+    private static RecurlyClient newClient() {
+        final InMemoryTransport transport = new InMemoryTransport(TestKeyAgnosticRecurlyClient::echoKey);
+        final RecurlyClient client = new RecurlyClient(null, new RecurlyClientConfig.Builder().setTransport(transport).build());
+        client.open();
+        return client;
+    }
+
+    // Answers with an account named after the key the request was made with
+    private static RecurlyResponse echoKey(final RecurlyRequest request) {
+        final String authorization = request.getHeader("Authorization");
+        final String apiKey = authorization == null ? "anonymous"
+                : new String(Base64.getDecoder().decode(authorization.substring("Basic ".length())), StandardCharsets.UTF_8);
+        return InMemoryTransport.xmlResponse(200, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                                  "<account href=\"https://api.recurly.com/v2/accounts/account\">\n" +
+                                                  "  <account_code>" + apiKey + "</account_code>\n" +
+                                                  "</account>",
+                                             Collections.<String, List<String>>emptyMap());
+    }
+}
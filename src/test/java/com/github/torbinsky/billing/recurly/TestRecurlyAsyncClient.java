@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyAPIException;
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.list.Accounts;
+import com.github.torbinsky.billing.recurly.serialize.XmlPayloadMap;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+
+public class TestRecurlyAsyncClient {
+
+    private static final String NEXT_PAGE = "https://api.recurly.com:443/v2/accounts?cursor=2";
+
+    @Test(groups = "fast")
+    public void testFailuresCarryTheApiException() throws Exception {
+        final RecurlyAsyncClient client = TestUtils.newAsyncClient(new InMemoryTransport());
+        try {
+            client.getAccount("missing").join();
+            Assert.fail("Expected a CompletionException");
+        } catch (CompletionException e) {
+            final Throwable cause = RecurlyClientBase.unwrapCompletionException(e);
+            Assert.assertTrue(cause instanceof RecurlyAPIException, String.valueOf(cause));
+            Assert.assertEquals(((RecurlyAPIException) cause).getErrorCode(), 404);
+        }
+        try {
+            client.getAccount("missing").get();
+            Assert.fail("Expected an ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertEquals(RecurlyClientBase.unwrapRecurlyAPIException(e).getErrorCode(), 404);
+        }
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testMissingBillingInfoIsNull() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport()
+                .respond("GET", "/v2/accounts/abc/billing_info", 404, error("Couldn't find BillingInfo with account_code = abc"))
+                .respond("GET", "/v2/accounts/def/billing_info", 200, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                                                      "<billing_info>\n" +
+                                                                      "  <first_name>Jane</first_name>\n" +
+                                                                      "</billing_info>");
+        final RecurlyAsyncClient client = TestUtils.newAsyncClient(transport);
+
+        Assert.assertNull(client.getBillingInfo("abc").get());
+        Assert.assertEquals(client.getBillingInfo("def").get().getFirstName(), "Jane");
+        // Any other 404 is still a failure
+        try {
+            client.getBillingInfo("ghi").join();
+            Assert.fail("Expected a CompletionException");
+        } catch (CompletionException e) {
+            Assert.assertEquals(RecurlyClientBase.unwrapRecurlyAPIException(e).getErrorCode(), 404);
+        }
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testListsAreDepaginated() throws Exception {
+        final Map<String, List<String>> link = Collections.singletonMap("Link", Arrays.asList("<" + NEXT_PAGE + ">; rel=\"next\""));
+        final InMemoryTransport transport = new InMemoryTransport()
+                .respond("GET", NEXT_PAGE, 200, accounts("c"))
+                .respond("GET", "/v2/accounts", InMemoryTransport.xmlResponse(200, accounts("a", "b"), link));
+        final RecurlyAsyncClient client = TestUtils.newAsyncClient(transport);
+
+        final Accounts accounts = client.getAccounts().get();
+        Assert.assertEquals(accounts.getObjects().size(), 3);
+        Assert.assertEquals(accounts.getObjects().get(0).getAccountCode(), "a");
+        Assert.assertEquals(accounts.getObjects().get(2).getAccountCode(), "c");
+        Assert.assertEquals(transport.getRequestCount(), 2);
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testCreateAccountPostsThePayload() throws Exception {
+        final RecurlyRequest[] seen = new RecurlyRequest[1];
+        final RecurlyAsyncClient client = TestUtils.newAsyncClient(new InMemoryTransport(request -> {
+            seen[0] = request;
+            return InMemoryTransport.xmlResponse(201, account("abc"), Collections.<String, List<String>>emptyMap());
+        }));
+        final XmlPayloadMap<String, String> payload = new XmlPayloadMap<String, String>("account");
+        payload.put("account_code", "abc");
+
+        final Account account = client.createAccount(payload).get();
+        Assert.assertEquals(account.getAccountCode(), "abc");
+        Assert.assertEquals(seen[0].getMethod(), "POST");
+        Assert.assertTrue(seen[0].getUrl().endsWith("/v2/accounts"), seen[0].getUrl());
+        final String body = new String(seen[0].getBody(), StandardCharsets.UTF_8);
+        Assert.assertTrue(body.contains("<account_code>abc</account_code>"), body);
+        client.close();
+    }
+
+    static String error(final String description) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+               "<error>\n" +
+               "  <symbol>not_found</symbol>\n" +
+               "  <description>" + description + "</description>\n" +
+               "</error>";
+    }
+
+    static String account(final String accountCode) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+               "<account href=\"https://api.recurly.com/v2/accounts/" + accountCode + "\">\n" +
+               "  <account_code>" + accountCode + "</account_code>\n" +
+               "</account>";
+    }
+
+    private static String accounts(final String... accountCodes) {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<accounts type=\"array\">\n");
+        for (final String accountCode : accountCodes) {
+            xml.append("  <account href=\"https://api.recurly.com/v2/accounts/").append(accountCode).append("\">\n")
+               .append("    <account_code>").append(accountCode).append("</account_code>\n")
+               .append("  </account>\n");
+        }
+        return xml.append("</accounts>").toString();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyAPIException;
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+
+public class TestRecurlyBulkLookup {
+
+    @Test(groups = "fast")
+    public void testWindowDedupAndErrors() throws Exception {
+        final Map<String, CompletableFuture<String>> started = new LinkedHashMap<String, CompletableFuture<String>>();
+        final CompletableFuture<RecurlyBulkResult<String>> bulk = RecurlyBulkLookup.run(Arrays.asList("a", "b", "a", "c"), 2, key -> {
+            final CompletableFuture<String> lookup = new CompletableFuture<String>();
+            started.put(key, lookup);
+            return lookup;
+        });
+        Assert.assertEquals(started.keySet(), new HashSet<String>(Arrays.asList("a", "b")));
+
+        // A slot is only freed once a lookup completes
+        started.get("a").complete("A");
+        Assert.assertEquals(started.size(), 3);
+        started.get("b").completeExceptionally(new IllegalStateException("boom"));
+        Assert.assertFalse(bulk.isDone());
+        started.get("c").complete("C");
+
+        final RecurlyBulkResult<String> result = bulk.get();
+        Assert.assertEquals(started.size(), 3);
+        Assert.assertEquals(result.getResults().size(), 2);
+        Assert.assertEquals(result.get("c"), "C");
+        Assert.assertTrue(result.hasErrors());
+        Assert.assertEquals(result.getErrors().get("b").getCause().getMessage(), "boom");
+    }
+
+    @Test(groups = "fast")
+    public void testClientReportsMissingAccounts() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport()
+                .respond("GET", "/v2/accounts/abc", 200, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<account><account_code>abc</account_code></account>");
+        final RecurlyClient client = new RecurlyClient("key", new RecurlyClientConfig.Builder().setTransport(transport).setBulkConcurrency(1).build());
+        client.open();
+
+        final RecurlyBulkResult<Account> accounts = client.getAccounts(Arrays.asList("abc", "missing", "abc"));
+        Assert.assertEquals(accounts.get("abc").getAccountCode(), "abc");
+        Assert.assertTrue(accounts.getErrors().get("missing") instanceof RecurlyAPIException);
+        Assert.assertEquals(transport.getRequestCount(), 2);
+        client.close();
+    }
+}
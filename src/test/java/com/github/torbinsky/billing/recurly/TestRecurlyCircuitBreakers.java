@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyCircuitOpenException;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+public class TestRecurlyCircuitBreakers {
+
+    private static final String INVOICES = "https://api.recurly.com/v2/accounts/1/invoices";
+    private static final String PLANS = "https://api.recurly.com/v2/plans";
+    private static final String RECURLY_JS = "https://api.recurly.com/v2" + RecurlyClientBase.FETCH_RESOURCE;
+
+    @Test(groups = "fast")
+    public void testFamilies() throws Exception {
+        Assert.assertEquals(RecurlyCircuitBreakers.familyOf("https://api.recurly.com/v2/accounts/abc?per_page=200"), "accounts");
+        Assert.assertEquals(RecurlyCircuitBreakers.familyOf(INVOICES), "invoices");
+        Assert.assertEquals(RecurlyCircuitBreakers.familyOf("https://api.recurly.com/v2/subscriptions/abc/terminate"), "subscriptions");
+        Assert.assertEquals(RecurlyCircuitBreakers.familyOf(PLANS), "plans");
+        Assert.assertEquals(RecurlyCircuitBreakers.familyOf(RECURLY_JS + "/a1b2c3"), "recurly_js");
+    }
+
+    @Test(groups = "fast")
+    public void testRecurlyJsResultsShareOneBreaker() throws Exception {
+        final RecurlyCircuitBreakers breakers = new RecurlyCircuitBreakers(new RecurlyCircuitBreakerPolicy.Builder().setMinimumCalls(4)
+                                                                                                                    .setWindowSize(4)
+                                                                                                                    .build(), System::nanoTime);
+        final AtomicInteger sent = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            send(breakers, RECURLY_JS + "/token" + i, 503, sent);
+        }
+        Assert.assertEquals(breakers.snapshot().keySet(), Collections.singleton("recurly_js"));
+        Assert.assertEquals(breakers.snapshot().get("recurly_js").getState(), RecurlyCircuitBreakers.State.OPEN);
+    }
+
+    @Test(groups = "fast")
+    public void testOpensOnFailuresAndClosesAfterTrials() throws Exception {
+        final AtomicLong now = new AtomicLong();
+        final RecurlyCircuitBreakers breakers = new RecurlyCircuitBreakers(new RecurlyCircuitBreakerPolicy.Builder().setMinimumCalls(4)
+                                                                                                                    .setWindowSize(4)
+                                                                                                                    .setHalfOpenTrials(1)
+                                                                                                                    .setOpenMillis(1000)
+                                                                                                                    .build(), now::get);
+        final AtomicInteger sent = new AtomicInteger();
+        send(breakers, INVOICES, 200, sent);
+        send(breakers, INVOICES, 503, sent);
+        send(breakers, INVOICES, 404, sent);
+        Assert.assertEquals(breakers.snapshot().get("invoices").getState(), RecurlyCircuitBreakers.State.CLOSED);
+        send(breakers, INVOICES, 500, sent);
+        Assert.assertEquals(breakers.snapshot().get("invoices").getState(), RecurlyCircuitBreakers.State.OPEN);
+
+        // Fails fast without sending, other families are not affected
+        try {
+            send(breakers, INVOICES, 200, sent).join();
+            Assert.fail("Expected a RecurlyCircuitOpenException");
+        } catch (Exception e) {
+            Assert.assertTrue(RecurlyClientBase.unwrapCompletionException(e) instanceof RecurlyCircuitOpenException);
+        }
+        Assert.assertEquals(sent.get(), 4);
+        send(breakers, PLANS, 200, sent).join();
+        Assert.assertEquals(breakers.snapshot().get("invoices").getRejected(), 1);
+
+        // A successful trial closes it again
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        send(breakers, INVOICES, 200, sent).join();
+        Assert.assertEquals(breakers.snapshot().get("invoices").getState(), RecurlyCircuitBreakers.State.CLOSED);
+    }
+
+    @Test(groups = "fast")
+    public void testFailedTrialReopens() throws Exception {
+        final AtomicLong now = new AtomicLong();
+        final RecurlyCircuitBreakers breakers = new RecurlyCircuitBreakers(new RecurlyCircuitBreakerPolicy.Builder().setMinimumCalls(1)
+                                                                                                                    .setOpenMillis(1000)
+                                                                                                                    .build(), now::get);
+        final AtomicInteger sent = new AtomicInteger();
+        send(breakers, PLANS, 502, sent);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        send(breakers, PLANS, 502, sent);
+
+        final RecurlyCircuitBreakers.BreakerStatus status = breakers.snapshot().get("plans");
+        Assert.assertEquals(status.getState(), RecurlyCircuitBreakers.State.OPEN);
+        Assert.assertEquals(status.getRetryAfterMillis(), 1000);
+    }
+
+    private static CompletableFuture<RecurlyResponse> send(final RecurlyCircuitBreakers breakers, final String url, final int status, final AtomicInteger sent) {
+        return breakers.execute(new RecurlyRequest("GET", url), () -> {
+            sent.incrementAndGet();
+            return CompletableFuture.completedFuture(InMemoryTransport.xmlResponse(status, "", Collections.<String, List<String>>emptyMap()));
+        });
+    }
+}
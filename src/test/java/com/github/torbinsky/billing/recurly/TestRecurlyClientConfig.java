@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestRecurlyClientConfig {
+
+    @Test(groups = "fast")
+    public void testSystemPropertiesAreSnapshotted() throws Exception {
+        final String previous = System.getProperty(RecurlyClientBase.RECURLY_PAGE_SIZE_KEY);
+        try {
+            System.setProperty(RecurlyClientBase.RECURLY_PAGE_SIZE_KEY, "50");
+            final RecurlyClient client = new RecurlyClient("key");
+            System.setProperty(RecurlyClientBase.RECURLY_PAGE_SIZE_KEY, "75");
+
+            Assert.assertEquals(client.getConfig().getPageSize(), 50);
+            Assert.assertEquals(client.buildRecurlyUrl("/accounts", null), "https://api.recurly.com:443/v2/accounts?per_page=50");
+        } finally {
+            if (previous == null) {
+                System.clearProperty(RecurlyClientBase.RECURLY_PAGE_SIZE_KEY);
+            } else {
+                System.setProperty(RecurlyClientBase.RECURLY_PAGE_SIZE_KEY, previous);
+            }
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testBuilderOverridesDefaults() throws Exception {
+        final RecurlyClientConfig config = new RecurlyClientConfig.Builder().setPageSize(10)
+                                                                            .setConnectTimeout(1000)
+                                                                            .setIoThreads(2)
+                                                                            .build();
+        Assert.assertEquals(config.getPageSize(), 10);
+        Assert.assertEquals(config.getConnectTimeout(), 1000);
+        Assert.assertEquals(config.getIoThreads(), 2);
+        Assert.assertEquals(config.getMaxConnectionsPerHost(), -1);
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsInvalidPageSize() throws Exception {
+        new RecurlyClientConfig.Builder().setPageSize(0);
+    }
+}
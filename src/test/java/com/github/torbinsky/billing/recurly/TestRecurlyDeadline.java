@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyDeadlineExceededException;
+import com.github.torbinsky.billing.recurly.model.list.Accounts;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponseHeaders;
+import com.github.torbinsky.billing.recurly.transport.RecurlyTransport;
+
+public class TestRecurlyDeadline {
+
+    private static final String NEXT_PAGE = "https://api.recurly.com:443/v2/accounts?cursor=2";
+
+    @Test(groups = "fast")
+    public void testDeadlineCancelsSlowRequest() throws Exception {
+        final StalledTransport transport = new StalledTransport();
+        transport.stallFirstPage = true;
+        final RecurlyClient client = TestUtils.newClient(transport);
+
+        final long start = System.nanoTime();
+        try {
+            client.withDeadline(Duration.ofMillis(100)).getAccounts();
+            Assert.fail("Expected a RecurlyDeadlineExceededException");
+        } catch (RecurlyDeadlineExceededException e) {
+            Assert.assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        }
+        // Every attempt was cancelled
+        Assert.assertTrue(transport.stalled.size() > 0);
+        for (final CompletableFuture<RecurlyResponse> stalled : transport.stalled) {
+            Assert.assertTrue(stalled.isCancelled());
+        }
+        // The client itself has no deadline
+        transport.stallFirstPage = false;
+        Assert.assertEquals(client.getAccounts().getObjects().size(), 1);
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testPartialResultsOnRequest() throws Exception {
+        final StalledTransport transport = new StalledTransport();
+        transport.linkNextPage = true;
+        final RecurlyClient client = TestUtils.newClient(transport);
+
+        final Accounts accounts = client.withDeadline(Duration.ofMillis(100), true).getAccounts();
+        Assert.assertEquals(accounts.getObjects().size(), 1);
+        Assert.assertEquals(accounts.getObjects().get(0).getAccountCode(), "1");
+        Assert.assertTrue(transport.stalled.size() > 0);
+        client.close();
+    }
+
+    /**
+     * Serves a single page of accounts, and never answers requests for the
+     * next page or, if asked to, for the first one
+     */
+    private static class StalledTransport implements RecurlyTransport {
+        private final List<CompletableFuture<RecurlyResponse>> stalled = new CopyOnWriteArrayList<CompletableFuture<RecurlyResponse>>();
+        private volatile boolean stallFirstPage = false;
+        private volatile boolean linkNextPage = false;
+
+        @Override
+        public CompletableFuture<RecurlyResponse> execute(final RecurlyRequest request, final Consumer<RecurlyResponseHeaders> headersListener) {
+            if (stallFirstPage || request.getUrl().equals(NEXT_PAGE)) {
+                final CompletableFuture<RecurlyResponse> never = new CompletableFuture<RecurlyResponse>();
+                stalled.add(never);
+                return never;
+            }
+            final Map<String, List<String>> link = linkNextPage
+                    ? Collections.singletonMap("Link", Arrays.asList("<" + NEXT_PAGE + ">; rel=\"next\""))
+                    : Collections.<String, List<String>>emptyMap();
+            final RecurlyResponse response = InMemoryTransport.xmlResponse(200, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                                                                "<accounts type=\"array\">\n" +
+                                                                                "  <account><account_code>1</account_code></account>\n" +
+                                                                                "</accounts>", link);
+            if (headersListener != null) {
+                headersListener.accept(response.getResponseHeaders());
+            }
+            return CompletableFuture.completedFuture(response);
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
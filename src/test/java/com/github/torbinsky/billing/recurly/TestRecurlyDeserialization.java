@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponseHeaders;
+
+/**
+ * Runs real XML payloads through the client's decoding, parsing and
+ * mapping, as the JDK's StAX implementation reads them
+ */
+public class TestRecurlyDeserialization {
+
+    private static final String ACCOUNT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                          "<account href=\"https://api.recurly.com/v2/accounts/abc\">\n" +
+                                          "  <adjustments href=\"https://api.recurly.com/v2/accounts/abc/adjustments\"/>\n" +
+                                          "  <account_code>abc</account_code>\n" +
+                                          "  <state>active</state>\n" +
+                                          "  <first_name>Zo\u00eb</first_name>\n" +
+                                          "  <last_name>\u00c7elik</last_name>\n" +
+                                          "  <company_name nil=\"nil\"></company_name>\n" +
+                                          "  <created_at type=\"datetime\">2013-04-01T12:30:00Z</created_at>\n" +
+                                          "</account>";
+
+    @Test(groups = "fast")
+    public void testParsesPlainPayload() throws Exception {
+        final RecurlyClient client = TestUtils.newClient(new InMemoryTransport().respond("GET", "/v2/accounts/abc", 200, ACCOUNT));
+
+        assertAccount(client.doGETAsync("/accounts/abc", Account.class).get());
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testParsesGzipPayload() throws Exception {
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(ACCOUNT.getBytes(StandardCharsets.UTF_8));
+        }
+        final RecurlyResponseHeaders headers = new RecurlyResponseHeaders(200, Collections.singletonMap("Content-Encoding", Arrays.asList("gzip")));
+        final RecurlyClient client = TestUtils.newClient(new InMemoryTransport().respond("GET", "/v2/accounts/abc", new RecurlyResponse(headers, gzipped.toByteArray())));
+
+        assertAccount(client.doGETAsync("/accounts/abc", Account.class).get());
+        client.close();
+    }
+
+    private static void assertAccount(final Account account) {
+        Assert.assertEquals(account.getAccountCode(), "abc");
+        Assert.assertEquals(account.getState(), "active");
+        Assert.assertEquals(account.getFirstName(), "Zo\u00eb");
+        Assert.assertEquals(account.getLastName(), "\u00c7elik");
+        Assert.assertNull(account.getCompanyName());
+        Assert.assertEquals(account.getCreatedAt().getMillis(), new DateTime(2013, 4, 1, 12, 30, DateTimeZone.UTC).getMillis());
+    }
+}
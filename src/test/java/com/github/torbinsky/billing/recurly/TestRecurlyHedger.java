@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+public class TestRecurlyHedger {
+
+    private static final RecurlyRequest GET = new RecurlyRequest("GET", "https://api.recurly.com/v2/accounts/1");
+
+    @Test(groups = "fast")
+    public void testSlowRequestIsHedged() throws Exception {
+        final RecurlyHedger hedger = new RecurlyHedger(0.5, 1);
+        warmUp(hedger);
+
+        final List<CompletableFuture<RecurlyResponse>> calls = new ArrayList<CompletableFuture<RecurlyResponse>>();
+        final CompletableFuture<RecurlyResponse> slow = new CompletableFuture<RecurlyResponse>();
+        final RecurlyResponse response = response();
+        final CompletableFuture<RecurlyResponse> result = hedger.execute(GET, () -> {
+            final CompletableFuture<RecurlyResponse> call = calls.isEmpty() ? slow : CompletableFuture.completedFuture(response);
+            calls.add(call);
+            return call;
+        });
+
+        Assert.assertSame(result.get(5, TimeUnit.SECONDS), response);
+        Assert.assertEquals(calls.size(), 2);
+        // The loser is cancelled
+        Assert.assertTrue(slow.isCancelled());
+        Assert.assertEquals(hedger.getHedgeCount(), 1);
+        Assert.assertEquals(hedger.getHedgeWinCount(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testRecurlyJsResultsShareTheirLatencies() throws Exception {
+        final RecurlyHedger hedger = new RecurlyHedger(0.5, 1);
+        final String url = "https://api.recurly.com/v2" + RecurlyClientBase.FETCH_RESOURCE + "/";
+        // Each token is fetched once, they still warm up one endpoint
+        for (int i = 0; i < RecurlyHedger.MIN_SAMPLES; i++) {
+            hedger.execute(new RecurlyRequest("GET", url + "token" + i), () -> CompletableFuture.completedFuture(response())).join();
+        }
+
+        final CompletableFuture<RecurlyResponse> slow = new CompletableFuture<RecurlyResponse>();
+        final RecurlyResponse response = response();
+        final List<CompletableFuture<RecurlyResponse>> calls = new CopyOnWriteArrayList<CompletableFuture<RecurlyResponse>>();
+        final CompletableFuture<RecurlyResponse> result = hedger.execute(new RecurlyRequest("GET", url + "other"), () -> {
+            final CompletableFuture<RecurlyResponse> call = calls.isEmpty() ? slow : CompletableFuture.completedFuture(response);
+            calls.add(call);
+            return call;
+        });
+        Assert.assertSame(result.get(5, TimeUnit.SECONDS), response);
+        Assert.assertEquals(hedger.getHedgeCount(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testServerErrorDoesNotWinTheRace() throws Exception {
+        final RecurlyHedger hedger = new RecurlyHedger(0.5, 1);
+        warmUp(hedger);
+
+        final CompletableFuture<RecurlyResponse> slow = new CompletableFuture<RecurlyResponse>();
+        final RecurlyResponse unavailable = response(503);
+        final List<CompletableFuture<RecurlyResponse>> calls = new CopyOnWriteArrayList<CompletableFuture<RecurlyResponse>>();
+        final CompletableFuture<RecurlyResponse> result = hedger.execute(GET, () -> {
+            final CompletableFuture<RecurlyResponse> call = calls.isEmpty() ? slow : CompletableFuture.completedFuture(unavailable);
+            calls.add(call);
+            return call;
+        });
+        final long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (calls.size() < 2 && System.nanoTime() < giveUp) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(20);
+        Assert.assertEquals(hedger.getHedgeCount(), 1);
+        // The hedge's 503 leaves the primary to answer
+        Assert.assertFalse(result.isDone());
+        final RecurlyResponse response = response(200);
+        slow.complete(response);
+        Assert.assertSame(result.get(5, TimeUnit.SECONDS), response);
+        Assert.assertEquals(hedger.getHedgeWinCount(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testLastServerErrorIsReturned() throws Exception {
+        final RecurlyHedger hedger = new RecurlyHedger(0.5, 1);
+        // Server errors are no latency samples, so they never enable hedging
+        for (int i = 0; i < RecurlyHedger.MIN_SAMPLES; i++) {
+            Assert.assertEquals(hedger.execute(GET, () -> CompletableFuture.completedFuture(response(503))).join().getStatusCode(), 503);
+        }
+
+        final CompletableFuture<RecurlyResponse> slow = new CompletableFuture<RecurlyResponse>();
+        final CompletableFuture<RecurlyResponse> result = hedger.execute(GET, () -> slow);
+        Thread.sleep(50);
+        Assert.assertEquals(hedger.getHedgeCount(), 0);
+        slow.complete(response(200));
+        Assert.assertEquals(result.get(5, TimeUnit.SECONDS).getStatusCode(), 200);
+    }
+
+    @Test(groups = "fast")
+    public void testHedgesAreCappedAndOnlyForGets() throws Exception {
+        final RecurlyHedger hedger = new RecurlyHedger(0.5, 0);
+        warmUp(hedger);
+
+        final CompletableFuture<RecurlyResponse> slow = new CompletableFuture<RecurlyResponse>();
+        final CompletableFuture<RecurlyResponse> result = hedger.execute(GET, () -> slow);
+        Thread.sleep(50);
+        Assert.assertFalse(result.isDone());
+        slow.complete(response());
+        Assert.assertTrue(result.isDone());
+        Assert.assertEquals(hedger.getHedgeCount(), 0);
+
+        final CompletableFuture<RecurlyResponse> post = new CompletableFuture<RecurlyResponse>();
+        Assert.assertSame(hedger.execute(new RecurlyRequest("POST", "https://api.recurly.com/v2/accounts"), () -> post), post);
+    }
+
+    private static void warmUp(final RecurlyHedger hedger) {
+        for (int i = 0; i < RecurlyHedger.MIN_SAMPLES; i++) {
+            hedger.execute(GET, () -> CompletableFuture.completedFuture(response())).join();
+        }
+    }
+
+    private static RecurlyResponse response() {
+        return response(200);
+    }
+
+    private static RecurlyResponse response(final int status) {
+        return InMemoryTransport.xmlResponse(status, "", Collections.<String, List<String>>emptyMap());
+    }
+}
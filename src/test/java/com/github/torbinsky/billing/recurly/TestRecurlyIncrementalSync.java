@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+public class TestRecurlyIncrementalSync {
+
+    private static final DateTime START = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    @Test(groups = "fast")
+    public void testSecondSyncOnlyFetchesChanges() throws Exception {
+        final Site site = new Site();
+        for (int i = 0; i < 20; i++) {
+            site.put("account" + i, "active", START.plusSeconds(i), START.plusSeconds(i));
+        }
+        final RecurlyClient client = new RecurlyClient("key", new RecurlyClientConfig.Builder().setTransport(new InMemoryTransport(site::respond))
+                                                                                               .setPageSize(2)
+                                                                                               .build());
+        client.open();
+        final Path file = Files.createTempDirectory("recurly").resolve("watermarks.properties");
+
+        final Map<String, RecurlyDelta.Type> first = new HashMap<String, RecurlyDelta.Type>();
+        Assert.assertEquals(new RecurlyIncrementalSync(client, new RecurlyFileWatermarkStore(file)).syncAccounts(recorder(first)), 20);
+        Assert.assertEquals(first.size(), 20);
+        Assert.assertEquals(first.get("account0"), RecurlyDelta.Type.INSERT);
+
+        site.put("account3", "active", START.plusSeconds(3), START.plusSeconds(30));
+        site.put("account4", "closed", START.plusSeconds(4), START.plusSeconds(31));
+        site.put("account20", "active", START.plusSeconds(32), START.plusSeconds(32));
+        site.pages.set(0);
+
+        // A new store over the same file continues from the saved watermark
+        final Map<String, RecurlyDelta.Type> second = new HashMap<String, RecurlyDelta.Type>();
+        new RecurlyIncrementalSync(client, new RecurlyFileWatermarkStore(file)).syncAccounts(recorder(second));
+        Assert.assertEquals(second.get("account3"), RecurlyDelta.Type.UPDATE);
+        Assert.assertEquals(second.get("account4"), RecurlyDelta.Type.CLOSE);
+        Assert.assertEquals(second.get("account20"), RecurlyDelta.Type.INSERT);
+        // Updated in the second the last sync ended, fetched again but unchanged
+        Assert.assertFalse(second.containsKey("account19"));
+        Assert.assertEquals(second.size(), 3);
+        // The walk stopped well before the last of the 11 pages
+        Assert.assertTrue(site.pages.get() <= 4, String.valueOf(site.pages.get()));
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testUnchangedSyncReportsNothing() throws Exception {
+        final Site site = new Site();
+        for (int i = 0; i < 5; i++) {
+            // Several accounts updated in the second the sync ends with
+            site.put("account" + i, "active", START, START.plusSeconds(i / 3));
+        }
+        final RecurlyClient client = new RecurlyClient("key", new RecurlyClientConfig.Builder().setTransport(new InMemoryTransport(site::respond))
+                                                                                               .setPageSize(2)
+                                                                                               .build());
+        client.open();
+        final Path file = Files.createTempDirectory("recurly").resolve("watermarks.properties");
+
+        Assert.assertEquals(new RecurlyIncrementalSync(client, new RecurlyFileWatermarkStore(file)).syncAccounts(recorder(new HashMap<String, RecurlyDelta.Type>())), 5);
+        final Map<String, RecurlyDelta.Type> second = new HashMap<String, RecurlyDelta.Type>();
+        Assert.assertEquals(new RecurlyIncrementalSync(client, new RecurlyFileWatermarkStore(file)).syncAccounts(recorder(second)), 0);
+        Assert.assertTrue(second.isEmpty(), second.toString());
+
+        // Changed again within the second of the watermark
+        site.put("account4", "closed", START, START.plusSeconds(1));
+        final Map<String, RecurlyDelta.Type> third = new HashMap<String, RecurlyDelta.Type>();
+        Assert.assertEquals(new RecurlyIncrementalSync(client, new RecurlyFileWatermarkStore(file)).syncAccounts(recorder(third)), 1);
+        Assert.assertEquals(third.get("account4"), RecurlyDelta.Type.CLOSE);
+        Assert.assertEquals(new RecurlyIncrementalSync(client, new RecurlyFileWatermarkStore(file)).syncAccounts(recorder(new HashMap<String, RecurlyDelta.Type>())), 0);
+        client.close();
+    }
+
+    private static RecurlyDeltaListener recorder(final Map<String, RecurlyDelta.Type> deltas) {
+        return new RecurlyDeltaListener() {
+            @Override
+            public void accountChanged(final RecurlyDelta<Account> delta) {
+                Assert.assertNull(deltas.put(delta.getObject().getAccountCode(), delta.getType()));
+            }
+        };
+    }
+
+    /**
+     * Lists accounts most recently updated first, ignoring begin_time so that
+     * only the sync can stop the walk
+     */
+    private static class Site {
+        private final Map<String, Account> accounts = Collections.synchronizedMap(new HashMap<String, Account>());
+        private final AtomicInteger pages = new AtomicInteger();
+
+        void put(final String accountCode, final String state, final DateTime createdAt, final DateTime updatedAt) {
+            final Account account = new Account();
+            account.setAccountCode(accountCode);
+            account.setState(state);
+            account.setCreatedAt(createdAt.toString());
+            account.setUpdatedAt(updatedAt.toString());
+            accounts.put(accountCode, account);
+        }
+
+        RecurlyResponse respond(final RecurlyRequest request) {
+            pages.incrementAndGet();
+            final String query = URI.create(request.getUrl()).getRawQuery();
+            Assert.assertTrue(query.contains("sort=updated_at&order=desc"), query);
+            final int offset = query.contains("cursor=") ? Integer.parseInt(query.replaceAll(".*cursor=(\\d+).*", "$1")) : 0;
+            final int perPage = Integer.parseInt(query.replaceAll(".*per_page=(\\d+).*", "$1"));
+
+            final List<Account> sorted;
+            synchronized (accounts) {
+                sorted = new ArrayList<Account>(accounts.values());
+            }
+            Collections.sort(sorted, new Comparator<Account>() {
+                @Override
+                public int compare(final Account a, final Account b) {
+                    return b.getUpdatedAt().compareTo(a.getUpdatedAt());
+                }
+            });
+            final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<accounts type=\"array\">\n");
+            for (Account account : sorted.subList(Math.min(sorted.size(), offset), Math.min(sorted.size(), offset + perPage))) {
+                xml.append("  <account><account_code>").append(account.getAccountCode()).append("</account_code>")
+                   .append("<state>").append(account.getState()).append("</state>")
+                   .append("<created_at type=\"datetime\">").append(account.getCreatedAt()).append("</created_at>")
+                   .append("<updated_at type=\"datetime\">").append(account.getUpdatedAt()).append("</updated_at></account>\n");
+            }
+            xml.append("</accounts>");
+            final Map<String, List<String>> headers = new HashMap<String, List<String>>();
+            if (offset + perPage < sorted.size()) {
+                final String next = request.getUrl().replaceAll("&cursor=\\d+", "") + "&cursor=" + (offset + perPage);
+                headers.put("Link", Arrays.asList("<" + next + ">; rel=\"next\""));
+            }
+            return InMemoryTransport.xmlResponse(200, xml.toString(), headers);
+        }
+    }
+}
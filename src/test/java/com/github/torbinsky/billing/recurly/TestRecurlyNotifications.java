@@ -0,0 +1,168 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.Notification;
+
+public class TestRecurlyNotifications {
+
+    private static final String NEW_SUBSCRIPTION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                                                   + "<new_subscription_notification>\n"
+                                                   + "  <account>\n"
+                                                   + "    <account_code>1</account_code>\n"
+                                                   + "    <username nil=\"true\"></username>\n"
+                                                   + "    <email>verena@example.com</email>\n"
+                                                   + "    <first_name>Verena</first_name>\n"
+                                                   + "    <last_name>Example</last_name>\n"
+                                                   + "    <company_name nil=\"true\"></company_name>\n"
+                                                   + "  </account>\n"
+                                                   + "  <subscription>\n"
+                                                   + "    <plan>\n"
+                                                   + "      <plan_code>bronze</plan_code>\n"
+                                                   + "      <name>Bronze Plan</name>\n"
+                                                   + "    </plan>\n"
+                                                   + "    <uuid>8a4ace8b6a9d3ff9d35f5c4c7c9d8a31</uuid>\n"
+                                                   + "    <state>active</state>\n"
+                                                   + "    <quantity type=\"integer\">2</quantity>\n"
+                                                   + "    <total_amount_in_cents type=\"integer\">17000</total_amount_in_cents>\n"
+                                                   + "    <activated_at type=\"datetime\">2009-11-22T13:10:38Z</activated_at>\n"
+                                                   + "    <canceled_at type=\"datetime\"></canceled_at>\n"
+                                                   + "    <expires_at type=\"datetime\"></expires_at>\n"
+                                                   + "  </subscription>\n"
+                                                   + "</new_subscription_notification>";
+
+    @Test(groups = "fast")
+    public void testParsesNotification() throws Exception {
+        final Notification notification = new RecurlyNotificationParser(newClient()).parse(NEW_SUBSCRIPTION);
+
+        Assert.assertEquals(notification.getType(), "new_subscription");
+        Assert.assertEquals(notification.getAccount().getAccountCode(), "1");
+        Assert.assertEquals(notification.getSubscription().getUuid(), "8a4ace8b6a9d3ff9d35f5c4c7c9d8a31");
+        Assert.assertEquals(notification.getSubscription().getPlan().getPlanCode(), "bronze");
+        Assert.assertEquals(notification.getSubscription().getQuantity(), (Integer) 2);
+        // The subscription is tied to the account of the notification
+        Assert.assertEquals(notification.getSubscription().getAccount().getAccountCode(), "1");
+        Assert.assertNull(notification.getAccount().getUsername());
+        Assert.assertNull(notification.getSubscription().getCanceledAt());
+        Assert.assertNull(notification.getInvoice());
+    }
+
+    @Test(groups = "fast")
+    public void testSameAccountInOrderOthersInParallel() throws Exception {
+        final RecurlyNotificationDispatcher dispatcher = new RecurlyNotificationDispatcher(64);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Map<String, List<Integer>> received = new HashMap<String, List<Integer>>();
+        dispatcher.addListener(notification -> {
+            final String accountCode = notification.getAccount().getAccountCode();
+            if ("a".equals(accountCode) && "0".equals(notification.getType())) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            synchronized (received) {
+                List<Integer> sequence = received.get(accountCode);
+                if (sequence == null) {
+                    sequence = new ArrayList<Integer>();
+                    received.put(accountCode, sequence);
+                }
+                sequence.add(Integer.valueOf(notification.getType()));
+            }
+        });
+
+        final List<CompletableFuture<Void>> aDelivered = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < 10; i++) {
+            aDelivered.add(dispatcher.dispatch(notification("a", i)));
+        }
+        // The first notification for a is held up, b is not
+        dispatcher.dispatch(notification("b", 0)).get(5, TimeUnit.SECONDS);
+        Assert.assertFalse(aDelivered.get(9).isDone());
+
+        release.countDown();
+        aDelivered.get(9).get(5, TimeUnit.SECONDS);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(received.get("a").get(i), Integer.valueOf(i));
+        }
+        dispatcher.close();
+    }
+
+    @Test(groups = "fast")
+    public void testServerDispatchesPostedNotifications() throws Exception {
+        final RecurlyNotificationDispatcher dispatcher = new RecurlyNotificationDispatcher(2);
+        final LinkedBlockingQueue<Notification> received = new LinkedBlockingQueue<Notification>();
+        dispatcher.addListener(received::add);
+        final RecurlyNotificationServer server = new RecurlyNotificationServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), "/recurly",
+                                                                               new RecurlyNotificationParser(newClient()), dispatcher);
+        try {
+            final URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/recurly");
+            Assert.assertEquals(post(url, NEW_SUBSCRIPTION), 200);
+            Assert.assertEquals(received.poll(5, TimeUnit.SECONDS).getType(), "new_subscription");
+
+            Assert.assertEquals(post(url, "<?xml version=\"1.0\"?><account><account_code>1</account_code></account>"), 400);
+            Assert.assertTrue(received.isEmpty());
+        } finally {
+            server.close();
+            dispatcher.close();
+        }
+    }
+
+    private static int post(final URL url, final String payload) throws Exception {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/xml");
+        final OutputStream out = connection.getOutputStream();
+        out.write(payload.getBytes(StandardCharsets.UTF_8));
+        out.close();
+        final int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+
+    private static Notification notification(final String accountCode, final int sequence) {
+        final Account account = new Account();
+        account.setAccountCode(accountCode);
+        final Notification notification = new Notification();
+        notification.setAccount(account);
+        // Carries the sequence number, the listener does not care for types
+        notification.setType(String.valueOf(sequence));
+        return notification;
+    }
+
+    private static RecurlyClient newClient() {
+        return new RecurlyClient("key");
+    }
+}
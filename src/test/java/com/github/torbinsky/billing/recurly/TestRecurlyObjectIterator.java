@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.list.Accounts;
+
+public class TestRecurlyObjectIterator {
+
+    @Test(groups = "fast")
+    public void testIteratesAcrossPages() throws Exception {
+        final RecurlyPendingPage first = new RecurlyPendingPage();
+        final RecurlyPendingPage second = new RecurlyPendingPage();
+        final RecurlyPagePrefetcher<Accounts> pages = new RecurlyPagePrefetcher<Accounts>(first, url -> second,
+                                                                                          TestRecurlyObjectIterator::accounts, Runnable::run, 1);
+        first.completed(response("a,b"), "next");
+        second.completed(response("c"), null);
+
+        final List<String> codes = new RecurlyObjectIterator<Account>(pages).stream()
+                                                                            .map(Account::getAccountCode)
+                                                                            .collect(Collectors.toList());
+        Assert.assertEquals(codes.size(), 3);
+        Assert.assertEquals(codes.get(0), "a");
+        Assert.assertEquals(codes.get(2), "c");
+    }
+
+    @Test(groups = "fast")
+    public void testCloseAbortsPendingPages() throws Exception {
+        final RecurlyPendingPage first = new RecurlyPendingPage();
+        final RecurlyPagePrefetcher<Accounts> pages = new RecurlyPagePrefetcher<Accounts>(first, url -> new RecurlyPendingPage(),
+                                                                                          TestRecurlyObjectIterator::accounts, Runnable::run, 1);
+        final RecurlyObjectIterator<Account> iterator = new RecurlyObjectIterator<Account>(pages);
+        iterator.close();
+
+        Assert.assertTrue(first.getBody().isCancelled());
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    private static Accounts accounts(final RecurlyResponse response) {
+        final String codes = new String(response.getBody(), StandardCharsets.UTF_8);
+        final Accounts accounts = new Accounts();
+        for (final String code : codes.split(",")) {
+            final Account account = new Account();
+            account.setAccountCode(code);
+            accounts.getObjects().add(account);
+        }
+        return accounts;
+    }
+
+    private static RecurlyResponse response(final String payload) {
+        return InMemoryTransport.xmlResponse(200, payload, Collections.<String, List<String>>emptyMap());
+    }
+}
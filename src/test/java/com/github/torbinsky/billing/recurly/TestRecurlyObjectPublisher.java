@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.list.Accounts;
+
+public class TestRecurlyObjectPublisher {
+
+    @Test(groups = "fast")
+    public void testPagesFollowDemand() throws Exception {
+        final List<RecurlyPendingPage> requested = new ArrayList<RecurlyPendingPage>();
+        final RecurlyObjectPublisher<Account> publisher = new RecurlyObjectPublisher<Account>(() -> {
+            final RecurlyPendingPage first = new RecurlyPendingPage();
+            requested.add(first);
+            return new RecurlyPagePrefetcher<Accounts>(first, url -> {
+                final RecurlyPendingPage page = new RecurlyPendingPage();
+                requested.add(page);
+                return page;
+            }, TestRecurlyObjectPublisher::accounts, Runnable::run, 0);
+        });
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        // Nothing is fetched before there is demand
+        Assert.assertEquals(requested.size(), 0);
+        subscriber.subscription.request(1);
+        Assert.assertEquals(requested.size(), 1);
+
+        requested.get(0).completed(response("a,b"), "next");
+        Assert.assertEquals(subscriber.received.size(), 1);
+        // The second object is buffered so no further page is needed yet
+        Assert.assertEquals(requested.size(), 1);
+
+        subscriber.subscription.request(2);
+        Assert.assertEquals(subscriber.received.size(), 2);
+        Assert.assertEquals(requested.size(), 2);
+
+        requested.get(1).completed(response("c"), null);
+        Assert.assertEquals(subscriber.received.size(), 3);
+        Assert.assertTrue(subscriber.completed);
+    }
+
+    @Test(groups = "fast")
+    public void testCancelAbortsPageInFlight() throws Exception {
+        final RecurlyPendingPage first = new RecurlyPendingPage();
+        final RecurlyObjectPublisher<Account> publisher = new RecurlyObjectPublisher<Account>(
+                () -> new RecurlyPagePrefetcher<Accounts>(first, url -> new RecurlyPendingPage(),
+                                                          TestRecurlyObjectPublisher::accounts, Runnable::run, 0));
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(10);
+        subscriber.subscription.cancel();
+        Assert.assertTrue(first.getBody().isCancelled());
+        Assert.assertFalse(subscriber.completed);
+        Assert.assertNull(subscriber.error);
+    }
+
+    private static Accounts accounts(final RecurlyResponse response) {
+        final String codes = new String(response.getBody(), StandardCharsets.UTF_8);
+        final Accounts accounts = new Accounts();
+        for (final String code : codes.split(",")) {
+            final Account account = new Account();
+            account.setAccountCode(code);
+            accounts.getObjects().add(account);
+        }
+        return accounts;
+    }
+
+    private static RecurlyResponse response(final String payload) {
+        return InMemoryTransport.xmlResponse(200, payload, Collections.<String, List<String>>emptyMap());
+    }
+
+    private static class RecordingSubscriber implements Subscriber<Account> {
+        private final List<Account> received = new ArrayList<Account>();
+        private Subscription subscription;
+        private boolean completed;
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(final Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(final Account account) {
+            received.add(account);
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
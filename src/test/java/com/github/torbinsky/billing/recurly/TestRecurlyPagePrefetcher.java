@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+public class TestRecurlyPagePrefetcher {
+
+    private final List<RecurlyPendingPage> requested = new ArrayList<RecurlyPendingPage>();
+
+    private final Function<String, RecurlyPendingPage> requester = url -> {
+        final RecurlyPendingPage page = new RecurlyPendingPage();
+        requested.add(page);
+        return page;
+    };
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        requested.clear();
+    }
+
+    @Test(groups = "fast")
+    public void testNextPageIsRequestedWhenHeadersArrive() throws Exception {
+        final RecurlyPendingPage first = new RecurlyPendingPage();
+        final RecurlyPagePrefetcher<String> prefetcher = newPrefetcher(first, 1);
+
+        final CompletableFuture<String> page1 = prefetcher.next();
+        first.headersReceived("https://api.recurly.com/v2/accounts?cursor=1");
+        // The second page goes out before the first body is complete
+        Assert.assertEquals(requested.size(), 1);
+        Assert.assertFalse(page1.isDone());
+
+        first.completed(response("one"), "https://api.recurly.com/v2/accounts?cursor=1");
+        Assert.assertEquals(page1.get(), "one");
+
+        final CompletableFuture<String> page2 = prefetcher.next();
+        requested.get(0).completed(response("two"), null);
+        Assert.assertEquals(page2.get(), "two");
+        Assert.assertNull(prefetcher.next().get());
+    }
+
+    @Test(groups = "fast")
+    public void testPrefetchDepthBoundsPagesAhead() throws Exception {
+        final RecurlyPendingPage first = new RecurlyPendingPage();
+        final RecurlyPagePrefetcher<String> prefetcher = newPrefetcher(first, 1);
+
+        prefetcher.next();
+        first.completed(response("one"), "next");
+        Assert.assertEquals(requested.size(), 1);
+
+        // Page three is parked until page two has been handed out
+        requested.get(0).headersReceived("next");
+        Assert.assertEquals(requested.size(), 1);
+        prefetcher.next();
+        Assert.assertEquals(requested.size(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testCollectKeepsPageOrder() throws Exception {
+        final RecurlyPendingPage first = new RecurlyPendingPage();
+        final RecurlyPagePrefetcher<String> prefetcher = newPrefetcher(first, 2);
+        final CompletableFuture<List<String>> all = prefetcher.collect();
+
+        first.headersReceived("next");
+        requested.get(0).headersReceived("next");
+        // Complete out of order
+        requested.get(1).completed(response("three"), null);
+        requested.get(0).completed(response("two"), "next");
+        first.completed(response("one"), "next");
+
+        Assert.assertEquals(all.get().size(), 3);
+        Assert.assertEquals(all.get().get(0), "one");
+        Assert.assertEquals(all.get().get(1), "two");
+        Assert.assertEquals(all.get().get(2), "three");
+    }
+
+    @Test(groups = "fast")
+    public void testCancelAbortsInFlightPages() throws Exception {
+        final RecurlyPendingPage first = new RecurlyPendingPage();
+        final RecurlyPagePrefetcher<String> prefetcher = newPrefetcher(first, 1);
+        final CompletableFuture<String> page1 = prefetcher.next();
+
+        prefetcher.cancel();
+        Assert.assertTrue(first.getBody().isCancelled());
+        Assert.assertTrue(page1.isCompletedExceptionally());
+    }
+
+    private RecurlyPagePrefetcher<String> newPrefetcher(final RecurlyPendingPage first, final int depth) {
+        // Parse inline so the assertions don't race the parser
+        return new RecurlyPagePrefetcher<String>(first, requester, TestRecurlyPagePrefetcher::string, Runnable::run, depth);
+    }
+
+    private static RecurlyResponse response(final String payload) {
+        return InMemoryTransport.xmlResponse(200, payload, Collections.<String, List<String>>emptyMap());
+    }
+
+    private static String string(final RecurlyResponse response) {
+        return new String(response.getBody(), StandardCharsets.UTF_8);
+    }
+}
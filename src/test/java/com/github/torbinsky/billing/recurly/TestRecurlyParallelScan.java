@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+public class TestRecurlyParallelScan {
+
+    private static final DateTime START = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    @Test(groups = "fast")
+    public void testOrderedScanSplitsSkewedWindows() throws Exception {
+        final Site site = new Site();
+        final RecurlyClient client = newClient(site, 1);
+
+        final List<Account> scanned = new ArrayList<Account>();
+        final long count = client.scanAccounts(START, START.plusSeconds(10000), true, scanned::add);
+        Assert.assertEquals(count, site.accounts.size());
+        for (int i = 0; i < scanned.size(); i++) {
+            Assert.assertEquals(scanned.get(i).getAccountCode(), site.accounts.get(i).getAccountCode());
+        }
+        // The first page showed the range to hold many pages, so it was split
+        Assert.assertTrue(site.windowsRequested.size() > 1);
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testUnorderedScanSeesEveryRecordOnce() throws Exception {
+        final Site site = new Site();
+        final RecurlyClient client = newClient(site, 3);
+
+        final Set<String> scanned = Collections.synchronizedSet(new HashSet<String>());
+        final long count = client.scanAccounts(START, START.plusSeconds(10000), false, account -> {
+            Assert.assertTrue(scanned.add(account.getAccountCode()), account.getAccountCode());
+        });
+        Assert.assertEquals(count, site.accounts.size());
+        Assert.assertEquals(scanned.size(), site.accounts.size());
+        client.close();
+    }
+
+    private static RecurlyClient newClient(final Site site, final int parallelism) {
+        final RecurlyClient client = new RecurlyClient("key", new RecurlyClientConfig.Builder().setTransport(new InMemoryTransport(site::respond))
+                                                                                               .setPageSize(2)
+                                                                                               .setBulkConcurrency(parallelism)
+                                                                                               .build());
+        client.open();
+        return client;
+    }
+
+    /**
+     * A few accounts spread out, then a burst created three per second
+     */
+    private static class Site {
+        private final List<Account> accounts = new ArrayList<Account>();
+        private final Set<String> windowsRequested = Collections.synchronizedSet(new HashSet<String>());
+
+        Site() {
+            for (int i = 0; i < 4; i++) {
+                add("spread" + i, START.plusSeconds(i * 1000));
+            }
+            for (int i = 0; i < 18; i++) {
+                add("burst" + i, START.plusSeconds(5000 + i / 3));
+            }
+        }
+
+        private void add(final String accountCode, final DateTime createdAt) {
+            final Account account = new Account();
+            account.setAccountCode(accountCode);
+            account.setCreatedAt(createdAt.toString());
+            accounts.add(account);
+        }
+
+        RecurlyResponse respond(final RecurlyRequest request) {
+            final Map<String, String> query = query(request.getUrl());
+            final DateTime begin = new DateTime(query.get("begin_time"));
+            final DateTime end = new DateTime(query.get("end_time"));
+            final int offset = query.containsKey("cursor") ? Integer.parseInt(query.get("cursor")) : 0;
+            final int perPage = Integer.parseInt(query.get("per_page"));
+            windowsRequested.add(query.get("begin_time"));
+
+            final List<Account> matching = new ArrayList<Account>();
+            for (Account account : accounts) {
+                if (!account.getCreatedAt().isBefore(begin) && !account.getCreatedAt().isAfter(end)) {
+                    matching.add(account);
+                }
+            }
+            final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<accounts type=\"array\">\n");
+            for (Account account : matching.subList(offset, Math.min(matching.size(), offset + perPage))) {
+                xml.append("  <account><account_code>").append(account.getAccountCode()).append("</account_code>")
+                   .append("<created_at type=\"datetime\">").append(account.getCreatedAt()).append("</created_at></account>\n");
+            }
+            xml.append("</accounts>");
+            final Map<String, List<String>> headers = new HashMap<String, List<String>>();
+            if (offset + perPage < matching.size()) {
+                final String next = request.getUrl().replaceAll("&cursor=\\d+", "") + "&cursor=" + (offset + perPage);
+                headers.put("Link", Arrays.asList("<" + next + ">; rel=\"next\""));
+            }
+            return InMemoryTransport.xmlResponse(200, xml.toString(), headers);
+        }
+
+        private static Map<String, String> query(final String url) {
+            final Map<String, String> query = new HashMap<String, String>();
+            try {
+                for (String param : URI.create(url).getRawQuery().split("&")) {
+                    final String[] pair = param.split("=", 2);
+                    query.put(pair[0], URLDecoder.decode(pair[1], "UTF-8"));
+                }
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            return query;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.time.Duration;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+
+public class TestRecurlyPlanCatalog {
+
+    @Test(groups = "fast")
+    public void testReadsAreServedFromSnapshot() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport()
+                .respond("GET", "/v2/plans", 200, plans("gold", "silver"))
+                .respond("GET", "/v2/plans/gold/add_ons", 200, addOns("seats"))
+                .respond("GET", "/v2/plans/silver/add_ons", 200, addOns());
+        final RecurlyClient client = TestUtils.newClient(transport);
+        final RecurlyPlanCatalog catalog = new RecurlyPlanCatalog(client, Duration.ZERO);
+
+        Assert.assertEquals(catalog.getPlans().size(), 2);
+        Assert.assertEquals(catalog.getPlan("gold").getPlanCode(), "gold");
+        Assert.assertEquals(catalog.getAddOn("gold", "seats").getAddOnCode(), "seats");
+        Assert.assertTrue(catalog.getAddOns("silver").isEmpty());
+        Assert.assertNull(catalog.getPlan("bronze"));
+        Assert.assertEquals(transport.getRequestCount(), 3);
+
+        // A refresh swaps in a new snapshot
+        transport.respond("GET", "/v2/plans", 200, plans("gold"));
+        catalog.refresh().get();
+        Assert.assertEquals(catalog.getPlans().size(), 1);
+        Assert.assertEquals(transport.getRequestCount(), 5);
+        catalog.close();
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testPlanChangesInvalidate() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport()
+                .respond("GET", "/v2/plans", 200, plans("gold"))
+                .respond("GET", "/v2/plans/gold/add_ons", 200, addOns())
+                .respond("DELETE", "/v2/plans/gold", 204, "");
+        final RecurlyClient client = TestUtils.newClient(transport);
+        final RecurlyPlanCatalog catalog = new RecurlyPlanCatalog(client, Duration.ZERO);
+        Assert.assertNotNull(catalog.getPlan("gold"));
+
+        transport.respond("GET", "/v2/plans", 200, plans());
+        client.deletePlan("gold");
+        // The next read waits for the reload
+        Assert.assertNull(catalog.getPlan("gold"));
+        Assert.assertFalse(catalog.isStale());
+        catalog.close();
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testFailedReloadKeepsServingTheSnapshot() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport()
+                .respond("GET", "/v2/plans", 200, plans("gold"))
+                .respond("GET", "/v2/plans/gold/add_ons", 200, addOns("seats"))
+                .respond("DELETE", "/v2/plans/gold/add_ons/seats", 204, "");
+        final RecurlyClient client = TestUtils.newClient(transport);
+        final RecurlyPlanCatalog catalog = new RecurlyPlanCatalog(client, Duration.ZERO);
+        Assert.assertNotNull(catalog.getAddOn("gold", "seats"));
+
+        transport.respond("GET", "/v2/plans", 503, "");
+        client.deleteAddOn("gold", "seats");
+        Assert.assertNotNull(catalog.getAddOn("gold", "seats"));
+        Assert.assertTrue(catalog.isStale());
+
+        transport.respond("GET", "/v2/plans", 200, plans("gold"))
+                 .respond("GET", "/v2/plans/gold/add_ons", 200, addOns());
+        catalog.refresh().get();
+        Assert.assertNull(catalog.getAddOn("gold", "seats"));
+        Assert.assertFalse(catalog.isStale());
+        catalog.close();
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testPlanWithFailedAddOnsKeepsItsPreviousOnes() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport()
+                .respond("GET", "/v2/plans", 200, plans("gold"))
+                .respond("GET", "/v2/plans/gold/add_ons", 200, addOns("seats"));
+        final RecurlyClient client = TestUtils.newClient(transport);
+        final RecurlyPlanCatalog catalog = new RecurlyPlanCatalog(client, Duration.ZERO);
+        Assert.assertNotNull(catalog.getAddOn("gold", "seats"));
+
+        transport.respond("GET", "/v2/plans", 200, plans("gold", "silver"))
+                 .respond("GET", "/v2/plans/gold/add_ons", 503, "")
+                 .respond("GET", "/v2/plans/silver/add_ons", 200, addOns("extra"));
+        catalog.refresh().get();
+        Assert.assertNotNull(catalog.getAddOn("gold", "seats"));
+        Assert.assertNotNull(catalog.getAddOn("silver", "extra"));
+        Assert.assertTrue(catalog.isStale());
+
+        transport.respond("GET", "/v2/plans/gold/add_ons", 200, addOns("seats", "storage"));
+        catalog.refresh().get();
+        Assert.assertNotNull(catalog.getAddOn("gold", "storage"));
+        Assert.assertFalse(catalog.isStale());
+        catalog.close();
+        client.close();
+    }
+
+    private static String plans(final String... planCodes) {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<plans type=\"array\">\n");
+        for (final String planCode : planCodes) {
+            xml.append("  <plan><plan_code>").append(planCode).append("</plan_code></plan>\n");
+        }
+        return xml.append("</plans>").toString();
+    }
+
+    private static String addOns(final String... addOnCodes) {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<add_ons type=\"array\">\n");
+        for (final String addOnCode : addOnCodes) {
+            xml.append("  <add_on><add_on_code>").append(addOnCode).append("</add_on_code></add_on>\n");
+        }
+        return xml.append("</add_ons>").toString();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponseHeaders;
+
+public class TestRecurlyRateLimiter {
+
+    private static final long NOW_MILLIS = 1400000000000L;
+
+    @Test(groups = "fast")
+    public void testUnknownKeysAreNotPaced() throws Exception {
+        final RecurlyRateLimiter limiter = new RecurlyRateLimiter(0, () -> 0, () -> NOW_MILLIS);
+        Assert.assertEquals(limiter.acquire("key"), 0);
+        Assert.assertEquals(limiter.acquire("key"), 0);
+        Assert.assertEquals(limiter.acquire("key"), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testRemainingQuotaIsSpreadOverTheWindow() throws Exception {
+        final RecurlyRateLimiter limiter = new RecurlyRateLimiter(0, () -> 0, () -> NOW_MILLIS);
+        // 10 requests left for the next 10 seconds: one per second
+        limiter.update("key", quota(200, 100, 10, 10));
+
+        Assert.assertEquals(limiter.acquire("key"), 0);
+        Assert.assertEquals(limiter.acquire("key"), 0);
+        Assert.assertEquals(limiter.acquire("key"), TimeUnit.SECONDS.toNanos(1));
+        Assert.assertEquals(limiter.acquire("key"), TimeUnit.SECONDS.toNanos(2));
+        // Other keys have their own quota
+        Assert.assertEquals(limiter.acquire("other"), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testHeadroomIsKeptInReserve() throws Exception {
+        final RecurlyRateLimiter limiter = new RecurlyRateLimiter(0.1, () -> 0, () -> NOW_MILLIS);
+        // The 10 remaining requests are the 10% headroom of the limit
+        limiter.update("key", quota(200, 100, 10, 10));
+
+        Assert.assertEquals(limiter.acquire("key"), TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test(groups = "fast")
+    public void testTooManyRequestsHoldsTheKey() throws Exception {
+        final RecurlyRateLimiter limiter = new RecurlyRateLimiter(0, () -> 0, () -> NOW_MILLIS);
+        final Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("Retry-After", Arrays.asList("5"));
+        limiter.update("key", new RecurlyResponseHeaders(429, headers));
+
+        Assert.assertEquals(limiter.acquire("key"), TimeUnit.SECONDS.toNanos(5));
+    }
+
+    private static RecurlyResponseHeaders quota(final int status, final long limit, final long remaining, final long resetInSeconds) {
+        final Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("X-RateLimit-Limit", Arrays.asList(String.valueOf(limit)));
+        headers.put("X-RateLimit-Remaining", Arrays.asList(String.valueOf(remaining)));
+        headers.put("X-RateLimit-Reset", Arrays.asList(String.valueOf(NOW_MILLIS / 1000 + resetInSeconds)));
+        return new RecurlyResponseHeaders(status, headers);
+    }
+}
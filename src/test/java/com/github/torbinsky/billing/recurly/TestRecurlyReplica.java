@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.torbinsky.billing.recurly;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.Adjustment;
+import com.github.torbinsky.billing.recurly.model.Invoice;
+import com.github.torbinsky.billing.recurly.model.Notification;
+import com.github.torbinsky.billing.recurly.model.Plan;
+import com.github.torbinsky.billing.recurly.model.Subscription;
+import com.github.torbinsky.billing.recurly.model.list.Adjustments;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+
+public class TestRecurlyReplica {
+
+    @Test(groups = "fast")
+    public void testIndexesFollowChanges() throws Exception {
+        final RecurlyReplica replica = newReplica();
+        replica.accountChanged(new RecurlyDelta<Account>(RecurlyDelta.Type.INSERT, account("a", "active")));
+        replica.accountChanged(new RecurlyDelta<Account>(RecurlyDelta.Type.INSERT, account("b", "active")));
+        replica.subscriptionChanged(new RecurlyDelta<Subscription>(RecurlyDelta.Type.INSERT, subscription("s1", "a", "gold", "active")));
+        replica.subscriptionChanged(new RecurlyDelta<Subscription>(RecurlyDelta.Type.INSERT, subscription("s2", "b", "gold", "canceled")));
+        replica.subscriptionChanged(new RecurlyDelta<Subscription>(RecurlyDelta.Type.INSERT, subscription("s3", "b", "silver", "active")));
+
+        Assert.assertEquals(uuids(replica.getSubscriptionsByPlan("gold")), list("s1", "s2"));
+        Assert.assertEquals(uuids(replica.getSubscriptionsByPlan("gold", "active")), list("s1"));
+        Assert.assertEquals(uuids(replica.getAccountSubscriptions("b")), list("s2", "s3"));
+        Assert.assertEquals(replica.getSubscriptionsByCurrency("USD").size(), 3);
+
+        // Moving a subscription to another plan moves it in the index
+        replica.subscriptionChanged(new RecurlyDelta<Subscription>(RecurlyDelta.Type.UPDATE, subscription("s1", "a", "silver", "active")));
+        Assert.assertEquals(uuids(replica.getSubscriptionsByPlan("gold")), list("s2"));
+        Assert.assertEquals(new HashSet<String>(uuids(replica.getSubscriptionsByPlan("silver", "active"))), new HashSet<String>(list("s1", "s3")));
+
+        replica.accountChanged(new RecurlyDelta<Account>(RecurlyDelta.Type.CLOSE, account("a", "closed")));
+        Assert.assertEquals(replica.getAccountsByState("active").size(), 1);
+        Assert.assertEquals(replica.getAccount("a").getState(), "closed");
+        replica.close();
+    }
+
+    @Test(groups = "fast")
+    public void testInvoicesCarryTheirAdjustments() throws Exception {
+        final RecurlyReplica replica = newReplica();
+        replica.accountChanged(new RecurlyDelta<Account>(RecurlyDelta.Type.INSERT, account("a", "active")));
+        replica.invoiceChanged(new RecurlyDelta<Invoice>(RecurlyDelta.Type.INSERT, invoice("i1", "a", "past_due", "adj1", "adj2")));
+
+        Assert.assertEquals(replica.getAccountsWithInvoiceState("past_due").size(), 1);
+        Assert.assertEquals(replica.getAccountAdjustments("a").size(), 2);
+
+        replica.invoiceChanged(new RecurlyDelta<Invoice>(RecurlyDelta.Type.UPDATE, invoice("i1", "a", "collected", "adj1")));
+        Assert.assertTrue(replica.getAccountsWithInvoiceState("past_due").isEmpty());
+        Assert.assertEquals(replica.getInvoicesByState("collected").size(), 1);
+        Assert.assertEquals(replica.getAccountAdjustments("a").size(), 1);
+        Assert.assertNull(replica.getAdjustment("adj2"));
+        replica.close();
+    }
+
+    @Test(groups = "fast")
+    public void testNotificationFetchesTheSubscription() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport().respond("GET", "/v2/subscriptions/s1", 200, subscription("s1", "active", "2013-05-01T10:00:00Z"));
+        final RecurlyReplica replica = new RecurlyReplica(TestUtils.newClient(transport), Duration.ZERO);
+
+        // Notifications leave out the currency, amongst others
+        final Subscription notified = subscription("s1", "a", "gold", "active");
+        notified.setCurrency(null);
+        replica.notificationReceived(notification(notified));
+        Assert.assertEquals(transport.getRequestCount(), 1);
+        Assert.assertEquals(replica.getSubscription("s1").getCurrency(), "USD");
+        Assert.assertNotNull(replica.getSubscription("s1").getUpdatedAt());
+        replica.close();
+    }
+
+    @Test(groups = "fast")
+    public void testLateNotificationKeepsNewerSubscription() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport().respond("GET", "/v2/subscriptions/s1", 200, subscription("s1", "active", "2013-05-01T10:00:00Z"));
+        final RecurlyReplica replica = new RecurlyReplica(TestUtils.newClient(transport), Duration.ZERO);
+        final Subscription canceled = subscription("s1", "a", "gold", "canceled");
+        canceled.setUpdatedAt("2013-05-02T10:00:00Z");
+        replica.subscriptionChanged(new RecurlyDelta<Subscription>(RecurlyDelta.Type.UPDATE, canceled));
+
+        // A copy older than the one known is not applied, from a notification or a refresh
+        replica.notificationReceived(notification(subscription("s1", "a", "gold", "active")));
+        Assert.assertSame(replica.getSubscription("s1"), canceled);
+        final Subscription older = subscription("s1", "a", "gold", "active");
+        older.setUpdatedAt("2013-05-01T10:00:00Z");
+        replica.subscriptionChanged(new RecurlyDelta<Subscription>(RecurlyDelta.Type.UPDATE, older));
+        Assert.assertSame(replica.getSubscription("s1"), canceled);
+
+        // Nor is the partial copy of a notification when the subscription cannot be fetched
+        transport.respond("GET", "/v2/subscriptions/s1", 503, "");
+        replica.notificationReceived(notification(subscription("s1", "a", "gold", "active")));
+        Assert.assertSame(replica.getSubscription("s1"), canceled);
+        Assert.assertEquals(replica.getSubscriptionsByState("canceled").size(), 1);
+        replica.close();
+    }
+
+    private static RecurlyReplica newReplica() {
+        final RecurlyClient client = new RecurlyClient("key", new RecurlyClientConfig.Builder().setTransport(new InMemoryTransport(request -> {
+            throw new AssertionError("The replica must not call Recurly");
+        })).build());
+        return new RecurlyReplica(client, Duration.ZERO);
+    }
+
+    private static Account account(final String accountCode, final String state) {
+        final Account account = new Account();
+        account.setAccountCode(accountCode);
+        account.setState(state);
+        return account;
+    }
+
+    private static Subscription subscription(final String uuid, final String accountCode, final String planCode, final String state) {
+        final Plan plan = new Plan();
+        plan.setPlanCode(planCode);
+        final Subscription subscription = new Subscription();
+        subscription.setUuid(uuid);
+        subscription.setAccount(account(accountCode, null));
+        subscription.setPlan(plan);
+        subscription.setState(state);
+        subscription.setCurrency("USD");
+        return subscription;
+    }
+
+    private static String subscription(final String uuid, final String state, final String updatedAt) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+               "<subscription>" +
+               "<plan><plan_code>gold</plan_code></plan>" +
+               "<uuid>" + uuid + "</uuid>" +
+               "<state>" + state + "</state>" +
+               "<currency>USD</currency>" +
+               "<updated_at type=\"datetime\">" + updatedAt + "</updated_at>" +
+               "</subscription>";
+    }
+
+    private static Notification notification(final Subscription subscription) {
+        final Notification notification = new Notification();
+        notification.setType("new_subscription_notification");
+        notification.setSubscription(subscription);
+        return notification;
+    }
+
+    private static Invoice invoice(final String uuid, final String accountCode, final String state, final String... adjustmentUuids) {
+        final Adjustments lineItems = new Adjustments();
+        for (String adjustmentUuid : adjustmentUuids) {
+            final Adjustment adjustment = new Adjustment();
+            adjustment.setUuid(adjustmentUuid);
+            adjustment.setAccount(account(accountCode, null));
+            lineItems.getObjects().add(adjustment);
+        }
+        final Invoice invoice = new Invoice();
+        invoice.setUuid(uuid);
+        invoice.setAccount(account(accountCode, null));
+        invoice.setState(state);
+        invoice.setLineItems(lineItems);
+        return invoice;
+    }
+
+    private static List<String> uuids(final List<Subscription> subscriptions) {
+        final List<String> uuids = new ArrayList<String>();
+        for (Subscription subscription : subscriptions) {
+            uuids.add(subscription.getUuid());
+        }
+        return uuids;
+    }
+
+    private static List<String> list(final String... values) {
+        final List<String> list = new ArrayList<String>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+
+public class TestRecurlyResponseCache {
+
+    private static final String ACCOUNT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                          "<account><account_code>1</account_code></account>";
+
+    @Test(groups = "fast")
+    public void testNotModifiedReusesParsedObject() throws Exception {
+        final List<RecurlyRequest> requests = new ArrayList<RecurlyRequest>();
+        final String[] etag = {"\"v1\""};
+        final RecurlyClient client = TestUtils.newClient(new InMemoryTransport(request -> {
+            requests.add(request);
+            if (etag[0].equals(request.getHeader("If-None-Match"))) {
+                return InMemoryTransport.xmlResponse(304, "", Collections.<String, List<String>>emptyMap());
+            }
+            final Map<String, List<String>> headers = Collections.singletonMap("ETag", Arrays.asList(etag[0]));
+            return InMemoryTransport.xmlResponse(200, ACCOUNT, headers);
+        }), config -> config.setResponseCacheSize(100));
+
+        final Account first = client.getAccount("1");
+        Assert.assertNull(requests.get(0).getHeader("If-None-Match"));
+
+        Assert.assertSame(client.getAccount("1"), first);
+        Assert.assertEquals(requests.get(1).getHeader("If-None-Match"), "\"v1\"");
+        Assert.assertEquals(client.getNotModifiedCount(), 1);
+
+        // A changed account is parsed again
+        etag[0] = "\"v2\"";
+        final Account changed = client.getAccount("1");
+        Assert.assertNotSame(changed, first);
+        Assert.assertEquals(changed.getAccountCode(), "1");
+        Assert.assertSame(client.getAccount("1"), changed);
+        Assert.assertEquals(client.getNotModifiedCount(), 2);
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testEntriesAreKeptPerApiKey() throws Exception {
+        final RecurlyResponseCache cache = new RecurlyResponseCache(1);
+        final Map<String, List<String>> headers = Collections.singletonMap("ETag", Arrays.asList("\"v1\""));
+        cache.put("url", "key", InMemoryTransport.xmlResponse(200, ACCOUNT, headers));
+
+        Assert.assertEquals(cache.get("url", "key").getEtag(), "\"v1\"");
+        Assert.assertNull(cache.get("url", "other"));
+        // The least recently used entry makes room
+        cache.put("other-url", "key", InMemoryTransport.xmlResponse(200, ACCOUNT, headers));
+        Assert.assertNull(cache.get("url", "key"));
+    }
+
+    @Test(groups = "fast")
+    public void testEvictedResponsesAreReleased() throws Exception {
+        final RecurlyResponseCache cache = new RecurlyResponseCache(1);
+        final AtomicInteger parsed = new AtomicInteger();
+        final RecurlyResponse evicted = cacheParsed(cache, "url", parsed);
+        final RecurlyResponse replaced = cacheParsed(cache, "other-url", parsed);
+        cacheParsed(cache, "other-url", parsed);
+        Assert.assertEquals(parsed.get(), 3);
+
+        // Neither the evicted nor the replaced response still has its objects cached
+        parse(cache, evicted, parsed);
+        parse(cache, replaced, parsed);
+        Assert.assertEquals(parsed.get(), 5);
+
+        final WeakReference<RecurlyResponse> released = new WeakReference<RecurlyResponse>(cacheParsed(cache, "url", parsed));
+        cacheParsed(cache, "other-url", parsed);
+        for (int i = 0; i < 50 && released.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(released.get());
+    }
+
+    private static RecurlyResponse cacheParsed(final RecurlyResponseCache cache, final String url, final AtomicInteger parsed) {
+        final RecurlyResponse response = InMemoryTransport.xmlResponse(200, ACCOUNT, Collections.singletonMap("ETag", Arrays.asList("\"v1\"")));
+        cache.put(url, "key", response);
+        parse(cache, response, parsed);
+        // Parsed once, handed out again afterwards
+        parse(cache, response, parsed);
+        return response;
+    }
+
+    private static Account parse(final RecurlyResponseCache cache, final RecurlyResponse response, final AtomicInteger parsed) {
+        return cache.parse(response, Account.class, () -> {
+            parsed.incrementAndGet();
+            return new Account();
+        });
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.exception.RecurlyAPIException;
+import com.github.torbinsky.billing.recurly.exception.RecurlyException;
+import com.github.torbinsky.billing.recurly.serialize.XmlPayloadMap;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyRequest;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponseHeaders;
+import com.github.torbinsky.billing.recurly.transport.RecurlyTransport;
+
+public class TestRecurlyRetrier {
+
+    private static final String ACCOUNT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                          "<account href=\"https://api.recurly.com/v2/accounts/1\">\n" +
+                                          "  <account_code>1</account_code>\n" +
+                                          "</account>";
+
+    @Test(groups = "fast")
+    public void testGetIsRetriedOnServiceUnavailable() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final RecurlyClient client = newClient(new InMemoryTransport(request -> attempts.incrementAndGet() == 1 ? response(503, "") : response(200, ACCOUNT)),
+                                               new RecurlyRetryPolicy.Builder().setInitialBackoffMillis(1).build());
+
+        Assert.assertEquals(client.getAccount("1").getAccountCode(), "1");
+        Assert.assertEquals(attempts.get(), 2);
+        Assert.assertEquals(client.getRetryCount(), 1);
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testPostIsNotRetriedOnceSent() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final RecurlyClient client = newClient(new InMemoryTransport(request -> {
+            attempts.incrementAndGet();
+            return response(503, "");
+        }), new RecurlyRetryPolicy.Builder().setInitialBackoffMillis(1).build());
+
+        final XmlPayloadMap<String, String> account = new XmlPayloadMap<String, String>("account");
+        account.put("account_code", "1");
+        try {
+            client.createAccount(account);
+            Assert.fail("Expected a RecurlyAPIException");
+        } catch (RecurlyAPIException e) {
+            Assert.assertEquals(e.getErrorCode(), 503);
+        }
+        Assert.assertEquals(attempts.get(), 1);
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testTimedOutPartialRefundIsSentOnce() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final RecurlyClient client = newClient(new RecurlyTransport() {
+            @Override
+            public CompletableFuture<RecurlyResponse> execute(final RecurlyRequest request, final Consumer<RecurlyResponseHeaders> headersListener) {
+                attempts.incrementAndGet();
+                // The refund may well have been made, only its response got lost
+                final CompletableFuture<RecurlyResponse> response = new CompletableFuture<RecurlyResponse>();
+                response.completeExceptionally(new TimeoutException("Request timed out"));
+                return response;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, new RecurlyRetryPolicy.Builder().setInitialBackoffMillis(1).build());
+
+        try {
+            client.partialRefundTransaction("abc", 500);
+            Assert.fail("Expected a RecurlyException");
+        } catch (RecurlyException e) {
+            Assert.assertEquals(attempts.get(), 1);
+        }
+        Assert.assertEquals(client.getRetryCount(), 0);
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testOnlyPlainDeletesAreRetriedOnServiceUnavailable() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final RecurlyClient client = newClient(new InMemoryTransport(request -> attempts.incrementAndGet() % 2 == 1 ? response(503, "") : response(204, "")),
+                                               new RecurlyRetryPolicy.Builder().setInitialBackoffMillis(1).build());
+
+        client.closeAccount("1");
+        Assert.assertEquals(attempts.get(), 2);
+        try {
+            client.partialRefundTransaction("abc", 500);
+            Assert.fail("Expected a RecurlyAPIException");
+        } catch (RecurlyAPIException e) {
+            Assert.assertEquals(e.getErrorCode(), 503);
+        }
+        Assert.assertEquals(attempts.get(), 3);
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testRetriesAreOffByDefault() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final RecurlyClient client = TestUtils.newClient(new InMemoryTransport(request -> {
+            attempts.incrementAndGet();
+            return response(503, "");
+        }));
+
+        try {
+            client.getAccount("1");
+            Assert.fail("Expected a RecurlyAPIException");
+        } catch (RecurlyAPIException e) {
+            Assert.assertEquals(e.getErrorCode(), 503);
+        }
+        Assert.assertEquals(attempts.get(), 1);
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testRetriesStopWhenTheBudgetIsSpent() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final RecurlyClient client = newClient(new InMemoryTransport(request -> {
+            attempts.incrementAndGet();
+            return response(502, "");
+        }), new RecurlyRetryPolicy.Builder().setInitialBackoffMillis(1).setMaxAttempts(5).setBudgetMax(2).setBudgetRatio(0).build());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.getAccount("1");
+                Assert.fail("Expected a RecurlyAPIException");
+            } catch (RecurlyAPIException e) {
+                Assert.assertEquals(e.getErrorCode(), 502);
+            }
+        }
+        // Two retries in the budget, then each request gets a single attempt
+        Assert.assertEquals(attempts.get(), 4);
+        client.close();
+    }
+
+    private static RecurlyClient newClient(final RecurlyTransport transport, final RecurlyRetryPolicy policy) {
+        return TestUtils.newClient(transport, config -> config.setRetryPolicy(policy));
+    }
+
+    private static RecurlyResponse response(final int status, final String xml) {
+        return InMemoryTransport.xmlResponse(status, xml, Collections.<String, List<String>>emptyMap());
+    }
+}
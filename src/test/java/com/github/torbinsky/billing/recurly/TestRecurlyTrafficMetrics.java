@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.RecurlyTrafficMetrics.EndpointTraffic;
+import com.github.torbinsky.billing.recurly.model.list.Accounts;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponse;
+import com.github.torbinsky.billing.recurly.transport.RecurlyResponseHeaders;
+
+public class TestRecurlyTrafficMetrics {
+
+    @Test(groups = "fast")
+    public void testEndpointsHideIdentifiers() throws Exception {
+        Assert.assertEquals(RecurlyTrafficMetrics.endpointOf("GET", "https://api.recurly.com:443/v2/accounts?per_page=200"), "GET /accounts");
+        Assert.assertEquals(RecurlyTrafficMetrics.endpointOf("GET", "https://api.recurly.com:443/v2/accounts/abc/invoices?cursor=1"), "GET /accounts/{id}/invoices");
+        Assert.assertEquals(RecurlyTrafficMetrics.endpointOf("PUT", "https://api.recurly.com:443/v2/subscriptions/123/cancel"), "PUT /subscriptions/{id}/cancel");
+    }
+
+    @Test(groups = "fast")
+    public void testRecurlyJsTokensAreHidden() throws Exception {
+        final String url = "https://api.recurly.com:443/v2" + RecurlyClientBase.FETCH_RESOURCE;
+        Assert.assertEquals(RecurlyTrafficMetrics.endpointOf("GET", url + "/a1b2c3"), "GET /recurly_js/result/{id}");
+        Assert.assertEquals(RecurlyTrafficMetrics.endpointOf("GET", url + "/d4e5f6"), "GET /recurly_js/result/{id}");
+        Assert.assertEquals(RecurlyTrafficMetrics.endpointOf("GET", "https://api.recurly.com:443/v2/accounts/abc/billing_info"), "GET /accounts/{id}/billing_info");
+        Assert.assertEquals(RecurlyTrafficMetrics.endpointOf("POST", "https://api.recurly.com:443/v2/coupons/abc/redeem"), "POST /coupons/{id}/redeem");
+    }
+
+    @Test(groups = "fast")
+    public void testCompressedResponsesAreInflatedWhileParsing() throws Exception {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<accounts type=\"array\">\n");
+        for (int i = 0; i < 50; i++) {
+            xml.append("  <account><account_code>").append(i).append("</account_code><state>active</state></account>\n");
+        }
+        xml.append("</accounts>");
+        final byte[] gzipped = gzip(xml.toString());
+        final Map<String, List<String>> headers = Collections.singletonMap("Content-Encoding", Arrays.asList("gzip"));
+
+        final String[] acceptEncoding = new String[1];
+        final InMemoryTransport transport = new InMemoryTransport(request -> {
+            acceptEncoding[0] = request.getHeader("Accept-Encoding");
+            return new RecurlyResponse(new RecurlyResponseHeaders(200, headers), gzipped);
+        });
+        final RecurlyClient client = new RecurlyClient("key", new RecurlyClientConfig.Builder().setTransport(transport)
+                                                                                             .setCompressionEnabled(true)
+                                                                                             .build());
+        client.open();
+
+        final Accounts accounts = client.getAccounts();
+        Assert.assertEquals(accounts.getObjects().size(), 50);
+        Assert.assertEquals(acceptEncoding[0], "gzip, deflate");
+
+        final EndpointTraffic traffic = client.getTrafficMetrics().snapshot().get("GET /accounts");
+        Assert.assertEquals(traffic.getResponses(), 1);
+        Assert.assertEquals(traffic.getWireBytes(), gzipped.length);
+        Assert.assertEquals(traffic.getPayloadBytes(), xml.toString().getBytes(StandardCharsets.UTF_8).length);
+        client.close();
+    }
+
+    private static byte[] gzip(final String payload) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(payload.getBytes(StandardCharsets.UTF_8));
+        gzip.close();
+        return out.toByteArray();
+    }
+}
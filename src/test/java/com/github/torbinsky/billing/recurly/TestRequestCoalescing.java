@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.model.Account;
+import com.github.torbinsky.billing.recurly.model.list.Accounts;
+import com.github.torbinsky.billing.recurly.transport.InMemoryTransport;
+
+public class TestRequestCoalescing {
+
+    private static final String NEXT_PAGE = "https://api.recurly.com:443/v2/accounts?cursor=2";
+
+    @Test(groups = "fast")
+    public void testConcurrentGetsShareOneRequest() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport().respond("GET", "/v2/accounts/1", 200, account("1"))
+                                                                   .setLatency(200, TimeUnit.MILLISECONDS);
+        final RecurlyAsyncClient client = TestUtils.newAsyncClient(transport, config -> config.setRequestCoalescingEnabled(true));
+
+        final List<CompletableFuture<Account>> calls = new ArrayList<CompletableFuture<Account>>();
+        for (int i = 0; i < 5; i++) {
+            calls.add(client.getAccount("1"));
+        }
+        final Account first = calls.get(0).get(5, TimeUnit.SECONDS);
+        for (final CompletableFuture<Account> call : calls) {
+            Assert.assertSame(call.get(5, TimeUnit.SECONDS), first);
+        }
+        Assert.assertEquals(transport.getRequestCount(), 1);
+        Assert.assertEquals(client.getCoalescedCallCount(), 4);
+
+        // Once completed, the next call makes a request of its own
+        client.getAccount("1").get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(transport.getRequestCount(), 2);
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testSharedPagesAreNotMerged() throws Exception {
+        final Map<String, List<String>> link = Collections.singletonMap("Link", Arrays.asList("<" + NEXT_PAGE + ">; rel=\"next\""));
+        final InMemoryTransport transport = new InMemoryTransport().respond("GET", NEXT_PAGE, 200, accounts("2"))
+                                                                   .respond("GET", "/v2/accounts", InMemoryTransport.xmlResponse(200, accounts("1"), link))
+                                                                   .setLatency(200, TimeUnit.MILLISECONDS);
+        final RecurlyAsyncClient client = TestUtils.newAsyncClient(transport, config -> config.setRequestCoalescingEnabled(true));
+
+        final CompletableFuture<Accounts> first = client.getAccounts();
+        final CompletableFuture<Accounts> second = client.getAccounts();
+        Assert.assertEquals(first.get(5, TimeUnit.SECONDS).getObjects().size(), 2);
+        Assert.assertEquals(second.get(5, TimeUnit.SECONDS).getObjects().size(), 2);
+        Assert.assertEquals(transport.getRequestCount(), 2);
+        client.close();
+    }
+
+    private static String account(final String accountCode) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+               "<account><account_code>" + accountCode + "</account_code></account>";
+    }
+
+    private static String accounts(final String accountCode) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+               "<accounts type=\"array\">\n" +
+               "  <account><account_code>" + accountCode + "</account_code></account>\n" +
+               "</accounts>";
+    }
+}
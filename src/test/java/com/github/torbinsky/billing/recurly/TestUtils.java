@@ -19,6 +19,7 @@ package com.github.torbinsky.billing.recurly;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.UnaryOperator;
 
 import org.joda.time.DateTime;
 
@@ -30,6 +31,7 @@ import com.github.torbinsky.billing.recurly.model.Subscription;
 import com.github.torbinsky.billing.recurly.model.SubscriptionAddOn;
 import com.github.torbinsky.billing.recurly.model.Transaction;
 import com.github.torbinsky.billing.recurly.model.list.SubscriptionAddOns;
+import com.github.torbinsky.billing.recurly.transport.RecurlyTransport;
 
 public class TestUtils {
 
@@ -325,4 +327,50 @@ public class TestUtils {
 
         return addOn;
     }
+
+    /**
+     * Opens a client sending its requests to the given transport.
+     *
+     * @param transport The transport standing in for Recurly
+     * @return The open client
+     */
+    public static RecurlyClient newClient(final RecurlyTransport transport) {
+        return newClient(transport, UnaryOperator.identity());
+    }
+
+    /**
+     * Opens a client sending its requests to the given transport.
+     *
+     * @param transport The transport standing in for Recurly
+     * @param settings  Changes the config the test needs, on top of the transport
+     * @return The open client
+     */
+    public static RecurlyClient newClient(final RecurlyTransport transport, final UnaryOperator<RecurlyClientConfig.Builder> settings) {
+        final RecurlyClient client = new RecurlyClient("key", settings.apply(new RecurlyClientConfig.Builder().setTransport(transport)).build());
+        client.open();
+        return client;
+    }
+
+    /**
+     * Opens an async client sending its requests to the given transport.
+     *
+     * @param transport The transport standing in for Recurly
+     * @return The open client
+     */
+    public static RecurlyAsyncClient newAsyncClient(final RecurlyTransport transport) {
+        return newAsyncClient(transport, UnaryOperator.identity());
+    }
+
+    /**
+     * Opens an async client sending its requests to the given transport.
+     *
+     * @param transport The transport standing in for Recurly
+     * @param settings  Changes the config the test needs, on top of the transport
+     * @return The open client
+     */
+    public static RecurlyAsyncClient newAsyncClient(final RecurlyTransport transport, final UnaryOperator<RecurlyClientConfig.Builder> settings) {
+        final RecurlyAsyncClient client = new RecurlyAsyncClient("key", settings.apply(new RecurlyClientConfig.Builder().setTransport(transport)).build());
+        client.open();
+        return client;
+    }
 }
@@ -75,7 +75,7 @@ public class TestSubscription extends TestModelBase {
     @Test(groups = "fast")
     public void testWithAddOnDeserialization() throws Exception {
         // See http://docs.recurly.com/api/subscriptions
-        String subscriptionData = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        final String subscriptionData = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
                                         "<subscription href=\"https://api.recurly.com/v2/subscriptions/44f83d7cba354d5b84812419f923ea96\">\n" +
                                         "  <account href=\"https://api.recurly.com/v2/accounts/1\"/>\n" +
                                         "  <plan href=\"https://api.recurly.com/v2/plans/gold\">\n" +
@@ -111,9 +111,6 @@ public class TestSubscription extends TestModelBase {
                                         "  <a name=\"postpone\" href=\"https://api.recurly.com/v2/subscriptions/44f83d7cba354d5b84812419f923ea96/postpone\" method=\"put\"/>\n" +
                                         "</subscription>";
 
-        // PARSE OUT subscription_add_on type to match 
-        subscriptionData = subscriptionData.replaceAll("<(subscription_add_on)>([\\s\\S]+?)<quantity(.*?)>([\\s\\S]+?)</(\\1)>", "<$1>$2<quantity>$4</$1>");
-        subscriptionData = subscriptionData.replaceAll("<(subscription_add_on)>([\\s\\S]+?)<unit_amount_in_cents(.*?)>([\\s\\S]+?)</(\\1)>", "<$1>$2<unit_amount_in_cents>$4</$1>");
         final Subscription subscription = xmlMapper.readValue(subscriptionData, Subscription.class);
         Assert.assertEquals(subscription.getUuid(), "44f83d7cba354d5b84812419f923ea96");
         Assert.assertEquals(subscription.getState(), "active");
@@ -129,6 +126,10 @@ public class TestSubscription extends TestModelBase {
         Assert.assertNull(subscription.getTrialEndsAt(), "");
         Assert.assertNotNull(subscription.getSubscriptionAddOns());
         Assert.assertEquals(subscription.getSubscriptionAddOns().getObjects().size(), 2);
+        final SubscriptionAddOn addOn = subscription.getSubscriptionAddOns().getObjects().get(1);
+        Assert.assertEquals(addOn.getAddOnCode(), "FEATURE2");
+        Assert.assertEquals(addOn.getUnitAmountInCents(), (Integer) 1099);
+        Assert.assertEquals(addOn.getQuantity(), (Integer) 1);
         
         // Verify nested attributes
         Assert.assertEquals(subscription.getAccount().getHref(), "https://api.recurly.com/v2/accounts/1");
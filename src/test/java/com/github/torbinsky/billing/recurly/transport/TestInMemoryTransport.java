@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 Torben Werner
+ *
+ * Torben Werner licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.torbinsky.billing.recurly.transport;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.torbinsky.billing.recurly.RecurlyClient;
+import com.github.torbinsky.billing.recurly.TestUtils;
+import com.github.torbinsky.billing.recurly.exception.RecurlyAPIException;
+import com.github.torbinsky.billing.recurly.model.list.Accounts;
+
+public class TestInMemoryTransport {
+
+    private static final String NEXT_PAGE = "https://api.recurly.com:443/v2/accounts?cursor=2";
+
+    @Test(groups = "fast")
+    public void testClientFollowsPagesOverTransport() throws Exception {
+        final Map<String, List<String>> link = Collections.singletonMap("Link", Arrays.asList("<" + NEXT_PAGE + ">; rel=\"next\""));
+        final InMemoryTransport transport = new InMemoryTransport()
+                .respond("GET", NEXT_PAGE, 200, accounts("2"))
+                .respond("GET", "/v2/accounts", InMemoryTransport.xmlResponse(200, accounts("1"), link));
+        final RecurlyClient client = TestUtils.newClient(transport);
+
+        final Accounts accounts = client.getAccounts();
+        Assert.assertEquals(accounts.getObjects().size(), 2);
+        Assert.assertEquals(accounts.getObjects().get(0).getAccountCode(), "1");
+        Assert.assertEquals(accounts.getObjects().get(1).getAccountCode(), "2");
+        Assert.assertEquals(transport.getRequestCount(), 2);
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testRequestsCarryCredentials() throws Exception {
+        final RecurlyRequest[] seen = new RecurlyRequest[1];
+        final RecurlyClient client = TestUtils.newClient(new InMemoryTransport(request -> {
+            seen[0] = request;
+            return InMemoryTransport.xmlResponse(200, accounts("1"), Collections.<String, List<String>>emptyMap());
+        }));
+
+        client.getAccounts();
+        Assert.assertEquals(seen[0].getMethod(), "GET");
+        Assert.assertEquals(seen[0].getHeader("Authorization"), "Basic a2V5");
+        Assert.assertEquals(seen[0].getHeader("Accept"), "application/xml");
+        client.close();
+    }
+
+    @Test(groups = "fast")
+    public void testErrorStatusIsRaised() throws Exception {
+        final RecurlyClient client = TestUtils.newClient(new InMemoryTransport());
+        try {
+            client.getAccounts();
+            Assert.fail("Expected a RecurlyAPIException");
+        } catch (RecurlyAPIException e) {
+            Assert.assertEquals(e.getErrorCode(), 404);
+        }
+        client.close();
+    }
+
+    private static String accounts(final String accountCode) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+               "<accounts type=\"array\">\n" +
+               "  <account href=\"https://api.recurly.com/v2/accounts/" + accountCode + "\">\n" +
+               "    <account_code>" + accountCode + "</account_code>\n" +
+               "  </account>\n" +
+               "</accounts>";
+    }
+}